@@ -40,5 +40,20 @@ public @interface CacheNamespace {
   boolean readWrite() default true;
   
   boolean blocking() default false;
+
+  /**
+   * Memory bound in bytes for weight based eviction such as WeightedLruCache, 0 to use its default.
+   */
+  long maxBytes() default 0;
+
+  /**
+   * Milliseconds each entry lives after it is put, 0 for no per-entry expiration.
+   */
+  long timeToLive() default 0;
+
+  /**
+   * Milliseconds before expiry in which a hit reloads the entry in the background, 0 to disable.
+   */
+  long refreshAhead() default 0;
   
 }
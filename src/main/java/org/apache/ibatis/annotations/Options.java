@@ -33,6 +33,24 @@ public @interface Options {
 
   boolean flushCache() default false;
 
+  /**
+   * Always run this statement against the primary environment, even when a
+   * replica environment is configured and no write has happened yet.
+   */
+  boolean usePrimary() default false;
+
+  /**
+   * Tables read or written by this statement, for table scoped cache invalidation.
+   * When empty they are parsed from the SQL of the statement annotation.
+   */
+  String[] tables() default {};
+
+  /**
+   * Let concurrent identical executions of this select, across sessions, share one
+   * database round trip. Threads that did not run the query get a deep copy of the result.
+   */
+  boolean coalesce() default false;
+
   ResultSetType resultSetType() default ResultSetType.FORWARD_ONLY;
 
   StatementType statementType() default StatementType.PREPARED;
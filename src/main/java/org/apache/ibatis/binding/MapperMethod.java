@@ -28,8 +28,14 @@ import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.session.SqlSession;
 
 import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
 import java.util.*;
+import java.util.concurrent.Future;
 
 /**
  * @author Clinton Begin
@@ -46,6 +52,49 @@ public class MapperMethod {
     this.method = new MethodSignature(config, method);
   }
 
+  /**
+   * @return Whether the mapper method is asynchronous: it returns a {@link Future} of
+   *         the result and can only be called through an
+   *         {@link org.apache.ibatis.session.AsyncSqlSession} mapper
+   */
+  public boolean returnsFuture() {
+    return method.returnsFuture();
+  }
+
+  /**
+   * Returns the declared result type of a mapper method, which is the type argument
+   * of its return type when it returns a {@link Future}.
+   */
+  public static Type getResultType(Method method) {
+    Type resultType = method.getGenericReturnType();
+    if (Future.class.equals(method.getReturnType())) {
+      if (!(resultType instanceof ParameterizedType)) {
+        throw new BindingException("Mapper method '" + method.getName() + "' must declare the result type of its Future");
+      }
+      resultType = ((ParameterizedType) resultType).getActualTypeArguments()[0];
+    }
+    return resultType;
+  }
+
+  /**
+   * Returns the class of a type returned by {@link #getResultType(Method)}.
+   */
+  public static Class<?> getRawType(Type type) {
+    if (type instanceof Class) {
+      return (Class<?>) type;
+    } else if (type instanceof ParameterizedType) {
+      return (Class<?>) ((ParameterizedType) type).getRawType();
+    } else if (type instanceof GenericArrayType) {
+      Class<?> componentType = getRawType(((GenericArrayType) type).getGenericComponentType());
+      return Array.newInstance(componentType, 0).getClass();
+    } else if (type instanceof TypeVariable) { // 与擦除后的类型一致
+      return getRawType(((TypeVariable<?>) type).getBounds()[0]);
+    } else if (type instanceof WildcardType) {
+      return getRawType(((WildcardType) type).getUpperBounds()[0]);
+    }
+    return Object.class;
+  }
+
   public Object execute(SqlSession sqlSession, Object[] args) {
     Object result;
     if (SqlCommandType.INSERT == command.getType()) {
@@ -234,6 +283,7 @@ public class MapperMethod {
     private final boolean returnsMap;
     private final boolean returnsVoid;
     private final boolean returnsCursor;
+    private final boolean returnsFuture;
     private final Class<?> returnType;
     private final String mapKey;
     private final Integer resultHandlerIndex;
@@ -242,11 +292,12 @@ public class MapperMethod {
     private final boolean hasNamedParameters;
 
     public MethodSignature(Configuration configuration, Method method) {
-      this.returnType = method.getReturnType();
-      this.returnsVoid = void.class.equals(this.returnType);
+      this.returnsFuture = Future.class.equals(method.getReturnType());
+      this.returnType = returnsFuture ? getRawType(getResultType(method)) : method.getReturnType(); // Future<T>按T处理
+      this.returnsVoid = void.class.equals(this.returnType) || Void.class.equals(this.returnType);
       this.returnsMany = (configuration.getObjectFactory().isCollection(this.returnType) || this.returnType.isArray());
       this.returnsCursor = Cursor.class.equals(this.returnType);
-      this.mapKey = getMapKey(method);
+      this.mapKey = getMapKey(method, this.returnType);
       this.returnsMap = (this.mapKey != null);
       this.hasNamedParameters = hasNamedParams(method);
       this.rowBoundsIndex = getUniqueParamIndex(method, RowBounds.class);
@@ -316,6 +367,10 @@ public class MapperMethod {
       return returnsCursor;
     }
 
+    public boolean returnsFuture() {
+      return returnsFuture;
+    }
+
     private Integer getUniqueParamIndex(Method method, Class<?> paramType) {
       Integer index = null;
       final Class<?>[] argTypes = method.getParameterTypes();
@@ -331,9 +386,9 @@ public class MapperMethod {
       return index;
     }
 
-    private String getMapKey(Method method) {
+    private String getMapKey(Method method, Class<?> returnType) {
       String mapKey = null;
-      if (Map.class.isAssignableFrom(method.getReturnType())) {
+      if (Map.class.isAssignableFrom(returnType)) {
         final MapKey mapKeyAnnotation = method.getAnnotation(MapKey.class);
         if (mapKeyAnnotation != null) {
           mapKey = mapKeyAnnotation.value();
@@ -19,8 +19,12 @@ import java.io.Serializable;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.session.AsyncSqlSession;
 import org.apache.ibatis.session.SqlSession;
 
 /**
@@ -31,11 +35,23 @@ public class MapperProxy<T> implements InvocationHandler, Serializable {
 
   private static final long serialVersionUID = -6424540398559729838L;
   private final SqlSession sqlSession;
+  private final AsyncSqlSession asyncSqlSession; // 异步会话的mapper,方法都交给它执行
   private final Class<T> mapperInterface;
   private final Map<Method, MapperMethod> methodCache;
 
   public MapperProxy(SqlSession sqlSession, Class<T> mapperInterface, Map<Method, MapperMethod> methodCache) {
+    this(sqlSession, null, mapperInterface, methodCache);
+  }
+
+  /**
+   * @param sqlSession The session running the statements
+   * @param asyncSqlSession The asynchronous session that owns sqlSession and runs the mapper methods,
+   *          or null for a synchronous mapper
+   */
+  public MapperProxy(SqlSession sqlSession, AsyncSqlSession asyncSqlSession, Class<T> mapperInterface,
+      Map<Method, MapperMethod> methodCache) {
     this.sqlSession = sqlSession;
+    this.asyncSqlSession = asyncSqlSession;
     this.mapperInterface = mapperInterface;
     this.methodCache = methodCache;
   }
@@ -50,9 +66,33 @@ public class MapperProxy<T> implements InvocationHandler, Serializable {
       }
     }
     final MapperMethod mapperMethod = cachedMapperMethod(method);
+    if (asyncSqlSession != null) {
+      return invokeAsync(mapperMethod, args);
+    }
+    if (mapperMethod.returnsFuture()) {
+      throw new BindingException("Mapper method '" + mapperInterface.getName() + "." + method.getName()
+          + "' returns a Future and can only be called on a mapper of an AsyncSqlSession.");
+    }
     return mapperMethod.execute(sqlSession, args);
   }
 
+  private Object invokeAsync(final MapperMethod mapperMethod, final Object[] args) throws Throwable {
+    Future<Object> future = asyncSqlSession.submit(new Callable<Object>() {
+      @Override
+      public Object call() {
+        return mapperMethod.execute(sqlSession, args);
+      }
+    });
+    if (mapperMethod.returnsFuture()) {
+      return future;
+    }
+    try { // 非Future方法等待结果,保持同步语义
+      return future.get();
+    } catch (ExecutionException e) {
+      throw e.getCause();
+    }
+  }
+
   private MapperMethod cachedMapperMethod(Method method) {
     MapperMethod mapperMethod = methodCache.get(method);
     if (mapperMethod == null) {
@@ -20,6 +20,7 @@ import java.lang.reflect.Proxy;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.ibatis.session.AsyncSqlSession;
 import org.apache.ibatis.session.SqlSession;
 
 /**
@@ -52,4 +53,9 @@ public class MapperProxyFactory<T> {
     return newInstance(mapperProxy);
   }
 
+  public T newInstance(SqlSession sqlSession, AsyncSqlSession asyncSqlSession) {
+    final MapperProxy<T> mapperProxy = new MapperProxy<T>(sqlSession, asyncSqlSession, mapperInterface, methodCache);
+    return newInstance(mapperProxy);
+  }
+
 }
@@ -0,0 +1,125 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the tables referenced by a SQL statement, for table scoped cache invalidation.
+ * <p>
+ * This is a lexical scan, not a SQL parser: every name following FROM (including
+ * comma separated lists), JOIN, UPDATE, INTO, USING or TABLE is taken as a table,
+ * without its schema. Over-reporting is harmless, it only invalidates more. When the
+ * tables cannot be known, because the SQL contains ${} substitutions, calls a
+ * procedure or names no table at all, null is returned and the statement falls back
+ * to namespace invalidation.
+ */
+public class TableNameParser {
+
+  private static final Pattern COMMENT_OR_LITERAL = Pattern.compile("--[^\\n]*|/\\*.*?\\*/|'(?:[^']|'')*'", Pattern.DOTALL);
+  private static final Pattern TOKEN = Pattern.compile("[(),;]|[^\\s(),;]+");
+  private static final Pattern CALL = Pattern.compile("^\\s*(?:\\{\\s*)?(?:\\?\\s*=\\s*)?(?:call|exec|execute)\\b", Pattern.CASE_INSENSITIVE);
+  private static final String[] TABLE_KEYWORDS = {"from", "join", "update", "into", "using", "table"};
+  private static final String[] CLAUSE_KEYWORDS = {"where", "group", "order", "having", "limit", "union", "on", "set",
+    "values", "select", "join", "inner", "left", "right", "full", "cross", "natural", "outer", "for", "offset", "fetch",
+    "window", "intersect", "except", "minus", "connect", "start", "returning"};
+
+  private TableNameParser() {
+    // Prevent Instantiation
+  }
+
+  /**
+   * @return comma separated, lower case table names or null when they cannot be determined
+   */
+  public static String parse(String sql) {
+    if (sql == null || sql.contains("${") || CALL.matcher(sql).find()) {
+      return null;
+    }
+    List<String> tokens = new ArrayList<String>();
+    Matcher matcher = TOKEN.matcher(COMMENT_OR_LITERAL.matcher(sql).replaceAll(" "));
+    while (matcher.find()) {
+      tokens.add(matcher.group());
+    }
+    Set<String> tables = new LinkedHashSet<String>();
+    for (int i = 0; i < tokens.size() - 1; i++) {
+      String keyword = tokens.get(i).toLowerCase(Locale.ENGLISH);
+      if (!isOneOf(keyword, TABLE_KEYWORDS)) {
+        continue;
+      }
+      int next = i + 1;
+      while (next < tokens.size() && isName(tokens.get(next))) {
+        tables.add(normalize(tokens.get(next)));
+        if (!"from".equals(keyword)) {
+          break;
+        }
+        next = skipAlias(tokens, next + 1); // FROM a x, b AS y
+        if (next < tokens.size() && ",".equals(tokens.get(next))) {
+          next++;
+        } else {
+          break;
+        }
+      }
+    }
+    if (tables.isEmpty()) {
+      return null;
+    }
+    StringBuilder result = new StringBuilder();
+    for (String table : tables) {
+      if (result.length() > 0) {
+        result.append(',');
+      }
+      result.append(table);
+    }
+    return result.toString();
+  }
+
+  private static int skipAlias(List<String> tokens, int index) {
+    if (index < tokens.size() && "as".equalsIgnoreCase(tokens.get(index))) {
+      index++;
+    }
+    if (index < tokens.size() && isName(tokens.get(index))
+        && !isOneOf(tokens.get(index).toLowerCase(Locale.ENGLISH), CLAUSE_KEYWORDS)) {
+      index++;
+    }
+    return index;
+  }
+
+  private static boolean isName(String token) {
+    return token.length() > 0 && "(),;".indexOf(token.charAt(0)) < 0 && token.indexOf('#') < 0 && token.indexOf('?') < 0;
+  }
+
+  private static String normalize(String name) {
+    String table = name.substring(name.lastIndexOf('.') + 1);
+    table = table.replaceAll("[\"`\\[\\]]", "");
+    return table.toLowerCase(Locale.ENGLISH);
+  }
+
+  private static boolean isOneOf(String token, String[] keywords) {
+    for (String keyword : keywords) {
+      if (keyword.equals(token)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
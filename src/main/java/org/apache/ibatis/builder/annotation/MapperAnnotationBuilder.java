@@ -31,6 +31,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 import org.apache.ibatis.annotations.Arg;
@@ -56,10 +57,12 @@ import org.apache.ibatis.annotations.TypeDiscriminator;
 import org.apache.ibatis.annotations.Update;
 import org.apache.ibatis.annotations.UpdateProvider;
 import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.binding.MapperMethod;
 import org.apache.ibatis.binding.MapperMethod.ParamMap;
 import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.builder.IncompleteElementException;
 import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.apache.ibatis.builder.TableNameParser;
 import org.apache.ibatis.builder.xml.XMLMapperBuilder;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
@@ -174,7 +177,14 @@ public class MapperAnnotationBuilder {
     if (cacheDomain != null) {
       Integer size = cacheDomain.size() == 0 ? null : cacheDomain.size();
       Long flushInterval = cacheDomain.flushInterval() == 0 ? null : cacheDomain.flushInterval();
-      assistant.useNewCache(cacheDomain.implementation(), cacheDomain.eviction(), flushInterval, size, cacheDomain.readWrite(), cacheDomain.blocking(), null);
+      Properties props = null;
+      if (cacheDomain.maxBytes() > 0) { // 交给按内存淘汰的装饰器
+        props = new Properties();
+        props.setProperty("maxBytes", String.valueOf(cacheDomain.maxBytes()));
+      }
+      Long timeToLive = cacheDomain.timeToLive() == 0 ? null : cacheDomain.timeToLive();
+      Long refreshAhead = cacheDomain.refreshAhead() == 0 ? null : cacheDomain.refreshAhead();
+      assistant.useNewCache(cacheDomain.implementation(), cacheDomain.eviction(), flushInterval, size, cacheDomain.readWrite(), cacheDomain.blocking(), timeToLive, refreshAhead, props);
     }
   }
 
@@ -264,6 +274,9 @@ public class MapperAnnotationBuilder {
       boolean isSelect = sqlCommandType == SqlCommandType.SELECT;
       boolean flushCache = !isSelect;
       boolean useCache = isSelect;
+      boolean usePrimary = false;
+      boolean coalesce = false;
+      String tables = null;
 
       KeyGenerator keyGenerator;
       String keyProperty = "id";
@@ -288,6 +301,9 @@ public class MapperAnnotationBuilder {
       if (options != null) {
         flushCache = options.flushCache();
         useCache = options.useCache();
+        usePrimary = options.usePrimary();
+        coalesce = options.coalesce();
+        tables = options.tables().length > 0 ? join(options.tables(), ",") : null;
         fetchSize = options.fetchSize() > -1 || options.fetchSize() == Integer.MIN_VALUE ? options.fetchSize() : null; //issue #348
         timeout = options.timeout() > -1 ? options.timeout() : null;
         statementType = options.statementType();
@@ -334,7 +350,10 @@ public class MapperAnnotationBuilder {
           null,
           languageDriver,
           // ResultSets
-          null);
+          null,
+          usePrimary,
+          tables != null || statementType == StatementType.CALLABLE ? tables : parseTables(method),
+          coalesce);
     }
   }
   
@@ -364,7 +383,8 @@ public class MapperAnnotationBuilder {
   }
 
   private Class<?> getReturnType(Method method) {
-    Class<?> returnType = method.getReturnType();
+    Type resultType = MapperMethod.getResultType(method); // Future<T>按T解析
+    Class<?> returnType = MapperMethod.getRawType(resultType);
     // issue #508
     if (void.class.equals(returnType)) {
       ResultType rt = method.getAnnotation(ResultType.class);
@@ -372,7 +392,7 @@ public class MapperAnnotationBuilder {
         returnType = rt.value();
       } 
     } else if (Collection.class.isAssignableFrom(returnType)) {
-      Type returnTypeParameter = method.getGenericReturnType();
+      Type returnTypeParameter = resultType;
       if (returnTypeParameter instanceof ParameterizedType) {
         Type[] actualTypeArguments = ((ParameterizedType) returnTypeParameter).getActualTypeArguments();
         if (actualTypeArguments != null && actualTypeArguments.length == 1) {
@@ -391,7 +411,7 @@ public class MapperAnnotationBuilder {
       }
     } else if (method.isAnnotationPresent(MapKey.class) && Map.class.isAssignableFrom(returnType)) {
       // (issue 504) Do not look into Maps if there is not MapKey annotation
-      Type returnTypeParameter = method.getGenericReturnType();
+      Type returnTypeParameter = resultType;
       if (returnTypeParameter instanceof ParameterizedType) {
         Type[] actualTypeArguments = ((ParameterizedType) returnTypeParameter).getActualTypeArguments();
         if (actualTypeArguments != null && actualTypeArguments.length == 2) {
@@ -430,6 +450,31 @@ public class MapperAnnotationBuilder {
     }
   }
 
+  private String parseTables(Method method) { // 从@Select等注解的sql中解析表名, Provider则无法得知
+    try {
+      Class<? extends Annotation> sqlAnnotationType = getSqlAnnotationType(method);
+      if (sqlAnnotationType == null) {
+        return null;
+      }
+      Annotation sqlAnnotation = method.getAnnotation(sqlAnnotationType);
+      String[] strings = (String[]) sqlAnnotation.getClass().getMethod("value").invoke(sqlAnnotation);
+      return TableNameParser.parse(join(strings, " "));
+    } catch (Exception e) {
+      throw new BuilderException("Could not find value method on SQL annotation.  Cause: " + e, e);
+    }
+  }
+
+  private String join(String[] strings, String separator) {
+    StringBuilder sb = new StringBuilder();
+    for (String string : strings) {
+      if (sb.length() > 0) {
+        sb.append(separator);
+      }
+      sb.append(string);
+    }
+    return sb.toString();
+  }
+
   private SqlSource buildSqlSourceFromStrings(String[] strings, Class<?> parameterTypeClass, LanguageDriver languageDriver) {
     final StringBuilder sql = new StringBuilder();
     for (String fragment : strings) {
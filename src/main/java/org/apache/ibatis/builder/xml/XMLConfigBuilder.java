@@ -40,6 +40,7 @@ import org.apache.ibatis.reflection.wrapper.ObjectWrapperFactory;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.CacheInvalidationScope;
 import org.apache.ibatis.session.LocalCacheScope;
 import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.type.JdbcType;
@@ -215,6 +216,8 @@ public class XMLConfigBuilder extends BaseBuilder {
       configuration.setProxyFactory((ProxyFactory) createInstance(props.getProperty("proxyFactory")));
       configuration.setLazyLoadingEnabled(booleanValueOf(props.getProperty("lazyLoadingEnabled"), false));
       configuration.setAggressiveLazyLoading(booleanValueOf(props.getProperty("aggressiveLazyLoading"), true));
+      configuration.setNestedSelectBatchSize(integerValueOf(props.getProperty("nestedSelectBatchSize"), 0));
+      configuration.setLazyLoadBatchSize(integerValueOf(props.getProperty("lazyLoadBatchSize"), 0));
       configuration.setMultipleResultSetsEnabled(booleanValueOf(props.getProperty("multipleResultSetsEnabled"), true));
       configuration.setUseColumnLabel(booleanValueOf(props.getProperty("useColumnLabel"), true));
       configuration.setUseGeneratedKeys(booleanValueOf(props.getProperty("useGeneratedKeys"), false));
@@ -224,6 +227,14 @@ public class XMLConfigBuilder extends BaseBuilder {
       configuration.setMapUnderscoreToCamelCase(booleanValueOf(props.getProperty("mapUnderscoreToCamelCase"), false));
       configuration.setSafeRowBoundsEnabled(booleanValueOf(props.getProperty("safeRowBoundsEnabled"), false));
       configuration.setLocalCacheScope(LocalCacheScope.valueOf(props.getProperty("localCacheScope", "SESSION")));
+      configuration.setLocalCacheSize(integerValueOf(props.getProperty("localCacheSize"), 0));
+      configuration.setLocalCacheMaxBytes(longValueOf(props.getProperty("localCacheMaxBytes"), 0L));
+      configuration.setLocalCacheSoftReferences(booleanValueOf(props.getProperty("localCacheSoftReferences"), false));
+      configuration.setCacheInvalidationScope(CacheInvalidationScope.valueOf(props.getProperty("cacheInvalidationScope", "NAMESPACE")));
+      configuration.setCacheSnapshotDirectory(props.getProperty("cacheSnapshotDirectory"));
+      configuration.setCacheSnapshotVersion(props.getProperty("cacheSnapshotVersion"));
+      configuration.setCacheSnapshotInterval(longValueOf(props.getProperty("cacheSnapshotInterval"), 0L));
+      configuration.setCacheStatsJmxEnabled(booleanValueOf(props.getProperty("cacheStatsJmxEnabled"), false));
       configuration.setJdbcTypeForNull(JdbcType.valueOf(props.getProperty("jdbcTypeForNull", "OTHER")));
       configuration.setLazyLoadTriggerMethods(stringSetValueOf(props.getProperty("lazyLoadTriggerMethods"), "equals,clone,hashCode,toString"));
       configuration.setSafeResultHandlerEnabled(booleanValueOf(props.getProperty("safeResultHandlerEnabled"), true));
@@ -240,16 +251,22 @@ public class XMLConfigBuilder extends BaseBuilder {
       if (environment == null) {
         environment = context.getStringAttribute("default");
       }
+      String replica = context.getStringAttribute("replica"); // 只读副本环境的id
       for (XNode child : context.getChildren()) {
         String id = child.getStringAttribute("id");
-        if (isSpecifiedEnvironment(id)) {
+        boolean isReplica = replica != null && replica.equals(id);
+        if (isSpecifiedEnvironment(id) || isReplica) {
           TransactionFactory txFactory = transactionManagerElement(child.evalNode("transactionManager"));
           DataSourceFactory dsFactory = dataSourceElement(child.evalNode("dataSource"));
           DataSource dataSource = dsFactory.getDataSource();
           Environment.Builder environmentBuilder = new Environment.Builder(id)
               .transactionFactory(txFactory)
               .dataSource(dataSource);
-          configuration.setEnvironment(environmentBuilder.build());
+          if (isSpecifiedEnvironment(id)) {
+            configuration.setEnvironment(environmentBuilder.build());
+          } else {
+            configuration.setReplicaEnvironment(environmentBuilder.build());
+          }
         }
       }
     }
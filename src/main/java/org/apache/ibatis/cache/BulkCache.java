@@ -0,0 +1,36 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.Map;
+
+/**
+ * Optional interface of caches that can add many entries in one call, taking their
+ * locks and doing their per call work once. Decorators implementing it pass the
+ * entries on with {@link CacheUtils#putObjects(Cache, Map)}, so a chain stays bulk
+ * down to the first cache that does not implement it.
+ */
+public interface BulkCache extends Cache { // 可批量加入缓存项的Cache
+
+  /**
+   * Same as calling {@link #putObject(Object, Object)} for each entry. Implementations
+   * must not modify or keep a reference to the map.
+   *
+   * @param entries Keys and values to add, values may be null
+   */
+  void putObjects(Map<Object, Object> entries);
+
+}
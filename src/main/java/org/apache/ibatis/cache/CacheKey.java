@@ -15,34 +15,41 @@
  */
 package org.apache.ibatis.cache;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.lang.reflect.Array;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
+ * Besides the 32-bit hash code a key carries an independent, order sensitive 64-bit
+ * checksum, so two keys are only compared element by element when 96 bits of hash
+ * and the element count already match. Elements are kept in a plain array.
+ *
  * @author Clinton Begin
  */
 public class CacheKey implements Cloneable, Serializable { // 缓存键值对的键，构建CacheKey参考BaseExecutor.createCacheKey方法
 
-  private static final long serialVersionUID = 1146682552656046210L;
+  private static final long serialVersionUID = 1146682552656046211L; // 序列化形式改为Object[]加checksum
 
   public static final CacheKey NULL_CACHE_KEY = new NullCacheKey(); // 表示一个没用的key单例 hama
 
   private static final int DEFAULT_MULTIPLYER = 37;
   private static final int DEFAULT_HASHCODE = 17;
+  private static final int DEFAULT_CAPACITY = 8;
+  private static final long CHECKSUM_MULTIPLIER = 0x9E3779B97F4A7C15L;
 
   private int multiplier; // 默认就是DEFAULT_MULTIPLYER=37，也不变了
   private int hashcode; // hashcode，初始是17，计算看doUpdate方法
-  private long checksum; // 校验和，计算看doUpdate方法
-  private int count; // 「查询特征」的数量，应该与updateList.size()一致吧？ hama
-  private List<Object> updateList; // 存「查询特征」，如statementId, rowBounds, 传递给JDBC的SQL, 传递给JDBC的参数值
+  private long checksum; // 与hashcode独立的64位校验和，与特征顺序有关，计算看doUpdate方法
+  private int count; // 「查询特征」的数量
+  private Object[] updateList; // 存「查询特征」，如statementId, rowBounds, 传递给JDBC的SQL, 传递给JDBC的参数值；只有前count个有效
 
   public CacheKey() { // 构造，初始化
     this.hashcode = DEFAULT_HASHCODE;
     this.multiplier = DEFAULT_MULTIPLYER;
     this.count = 0;
-    this.updateList = new ArrayList<Object>();
+    this.updateList = new Object[DEFAULT_CAPACITY];
   }
 
   public CacheKey(Object[] objects) { // 用一个Object数组构造
@@ -51,7 +58,7 @@ public class CacheKey implements Cloneable, Serializable { // 缓存键值对的
   }
 
   public int getUpdateCount() {
-    return updateList.size();
+    return count;
   }
 
   public void update(Object object) { // 加入一个「查询特征」，存到updateList里
@@ -67,15 +74,19 @@ public class CacheKey implements Cloneable, Serializable { // 缓存键值对的
   }
 
   private void doUpdate(Object object) { // 加入一个「查询特征」的核心操作
-    int baseHashCode = object == null ? 1 : object.hashCode(); // 空特征的baseHashCode是1
+    if (count == updateList.length) {
+      updateList = Arrays.copyOf(updateList, count * 2);
+    }
+    updateList[count++] = object; // 加入updateList，计数器加一
+    hash(object, count);
+  }
 
-    count++; // 计数器，有几个特征
-    checksum += baseHashCode; // 累加baseHashCode计算校验和
-    baseHashCode *= count; // baseHashCode扩大count倍
+  private void hash(Object object, int position) { // 把第position个「查询特征」计入hashcode和checksum
+    int baseHashCode = object == null ? 1 : object.hashCode(); // 空特征的baseHashCode是1
+    checksum = Long.rotateLeft(checksum, 29) ^ (baseHashCode * CHECKSUM_MULTIPLIER); // 与顺序有关的64位校验和
+    baseHashCode *= position; // baseHashCode扩大position倍
 
     hashcode = multiplier * hashcode + baseHashCode; // 更新hashcode=默认乘子(37)*默认hashcode(17)+baseHashCode
-
-    updateList.add(object); // 加入updateList
   }
 
   public void updateAll(Object[] objects) {
@@ -84,6 +95,19 @@ public class CacheKey implements Cloneable, Serializable { // 缓存键值对的
     }
   }
 
+  /*
+   * The hash codes of elements such as enums differ from one JVM to the next, so a key
+   * read back from a snapshot rehashes its elements instead of trusting the saved ones.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    hashcode = DEFAULT_HASHCODE;
+    checksum = 0;
+    for (int i = 0; i < count; i++) {
+      hash(updateList[i], i + 1);
+    }
+  }
+
   @Override
   public boolean equals(Object object) { // 缓存判断命中时要用，hashcode checksum count均要相等 且 updateList每个元素equals
     if (this == object) {
@@ -105,17 +129,14 @@ public class CacheKey implements Cloneable, Serializable { // 缓存键值对的
       return false;
     }
 
-    for (int i = 0; i < updateList.size(); i++) { // updateList每个元素equals
-      Object thisObject = updateList.get(i);
-      Object thatObject = cacheKey.updateList.get(i);
-      if (thisObject == null) {
-        if (thatObject != null) {
-          return false;
-        }
-      } else {
-        if (!thisObject.equals(thatObject)) {
-          return false;
-        }
+    for (int i = 0; i < count; i++) { // 哈希都相同时才逐个元素equals
+      Object thisObject = updateList[i];
+      Object thatObject = cacheKey.updateList[i];
+      if (thisObject == thatObject) { // 如同一条静态sql字符串
+        continue;
+      }
+      if (thisObject == null || !thisObject.equals(thatObject)) {
+        return false;
       }
     }
     return true;
@@ -129,8 +150,8 @@ public class CacheKey implements Cloneable, Serializable { // 缓存键值对的
   @Override
   public String toString() {
     StringBuilder returnValue = new StringBuilder().append(hashcode).append(':').append(checksum);
-    for (int i = 0; i < updateList.size(); i++) {
-      returnValue.append(':').append(updateList.get(i));
+    for (int i = 0; i < count; i++) {
+      returnValue.append(':').append(updateList[i]);
     }
 
     return returnValue.toString();
@@ -139,7 +160,7 @@ public class CacheKey implements Cloneable, Serializable { // 缓存键值对的
   @Override
   public CacheKey clone() throws CloneNotSupportedException {
     CacheKey clonedCacheKey = (CacheKey) super.clone();
-    clonedCacheKey.updateList = new ArrayList<Object>(updateList); // 复制的CacheKey的updateList用新的引用
+    clonedCacheKey.updateList = updateList.clone(); // 复制的CacheKey的updateList用新的引用
     return clonedCacheKey;
   }
 
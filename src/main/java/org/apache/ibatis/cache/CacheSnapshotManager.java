@@ -0,0 +1,192 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.decorators.SnapshotCache;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Writes snapshots of the second-level caches of a Configuration to a directory,
+ * one file per namespace, so that they can be restored after a restart.
+ * <p>
+ * Once started (when the SqlSessionFactory is built) it writes snapshots every
+ * <code>interval</code> milliseconds, if positive, and when the JVM shuts down.
+ * Table versions used by table scoped invalidation are saved alongside, so results
+ * invalidated before the restart stay unreachable. Snapshots written with another
+ * <code>version</code> are ignored; change it whenever mapped result types or the
+ * schema change in an incompatible way.
+ */
+public class CacheSnapshotManager { // 定期及关闭时保存二级缓存快照
+
+  private static final Log log = LogFactory.getLog(CacheSnapshotManager.class);
+  private static final String TABLE_VERSIONS = "table-versions.properties";
+  private static final String VERSION_PROPERTY = "@version"; // 不会与表名冲突
+
+  private final File directory;
+  private final String version;
+  private final long interval;
+  private final TableVersionRegistry tableVersionRegistry;
+  private final List<SnapshotCache> caches = new CopyOnWriteArrayList<SnapshotCache>();
+  private ScheduledExecutorService scheduler;
+  private Thread shutdownHook;
+
+  public CacheSnapshotManager(File directory, String version, long interval, TableVersionRegistry tableVersionRegistry) {
+    this.directory = directory;
+    this.version = version == null ? "" : version;
+    this.interval = interval;
+    this.tableVersionRegistry = tableVersionRegistry;
+  }
+
+  /**
+   * Wraps a base cache so that its entries are included in snapshots.
+   */
+  public SnapshotCache decorate(Cache cache) {
+    String name = cache.getId().replaceAll("[^A-Za-z0-9._-]", "_") + ".snapshot";
+    SnapshotCache snapshotCache = new SnapshotCache(cache, new File(directory, name), version);
+    caches.add(snapshotCache);
+    return snapshotCache;
+  }
+
+  public synchronized void start() {
+    if (shutdownHook != null) {
+      return;
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new CacheException("Could not create cache snapshot directory " + directory);
+    }
+    loadTableVersions();
+    if (interval > 0) {
+      scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "mybatis-cache-snapshot");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      scheduler.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          snapshot();
+        }
+      }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    shutdownHook = new Thread("mybatis-cache-snapshot-shutdown") {
+      @Override
+      public void run() {
+        snapshot();
+      }
+    };
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+  }
+
+  /**
+   * Stops periodic snapshots and writes a final one.
+   */
+  public synchronized void stop() {
+    if (scheduler != null) {
+      scheduler.shutdown();
+      scheduler = null;
+    }
+    if (shutdownHook != null) {
+      try {
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+      } catch (IllegalStateException e) {
+        // already shutting down, the hook writes the snapshot
+        return;
+      }
+      shutdownHook = null;
+    }
+    snapshot();
+  }
+
+  /**
+   * Writes the snapshot of every cache now. Failures are logged, not thrown.
+   */
+  public synchronized void snapshot() {
+    for (SnapshotCache cache : caches) {
+      try {
+        cache.snapshot();
+      } catch (Exception e) {
+        log.warn("Could not write cache snapshot " + cache.getFile() + ".  Cause: " + e);
+      }
+    }
+    saveTableVersions();
+  }
+
+  private void saveTableVersions() {
+    Properties properties = new Properties();
+    for (Map.Entry<String, Long> entry : tableVersionRegistry.getVersions().entrySet()) {
+      properties.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+    }
+    properties.setProperty(VERSION_PROPERTY, version);
+    try {
+      OutputStream out = new FileOutputStream(new File(directory, TABLE_VERSIONS));
+      try {
+        properties.store(out, null);
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      log.warn("Could not save table versions in " + directory + ".  Cause: " + e);
+    }
+  }
+
+  private void loadTableVersions() {
+    File file = new File(directory, TABLE_VERSIONS);
+    if (!file.isFile()) {
+      return;
+    }
+    Properties properties = new Properties();
+    try {
+      InputStream in = new FileInputStream(file);
+      try {
+        properties.load(in);
+      } finally {
+        in.close();
+      }
+      if (!version.equals(properties.getProperty(VERSION_PROPERTY))) {
+        return;
+      }
+      properties.remove(VERSION_PROPERTY);
+      Map<String, Long> versions = new HashMap<String, Long>();
+      for (String table : properties.stringPropertyNames()) {
+        versions.put(table, Long.valueOf(properties.getProperty(table)));
+      }
+      tableVersionRegistry.restore(versions);
+    } catch (Exception e) {
+      log.warn("Could not load table versions from " + file + ".  Cause: " + e);
+    }
+  }
+
+}
@@ -0,0 +1,190 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.cache.decorators.ObjectSizeWeigher;
+import org.apache.ibatis.util.StripedCounter;
+
+/**
+ * Statistics of one second-level cache, see
+ * {@link org.apache.ibatis.session.Configuration#getCacheStats(String)}.
+ * <p>
+ * Hits, misses and puts are counted by the LoggingCache decorator, evictions are the
+ * removals reaching the base cache that were not requested from above it, and loads
+ * are the database queries run after a miss. The estimated size in bytes extrapolates
+ * the weight of a sample of the values put.
+ */
+public class CacheStats implements CacheStatsMBean { // 一个二级缓存的统计信息
+
+  private static final int SAMPLE_INTERVAL = 32; // 每这么多次put估算一次值的大小
+
+  private final String id;
+  private final StripedCounter hits = new StripedCounter();
+  private final StripedCounter misses = new StripedCounter();
+  private final StripedCounter puts = new StripedCounter();
+  private final StripedCounter removals = new StripedCounter(); // 上层请求的删除
+  private final StripedCounter baseRemovals = new StripedCounter(); // 到达基础缓存的删除,含淘汰
+  private final StripedCounter loads = new StripedCounter();
+  private final StripedCounter loadNanos = new StripedCounter();
+  private final AtomicLong sampledBytes = new AtomicLong();
+  private final AtomicLong sampledValues = new AtomicLong();
+  private final ObjectSizeWeigher weigher = new ObjectSizeWeigher();
+  private int sampleTick; // 不需要精确
+  private volatile Cache cache;
+
+  public CacheStats(String id) {
+    this.id = id;
+  }
+
+  /**
+   * @param cache The complete (decorated) cache, used for its size
+   */
+  public void setCache(Cache cache) {
+    this.cache = cache;
+  }
+
+  public void recordHit() {
+    hits.increment();
+  }
+
+  public void recordMiss() {
+    misses.increment();
+  }
+
+  public void recordPut(Object key, Object value) {
+    puts.increment();
+    if (value != null && ++sampleTick % SAMPLE_INTERVAL == 0) {
+      sampledBytes.addAndGet(weigher.weigh(key, value));
+      sampledValues.incrementAndGet();
+    }
+  }
+
+  public void recordRemoval() {
+    removals.increment();
+  }
+
+  public void recordBaseRemoval() {
+    baseRemovals.increment();
+  }
+
+  public void recordLoad(long nanos) {
+    loads.increment();
+    loadNanos.add(nanos);
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public long getHits() {
+    return hits.sum();
+  }
+
+  @Override
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  @Override
+  public double getHitRatio() {
+    long hitCount = hits.sum();
+    long requests = hitCount + misses.sum();
+    return requests == 0 ? 0 : (double) hitCount / (double) requests;
+  }
+
+  @Override
+  public long getPuts() {
+    return puts.sum();
+  }
+
+  @Override
+  public long getEvictions() {
+    return Math.max(0, baseRemovals.sum() - removals.sum());
+  }
+
+  @Override
+  public long getLoads() {
+    return loads.sum();
+  }
+
+  @Override
+  public long getTotalLoadTimeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(loadNanos.sum());
+  }
+
+  @Override
+  public double getAverageLoadTimeMillis() {
+    long loadCount = loads.sum();
+    return loadCount == 0 ? 0 : loadNanos.sum() / 1000000.0 / loadCount;
+  }
+
+  @Override
+  public int getSize() {
+    Cache current = cache;
+    return current == null ? 0 : current.getSize();
+  }
+
+  @Override
+  public long getEstimatedBytes() {
+    long values = sampledValues.get();
+    return values == 0 ? 0 : sampledBytes.get() / values * getSize();
+  }
+
+  @Override
+  public void reset() {
+    hits.reset();
+    misses.reset();
+    puts.reset();
+    removals.reset();
+    baseRemovals.reset();
+    loads.reset();
+    loadNanos.reset();
+  }
+
+  /**
+   * Registers this object with the platform MBean server as
+   * <code>org.apache.ibatis:type=CacheStats,name="&lt;cache id&gt;"</code>, replacing a
+   * previous registration of the same cache.
+   */
+  public void registerMBean() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName("org.apache.ibatis:type=CacheStats,name=" + ObjectName.quote(id));
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(this, name);
+    } catch (Exception e) {
+      throw new CacheException("Error registering statistics MBean for cache " + id + ".  Cause: " + e, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats[" + id + "] hits=" + getHits() + ", misses=" + getMisses() + ", puts=" + getPuts()
+        + ", evictions=" + getEvictions() + ", loads=" + getLoads() + ", size=" + getSize();
+  }
+
+}
@@ -0,0 +1,45 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.Map;
+
+/**
+ * Static helpers for {@link Cache} implementations.
+ */
+public final class CacheUtils {
+
+  private CacheUtils() {
+    // Prevent Instantiation
+  }
+
+  /**
+   * Adds all entries to the cache, in one call when it is a {@link BulkCache}.
+   */
+  public static void putObjects(Cache cache, Map<Object, Object> entries) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    if (cache instanceof BulkCache) {
+      ((BulkCache) cache).putObjects(entries);
+    } else {
+      for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+        cache.putObject(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+}
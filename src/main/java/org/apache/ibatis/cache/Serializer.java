@@ -0,0 +1,38 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Turns cached values into bytes and back. Used by read-write caches
+ * ({@link org.apache.ibatis.cache.decorators.SerializedCache}) and caches that store
+ * values outside the heap. Implementations must be thread safe and have a public
+ * no-arg constructor.
+ */
+public interface Serializer { // 缓存项的序列化/反序列化SPI
+
+  /**
+   * @param value A Serializable value, may be null
+   * @return The serialized form, never null
+   */
+  byte[] serialize(Object value);
+
+  /**
+   * @param bytes Bytes produced by {@link #serialize(Object)} of the same serializer
+   * @return A fresh copy of the value
+   */
+  Object deserialize(byte[] bytes);
+
+}
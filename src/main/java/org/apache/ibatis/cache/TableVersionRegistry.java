@@ -0,0 +1,85 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version counter per table, shared by all namespaces of a Configuration.
+ * <p>
+ * With table scoped invalidation the current versions of the tables a select
+ * depends on are part of its CacheKey. Committing a write increments the versions
+ * of the tables it touched, so every cached result that read them, in any
+ * namespace, becomes unreachable and is eventually evicted.
+ */
+public class TableVersionRegistry { // 每张表一个版本号,写提交后版本号加一
+
+  private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<String, AtomicLong>();
+
+  public long getVersion(String table) {
+    AtomicLong version = versions.get(table);
+    return version == null ? 0 : version.get();
+  }
+
+  public void increment(Collection<String> tables) {
+    for (String table : tables) {
+      AtomicLong version = versions.get(table);
+      if (version == null) {
+        AtomicLong created = new AtomicLong();
+        version = versions.putIfAbsent(table, created);
+        if (version == null) {
+          version = created;
+        }
+      }
+      version.incrementAndGet();
+    }
+  }
+
+  public Map<String, Long> getVersions() {
+    Map<String, Long> copy = new HashMap<String, Long>();
+    for (Map.Entry<String, AtomicLong> entry : versions.entrySet()) {
+      copy.put(entry.getKey(), entry.getValue().get());
+    }
+    return copy;
+  }
+
+  /**
+   * Raises versions to the given ones, e.g. those saved before a restart, so that
+   * cache keys built with older versions cannot match again.
+   */
+  public void restore(Map<String, Long> saved) {
+    for (Map.Entry<String, Long> entry : saved.entrySet()) {
+      AtomicLong version = versions.get(entry.getKey());
+      if (version == null) {
+        AtomicLong created = new AtomicLong();
+        version = versions.putIfAbsent(entry.getKey(), created);
+        if (version == null) {
+          version = created;
+        }
+      }
+      long current = version.get();
+      while (current < entry.getValue() && !version.compareAndSet(current, entry.getValue())) {
+        current = version.get();
+      }
+    }
+  }
+
+}
@@ -15,17 +15,25 @@
  */
 package org.apache.ibatis.cache;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.ibatis.cache.decorators.TransactionalCache;
 
 /**
+ * One per session. Its collections are created on first use, so sessions whose
+ * statements never touch a second level cache allocate nothing here.
+ *
  * @author Clinton Begin
  */
 public class TransactionalCacheManager {
 
-  private Map<Cache, TransactionalCache> transactionalCaches = new HashMap<Cache, TransactionalCache>();
+  private Map<Cache, TransactionalCache> transactionalCaches; // 第一次用到时才创建
+  private Set<String> tablesToInvalidateOnCommit; // 本事务写过的表,提交时递增版本号
+  private TableVersionRegistry tableVersions;
 
   public void clear(Cache cache) {
     getTransactionalCache(cache).clear();
@@ -39,19 +47,53 @@ public class TransactionalCacheManager {
     getTransactionalCache(cache).putObject(key, value);
   }
 
+  public void invalidateOnCommit(TableVersionRegistry tableVersions, Collection<String> tables) {
+    this.tableVersions = tableVersions;
+    if (tablesToInvalidateOnCommit == null) {
+      tablesToInvalidateOnCommit = new HashSet<String>();
+    }
+    tablesToInvalidateOnCommit.addAll(tables);
+  }
+
+  public boolean isInvalidatedOnCommit(Collection<String> tables) {
+    if (tablesToInvalidateOnCommit == null) {
+      return false;
+    }
+    for (String table : tables) {
+      if (tablesToInvalidateOnCommit.contains(table)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public void commit() {
-    for (TransactionalCache txCache : transactionalCaches.values()) {
-      txCache.commit();
+    if (tablesToInvalidateOnCommit != null && !tablesToInvalidateOnCommit.isEmpty()) {
+      tableVersions.increment(tablesToInvalidateOnCommit);
+      tablesToInvalidateOnCommit.clear();
+    }
+    if (transactionalCaches != null) {
+      for (TransactionalCache txCache : transactionalCaches.values()) {
+        txCache.commit();
+      }
     }
   }
 
   public void rollback() {
-    for (TransactionalCache txCache : transactionalCaches.values()) {
-      txCache.rollback();
+    if (tablesToInvalidateOnCommit != null) {
+      tablesToInvalidateOnCommit.clear();
+    }
+    if (transactionalCaches != null) {
+      for (TransactionalCache txCache : transactionalCaches.values()) {
+        txCache.rollback();
+      }
     }
   }
 
   private TransactionalCache getTransactionalCache(Cache cache) {
+    if (transactionalCaches == null) {
+      transactionalCaches = new HashMap<Cache, TransactionalCache>();
+    }
     TransactionalCache txCache = transactionalCaches.get(cache);
     if (txCache == null) {
       txCache = new TransactionalCache(cache);
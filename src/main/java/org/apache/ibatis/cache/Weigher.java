@@ -0,0 +1,33 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Estimates how many bytes of heap a cache entry retains.
+ * Used by weight bounded caches such as
+ * {@link org.apache.ibatis.cache.decorators.WeightedLruCache}.
+ * Implementations must have a public no-arg constructor.
+ */
+public interface Weigher { // 估算缓存项占用的内存字节数
+
+  /**
+   * @param key The cache key
+   * @param value The cached value, a byte[] when the cache is read-write (serialized)
+   * @return The estimated retained size in bytes, never negative
+   */
+  long weigh(Object key, Object value);
+
+}
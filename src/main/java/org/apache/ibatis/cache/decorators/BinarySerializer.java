@@ -0,0 +1,653 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.io.ByteArrayInputStream;
+import java.io.Externalizable;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.Serializer;
+import org.apache.ibatis.cache.decorators.SerializedCache.CustomObjectInputStream;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.invoker.Invoker;
+
+/**
+ * Compact binary {@link Serializer} for the shapes query results usually have:
+ * JavaBeans, enums, ArrayList, LinkedList, HashMap, LinkedHashMap, HashSet, LinkedHashSet,
+ * boxed primitives, String, java.util/java.sql dates, BigDecimal, BigInteger and byte[].
+ * <p>
+ * Beans are copied property by property using {@link Reflector} metadata, so a bean
+ * qualifies only if it is Serializable, has a default constructor, declares no
+ * serialization hooks and every instance field is a readable and writable property.
+ * Shared references and cycles are preserved. A value graph that contains any other
+ * type is written with java.io serialization instead, so every value
+ * {@link JavaSerializer} accepts is still supported.
+ */
+public class BinarySerializer implements Serializer { // 针对常见结果类型的快速二进制序列化
+
+  private static final byte FORMAT_BINARY = 1;
+  private static final byte FORMAT_JAVA = 2; // 含不支持的类型,整体使用java序列化
+
+  private static final byte NULL = 0;
+  private static final byte REFERENCE = 1; // 已写过的对象,保持共享引用和循环引用
+  private static final byte STRING_LATIN1 = 2;
+  private static final byte STRING_UTF16 = 3;
+  private static final byte INTEGER = 4;
+  private static final byte LONG = 5;
+  private static final byte SHORT = 6;
+  private static final byte BYTE = 7;
+  private static final byte TRUE = 8;
+  private static final byte FALSE = 9;
+  private static final byte DOUBLE = 10;
+  private static final byte FLOAT = 11;
+  private static final byte CHARACTER = 12;
+  private static final byte BIG_DECIMAL = 13;
+  private static final byte BIG_INTEGER = 14;
+  private static final byte DATE = 15;
+  private static final byte SQL_DATE = 16;
+  private static final byte SQL_TIME = 17;
+  private static final byte SQL_TIMESTAMP = 18;
+  private static final byte BYTES = 19;
+  private static final byte ARRAY_LIST = 20;
+  private static final byte LINKED_LIST = 21;
+  private static final byte HASH_MAP = 22;
+  private static final byte LINKED_HASH_MAP = 23;
+  private static final byte HASH_SET = 24;
+  private static final byte LINKED_HASH_SET = 25;
+  private static final byte BEAN_DEFINITION = 26; // 某个bean类第一次出现,写类名和属性名
+  private static final byte BEAN = 27;
+  private static final byte ENUM_DEFINITION = 28; // 某个枚举类第一次出现,写类名
+  private static final byte ENUM = 29;
+
+  private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+  private static final Object[] NO_ARGUMENTS = new Object[0];
+  private static final String[] SERIALIZATION_HOOKS = { "writeObject", "readObject", "readObjectNoData", "writeReplace", "readResolve" };
+  private static final BeanType UNSUPPORTED = new BeanType(null, new String[0], new Invoker[0]);
+
+  private final ReflectorFactory reflectorFactory = new DefaultReflectorFactory();
+  private final ConcurrentMap<Class<?>, BeanType> beanTypes = new ConcurrentHashMap<Class<?>, BeanType>();
+  private final Serializer fallback = new JavaSerializer();
+
+  @Override
+  public byte[] serialize(Object value) {
+    try {
+      Output output = new Output();
+      output.writeByte(FORMAT_BINARY);
+      output.writeValue(value);
+      return output.toByteArray();
+    } catch (UnsupportedValueException e) {
+      byte[] bytes = fallback.serialize(value);
+      byte[] result = new byte[bytes.length + 1];
+      result[0] = FORMAT_JAVA;
+      System.arraycopy(bytes, 0, result, 1, bytes.length);
+      return result;
+    }
+  }
+
+  @Override
+  public Object deserialize(byte[] bytes) {
+    if (bytes.length > 0 && bytes[0] == FORMAT_BINARY) {
+      return new Input(bytes).readValue();
+    }
+    if (bytes.length > 0 && bytes[0] == FORMAT_JAVA) {
+      try {
+        ObjectInputStream ois = new CustomObjectInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+        Object result = ois.readObject();
+        ois.close();
+        return result;
+      } catch (Exception e) {
+        throw new CacheException("Error deserializing object.  Cause: " + e, e);
+      }
+    }
+    throw new CacheException("Error deserializing object.  Cause: unknown binary format");
+  }
+
+  private BeanType beanType(Class<?> type) {
+    BeanType beanType = beanTypes.get(type);
+    if (beanType == null) {
+      beanType = analyze(type);
+      beanTypes.putIfAbsent(type, beanType);
+    }
+    return beanType;
+  }
+
+  private BeanType analyze(Class<?> type) { // 判断一个类能否按属性复制
+    if (!Serializable.class.isAssignableFrom(type) || Externalizable.class.isAssignableFrom(type)
+        || type.isArray() || Enum.class.isAssignableFrom(type)
+        || type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+      return UNSUPPORTED;
+    }
+    Reflector reflector = reflectorFactory.findForClass(type);
+    if (!reflector.hasDefaultConstructor()) {
+      return UNSUPPORTED;
+    }
+    List<String> names = new ArrayList<String>();
+    Set<String> seen = new HashSet<String>();
+    for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+      for (Method method : clazz.getDeclaredMethods()) {
+        if (Arrays.asList(SERIALIZATION_HOOKS).contains(method.getName())) { // 有自定义序列化逻辑,如延迟加载代理
+          return UNSUPPORTED;
+        }
+      }
+      for (Field field : clazz.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+          continue;
+        }
+        String name = field.getName();
+        if (field.isSynthetic() || !seen.add(name) || !reflector.hasGetter(name) || !reflector.hasSetter(name)) {
+          return UNSUPPORTED;
+        }
+        names.add(name);
+      }
+    }
+    Invoker[] getters = new Invoker[names.size()];
+    for (int i = 0; i < getters.length; i++) {
+      getters[i] = reflector.getGetInvoker(names.get(i));
+    }
+    return new BeanType(reflector, names.toArray(new String[names.size()]), getters);
+  }
+
+  private static class BeanType {
+    final Reflector reflector;
+    final String[] names;
+    final Invoker[] getters;
+
+    BeanType(Reflector reflector, String[] names, Invoker[] getters) {
+      this.reflector = reflector;
+      this.names = names;
+      this.getters = getters;
+    }
+  }
+
+  private static class BeanReader { // 反序列化时某个bean类的构造器和setter,按流中属性名的顺序
+    final Constructor<?> constructor;
+    final Invoker[] setters;
+
+    BeanReader(Constructor<?> constructor, Invoker[] setters) {
+      this.constructor = constructor;
+      this.setters = setters;
+    }
+  }
+
+  private static class UnsupportedValueException extends RuntimeException { // 内部用于切换到java序列化
+    private static final long serialVersionUID = 1L;
+    static final UnsupportedValueException INSTANCE = new UnsupportedValueException();
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  private class Output {
+    private byte[] buffer = new byte[256];
+    private int size;
+    private final Map<Object, Integer> references = new IdentityHashMap<Object, Integer>();
+    private final Map<Class<?>, Integer> classes = new HashMap<Class<?>, Integer>();
+
+    void writeValue(Object value) {
+      if (value == null) {
+        writeByte(NULL);
+        return;
+      }
+      Class<?> type = value.getClass();
+      if (type == String.class) {
+        writeString((String) value);
+      } else if (type == Integer.class) {
+        writeByte(INTEGER);
+        writeSignedLong((Integer) value);
+      } else if (type == Long.class) {
+        writeByte(LONG);
+        writeSignedLong((Long) value);
+      } else if (type == Short.class) {
+        writeByte(SHORT);
+        writeSignedLong((Short) value);
+      } else if (type == Byte.class) {
+        writeByte(BYTE);
+        writeByte((Byte) value);
+      } else if (type == Boolean.class) {
+        writeByte((Boolean) value ? TRUE : FALSE);
+      } else if (type == Double.class) {
+        writeByte(DOUBLE);
+        writeFixedLong(Double.doubleToRawLongBits((Double) value));
+      } else if (type == Float.class) {
+        writeByte(FLOAT);
+        writeFixedLong(Float.floatToRawIntBits((Float) value));
+      } else if (type == Character.class) {
+        writeByte(CHARACTER);
+        writeUnsignedInt((Character) value);
+      } else if (type == BigDecimal.class) {
+        BigDecimal decimal = (BigDecimal) value;
+        writeByte(BIG_DECIMAL);
+        writeSignedLong(decimal.scale());
+        writeBytes(decimal.unscaledValue().toByteArray());
+      } else if (type == BigInteger.class) {
+        writeByte(BIG_INTEGER);
+        writeBytes(((BigInteger) value).toByteArray());
+      } else if (type == Date.class) {
+        writeByte(DATE);
+        writeSignedLong(((Date) value).getTime());
+      } else if (type == java.sql.Date.class) {
+        writeByte(SQL_DATE);
+        writeSignedLong(((Date) value).getTime());
+      } else if (type == java.sql.Time.class) {
+        writeByte(SQL_TIME);
+        writeSignedLong(((Date) value).getTime());
+      } else if (type == java.sql.Timestamp.class) {
+        java.sql.Timestamp timestamp = (java.sql.Timestamp) value;
+        writeByte(SQL_TIMESTAMP);
+        writeSignedLong(timestamp.getTime());
+        writeUnsignedInt(timestamp.getNanos());
+      } else if (type == byte[].class) {
+        writeByte(BYTES);
+        writeBytes((byte[]) value);
+      } else if (value instanceof Enum) {
+        writeEnum((Enum<?>) value);
+      } else {
+        writeObject(value, type);
+      }
+    }
+
+    private void writeObject(Object value, Class<?> type) { // 可变对象,记录引用
+      Integer reference = references.get(value);
+      if (reference != null) {
+        writeByte(REFERENCE);
+        writeUnsignedInt(reference);
+        return;
+      }
+      if (type == ArrayList.class) {
+        writeCollection(ARRAY_LIST, value);
+      } else if (type == LinkedList.class) {
+        writeCollection(LINKED_LIST, value);
+      } else if (type == HashSet.class) {
+        writeCollection(HASH_SET, value);
+      } else if (type == LinkedHashSet.class) {
+        writeCollection(LINKED_HASH_SET, value);
+      } else if (type == HashMap.class) {
+        writeMap(HASH_MAP, value);
+      } else if (type == LinkedHashMap.class) {
+        writeMap(LINKED_HASH_MAP, value);
+      } else {
+        writeBean(value, type);
+      }
+    }
+
+    private void writeCollection(byte tag, Object value) {
+      references.put(value, references.size());
+      Collection<?> collection = (Collection<?>) value;
+      writeByte(tag);
+      writeUnsignedInt(collection.size());
+      for (Object element : collection) {
+        writeValue(element);
+      }
+    }
+
+    private void writeMap(byte tag, Object value) {
+      references.put(value, references.size());
+      Map<?, ?> map = (Map<?, ?>) value;
+      writeByte(tag);
+      writeUnsignedInt(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        writeValue(entry.getKey());
+        writeValue(entry.getValue());
+      }
+    }
+
+    private void writeBean(Object value, Class<?> type) {
+      BeanType beanType = beanType(type);
+      if (beanType == UNSUPPORTED) {
+        throw UnsupportedValueException.INSTANCE;
+      }
+      references.put(value, references.size());
+      Integer index = classes.get(type);
+      if (index == null) {
+        classes.put(type, classes.size());
+        writeByte(BEAN_DEFINITION);
+        writeString(type.getName());
+        writeUnsignedInt(beanType.names.length);
+        for (String name : beanType.names) {
+          writeString(name);
+        }
+      } else {
+        writeByte(BEAN);
+        writeUnsignedInt(index);
+      }
+      try {
+        for (Invoker getter : beanType.getters) {
+          writeValue(getter.invoke(value, NO_ARGUMENTS));
+        }
+      } catch (UnsupportedValueException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new CacheException("Error serializing object of " + type + ".  Cause: " + e, e);
+      }
+    }
+
+    private void writeEnum(Enum<?> value) {
+      Class<?> type = value.getDeclaringClass();
+      Integer index = classes.get(type);
+      if (index == null) {
+        classes.put(type, classes.size());
+        writeByte(ENUM_DEFINITION);
+        writeString(type.getName());
+      } else {
+        writeByte(ENUM);
+        writeUnsignedInt(index);
+      }
+      writeString(value.name());
+    }
+
+    void writeString(String value) {
+      int length = value.length();
+      boolean latin1 = true;
+      for (int i = 0; i < length && latin1; i++) {
+        latin1 = value.charAt(i) < 0x100;
+      }
+      writeByte(latin1 ? STRING_LATIN1 : STRING_UTF16);
+      writeUnsignedInt(length);
+      ensureCapacity(latin1 ? length : length * 2);
+      for (int i = 0; i < length; i++) {
+        char c = value.charAt(i);
+        if (!latin1) {
+          buffer[size++] = (byte) (c >>> 8);
+        }
+        buffer[size++] = (byte) c;
+      }
+    }
+
+    void writeBytes(byte[] bytes) {
+      writeUnsignedInt(bytes.length);
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, size, bytes.length);
+      size += bytes.length;
+    }
+
+    void writeByte(int value) {
+      ensureCapacity(1);
+      buffer[size++] = (byte) value;
+    }
+
+    void writeUnsignedInt(int value) { // 变长编码,每字节7位
+      ensureCapacity(5);
+      while ((value & ~0x7F) != 0) {
+        buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[size++] = (byte) value;
+    }
+
+    void writeSignedLong(long value) { // zigzag后变长编码,绝对值小的负数也很短
+      long zigzag = (value << 1) ^ (value >> 63);
+      ensureCapacity(10);
+      while ((zigzag & ~0x7FL) != 0) {
+        buffer[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+        zigzag >>>= 7;
+      }
+      buffer[size++] = (byte) zigzag;
+    }
+
+    void writeFixedLong(long value) {
+      ensureCapacity(8);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        buffer[size++] = (byte) (value >>> shift);
+      }
+    }
+
+    private void ensureCapacity(int extra) {
+      if (size + extra > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, size);
+    }
+  }
+
+  private class Input {
+    private final byte[] buffer;
+    private int position = 1; // 跳过格式字节
+    private final List<Object> references = new ArrayList<Object>();
+    private final List<Object> classes = new ArrayList<Object>(); // BeanReader或枚举类
+
+    Input(byte[] buffer) {
+      this.buffer = buffer;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    Object readValue() {
+      byte tag = buffer[position++];
+      switch (tag) {
+        case NULL:
+          return null;
+        case REFERENCE:
+          return references.get(readUnsignedInt());
+        case STRING_LATIN1:
+        case STRING_UTF16:
+          return readString(tag);
+        case INTEGER:
+          return (int) readSignedLong();
+        case LONG:
+          return readSignedLong();
+        case SHORT:
+          return (short) readSignedLong();
+        case BYTE:
+          return buffer[position++];
+        case TRUE:
+          return Boolean.TRUE;
+        case FALSE:
+          return Boolean.FALSE;
+        case DOUBLE:
+          return Double.longBitsToDouble(readFixedLong());
+        case FLOAT:
+          return Float.intBitsToFloat((int) readFixedLong());
+        case CHARACTER:
+          return (char) readUnsignedInt();
+        case BIG_DECIMAL:
+          int scale = (int) readSignedLong();
+          return new BigDecimal(new BigInteger(readBytes()), scale);
+        case BIG_INTEGER:
+          return new BigInteger(readBytes());
+        case DATE:
+          return new Date(readSignedLong());
+        case SQL_DATE:
+          return new java.sql.Date(readSignedLong());
+        case SQL_TIME:
+          return new java.sql.Time(readSignedLong());
+        case SQL_TIMESTAMP:
+          java.sql.Timestamp timestamp = new java.sql.Timestamp(readSignedLong());
+          timestamp.setNanos(readUnsignedInt());
+          return timestamp;
+        case BYTES:
+          return readBytes();
+        case ARRAY_LIST:
+          int size = readUnsignedInt();
+          return readElements(new ArrayList(size), size);
+        case LINKED_LIST:
+          return readElements(new LinkedList(), readUnsignedInt());
+        case HASH_SET:
+          size = readUnsignedInt();
+          return readElements(new HashSet(capacity(size)), size);
+        case LINKED_HASH_SET:
+          size = readUnsignedInt();
+          return readElements(new LinkedHashSet(capacity(size)), size);
+        case HASH_MAP:
+          size = readUnsignedInt();
+          return readEntries(new HashMap(capacity(size)), size);
+        case LINKED_HASH_MAP:
+          size = readUnsignedInt();
+          return readEntries(new LinkedHashMap(capacity(size)), size);
+        case BEAN_DEFINITION:
+          BeanReader reader = readBeanDefinition();
+          classes.add(reader);
+          return readBean(reader);
+        case BEAN:
+          return readBean((BeanReader) classes.get(readUnsignedInt()));
+        case ENUM_DEFINITION:
+          Class enumType = classForName(readString(buffer[position++]));
+          classes.add(enumType);
+          return Enum.valueOf(enumType, readString(buffer[position++]));
+        case ENUM:
+          return Enum.valueOf((Class) classes.get(readUnsignedInt()), readString(buffer[position++]));
+        default:
+          throw new CacheException("Error deserializing object.  Cause: unknown tag " + tag + " at " + (position - 1));
+      }
+    }
+
+    private Collection<Object> readElements(Collection<Object> collection, int size) {
+      references.add(collection);
+      for (int i = 0; i < size; i++) {
+        collection.add(readValue());
+      }
+      return collection;
+    }
+
+    private Map<Object, Object> readEntries(Map<Object, Object> map, int size) {
+      references.add(map);
+      for (int i = 0; i < size; i++) {
+        Object key = readValue();
+        map.put(key, readValue());
+      }
+      return map;
+    }
+
+    private BeanReader readBeanDefinition() {
+      Class<?> type = classForName(readString(buffer[position++]));
+      Reflector reflector = reflectorFactory.findForClass(type);
+      Invoker[] setters = new Invoker[readUnsignedInt()];
+      for (int i = 0; i < setters.length; i++) {
+        String name = readString(buffer[position++]);
+        if (!reflector.hasSetter(name)) {
+          throw new CacheException("Error deserializing object.  Cause: no setter for property '" + name + "' in " + type);
+        }
+        setters[i] = reflector.getSetInvoker(name);
+      }
+      return new BeanReader(reflector.getDefaultConstructor(), setters);
+    }
+
+    private Class<?> classForName(String className) {
+      try {
+        return Resources.classForName(className);
+      } catch (ClassNotFoundException e) {
+        throw new CacheException("Error deserializing object.  Cause: " + e, e);
+      }
+    }
+
+    private Object readBean(BeanReader reader) {
+      try {
+        Object bean = reader.constructor.newInstance();
+        references.add(bean);
+        for (Invoker setter : reader.setters) {
+          Object value = readValue();
+          if (value != null || !setter.getType().isPrimitive()) {
+            setter.invoke(bean, new Object[] { value });
+          }
+        }
+        return bean;
+      } catch (CacheException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new CacheException("Error deserializing object of " + reader.constructor.getDeclaringClass() + ".  Cause: " + e, e);
+      }
+    }
+
+    private String readString(byte tag) {
+      int length = readUnsignedInt();
+      if (tag == STRING_LATIN1) {
+        String value = new String(buffer, position, length, LATIN1);
+        position += length;
+        return value;
+      }
+      char[] chars = new char[length];
+      for (int i = 0; i < length; i++) {
+        chars[i] = (char) (((buffer[position] & 0xFF) << 8) | (buffer[position + 1] & 0xFF));
+        position += 2;
+      }
+      return new String(chars);
+    }
+
+    private byte[] readBytes() {
+      int length = readUnsignedInt();
+      byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+      position += length;
+      return bytes;
+    }
+
+    private int readUnsignedInt() {
+      int value = 0;
+      for (int shift = 0;; shift += 7) {
+        byte b = buffer[position++];
+        value |= (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+    }
+
+    private long readSignedLong() {
+      long zigzag = 0;
+      for (int shift = 0;; shift += 7) {
+        byte b = buffer[position++];
+        zigzag |= (long) (b & 0x7F) << shift;
+        if (b >= 0) {
+          break;
+        }
+      }
+      return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private long readFixedLong() {
+      long value = 0;
+      for (int i = 0; i < 8; i++) {
+        value = (value << 8) | (buffer[position++] & 0xFF);
+      }
+      return value;
+    }
+
+    private int capacity(int size) {
+      return Math.max(16, (int) (size / 0.75f) + 1);
+    }
+  }
+
+}
@@ -15,14 +15,21 @@
  */
 package org.apache.ibatis.cache.decorators;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.apache.ibatis.cache.BulkCache;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheUtils;
+import org.apache.ibatis.util.LatencyHistogram;
 
 /**
  * Simple blocking decorator 
@@ -30,19 +37,45 @@ import org.apache.ibatis.cache.CacheException;
  * Simple and inefficient version of EhCache's BlockingCache decorator.
  * It sets a lock over a cache key when the element is not found in cache.
  * This way, other threads will wait until this element is filled instead of hitting the database.
+ * <p>
+ * Keys are locked in a fixed table of lock stripes that only records the keys currently
+ * being loaded, so memory does not grow with the number of distinct keys. Waits for an
+ * in-flight load are timed in milliseconds in the same {@link LatencyHistogram} the pooled
+ * data source uses for its wait times, see {@link #getWaitHistogram()}.
+ * <p>
+ * A key is locked by the current thread, or by the owner bound with
+ * {@code bindLockOwner}: the {@link TransactionalCache} of a session binds itself,
+ * so the session's locks are released by its commit or rollback on whichever thread runs it.
+ * The thread that locked a key re-enters the lock for any owner, as a thread holding
+ * several sessions would otherwise wait for a commit only it can run. The key is
+ * released once every owner that entered the lock has released it.
  * 
  * @author Eduardo Macarron
  *
  */
-public class BlockingCache implements Cache { // 阻塞缓存，线程读某个key的缓存时若未找到则阻塞，直到这个key被加入
+public class BlockingCache implements BulkCache { // 阻塞缓存，线程读某个key的缓存时若未找到则阻塞，直到这个key被加入
+
+  private static final int STRIPES = 64; // 2的幂
+
+  private static final ThreadLocal<Object> lockOwner = new ThreadLocal<Object>(); // 代替当前线程持有key锁的对象
 
   private long timeout;
   private final Cache delegate;
-  private final ConcurrentHashMap<Object, ReentrantLock> locks; // 给每个key保持一个锁
+  private final Stripe[] stripes; // key按hash分到各stripe，stripe里只记录正在加载的key
+
+  private final LatencyHistogram waitHistogram = new LatencyHistogram(); // 等待他人加载的时间分布(毫秒)
+  private final AtomicLong timeoutCount = new AtomicLong();
 
   public BlockingCache(Cache delegate) { // 构造器，装饰一个我们的缓存delegate
     this.delegate = delegate;
-    this.locks = new ConcurrentHashMap<Object, ReentrantLock>();
+    this.stripes = new Stripe[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  public Cache getDelegate() {
+    return delegate;
   }
 
   @Override
@@ -64,9 +97,20 @@ public class BlockingCache implements Cache { // 阻塞缓存，线程读某个k
     }
   }
 
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    try {
+      CacheUtils.putObjects(delegate, entries);
+    } finally {
+      for (Object key : entries.keySet()) {
+        releaseLock(key);
+      }
+    }
+  }
+
   @Override
   public Object getObject(Object key) {
-    acquireLock(key); // 获得锁，若没这个key则会阻塞
+    acquireLock(key); // 获得锁，若别的线程正在加载这个key则会阻塞
     Object value = delegate.getObject(key);
     if (value != null) { // value存在则释放锁，否则不释放锁
       releaseLock(key);
@@ -90,36 +134,90 @@ public class BlockingCache implements Cache { // 阻塞缓存，线程读某个k
   public ReadWriteLock getReadWriteLock() {
     return null;
   }
-  
-  private ReentrantLock getLockForKey(Object key) { // 获得key的锁
-    ReentrantLock lock = new ReentrantLock();
-    ReentrantLock previous = locks.putIfAbsent(key, lock);
-    return previous == null ? lock : previous;
+
+  private Stripe stripeFor(Object key) {
+    int h = key.hashCode();
+    h ^= (h >>> 20) ^ (h >>> 12);
+    h ^= (h >>> 7) ^ (h >>> 4);
+    return stripes[h & (STRIPES - 1)];
   }
-  
+
   private void acquireLock(Object key) { // 获取锁
-    Lock lock = getLockForKey(key);
-    if (timeout > 0) {
-      try {
-        boolean acquired = lock.tryLock(timeout, TimeUnit.MILLISECONDS); // 限时获取锁
-        if (!acquired) { // 时限内未得到锁则报异常
-          throw new CacheException("Couldn't get a lock in " + timeout + " for the key " +  key + " at the cache " + delegate.getId());  
-        }
-      } catch (InterruptedException e) {
-        throw new CacheException("Got interrupted while trying to acquire lock for key " + key, e);
+    Stripe stripe = stripeFor(key);
+    Object current = currentOwner();
+    long start = 0;
+    stripe.lock.lock();
+    try {
+      KeyLock keyLock = stripe.locks.get(key);
+      if (keyLock != null && !keyLock.canEnter(current)) { // 别的线程正在加载,等它put或释放
+        start = System.nanoTime();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+        do {
+          if (timeout > 0) {
+            if (remaining <= 0) { // 时限内未得到锁则报异常
+              timeoutCount.incrementAndGet();
+              recordWait(System.nanoTime() - start);
+              throw new CacheException("Couldn't get a lock in " + timeout + " for the key " +  key + " at the cache " + delegate.getId());
+            }
+            remaining = stripe.released.awaitNanos(remaining);
+          } else {
+            stripe.released.await();
+          }
+          keyLock = stripe.locks.get(key);
+        } while (keyLock != null && !keyLock.canEnter(current));
       }
-    } else {
-      lock.lock(); // 立即加锁，即获取锁
+      if (keyLock == null) {
+        keyLock = new KeyLock();
+        stripe.locks.put(key, keyLock);
+      }
+      keyLock.owners.add(current);
+    } catch (InterruptedException e) {
+      throw new CacheException("Got interrupted while trying to acquire lock for key " + key, e);
+    } finally {
+      stripe.lock.unlock();
+    }
+    if (start != 0) {
+      recordWait(System.nanoTime() - start);
     }
   }
   
-  private void releaseLock(Object key) { // 释放锁
-    ReentrantLock lock = locks.get(key); // 从HashMap获得锁
-    if (lock.isHeldByCurrentThread()) { // 若是本线程的锁
-      lock.unlock(); // 解锁
+  private void releaseLock(Object key) { // 释放锁，并删掉这个key的记录
+    Stripe stripe = stripeFor(key);
+    stripe.lock.lock();
+    try {
+      KeyLock keyLock = stripe.locks.get(key);
+      if (keyLock != null && keyLock.owners.remove(currentOwner()) && keyLock.owners.isEmpty()) { // 最后一个owner释放
+        stripe.locks.remove(key);
+        stripe.released.signalAll(); // 同一stripe的等待者各自检查自己的key
+      }
+    } finally {
+      stripe.lock.unlock();
     }
   }
 
+  /*
+   * Makes the locks taken and released by the current thread belong to owner, until the
+   * returned previous owner is bound again. A null owner stands for the current thread.
+   */
+  static Object bindLockOwner(Object owner) {
+    Object previous = lockOwner.get();
+    if (owner == null) {
+      lockOwner.remove();
+    } else {
+      lockOwner.set(owner);
+    }
+    return previous;
+  }
+
+  private static Object currentOwner() {
+    Object owner = lockOwner.get();
+    return owner != null ? owner : Thread.currentThread();
+  }
+
+  private void recordWait(long nanos) { // 统计等待时间
+    waitHistogram.record(TimeUnit.NANOSECONDS.toMillis(nanos));
+  }
+
   public long getTimeout() {
     return timeout;
   }
@@ -127,4 +225,57 @@ public class BlockingCache implements Cache { // 阻塞缓存，线程读某个k
   public void setTimeout(long timeout) {
     this.timeout = timeout;
   }  
+
+  /**
+   * @return Number of reads that waited for another thread to load the same key, including timed out ones
+   */
+  public long getWaitCount() {
+    return waitHistogram.getCount();
+  }
+
+  public long getMaxWaitMillis() {
+    return waitHistogram.getMax();
+  }
+
+  public long getTimeoutCount() {
+    return timeoutCount.get();
+  }
+
+  /**
+   * @return Distribution of the milliseconds reads waited for another thread to load the same key
+   */
+  public LatencyHistogram getWaitHistogram() {
+    return waitHistogram;
+  }
+
+  /**
+   * @return Number of keys currently locked by a loading thread
+   */
+  public int getLockedKeyCount() {
+    int count = 0;
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+      try {
+        count += stripe.locks.size();
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    return count;
+  }
+
+  private static class Stripe {
+    final ReentrantLock lock = new ReentrantLock();
+    final Condition released = lock.newCondition();
+    final Map<Object, KeyLock> locks = new HashMap<Object, KeyLock>(); // 正在加载的key -> 它的锁
+  }
+
+  private static class KeyLock { // 由stripe.lock保护
+    final Thread thread = Thread.currentThread(); // 加锁的线程,可重入
+    final Set<Object> owners = new HashSet<Object>(2); // 进入了锁的线程或绑定的owner
+
+    boolean canEnter(Object owner) {
+      return thread == Thread.currentThread() || owners.contains(owner);
+    }
+  }
 }
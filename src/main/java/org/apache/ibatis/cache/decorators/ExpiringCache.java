@@ -0,0 +1,284 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.BulkCache;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheUtils;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Expires each entry <code>timeToLive</code> milliseconds after it was put, instead of
+ * clearing the whole cache at once like {@link ScheduledCache}.
+ * <p>
+ * With a positive <code>refreshAhead</code> window, a hit on an entry that expires
+ * within that many milliseconds may be followed by a call to
+ * {@link #refreshAhead(Object, Callable)}: the loader then runs on a background thread
+ * and its result replaces the entry, while readers keep getting the current value.
+ * At most one refresh per key is in flight and a refresh that started before the cache
+ * was cleared is discarded.
+ * <p>
+ * Expiration times are kept beside the delegate and refreshes put from their own thread,
+ * so this decorator is applied above the synchronized cache and does its own synchronization.
+ * Only a {@link BlockingCache} goes on top of it, so an expired entry is a miss while
+ * the key is locked and concurrent readers of the key wait for one load, see {@link #find(Cache)}.
+ */
+public class ExpiringCache implements BulkCache { // 每个缓存项单独过期,可在过期前异步刷新
+
+  private static final Log log = LogFactory.getLog(ExpiringCache.class);
+  private static final int SWEEP_INTERVAL = 1024; // 每put这么多次清理一次过期时间表
+
+  private final Cache delegate;
+  private final ConcurrentMap<Object, Long> expirations = new ConcurrentHashMap<Object, Long>(); // key -> 过期时间点
+  private final ConcurrentMap<Object, Boolean> refreshing = new ConcurrentHashMap<Object, Boolean>(); // 正在刷新的key
+  private final AtomicInteger puts = new AtomicInteger();
+  private long timeToLive = 60 * 60 * 1000; // 1 hour
+  private long refreshAhead; // 过期前多少毫秒内的命中触发刷新,0表示不刷新
+  private long generation; // 每次clear加一,丢弃clear之前开始的刷新
+  private ThreadPoolExecutor refresher;
+  private final ReentrantLock lock = new ReentrantLock(); // 保护generation和refresher
+
+  public ExpiringCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * @param cache A cache built by CacheBuilder
+   * @return The ExpiringCache of the chain, directly or under its BlockingCache, or null if it has none
+   */
+  public static ExpiringCache find(Cache cache) {
+    if (cache instanceof BlockingCache) {
+      cache = ((BlockingCache) cache).getDelegate();
+    }
+    return cache instanceof ExpiringCache ? (ExpiringCache) cache : null;
+  }
+
+  public void setTimeToLive(long timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
+  public void setRefreshAhead(long refreshAhead) {
+    this.refreshAhead = refreshAhead;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object object) {
+    delegate.putObject(key, object);
+    if (object == null) {
+      expirations.remove(key);
+    } else {
+      expirations.put(key, System.currentTimeMillis() + timeToLive);
+    }
+    if (puts.incrementAndGet() % SWEEP_INTERVAL == 0) {
+      sweep();
+    }
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    CacheUtils.putObjects(delegate, entries);
+    long expiration = System.currentTimeMillis() + timeToLive; // 同一批共用一个时间戳
+    for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+      if (entry.getValue() == null) {
+        expirations.remove(entry.getKey());
+      } else {
+        expirations.put(entry.getKey(), expiration);
+      }
+    }
+    int count = puts.addAndGet(entries.size());
+    if (count % SWEEP_INTERVAL < entries.size()) { // 跨过了SWEEP_INTERVAL的整数倍
+      sweep();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    Long expiresAt = expirations.get(key);
+    if (expiresAt == null || System.currentTimeMillis() >= expiresAt) { // 已过期,下次put时被覆盖
+      return null;
+    }
+    return value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    expirations.remove(key);
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    lock.lock();
+    try {
+      generation++;
+      expirations.clear();
+    } finally {
+      lock.unlock();
+    }
+    delegate.clear();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  /*
+   * Expiration time of the entry, in milliseconds since the epoch, or 0 if it has none.
+   * Read by SnapshotCache to save it with the entry.
+   */
+  long getExpiration(Object key) {
+    Long expiresAt = expirations.get(key);
+    return expiresAt == null ? 0 : expiresAt;
+  }
+
+  /*
+   * Sets the expiration time of an entry restored by SnapshotCache. An entry saved without
+   * one (0) gets the full timeToLive from now.
+   */
+  void setExpiration(Object key, long expiresAt) {
+    expirations.put(key, expiresAt > 0 ? expiresAt : System.currentTimeMillis() + timeToLive);
+  }
+
+  /**
+   * Reloads the entry in the background if it is close to expiry and no refresh of it
+   * is already running. Called by the executor after a cache hit.
+   *
+   * @param key The key that was hit
+   * @param loader Loads a fresh value for the key
+   * @return true if a refresh was scheduled
+   */
+  public boolean refreshAhead(final Object key, final Callable<?> loader) {
+    if (!isRefreshDue(key)) {
+      return false;
+    }
+    if (refreshing.putIfAbsent(key, Boolean.TRUE) != null) { // 已有线程在刷新
+      return false;
+    }
+    final long startGeneration;
+    lock.lock();
+    try {
+      startGeneration = generation;
+    } finally {
+      lock.unlock();
+    }
+    try {
+      refresher().execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            Object value = loader.call();
+            lock.lock();
+            try {
+              if (startGeneration == generation) { // 刷新期间缓存没有被清空
+                putObject(key, value);
+              }
+            } finally {
+              lock.unlock();
+            }
+          } catch (Exception e) {
+            log.warn("Refresh-ahead of " + key + " in cache " + getId() + " failed.  Cause: " + e);
+          } finally {
+            refreshing.remove(key);
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      refreshing.remove(key);
+      throw e;
+    }
+    return true;
+  }
+
+  /**
+   * Lets the executor skip building a loader for hits that will not trigger a refresh.
+   *
+   * @param key The key that was hit
+   * @return true if the entry is close to expiry, a refresh of it may still be running
+   */
+  public boolean isRefreshDue(Object key) {
+    Long expiresAt = expirations.get(key);
+    long now = System.currentTimeMillis();
+    return refreshAhead > 0 && expiresAt != null && now >= expiresAt - refreshAhead && now < expiresAt;
+  }
+
+  private ThreadPoolExecutor refresher() {
+    lock.lock(); // 第一次刷新时才创建线程
+    try {
+      if (refresher == null) {
+        final String name = "mybatis-cache-refresh-" + getId();
+        refresher = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+        refresher.allowCoreThreadTimeOut(true);
+      }
+      return refresher;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void sweep() { // 过期时间表只保留未过期的key
+    long now = System.currentTimeMillis();
+    for (Iterator<Map.Entry<Object, Long>> it = expirations.entrySet().iterator(); it.hasNext();) {
+      if (now >= it.next().getValue()) {
+        it.remove();
+      }
+    }
+  }
+
+}
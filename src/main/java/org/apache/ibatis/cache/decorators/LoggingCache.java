@@ -15,27 +15,42 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 
+import org.apache.ibatis.cache.BulkCache;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.CacheUtils;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
 /**
+ * Counts hits, misses, puts and removals in a {@link CacheStats} and logs the hit
+ * ratio at debug level.
+ *
  * @author Clinton Begin
  */
-public class LoggingCache implements Cache { // 自带日志的Cache装饰类，这里日志纪录了缓存命中率
+public class LoggingCache implements BulkCache { // 自带日志的Cache装饰类，这里日志纪录了缓存命中率
 
   private Log log;  // 日志，详见org.apache.ibatis.logging.Log
   private Cache delegate; // 被装饰的Cache
-  protected int requests = 0;
-  protected int hits = 0;
+  private final CacheStats stats; // 线程安全的统计
 
   public LoggingCache(Cache delegate) {
+    this(delegate, new CacheStats(delegate.getId()));
+  }
+
+  public LoggingCache(Cache delegate, CacheStats stats) {
     this.delegate = delegate;
+    this.stats = stats;
     this.log = LogFactory.getLog(getId()); // 工厂根据被装饰Cache的id产生一个日志
   }
 
+  public CacheStats getStats() {
+    return stats;
+  }
+
   @Override
   public String getId() {
     return delegate.getId();
@@ -49,14 +64,24 @@ public class LoggingCache implements Cache { // 自带日志的Cache装饰类，
   @Override
   public void putObject(Object key, Object object) { // 这里并没有纪录日志
     delegate.putObject(key, object);
+    stats.recordPut(key, object);
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    CacheUtils.putObjects(delegate, entries);
+    for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+      stats.recordPut(entry.getKey(), entry.getValue());
+    }
   }
 
   @Override
   public Object getObject(Object key) { // 获取缓存数据，纪录日志
-    requests++; // 请求缓存计数
     final Object value = delegate.getObject(key);
     if (value != null) {
-      hits++; // 缓存命中
+      stats.recordHit(); // 缓存命中
+    } else {
+      stats.recordMiss();
     }
     if (log.isDebugEnabled()) {
       log.debug("Cache Hit Ratio [" + getId() + "]: " + getHitRatio()); // 纪录当前命中率
@@ -66,6 +91,7 @@ public class LoggingCache implements Cache { // 自带日志的Cache装饰类，
 
   @Override
   public Object removeObject(Object key) {
+    stats.recordRemoval();
     return delegate.removeObject(key);
   }
 
@@ -90,7 +116,7 @@ public class LoggingCache implements Cache { // 自带日志的Cache装饰类，
   }
 
   private double getHitRatio() { // 懂
-    return (double) hits / (double) requests;
+    return stats.getHitRatio();
   }
 
 }
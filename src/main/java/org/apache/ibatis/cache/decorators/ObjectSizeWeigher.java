@@ -0,0 +1,204 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.cache.Weigher;
+
+/**
+ * Default {@link Weigher}. A serialized value (byte[]) weighs its length; any other
+ * value is walked reflectively assuming a 64-bit JVM with compressed references.
+ * Large collections and arrays are sampled: the first {@value #SAMPLE_SIZE} elements
+ * are measured and the average is extrapolated to the whole collection, so a result
+ * list of ten thousand rows costs no more to weigh than one of thirty two.
+ * <p>
+ * Shared MyBatis infrastructure (such as the Configuration held by lazy loading
+ * proxies), classes, class loaders and threads are not counted as they are not
+ * retained by the cache entry.
+ */
+public class ObjectSizeWeigher implements Weigher { // 基于反射遍历对象图估算大小
+
+  private static final int SAMPLE_SIZE = 32; // 集合/数组只抽样前32个元素
+  private static final int MAX_OBJECTS = 10000; // 单个元素最多遍历的对象数
+  private static final int HEADER = 12;
+  private static final int REFERENCE = 4;
+  private static final String[] SHARED_PACKAGES = {
+      "org.apache.ibatis.session.", "org.apache.ibatis.executor.", "org.apache.ibatis.mapping.", "org.apache.ibatis.reflection."};
+
+  private static final Map<Class<?>, ClassLayout> layouts = new ConcurrentHashMap<Class<?>, ClassLayout>();
+
+  @Override
+  public long weigh(Object key, Object value) {
+    if (value instanceof byte[]) {
+      return align(HEADER + 4 + ((byte[]) value).length);
+    }
+    return sizeOf(value, new IdentityHashMap<Object, Object>());
+  }
+
+  private long sizeOf(Object root, IdentityHashMap<Object, Object> visited) {
+    long size = 0;
+    List<Object> pending = new ArrayList<Object>();
+    pending.add(root);
+    int walked = 0;
+    while (!pending.isEmpty() && walked++ < MAX_OBJECTS) {
+      Object object = pending.remove(pending.size() - 1);
+      if (object == null || visited.containsKey(object) || isShared(object.getClass())) {
+        continue;
+      }
+      visited.put(object, object);
+      if (object.getClass().isArray()) {
+        size += sizeOfArray(object, visited);
+      } else if (object instanceof String) {
+        size += align(HEADER + 12) + align(HEADER + 4 + 2L * ((String) object).length());
+      } else if (object instanceof Collection) {
+        size += sizeOfCollection((Collection<?>) object, visited);
+      } else if (object instanceof Map) {
+        size += sizeOfMap((Map<?, ?>) object, visited);
+      } else {
+        ClassLayout layout = layoutOf(object.getClass());
+        size += layout.shallowSize;
+        for (Field field : layout.references) {
+          try {
+            pending.add(field.get(object));
+          } catch (IllegalAccessException e) {
+            // only the reference itself is counted
+          }
+        }
+      }
+    }
+    return size;
+  }
+
+  private long sizeOfArray(Object array, IdentityHashMap<Object, Object> visited) {
+    Class<?> componentType = array.getClass().getComponentType();
+    int length = Array.getLength(array);
+    if (componentType.isPrimitive()) {
+      return align(HEADER + 4 + (long) length * primitiveSize(componentType));
+    }
+    List<Object> sample = new ArrayList<Object>(Math.min(length, SAMPLE_SIZE));
+    for (int i = 0; i < length && i < SAMPLE_SIZE; i++) {
+      sample.add(Array.get(array, i));
+    }
+    return align(HEADER + 4 + (long) length * REFERENCE) + sampled(sample.iterator(), length, visited);
+  }
+
+  private long sizeOfCollection(Collection<?> collection, IdentityHashMap<Object, Object> visited) {
+    int size = collection.size();
+    return align(HEADER + 4 * REFERENCE) + align(HEADER + 4 + (long) REFERENCE * size)
+        + sampled(collection.iterator(), size, visited);
+  }
+
+  private long sizeOfMap(Map<?, ?> map, IdentityHashMap<Object, Object> visited) {
+    int size = map.size();
+    long nodes = (long) size * align(HEADER + 4 + 3 * REFERENCE); // 每个HashMap.Node
+    long keys = sampled(map.keySet().iterator(), size, visited);
+    long values = sampled(map.values().iterator(), size, visited);
+    return align(HEADER + 8 * REFERENCE) + align(HEADER + 4 + (long) REFERENCE * size) + nodes + keys + values;
+  }
+
+  /* Measures up to SAMPLE_SIZE elements and scales the result to the element count. */
+  private long sampled(Iterator<?> iterator, int count, IdentityHashMap<Object, Object> visited) {
+    long total = 0;
+    int measured = 0;
+    while (measured < SAMPLE_SIZE && iterator.hasNext()) {
+      total += sizeOf(iterator.next(), visited);
+      measured++;
+    }
+    return measured == 0 ? 0 : total * count / measured;
+  }
+
+  private static boolean isShared(Class<?> type) {
+    if (type.isEnum() || Class.class == type || ClassLoader.class.isAssignableFrom(type) || Thread.class.isAssignableFrom(type)) {
+      return true;
+    }
+    String name = type.getName();
+    for (String prefix : SHARED_PACKAGES) {
+      if (name.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static ClassLayout layoutOf(Class<?> type) {
+    ClassLayout layout = layouts.get(type);
+    if (layout == null) {
+      layout = new ClassLayout(type);
+      layouts.put(type, layout);
+    }
+    return layout;
+  }
+
+  private static int primitiveSize(Class<?> type) {
+    if (type == long.class || type == double.class) {
+      return 8;
+    } else if (type == int.class || type == float.class) {
+      return 4;
+    } else if (type == short.class || type == char.class) {
+      return 2;
+    }
+    return 1;
+  }
+
+  private static long align(long size) {
+    return (size + 7) & ~7L;
+  }
+
+  private static class ClassLayout {
+    final long shallowSize;
+    final List<Field> references = new ArrayList<Field>();
+
+    ClassLayout(Class<?> type) {
+      long size = HEADER;
+      for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          if (field.getType().isPrimitive()) {
+            size += primitiveSize(field.getType());
+          } else {
+            size += REFERENCE;
+            if (makeAccessible(field)) {
+              references.add(field);
+            }
+          }
+        }
+      }
+      this.shallowSize = align(size);
+    }
+
+    private static boolean makeAccessible(Field field) {
+      try {
+        field.setAccessible(true);
+        return true;
+      } catch (RuntimeException e) { // 例如受模块系统保护的JDK内部字段
+        return false;
+      }
+    }
+  }
+
+}
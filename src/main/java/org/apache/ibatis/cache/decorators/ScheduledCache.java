@@ -15,14 +15,17 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 
+import org.apache.ibatis.cache.BulkCache;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheUtils;
 
 /**
  * @author Clinton Begin
  */
-public class ScheduledCache implements Cache { // 每隔clearInterval清空一次缓存
+public class ScheduledCache implements BulkCache { // 每隔clearInterval清空一次缓存
 
   private Cache delegate;　// 被装饰的cache
   protected long clearInterval; // 清空缓存的间隔时间
@@ -55,6 +58,12 @@ public class ScheduledCache implements Cache { // 每隔clearInterval清空一
     delegate.putObject(key, object);
   }
 
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    clearWhenStale();
+    CacheUtils.putObjects(delegate, entries);
+  }
+
   @Override
   public Object getObject(Object key) {
     return clearWhenStale() ? null : delegate.getObject(key); // 检验是否缓存过期
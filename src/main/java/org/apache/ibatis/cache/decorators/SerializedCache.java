@@ -15,31 +15,66 @@
  */
 package org.apache.ibatis.cache.decorators;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
+import org.apache.ibatis.cache.BulkCache;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheUtils;
+import org.apache.ibatis.cache.Serializer;
 import org.apache.ibatis.io.Resources;
 
 /**
+ * The <code>serializer</code> property selects the {@link Serializer}: <code>java</code>
+ * (the default), <code>binary</code> for {@link BinarySerializer} or a class name.
+ * Serialized values of at least <code>compressThreshold</code> bytes are deflated
+ * when that makes them smaller; 0 (the default) disables compression.
+ *
  * @author Clinton Begin
  */
-public class SerializedCache implements Cache { // 把Cache缓存项序列化了的装饰类
+public class SerializedCache implements BulkCache { // 把Cache缓存项序列化了的装饰类
 
   private Cache delegate;
+  private Serializer serializer = new JavaSerializer();
+  private int compressThreshold; // 序列化后不小于该字节数才尝试压缩,0表示不压缩
 
   public SerializedCache(Cache delegate) {
     this.delegate = delegate;
   }
 
+  public void setSerializer(String serializer) {
+    this.serializer = newSerializer(serializer);
+  }
+
+  public void setCompressThreshold(int compressThreshold) {
+    this.compressThreshold = compressThreshold;
+  }
+
+  public static Serializer newSerializer(String serializer) { // 按别名或类名创建Serializer
+    if ("java".equalsIgnoreCase(serializer)) {
+      return new JavaSerializer();
+    }
+    if ("binary".equalsIgnoreCase(serializer)) {
+      return new BinarySerializer();
+    }
+    try {
+      return (Serializer) Resources.classForName(serializer).newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Error creating serializer " + serializer + ".  Cause: " + e, e);
+    }
+  }
+
   @Override
   public String getId() {
     return delegate.getId();
@@ -53,16 +88,32 @@ public class SerializedCache implements Cache { // 把Cache缓存项序列化了
   @Override
   public void putObject(Object key, Object object) {
     if (object == null || object instanceof Serializable) {
-      delegate.putObject(key, serialize((Serializable) object)); // <key, serialize((Serializable) object)>
+      delegate.putObject(key, compress(serializer.serialize(object))); // <key, serialize((Serializable) object)>
     } else {
       throw new CacheException("SharedCache failed to make a copy of a non-serializable object: " + object);
     }
   }
 
+  @Override
+  public void putObjects(Map<Object, Object> entries) { // 一次序列化整批,再整批交给被装饰的Cache
+    Map<Object, Object> serialized = new HashMap<Object, Object>((int) (entries.size() / 0.75f) + 1);
+    for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+      Object object = entry.getValue();
+      if (object != null && !(object instanceof Serializable)) {
+        throw new CacheException("SharedCache failed to make a copy of a non-serializable object: " + object);
+      }
+      serialized.put(entry.getKey(), compress(serializer.serialize(object)));
+    }
+    CacheUtils.putObjects(delegate, serialized);
+  }
+
   @Override
   public Object getObject(Object key) {
     Object object = delegate.getObject(key);
-    return object == null ? null : deserialize((byte[]) object); // 反序列化
+    if (object instanceof CompressedValue) {
+      object = ((CompressedValue) object).inflate();
+    }
+    return object == null ? null : serializer.deserialize((byte[]) object); // 反序列化
   }
 
   @Override
@@ -90,30 +141,48 @@ public class SerializedCache implements Cache { // 把Cache缓存项序列化了
     return delegate.equals(obj);
   }
 
-  private byte[] serialize(Serializable value) { // 序列化
+  private Object compress(byte[] bytes) { // 压缩后更小才保存压缩结果
+    if (compressThreshold <= 0 || bytes.length < compressThreshold) {
+      return bytes;
+    }
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
     try {
-      ByteArrayOutputStream bos = new ByteArrayOutputStream();
-      ObjectOutputStream oos = new ObjectOutputStream(bos);
-      oos.writeObject(value);
-      oos.flush();
-      oos.close();
-      return bos.toByteArray();
-    } catch (Exception e) {
-      throw new CacheException("Error serializing object.  Cause: " + e, e);
+      deflater.setInput(bytes);
+      deflater.finish();
+      byte[] buffer = new byte[bytes.length];
+      int length = deflater.deflate(buffer);
+      if (!deflater.finished() || length >= bytes.length) {
+        return bytes;
+      }
+      return new CompressedValue(Arrays.copyOf(buffer, length), bytes.length);
+    } finally {
+      deflater.end();
     }
   }
 
-  private Serializable deserialize(byte[] value) { // 反序列化
-    Serializable result;
-    try {
-      ByteArrayInputStream bis = new ByteArrayInputStream(value);
-      ObjectInputStream ois = new CustomObjectInputStream(bis);
-      result = (Serializable) ois.readObject();
-      ois.close();
-    } catch (Exception e) {
-      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+  private static final class CompressedValue implements Serializable { // 压缩过的缓存项
+    private static final long serialVersionUID = 1L;
+    private final byte[] data;
+    private final int length; // 压缩前的长度
+
+    CompressedValue(byte[] data, int length) {
+      this.data = data;
+      this.length = length;
+    }
+
+    byte[] inflate() {
+      Inflater inflater = new Inflater();
+      try {
+        inflater.setInput(data);
+        byte[] bytes = new byte[length];
+        inflater.inflate(bytes);
+        return bytes;
+      } catch (DataFormatException e) {
+        throw new CacheException("Error inflating cached object.  Cause: " + e, e);
+      } finally {
+        inflater.end();
+      }
     }
-    return result;
   }
 
   public static class CustomObjectInputStream extends ObjectInputStream { // hama
@@ -0,0 +1,304 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.BulkCache;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheUtils;
+import org.apache.ibatis.cache.Serializer;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Saves the entries of the decorated cache to a memory-mapped file and restores
+ * them after a restart.
+ * <p>
+ * It is applied directly on top of the base cache, so every put, removal and eviction
+ * passes through it and the set of cached keys is known exactly. Values of read-write
+ * caches are already serialized at that level and are written as they are.
+ * <p>
+ * A snapshot written with a different <code>version</code> or for another cache id
+ * is ignored. {@link #restore(Cache, ExpiringCache)} puts the entries of the snapshot
+ * back when the cache is built, through the eviction decorator so that it tracks and
+ * bounds them like any other entry. Expiration times of an {@link ExpiringCache} are
+ * saved with the entries, and entries that expired meanwhile are not restored.
+ */
+public class SnapshotCache implements BulkCache { // 把缓存项保存到内存映射文件,重启后恢复
+
+  private static final Log log = LogFactory.getLog(SnapshotCache.class);
+  private static final int MAGIC = 0x4D424353; // "MBCS"
+  private static final int FORMAT = 2; // 2: 每项带过期时间
+  private static final byte RAW = 0; // 值本身就是序列化后的byte[]
+  private static final byte OBJECT = 1; // 值由serializer序列化
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final Cache delegate;
+  private final File file;
+  private final String version;
+  private final Serializer serializer = new BinarySerializer();
+  private final Set<Object> keys = new HashSet<Object>(); // delegate中的key
+  private volatile ExpiringCache expiring; // 保存过期时间,没有就是null
+  private final ReentrantLock lock = new ReentrantLock(); // 保护keys和delegate
+
+  public SnapshotCache(Cache delegate, File file, String version) {
+    this.delegate = delegate;
+    this.file = file;
+    this.version = version == null ? "" : version;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    lock.lock();
+    try {
+      return delegate.getSize();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    lock.lock();
+    try {
+      delegate.putObject(key, value);
+      keys.add(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    lock.lock();
+    try {
+      CacheUtils.putObjects(delegate, entries);
+      keys.addAll(entries.keySet());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    lock.lock();
+    try {
+      return delegate.getObject(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    lock.lock();
+    try {
+      keys.remove(key);
+      return delegate.removeObject(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.lock();
+    try {
+      keys.clear();
+      delegate.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  /**
+   * Puts the entries of the snapshot file into the cache, if the file was written for
+   * this cache and version. Called once by the CacheBuilder after the decorators are built.
+   *
+   * @param target The decorator to put the entries through, the eviction decorator on top
+   *               of this one, so that restored entries are tracked and evicted as usual
+   * @param expiring The ExpiringCache of the chain, or null. Its expiration times are
+   *                 written with the snapshots and set again on the restored entries.
+   */
+  public void restore(Cache target, ExpiringCache expiring) {
+    this.expiring = expiring;
+    if (!file.isFile()) {
+      return;
+    }
+    int restored = 0;
+    try {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+        ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT
+            || !version.equals(readString(buffer)) || !getId().equals(readString(buffer))) {
+          log.debug("Ignoring cache snapshot " + file + " written by another version or for another cache");
+          return;
+        }
+        long now = System.currentTimeMillis();
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+          Object key = serializer.deserialize(readBytes(buffer));
+          long expiresAt = buffer.getLong();
+          byte kind = buffer.get();
+          byte[] bytes = readBytes(buffer);
+          if (expiresAt > 0 && expiresAt <= now) { // 重启期间已过期
+            continue;
+          }
+          Object value = kind == RAW ? bytes : readObject(bytes);
+          if (value != null) {
+            target.putObject(key, value);
+            if (expiring != null) {
+              expiring.setExpiration(key, expiresAt);
+            }
+            restored++;
+          }
+        }
+      } finally {
+        raf.close();
+      }
+    } catch (Exception e) {
+      log.warn("Ignoring unreadable cache snapshot " + file + ".  Cause: " + e);
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Restored " + restored + " entries of cache " + getId() + " from " + file);
+    }
+  }
+
+  /**
+   * Writes all entries to a temporary file and renames it over the snapshot file.
+   */
+  public void snapshot() throws IOException {
+    List<Object> entryKeys = new ArrayList<Object>();
+    List<Object> entryValues = new ArrayList<Object>();
+    lock.lock(); // 只在锁内收集引用,序列化和写文件在锁外
+    try {
+      for (Object key : keys) {
+        Object value = delegate.getObject(key);
+        if (value != null) {
+          entryKeys.add(key);
+          entryValues.add(value);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    List<byte[]> encoded = new ArrayList<byte[]>();
+    List<Long> expirations = new ArrayList<Long>();
+    byte[] versionBytes = version.getBytes(UTF8);
+    byte[] idBytes = getId().getBytes(UTF8);
+    long length = 4 + 4 + 4 + versionBytes.length + 4 + idBytes.length + 4;
+    for (int i = 0; i < entryKeys.size(); i++) {
+      Object value = entryValues.get(i);
+      if (!(entryKeys.get(i) instanceof Serializable) || !(value instanceof Serializable)) {
+        continue;
+      }
+      try {
+        byte[] key = serializer.serialize(entryKeys.get(i));
+        byte[] bytes = value instanceof byte[] ? (byte[]) value : serializer.serialize(value);
+        encoded.add(key);
+        encoded.add(new byte[] { value instanceof byte[] ? RAW : OBJECT });
+        encoded.add(bytes);
+        expirations.add(expiring == null ? 0L : expiring.getExpiration(entryKeys.get(i)));
+        length += 4 + key.length + 8 + 1 + 4 + bytes.length;
+      } catch (CacheException e) { // 不能序列化的缓存项不保存
+        log.debug("Skipping cache entry " + entryKeys.get(i) + " in snapshot of " + getId() + ": " + e);
+      }
+    }
+    File temp = new File(file.getPath() + ".tmp");
+    RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+    try {
+      raf.setLength(length);
+      MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+      buffer.putInt(MAGIC).putInt(FORMAT);
+      buffer.putInt(versionBytes.length).put(versionBytes);
+      buffer.putInt(idBytes.length).put(idBytes);
+      buffer.putInt(encoded.size() / 3);
+      for (int i = 0; i < encoded.size(); i += 3) {
+        buffer.putInt(encoded.get(i).length).put(encoded.get(i));
+        buffer.putLong(expirations.get(i / 3));
+        buffer.put(encoded.get(i + 1)[0]);
+        buffer.putInt(encoded.get(i + 2).length).put(encoded.get(i + 2));
+      }
+      buffer.force();
+    } finally {
+      raf.close();
+    }
+    if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+      throw new IOException("Could not rename " + temp + " to " + file);
+    }
+  }
+
+  private Object readObject(byte[] bytes) {
+    try {
+      return serializer.deserialize(bytes);
+    } catch (CacheException e) {
+      log.warn("Ignoring unreadable entry in cache snapshot " + file + ".  Cause: " + e);
+      return null;
+    }
+  }
+
+  private static byte[] readBytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    return new String(readBytes(buffer), UTF8);
+  }
+
+}
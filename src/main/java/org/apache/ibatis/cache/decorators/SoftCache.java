@@ -20,6 +20,7 @@ import java.lang.ref.SoftReference;
 import java.util.Deque;
 import java.util.LinkedList;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.ibatis.cache.Cache;
 
@@ -31,6 +32,7 @@ import org.apache.ibatis.cache.Cache;
  */
 public class SoftCache implements Cache { // 内存空间不足的话软引用就会被回收
   private final Deque<Object> hardLinksToAvoidGarbageCollection; // 为了避免GC
+  private final ReentrantLock hardLinksLock = new ReentrantLock(); // 保护hardLinks列表
   private final ReferenceQueue<Object> queueOfGarbageCollectedEntries; // 
   private final Cache delegate;
   private int numberOfHardLinks;
@@ -75,11 +77,14 @@ public class SoftCache implements Cache { // 内存空间不足的话软引用
         delegate.removeObject(key);
       } else { // result非null，已经是个强引用了
         // See #586 (and #335) modifications need more than a read lock // hama
-        synchronized (hardLinksToAvoidGarbageCollection) { // 保证list的线程安全
+        hardLinksLock.lock(); // 保证list的线程安全
+        try {
           hardLinksToAvoidGarbageCollection.addFirst(result); // 加入list防止被回收 hama
           if (hardLinksToAvoidGarbageCollection.size() > numberOfHardLinks) {
             hardLinksToAvoidGarbageCollection.removeLast();
           }
+        } finally {
+          hardLinksLock.unlock();
         }
       }
     }
@@ -94,8 +99,11 @@ public class SoftCache implements Cache { // 内存空间不足的话软引用
 
   @Override
   public void clear() {
-    synchronized (hardLinksToAvoidGarbageCollection) { // 线程安全
+    hardLinksLock.lock(); // 线程安全
+    try {
       hardLinksToAvoidGarbageCollection.clear();
+    } finally {
+      hardLinksLock.unlock();
     }
     removeGarbageCollectedItems();
     delegate.clear();
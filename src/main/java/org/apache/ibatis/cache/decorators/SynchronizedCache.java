@@ -15,16 +15,21 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.apache.ibatis.cache.BulkCache;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheUtils;
 
 /**
  * @author Clinton Begin
  */
-public class SynchronizedCache implements Cache { // get*/put*/clear加个锁
+public class SynchronizedCache implements BulkCache { // get*/put*/clear加个锁
 
   private Cache delegate;
+  private final ReentrantLock lock = new ReentrantLock(); // 不用synchronized,等锁的线程不会钉住载体线程
   
   public SynchronizedCache(Cache delegate) {
     this.delegate = delegate;
@@ -36,28 +41,63 @@ public class SynchronizedCache implements Cache { // get*/put*/clear加个锁
   }
 
   @Override
-  public synchronized int getSize() {
-    return delegate.getSize();
+  public int getSize() {
+    lock.lock();
+    try {
+      return delegate.getSize();
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override
-  public synchronized void putObject(Object key, Object object) {
-    delegate.putObject(key, object);
+  public void putObject(Object key, Object object) {
+    lock.lock();
+    try {
+      delegate.putObject(key, object);
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override
-  public synchronized Object getObject(Object key) {
-    return delegate.getObject(key);
+  public void putObjects(Map<Object, Object> entries) {
+    lock.lock(); // 整批只加一次锁
+    try {
+      CacheUtils.putObjects(delegate, entries);
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override
-  public synchronized Object removeObject(Object key) {
-    return delegate.removeObject(key);
+  public Object getObject(Object key) {
+    lock.lock();
+    try {
+      return delegate.getObject(key);
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override
-  public synchronized void clear() {
-    delegate.clear();
+  public Object removeObject(Object key) {
+    lock.lock();
+    try {
+      return delegate.removeObject(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.lock();
+    try {
+      delegate.clear();
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override
@@ -0,0 +1,368 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+
+/**
+ * Window TinyLFU cache. Entries are kept in a ConcurrentHashMap so reads never
+ * take a lock; each hit is recorded in a small lossy striped buffer and replayed
+ * against the eviction policy by whichever thread next holds the eviction lock.
+ * <p>
+ * The policy is W-TinyLFU: new entries enter a small LRU window (1% of the size),
+ * then compete for admission into a segmented LRU main space (20% probation,
+ * 80% protected). A candidate leaving the window only displaces the probation
+ * victim when a frequency sketch says it has been used more often.
+ * <p>
+ * Unlike the other eviction decorators this one stores the entries itself, and it is
+ * safe without a SynchronizedCache. Puts, removals, evictions and clears are still
+ * written through to the delegate, under the eviction lock, so that the statistics
+ * and snapshot decorators below see them; reads never reach the delegate.
+ *
+ * @see FrequencySketch
+ */
+public class TinyLfuCache implements Cache { // W-TinyLFU淘汰算法的并发Cache,读不加锁
+
+  private static final int WINDOW = 0; // 窗口区(LRU)
+  private static final int PROBATION = 1; // 主区的试用段
+  private static final int PROTECTED = 2; // 主区的保护段
+  private static final int REMOVED = -1; // 已移出缓存
+
+  private static final int MAX_READ_BUFFERS = 16;
+
+  private final Cache delegate;
+  private final ConcurrentHashMap<Object, Node> data = new ConcurrentHashMap<Object, Node>();
+  private final ReentrantLock evictionLock = new ReentrantLock(); // 保护以下淘汰策略的状态
+  private final ReadBuffer[] readBuffers; // 按线程分段的读缓冲,满了就丢弃访问记录
+  private final AccessQueue window = new AccessQueue();
+  private final AccessQueue probation = new AccessQueue();
+  private final AccessQueue protectedQueue = new AccessQueue();
+  private final FrequencySketch sketch;
+  private int maximumSize;
+  private int windowMaximum;
+  private int protectedMaximum;
+
+  public TinyLfuCache(Cache delegate) {
+    this.delegate = delegate;
+    int stripes = Integer.highestOneBit(Math.min(Runtime.getRuntime().availableProcessors(), MAX_READ_BUFFERS) * 2 - 1);
+    this.readBuffers = new ReadBuffer[stripes];
+    for (int i = 0; i < stripes; i++) {
+      readBuffers[i] = new ReadBuffer();
+    }
+    this.sketch = new FrequencySketch(1024);
+    setSize(1024);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return data.size();
+  }
+
+  public void setSize(final int size) {
+    evictionLock.lock();
+    try {
+      maximumSize = Math.max(size, 1);
+      windowMaximum = Math.max(maximumSize / 100, 1);
+      protectedMaximum = (maximumSize - windowMaximum) * 80 / 100;
+      sketch.ensureCapacity(maximumSize);
+      evict();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    evictionLock.lock();
+    try {
+      drainReadBuffers();
+      Node node = data.get(key);
+      if (node != null) {
+        node.value = value;
+        delegate.putObject(key, value);
+        onAccess(node);
+      } else {
+        node = new Node(key, value);
+        data.put(key, node);
+        delegate.putObject(key, value);
+        onAdd(node);
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Node node = data.get(key);
+    if (node == null) {
+      return null;
+    }
+    afterRead(node);
+    return node.value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    evictionLock.lock();
+    try {
+      Node node = data.get(key);
+      if (node == null) {
+        return null;
+      }
+      remove(node);
+      return node.value;
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    evictionLock.lock();
+    try {
+      drainReadBuffers();
+      // 频率统计保留下来,清空缓存(如每次update刷新)不会丢掉热点信息
+      window.clear();
+      probation.clear();
+      protectedQueue.clear();
+      data.clear();
+      delegate.clear();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  private void afterRead(Node node) {
+    ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+    if (buffer.offer(node) && evictionLock.tryLock()) { // 缓冲已过半时才尝试回放,拿不到锁就算了
+      try {
+        drainReadBuffers();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  private void drainReadBuffers() {
+    for (ReadBuffer buffer : readBuffers) {
+      buffer.drainTo(this);
+    }
+  }
+
+  private void onAccess(Node node) {
+    if (node.queue == REMOVED) { // 记录访问时该项已被淘汰
+      return;
+    }
+    sketch.increment(node.key);
+    if (node.queue == WINDOW) {
+      window.moveToBack(node);
+    } else if (node.queue == PROBATION) { // 试用段再次命中则晋升到保护段
+      probation.unlink(node);
+      node.queue = PROTECTED;
+      protectedQueue.linkLast(node);
+      while (protectedQueue.size > protectedMaximum) {
+        Node demoted = protectedQueue.first();
+        protectedQueue.unlink(demoted);
+        demoted.queue = PROBATION;
+        probation.linkLast(demoted);
+      }
+    } else {
+      protectedQueue.moveToBack(node);
+    }
+  }
+
+  private void onAdd(Node node) {
+    sketch.increment(node.key);
+    node.queue = WINDOW;
+    window.linkLast(node);
+    while (window.size > windowMaximum) { // 窗口溢出的项进入试用段等待准入
+      Node candidate = window.first();
+      window.unlink(candidate);
+      candidate.queue = PROBATION;
+      probation.linkLast(candidate);
+    }
+    evict();
+  }
+
+  private void evict() {
+    while (window.size + probation.size + protectedQueue.size > maximumSize) {
+      Node victim = probation.first();
+      if (victim == null) {
+        victim = protectedQueue.first() != null ? protectedQueue.first() : window.first();
+        remove(victim);
+        continue;
+      }
+      Node candidate = probation.last();
+      if (candidate != victim && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+        remove(victim); // 候选者更常用,淘汰试用段最老的项
+      } else {
+        remove(candidate);
+      }
+    }
+  }
+
+  private void remove(Node node) {
+    if (node.queue == WINDOW) {
+      window.unlink(node);
+    } else if (node.queue == PROBATION) {
+      probation.unlink(node);
+    } else if (node.queue == PROTECTED) {
+      protectedQueue.unlink(node);
+    }
+    node.queue = REMOVED;
+    data.remove(node.key, node);
+    delegate.removeObject(node.key); // 淘汰也要让下层知道
+  }
+
+  private static final class Node {
+    final Object key;
+    volatile Object value;
+    int queue = REMOVED; // 以下字段由evictionLock保护
+    Node prev;
+    Node next;
+
+    Node(Object key, Object value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /*
+   * Intrusive doubly linked list in access order, head is the least recently used.
+   */
+  private static final class AccessQueue {
+    private Node head;
+    private Node tail;
+    int size;
+
+    Node first() {
+      return head;
+    }
+
+    Node last() {
+      return tail;
+    }
+
+    void linkLast(Node node) {
+      node.prev = tail;
+      node.next = null;
+      if (tail == null) {
+        head = node;
+      } else {
+        tail.next = node;
+      }
+      tail = node;
+      size++;
+    }
+
+    void unlink(Node node) {
+      if (node.prev == null) {
+        head = node.next;
+      } else {
+        node.prev.next = node.next;
+      }
+      if (node.next == null) {
+        tail = node.prev;
+      } else {
+        node.next.prev = node.prev;
+      }
+      node.prev = null;
+      node.next = null;
+      size--;
+    }
+
+    void moveToBack(Node node) {
+      if (node != tail) {
+        unlink(node);
+        linkLast(node);
+      }
+    }
+
+    void clear() {
+      for (Node node = head; node != null; ) {
+        Node next = node.next;
+        node.queue = REMOVED;
+        node.prev = null;
+        node.next = null;
+        node = next;
+      }
+      head = null;
+      tail = null;
+      size = 0;
+    }
+  }
+
+  /*
+   * Bounded, lossy ring buffer of recent hits. Producers claim a slot with a CAS
+   * on the write counter; the single consumer holding the eviction lock drains it.
+   */
+  private static final class ReadBuffer {
+    private static final int SIZE = 16;
+    private static final int MASK = SIZE - 1;
+
+    private final AtomicLong writeCounter = new AtomicLong();
+    private final AtomicReferenceArray<Node> slots = new AtomicReferenceArray<Node>(SIZE);
+    private volatile long readCounter;
+
+    /* Records the hit and returns true once the buffer is at least half full. */
+    boolean offer(Node node) {
+      long head = readCounter;
+      long tail = writeCounter.get();
+      long pending = tail - head;
+      if (pending >= SIZE) { // 缓冲已满,丢弃本次访问记录
+        return true;
+      }
+      if (writeCounter.compareAndSet(tail, tail + 1)) {
+        slots.lazySet((int) (tail & MASK), node);
+        return pending + 1 >= SIZE / 2;
+      }
+      return false; // 竞争失败同样丢弃
+    }
+
+    void drainTo(TinyLfuCache cache) {
+      long head = readCounter;
+      long tail = writeCounter.get();
+      for (; head < tail; head++) {
+        int index = (int) (head & MASK);
+        Node node = slots.get(index);
+        if (node == null) { // 生产者已占位但还未写入
+          break;
+        }
+        slots.lazySet(index, null);
+        cache.onAccess(node);
+      }
+      readCounter = head;
+    }
+  }
+
+}
@@ -22,6 +22,7 @@ import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheUtils;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
@@ -32,6 +33,8 @@ import org.apache.ibatis.logging.LogFactory;
  * Entries are sent to the cache when commit is called or discarded if the Session is rolled back. 
  * Blocking cache support has been added. Therefore any get() that returns a cache miss 
  * will be followed by a put() so any lock associated with the key can be released. 
+ * The locks belong to this buffer rather than to the calling thread, see
+ * {@code BlockingCache.bindLockOwner}, as a session may run on several threads.
  * 
  * @author Clinton Begin
  * @author Eduardo Macarron
@@ -65,7 +68,13 @@ public class TransactionalCache implements Cache { // 并没有看懂 hama
   @Override
   public Object getObject(Object key) {
     // issue #116
-    Object object = delegate.getObject(key);
+    Object object;
+    Object previousOwner = BlockingCache.bindLockOwner(this);
+    try {
+      object = delegate.getObject(key);
+    } finally {
+      BlockingCache.bindLockOwner(previousOwner);
+    }
     if (object == null) {
       entriesMissedInCache.add(key); // 往entriesMissedInCache加入未命中的key
     }
@@ -102,12 +111,22 @@ public class TransactionalCache implements Cache { // 并没有看懂 hama
     if (clearOnCommit) { // 提交时是否清空缓存
       delegate.clear();
     }
-    flushPendingEntries();
+    Object previousOwner = BlockingCache.bindLockOwner(this);
+    try {
+      flushPendingEntries();
+    } finally {
+      BlockingCache.bindLockOwner(previousOwner);
+    }
     reset();
   }
 
   public void rollback() {
-    unlockMissedEntries();
+    Object previousOwner = BlockingCache.bindLockOwner(this);
+    try {
+      unlockMissedEntries();
+    } finally {
+      BlockingCache.bindLockOwner(previousOwner);
+    }
     reset();
   }
 
@@ -117,15 +136,13 @@ public class TransactionalCache implements Cache { // 并没有看懂 hama
     entriesMissedInCache.clear();
   }
 
-  private void flushPendingEntries() {
-    for (Map.Entry<Object, Object> entry : entriesToAddOnCommit.entrySet()) { // 待加入缓存的项都加入缓存
-      delegate.putObject(entry.getKey(), entry.getValue());
-    }
+  private void flushPendingEntries() { // 整批加入,装饰链上的锁和序列化等只做一次
     for (Object entry : entriesMissedInCache) { // 之前未命中的项都加入缓存 hama
       if (!entriesToAddOnCommit.containsKey(entry)) {
-        delegate.putObject(entry, null);
+        entriesToAddOnCommit.put(entry, null); // 提交后就会清空,不必复制
       }
     }
+    CacheUtils.putObjects(delegate, entriesToAddOnCommit);
   }
 
   private void unlockMissedEntries() {
@@ -0,0 +1,144 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.Weigher;
+import org.apache.ibatis.io.Resources;
+
+/**
+ * Lru cache decorator bounded by the estimated memory of its entries rather than
+ * by their number. Each entry is weighed once when it is put, by default with an
+ * {@link ObjectSizeWeigher}; when the cache is read-write the values reaching this
+ * decorator are already serialized and weigh exactly their byte length.
+ * <p>
+ * Least recently used entries are evicted until the total weight is below
+ * <code>maxBytes</code>. A single value larger than <code>maxBytes</code> is not cached.
+ */
+public class WeightedLruCache implements Cache { // 按内存大小而不是条目数限制的LRU装饰器
+
+  private static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+  private final Cache delegate;
+  private final Map<Object, Long> weights; // <key, weight> access-order
+  private Weigher weigher;
+  private long maxBytes = DEFAULT_MAX_BYTES;
+  private long totalBytes; // 当前缓存项的总估算字节数
+
+  public WeightedLruCache(Cache delegate) {
+    this(delegate, new ObjectSizeWeigher());
+  }
+
+  public WeightedLruCache(Cache delegate, Weigher weigher) {
+    this.delegate = delegate;
+    this.weigher = weigher;
+    this.weights = new LinkedHashMap<Object, Long>(16, .75F, true);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    evict();
+  }
+
+  public long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /* Lets <property name="weigher" value="com.example.MyWeigher"/> be used in mapper XML. */
+  public void setWeigher(String weigherClass) {
+    try {
+      this.weigher = (Weigher) Resources.classForName(weigherClass).newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Error creating weigher " + weigherClass + ".  Cause: " + e, e);
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    long weight = weigher.weigh(key, value);
+    release(key);
+    if (weight > maxBytes) { // 单个缓存项就超过上限,不缓存
+      delegate.removeObject(key);
+      return;
+    }
+    delegate.putObject(key, value);
+    weights.put(key, weight);
+    totalBytes += weight;
+    evict();
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    weights.get(key); // touch
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    release(key);
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+    weights.clear();
+    totalBytes = 0;
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  private void release(Object key) {
+    Long weight = weights.remove(key);
+    if (weight != null) {
+      totalBytes -= weight;
+    }
+  }
+
+  private void evict() { // 从最久未使用的项开始淘汰直到总大小不超过上限
+    Iterator<Map.Entry<Object, Long>> iterator = weights.entrySet().iterator();
+    while (totalBytes > maxBytes && iterator.hasNext()) {
+      Map.Entry<Object, Long> eldest = iterator.next();
+      iterator.remove();
+      totalBytes -= eldest.getValue();
+      delegate.removeObject(eldest.getKey());
+    }
+  }
+
+}
@@ -0,0 +1,300 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.Serializer;
+import org.apache.ibatis.cache.decorators.JavaSerializer;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+
+/**
+ * Cache that keeps serialized values outside the Java heap.
+ * <p>
+ * The configured <code>capacity</code> (in bytes) is split into slabs of
+ * <code>slabSize</code> bytes, allocated on first use as direct buffers or, when a
+ * <code>directory</code> is configured, as memory-mapped regions of a temporary file
+ * in that directory. Entries are appended to the current slab; when every slab is
+ * full the oldest one is recycled and the entries written to it are dropped, so
+ * eviction is FIFO at slab granularity. Only the keys and a small location record
+ * per entry stay on the heap.
+ * <p>
+ * Values must be Serializable and each get returns a fresh copy, as with a read-write
+ * cache; the <code>serializer</code> property works as for
+ * {@link SerializedCache}. Like any custom cache it is not wrapped by MyBatis decorators, so it does its
+ * own locking: reads share a read lock, writes take the write lock.
+ * <pre>
+ * &lt;cache type="OFF_HEAP"&gt;
+ *   &lt;property name="capacity" value="2147483648"/&gt;
+ * &lt;/cache&gt;
+ * </pre>
+ */
+public class OffHeapCache implements Cache { // 把序列化后的缓存项放在堆外内存的cache实现
+
+  private static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+  private static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+
+  private final String id;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Map<Object, Location> index = new ConcurrentHashMap<Object, Location>(); // 堆上只保存key和位置
+  private long capacity = DEFAULT_CAPACITY;
+  private int slabSize = DEFAULT_SLAB_SIZE;
+  private String directory; // 非空时使用该目录下临时文件的内存映射
+  private int slabLength; // 实际的slab大小,不超过capacity
+  private Slab[] slabs;
+  private int current; // 当前写入的slab
+  private RandomAccessFile file;
+  private Serializer serializer = new JavaSerializer();
+
+  public OffHeapCache(String id) {
+    this.id = id;
+    initialize();
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public int getSize() {
+    return index.size();
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  public void setCapacity(long capacity) {
+    this.capacity = capacity;
+    initialize();
+  }
+
+  public int getSlabSize() {
+    return slabSize;
+  }
+
+  public void setSlabSize(int slabSize) {
+    this.slabSize = slabSize;
+    initialize();
+  }
+
+  public String getDirectory() {
+    return directory;
+  }
+
+  public void setDirectory(String directory) {
+    this.directory = directory;
+    initialize();
+  }
+
+  public void setSerializer(String serializer) {
+    this.serializer = SerializedCache.newSerializer(serializer);
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    if (value != null && !(value instanceof Serializable)) {
+      throw new CacheException("OffHeapCache failed to store a non-serializable object: " + value);
+    }
+    byte[] bytes = serializer.serialize(value);
+    lock.writeLock().lock();
+    try {
+      if (bytes.length > slabLength) { // 比一个slab还大,不缓存
+        index.remove(key);
+        return;
+      }
+      Slab slab = slabs[current];
+      if (slab.position + bytes.length > slabLength) {
+        current = (current + 1) % slabs.length;
+        slab = slabs[current];
+        recycle(slab);
+      }
+      ByteBuffer buffer = slab.buffer();
+      buffer.position(slab.position);
+      buffer.put(bytes);
+      index.put(key, new Location(current, slab.position, bytes.length));
+      slab.keys.add(key);
+      slab.position += bytes.length;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    byte[] bytes;
+    lock.readLock().lock();
+    try {
+      Location location = index.get(key);
+      if (location == null) {
+        return null;
+      }
+      bytes = new byte[location.length];
+      ByteBuffer buffer = slabs[location.slab].buffer().duplicate(); // 各读线程使用自己的position
+      buffer.position(location.offset);
+      buffer.get(bytes);
+    } finally {
+      lock.readLock().unlock();
+    }
+    return serializer.deserialize(bytes);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    index.remove(key); // 空间在所在slab被回收时才释放
+    return null;
+  }
+
+  @Override
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      index.clear();
+      for (Slab slab : slabs) {
+        slab.position = 0;
+        slab.keys.clear();
+      }
+      current = 0;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+    return getId().equals(((Cache) o).getId());
+  }
+
+  @Override
+  public int hashCode() {
+    return getId().hashCode();
+  }
+
+  private void recycle(Slab slab) { // 回收最老的slab,丢弃写在其中的缓存项
+    for (Object key : slab.keys) {
+      Location location = index.get(key);
+      if (location != null && location.slab == slab.number) { // 该key后来没有被重新写到别的slab
+        index.remove(key);
+      }
+    }
+    slab.keys.clear();
+    slab.position = 0;
+  }
+
+  private void initialize() {
+    lock.writeLock().lock();
+    try {
+      if (slabSize <= 0 || capacity <= 0) {
+        throw new CacheException("OffHeapCache " + id + " requires a positive capacity and slabSize but was capacity="
+            + capacity + ", slabSize=" + slabSize);
+      }
+      closeFile();
+      slabLength = (int) Math.min(slabSize, capacity);
+      int count = (int) Math.min(Integer.MAX_VALUE, (capacity + slabLength - 1) / slabLength);
+      slabs = new Slab[count];
+      for (int i = 0; i < count; i++) {
+        slabs[i] = new Slab(i);
+      }
+      current = 0;
+      index.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private ByteBuffer allocate(int slab) {
+    if (directory == null) {
+      return ByteBuffer.allocateDirect(slabLength);
+    }
+    try {
+      if (file == null) {
+        File tempFile = File.createTempFile("mybatis-cache-", ".slabs", new File(directory));
+        tempFile.deleteOnExit();
+        file = new RandomAccessFile(tempFile, "rw");
+      }
+      return file.getChannel().map(FileChannel.MapMode.READ_WRITE, (long) slab * slabLength, slabLength);
+    } catch (IOException e) {
+      throw new CacheException("Error mapping cache slab in " + directory + ".  Cause: " + e, e);
+    }
+  }
+
+  private void closeFile() {
+    if (file != null) {
+      try {
+        file.close();
+      } catch (IOException e) {
+        // ignore
+      }
+      file = null;
+    }
+  }
+
+  private class Slab {
+    final int number;
+    final List<Object> keys = new ArrayList<Object>(); // 写在本slab里的key,回收时用
+    ByteBuffer buffer; // 第一次写入时才分配
+    int position;
+
+    Slab(int number) {
+      this.number = number;
+    }
+
+    ByteBuffer buffer() {
+      if (buffer == null) {
+        buffer = allocate(number);
+      }
+      return buffer;
+    }
+  }
+
+  private static class Location {
+    final int slab;
+    final int offset;
+    final int length;
+
+    Location(int slab, int offset, int length) {
+      this.slab = slab;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+}
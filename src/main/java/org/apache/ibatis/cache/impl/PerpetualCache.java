@@ -19,13 +19,14 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 
+import org.apache.ibatis.cache.BulkCache;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
 
 /**
  * @author Clinton Begin
  */
-public class PerpetualCache implements Cache { // 默认cache实现
+public class PerpetualCache implements BulkCache { // 默认cache实现
 
   private String id; // Cache的唯一标识
 
@@ -50,6 +51,11 @@ public class PerpetualCache implements Cache { // 默认cache实现
     cache.put(key, value);
   }
 
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    cache.putAll(entries);
+  }
+
   @Override
   public Object getObject(Object key) {
     return cache.get(key);
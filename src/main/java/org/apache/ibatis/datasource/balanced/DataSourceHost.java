@@ -0,0 +1,169 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.balanced;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+
+/**
+ * One database host of a {@link LoadBalancedDataSource}, with its health and latency.
+ * <p>
+ * The latency is the round trip time of the health check, which runs on its own unpooled
+ * connection so it neither waits for nor disturbs the connections of the pool.
+ */
+public class DataSourceHost {
+
+  private static final int LATENCY_SMOOTHING = 5; // 指数移动平均，新样本占1/5
+
+  private final PooledDataSource dataSource;
+  private volatile UnpooledDataSource pingDataSource; // 健康检查专用，不占用连接池
+  private volatile boolean healthy = true;
+  private volatile long averageLatencyMicros; // 0表示还没有样本
+  private volatile long lastFailureTimestamp;
+  private int currentWeight; // 平滑加权轮询的当前权重，由LoadBalancedDataSource加锁访问
+
+  public DataSourceHost(PooledDataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  public PooledDataSource getDataSource() {
+    return dataSource;
+  }
+
+  public String getUrl() {
+    return dataSource.getUrl();
+  }
+
+  public boolean isHealthy() {
+    return healthy;
+  }
+
+  public long getAverageLatencyMicros() {
+    return averageLatencyMicros;
+  }
+
+  public long getLastFailureTimestamp() {
+    return lastFailureTimestamp;
+  }
+
+  public int getActiveConnectionCount() {
+    return dataSource.getPoolState().getActiveConnectionCount();
+  }
+
+  /*
+   * Checks out a connection from this host
+   */
+  Connection getConnection(String username, String password) throws SQLException {
+    return username == null ? dataSource.getConnection() : dataSource.getConnection(username, password);
+  }
+
+  /*
+   * Opens a new connection to this host, outside of the pool, and runs the ping query of the
+   * pool (or Connection.isValid when pinging is not enabled). Only the round trip is recorded
+   * as latency. How long opening the connection may take is up to the connect timeout of the
+   * driver, which can be set with driver.* properties.
+   *
+   * @param timeoutSeconds - query timeout of the ping, 0 for none
+   * @return True if the host answered
+   */
+  boolean ping(int timeoutSeconds) {
+    Connection connection = null;
+    try {
+      connection = getPingDataSource().getConnection();
+      long start = System.nanoTime();
+      if (dataSource.isPoolPingEnabled()) {
+        Statement statement = connection.createStatement();
+        try {
+          statement.setQueryTimeout(timeoutSeconds);
+          ResultSet rs = statement.executeQuery(dataSource.getPoolPingQuery());
+          rs.close();
+        } finally {
+          statement.close();
+        }
+      } else if (!connection.isValid(timeoutSeconds)) {
+        return false;
+      }
+      recordLatency(System.nanoTime() - start);
+      return true;
+    } catch (SQLException e) {
+      return false;
+    } finally {
+      if (connection != null) {
+        try {
+          connection.close();
+        } catch (SQLException e) {
+          // ignore
+        }
+      }
+    }
+  }
+
+  void markHealthy() {
+    healthy = true;
+  }
+
+  void markUnhealthy() {
+    healthy = false;
+    lastFailureTimestamp = System.currentTimeMillis(); // 只是不再分配到这里，借出的连接不动，坏的空闲连接由连接池的ping丢弃
+  }
+
+  /*
+   * Weight of this host for latency weighted round robin: inversely proportional to its latency
+   */
+  int getWeight() {
+    long latency = averageLatencyMicros;
+    if (latency <= 0) {
+      latency = 1000; // 没有样本时当作1毫秒
+    }
+    return (int) Math.max(1, 1000000L / latency);
+  }
+
+  int getCurrentWeight() {
+    return currentWeight;
+  }
+
+  void setCurrentWeight(int currentWeight) {
+    this.currentWeight = currentWeight;
+  }
+
+  private UnpooledDataSource getPingDataSource() {
+    UnpooledDataSource ping = pingDataSource;
+    if (ping == null) { // 并发时多建一个无妨
+      ping = new UnpooledDataSource(dataSource.getDriver(), dataSource.getUrl(), dataSource.getUsername(),
+          dataSource.getPassword());
+      ping.setDriverProperties(dataSource.getDriverProperties());
+      pingDataSource = ping;
+    }
+    return ping;
+  }
+
+  private void recordLatency(long nanos) {
+    long micros = Math.max(1, nanos / 1000);
+    long average = averageLatencyMicros;
+    averageLatencyMicros = average == 0 ? micros : average + (micros - average) / LATENCY_SMOOTHING; // 并发下丢一两个样本无妨
+  }
+
+  @Override
+  public String toString() {
+    return getUrl() + (healthy ? " (healthy, " : " (unhealthy, ") + averageLatencyMicros + "us)";
+  }
+
+}
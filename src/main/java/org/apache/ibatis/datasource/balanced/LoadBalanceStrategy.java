@@ -0,0 +1,24 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.balanced;
+
+/**
+ * How {@link LoadBalancedDataSource} picks the host for a new connection.
+ */
+public enum LoadBalanceStrategy {
+  LEAST_ACTIVE, // 活动连接最少的host
+  LATENCY_WEIGHTED // 按健康检查测得的延迟加权的轮询，延迟越低权重越高
+}
@@ -0,0 +1,324 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.balanced;
+
+import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * A datasource that spreads connections over several {@link PooledDataSource}s.
+ * <p>
+ * Each checkout goes to the healthy host chosen by the {@link LoadBalanceStrategy}; if that
+ * host fails, the next one is tried and the failed host is marked unhealthy. Marking a host
+ * unhealthy only stops new checkouts from going there: connections in use are left alone,
+ * and broken idle ones are dropped by the ping of the pool. A background check pings every
+ * host periodically, marking hosts unhealthy when the ping fails and healthy again once it
+ * succeeds. Its round trip times are the latencies used by
+ * {@link LoadBalanceStrategy#LATENCY_WEIGHTED}.
+ */
+public class LoadBalancedDataSource implements DataSource { // 多个连接池之间负载均衡和故障转移
+
+  private static final Log log = LogFactory.getLog(LoadBalancedDataSource.class);
+
+  private final List<DataSourceHost> hosts = new CopyOnWriteArrayList<DataSourceHost>(); // 每次取连接都要读,读不加锁
+  private final ReentrantLock weightLock = new ReentrantLock(); // 保护各host的currentWeight
+  private final AtomicInteger nextHost = new AtomicInteger(); // 活动连接数相同时轮流选
+  private LoadBalanceStrategy strategy = LoadBalanceStrategy.LEAST_ACTIVE;
+  private long healthCheckPeriod = 0;
+  private int healthCheckTimeout = 5; // 秒
+  private HealthChecker healthChecker;
+
+  public LoadBalancedDataSource() {
+  }
+
+  public LoadBalancedDataSource(List<PooledDataSource> dataSources) {
+    for (PooledDataSource dataSource : dataSources) {
+      addDataSource(dataSource);
+    }
+  }
+
+  public void addDataSource(PooledDataSource dataSource) {
+    hosts.add(new DataSourceHost(dataSource));
+  }
+
+  public List<DataSourceHost> getHosts() {
+    return Collections.unmodifiableList(new ArrayList<DataSourceHost>(hosts));
+  }
+
+  public LoadBalanceStrategy getStrategy() {
+    return strategy;
+  }
+
+  public void setStrategy(LoadBalanceStrategy strategy) {
+    this.strategy = strategy;
+  }
+
+  public long getHealthCheckPeriod() {
+    return healthCheckPeriod;
+  }
+
+  /*
+   * How often every host is pinged in the background.
+   *
+   * @param milliseconds the period, or 0 to only mark hosts unhealthy on failed checkouts
+   */
+  public synchronized void setHealthCheckPeriod(long milliseconds) {
+    this.healthCheckPeriod = milliseconds;
+    if (healthChecker != null) {
+      healthChecker.cancel();
+      healthChecker = null;
+    }
+    if (milliseconds > 0) {
+      healthChecker = HealthChecker.schedule(this, milliseconds);
+    }
+  }
+
+  public int getHealthCheckTimeout() {
+    return healthCheckTimeout;
+  }
+
+  /*
+   * Query timeout of the health check ping.
+   *
+   * @param seconds the timeout, or 0 for none
+   */
+  public void setHealthCheckTimeout(int seconds) {
+    this.healthCheckTimeout = seconds;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return connect(null, null);
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return connect(username, password);
+  }
+
+  private Connection connect(String username, String password) throws SQLException {
+    List<DataSourceHost> candidates = new ArrayList<DataSourceHost>();
+    for (DataSourceHost host : getHosts()) {
+      if (host.isHealthy()) {
+        candidates.add(host);
+      }
+    }
+    if (candidates.isEmpty()) { // 都不健康时每个都试一下，说不定已经恢复了
+      candidates.addAll(getHosts());
+    }
+    SQLException lastException = null;
+    while (!candidates.isEmpty()) {
+      DataSourceHost host = select(candidates);
+      candidates.remove(host);
+      try {
+        Connection connection = host.getConnection(username, password);
+        if (!host.isHealthy()) {
+          host.markHealthy();
+        }
+        return connection;
+      } catch (SQLException e) {
+        log.warn("Could not get a connection from " + host.getUrl() + ", trying the next host: " + e.getMessage());
+        host.markUnhealthy();
+        lastException = e;
+      }
+    }
+    if (lastException != null) {
+      throw lastException;
+    }
+    throw new SQLException("LoadBalancedDataSource: no data source has been configured.");
+  }
+
+  /*
+   * Chooses a host among the candidates according to the strategy
+   */
+  protected DataSourceHost select(List<DataSourceHost> candidates) {
+    if (candidates.size() == 1) {
+      return candidates.get(0);
+    }
+    if (strategy == LoadBalanceStrategy.LATENCY_WEIGHTED) {
+      return selectWeighted(candidates);
+    }
+    int offset = (nextHost.getAndIncrement() & Integer.MAX_VALUE) % candidates.size();
+    DataSourceHost selected = null;
+    int fewestActive = Integer.MAX_VALUE;
+    for (int i = 0; i < candidates.size(); i++) {
+      DataSourceHost host = candidates.get((offset + i) % candidates.size());
+      int active = host.getActiveConnectionCount();
+      if (active < fewestActive) {
+        fewestActive = active;
+        selected = host;
+      }
+    }
+    return selected;
+  }
+
+  private DataSourceHost selectWeighted(List<DataSourceHost> candidates) { // nginx的平滑加权轮询
+    weightLock.lock();
+    try {
+      int totalWeight = 0;
+      DataSourceHost selected = null;
+      for (DataSourceHost host : candidates) {
+        int weight = host.getWeight();
+        totalWeight += weight;
+        host.setCurrentWeight(host.getCurrentWeight() + weight);
+        if (selected == null || host.getCurrentWeight() > selected.getCurrentWeight()) {
+          selected = host;
+        }
+      }
+      selected.setCurrentWeight(selected.getCurrentWeight() - totalWeight);
+      return selected;
+    } finally {
+      weightLock.unlock();
+    }
+  }
+
+  /*
+   * Pings every host, marking it healthy or unhealthy. Called by the background check.
+   */
+  public void checkHosts() {
+    for (DataSourceHost host : getHosts()) {
+      boolean reachable = host.ping(healthCheckTimeout);
+      if (reachable && !host.isHealthy()) {
+        log.warn("Data source " + host.getUrl() + " is reachable again.");
+        host.markHealthy();
+      } else if (!reachable && host.isHealthy()) {
+        log.warn("Data source " + host.getUrl() + " failed its health check.");
+        host.markUnhealthy();
+      }
+    }
+  }
+
+  /*
+   * Closes all connections of all hosts
+   */
+  public void forceCloseAll() {
+    for (DataSourceHost host : getHosts()) {
+      host.getDataSource().forceCloseAll();
+    }
+  }
+
+  @Override
+  public void setLoginTimeout(int loginTimeout) throws SQLException {
+    DriverManager.setLoginTimeout(loginTimeout);
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return DriverManager.getLoginTimeout();
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter logWriter) throws SQLException {
+    DriverManager.setLogWriter(logWriter);
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return DriverManager.getLogWriter();
+  }
+
+  protected void finalize() throws Throwable {
+    if (healthChecker != null) {
+      healthChecker.cancel();
+    }
+    super.finalize();
+  }
+
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    throw new SQLException(getClass().getName() + " is not a wrapper.");
+  }
+
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return false;
+  }
+
+  public Logger getParentLogger() {
+    return Logger.getLogger(Logger.GLOBAL_LOGGER_NAME); // requires JDK version 1.6
+  }
+
+  /**
+   * Runs {@link LoadBalancedDataSource#checkHosts()} periodically on a shared daemon thread.
+   */
+  private static class HealthChecker implements Runnable {
+
+    private static final ScheduledExecutorService EXECUTOR = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "mybatis-datasource-health-check-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    private final WeakReference<LoadBalancedDataSource> dataSourceRef; // 弱引用，不妨碍数据源被回收
+    private volatile ScheduledFuture<?> future;
+
+    private HealthChecker(LoadBalancedDataSource dataSource) {
+      this.dataSourceRef = new WeakReference<LoadBalancedDataSource>(dataSource);
+    }
+
+    static HealthChecker schedule(LoadBalancedDataSource dataSource, long period) {
+      HealthChecker checker = new HealthChecker(dataSource);
+      checker.future = EXECUTOR.scheduleWithFixedDelay(checker, period, period, TimeUnit.MILLISECONDS);
+      return checker;
+    }
+
+    void cancel() {
+      ScheduledFuture<?> scheduled = future;
+      if (scheduled != null) {
+        scheduled.cancel(false);
+      }
+    }
+
+    @Override
+    public void run() {
+      LoadBalancedDataSource dataSource = dataSourceRef.get();
+      if (dataSource == null) {
+        cancel();
+        return;
+      }
+      try {
+        dataSource.checkHosts();
+      } catch (Throwable t) {
+        log.warn("Data source health check failed: " + t);
+      }
+    }
+  }
+
+}
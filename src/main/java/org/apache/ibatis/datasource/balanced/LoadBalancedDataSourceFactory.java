@@ -0,0 +1,102 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.balanced;
+
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.DataSourceException;
+import org.apache.ibatis.datasource.DataSourceFactory;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
+
+/**
+ * Builds a {@link LoadBalancedDataSource} with one pooled datasource per url.
+ * <p>
+ * <code>urls</code> lists the JDBC urls separated by commas, <code>strategy</code>,
+ * <code>healthCheckPeriod</code> and <code>healthCheckTimeout</code> configure the balancing, and every other property
+ * (driver, username, pool settings, <code>driver.*</code>) is applied to each host as
+ * with {@link PooledDataSourceFactory}. A property prefixed with <code>host.N.</code>
+ * only applies to the N-th url (starting at 0), e.g. <code>host.0.username</code>.
+ */
+public class LoadBalancedDataSourceFactory implements DataSourceFactory {
+
+  public static final String URLS_PROPERTY = "urls";
+  public static final String STRATEGY_PROPERTY = "strategy";
+  public static final String HEALTH_CHECK_PERIOD_PROPERTY = "healthCheckPeriod";
+  public static final String HEALTH_CHECK_TIMEOUT_PROPERTY = "healthCheckTimeout";
+  private static final String HOST_PROPERTY_PREFIX = "host.";
+
+  private final LoadBalancedDataSource dataSource = new LoadBalancedDataSource();
+
+  @Override
+  public void setProperties(Properties properties) {
+    String urls = properties.getProperty(URLS_PROPERTY);
+    if (urls == null || urls.trim().length() == 0) {
+      throw new DataSourceException("LoadBalancedDataSourceFactory requires the '" + URLS_PROPERTY + "' property.");
+    }
+    Properties common = new Properties();
+    for (Object key : properties.keySet()) {
+      String propertyName = (String) key;
+      if (!propertyName.equals(URLS_PROPERTY) && !propertyName.equals(STRATEGY_PROPERTY)
+          && !propertyName.equals(HEALTH_CHECK_PERIOD_PROPERTY) && !propertyName.equals(HEALTH_CHECK_TIMEOUT_PROPERTY)
+          && !propertyName.startsWith(HOST_PROPERTY_PREFIX)) {
+        common.setProperty(propertyName, properties.getProperty(propertyName));
+      }
+    }
+
+    String[] urlList = urls.split(",");
+    for (int i = 0; i < urlList.length; i++) { // 每个url建一个连接池
+      Properties hostProperties = new Properties();
+      hostProperties.putAll(common);
+      hostProperties.setProperty("url", urlList[i].trim());
+      String hostPrefix = HOST_PROPERTY_PREFIX + i + ".";
+      for (Object key : properties.keySet()) {
+        String propertyName = (String) key;
+        if (propertyName.startsWith(hostPrefix)) {
+          hostProperties.setProperty(propertyName.substring(hostPrefix.length()), properties.getProperty(propertyName));
+        }
+      }
+      PooledDataSourceFactory hostFactory = new PooledDataSourceFactory();
+      hostFactory.setProperties(hostProperties);
+      dataSource.addDataSource((PooledDataSource) hostFactory.getDataSource());
+    }
+
+    String strategy = properties.getProperty(STRATEGY_PROPERTY);
+    if (strategy != null) {
+      try {
+        dataSource.setStrategy(LoadBalanceStrategy.valueOf(strategy.toUpperCase()));
+      } catch (IllegalArgumentException e) {
+        throw new DataSourceException("Unknown load balance strategy: " + strategy, e);
+      }
+    }
+    String healthCheckTimeout = properties.getProperty(HEALTH_CHECK_TIMEOUT_PROPERTY);
+    if (healthCheckTimeout != null) {
+      dataSource.setHealthCheckTimeout(Integer.parseInt(healthCheckTimeout));
+    }
+    String healthCheckPeriod = properties.getProperty(HEALTH_CHECK_PERIOD_PROPERTY);
+    if (healthCheckPeriod != null) {
+      dataSource.setHealthCheckPeriod(Long.parseLong(healthCheckPeriod));
+    }
+  }
+
+  @Override
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+}
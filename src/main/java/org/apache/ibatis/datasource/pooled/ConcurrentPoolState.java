@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import org.apache.ibatis.util.StripedCounter;
+
+/**
+ * Statistics of a {@link ConcurrentPooledDataSource}. The counters are striped
+ * so that recording them never serializes the threads checking connections in and out.
+ */
+public class ConcurrentPoolState extends PoolState { // 用分段计数器代替synchronized的统计
+
+  protected final StripedCounter requests = new StripedCounter(); // 请求计数
+  protected final StripedCounter requestTime = new StripedCounter(); // 累计请求时间
+  protected final StripedCounter checkoutTime = new StripedCounter(); // 累计checkout时间
+  protected final StripedCounter claimedOverdueConnections = new StripedCounter(); // 过期连接计数
+  protected final StripedCounter checkoutTimeOfOverdueConnections = new StripedCounter(); // 过期连接的累计checkout时间
+  protected final StripedCounter waitTime = new StripedCounter(); // 累计等待时间
+  protected final StripedCounter hadToWait = new StripedCounter(); // 等待连接的请求数
+  protected final StripedCounter badConnections = new StripedCounter(); // 无效连接数
+
+  public ConcurrentPoolState(ConcurrentPooledDataSource dataSource) {
+    super(dataSource);
+  }
+
+  @Override
+  public long getRequestCount() {
+    return requests.sum();
+  }
+
+  @Override
+  public long getAverageRequestTime() {
+    long count = requests.sum();
+    return count == 0 ? 0 : requestTime.sum() / count;
+  }
+
+  @Override
+  public long getAverageWaitTime() {
+    long count = hadToWait.sum();
+    return count == 0 ? 0 : waitTime.sum() / count;
+  }
+
+  @Override
+  public long getHadToWaitCount() {
+    return hadToWait.sum();
+  }
+
+  @Override
+  public long getBadConnectionCount() {
+    return badConnections.sum();
+  }
+
+  @Override
+  public long getClaimedOverdueConnectionCount() {
+    return claimedOverdueConnections.sum();
+  }
+
+  @Override
+  public long getAverageOverdueCheckoutTime() {
+    long count = claimedOverdueConnections.sum();
+    return count == 0 ? 0 : checkoutTimeOfOverdueConnections.sum() / count;
+  }
+
+  @Override
+  public long getAverageCheckoutTime() {
+    long count = requests.sum();
+    return count == 0 ? 0 : checkoutTime.sum() / count;
+  }
+
+  @Override
+  public int getIdleConnectionCount() {
+    return ((ConcurrentPooledDataSource) dataSource).getIdleConnectionCount();
+  }
+
+  @Override
+  public int getActiveConnectionCount() {
+    return ((ConcurrentPooledDataSource) dataSource).getActiveConnectionCount();
+  }
+
+}
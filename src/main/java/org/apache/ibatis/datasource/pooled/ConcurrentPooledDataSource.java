@@ -0,0 +1,428 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * A thread-safe database connection pool that does not serialize checkouts
+ * and checkins on a single monitor.
+ * <p>
+ * Connections are kept in a {@link ConnectionBag}: a thread first gets back the
+ * connections it returned recently, then any idle connection, and only waits
+ * when the pool is exhausted, in which case returned connections are handed to
+ * waiters in FIFO order. Configuration and statistics are the same as {@link PooledDataSource}.
+ */
+public class ConcurrentPooledDataSource extends PooledDataSource { // 无锁版本的连接池
+
+  private static final Log log = LogFactory.getLog(ConcurrentPooledDataSource.class);
+
+  private final ConcurrentPoolState state = new ConcurrentPoolState(this);
+
+  private final ConnectionBag bag = new ConnectionBag(); // 保存所有真连接
+  private final AtomicInteger totalConnections = new AtomicInteger(); // 已创建的真连接数
+
+  public ConcurrentPooledDataSource() {
+    super();
+  }
+
+  public ConcurrentPooledDataSource(UnpooledDataSource dataSource) {
+    super(dataSource);
+  }
+
+  public ConcurrentPooledDataSource(String driver, String url, String username, String password) {
+    super(driver, url, username, password);
+  }
+
+  public ConcurrentPooledDataSource(String driver, String url, Properties driverProperties) {
+    super(driver, url, driverProperties);
+  }
+
+  public ConcurrentPooledDataSource(ClassLoader driverClassLoader, String driver, String url, String username, String password) {
+    super(driverClassLoader, driver, url, username, password);
+  }
+
+  public ConcurrentPooledDataSource(ClassLoader driverClassLoader, String driver, String url, Properties driverProperties) {
+    super(driverClassLoader, driver, url, driverProperties);
+  }
+
+  @Override
+  public ConcurrentPoolState getPoolState() {
+    return state;
+  }
+
+  public int getIdleConnectionCount() {
+    return bag.getCount(ConnectionBag.STATE_NOT_IN_USE);
+  }
+
+  public int getActiveConnectionCount() {
+    return bag.getCount(ConnectionBag.STATE_IN_USE);
+  }
+
+  /*
+   * Closes all active and idle connections in the pool
+   */
+  @Override
+  public void forceCloseAll() {
+    expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(), dataSource.getUsername(), dataSource.getPassword());
+    for (ConnectionBag.Entry entry : bag.values()) {
+      PooledConnection holder = entry.getHolder();
+      if (holder != null) {
+        holder.invalidate(); // 借出去的连接标记为无效，归还时会被丢弃
+      }
+      if (bag.remove(entry)) {
+        totalConnections.decrementAndGet();
+      }
+      closeRealConnection(entry.getRealConnection());
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("ConcurrentPooledDataSource forcefully closed/removed all connections.");
+    }
+  }
+
+  @Override
+  protected void pushConnection(PooledConnection conn) throws SQLException {
+    ConnectionBag.Entry entry = ((BagConnection) conn).entry;
+    if (entry.getHolder() != conn || !entry.compareAndSet(ConnectionBag.STATE_IN_USE, ConnectionBag.STATE_RESERVED)) {
+      // 已经被当作过期连接回收了，或者被重复close
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
+      }
+      conn.invalidate();
+      state.badConnections.increment();
+      return;
+    }
+    entry.setHolder(null);
+    state.checkoutTime.add(conn.getCheckoutTime());
+    state.checkoutTimeHistogram.record(conn.getCheckoutTime());
+    try {
+      if (conn.isValid()) {
+        Connection realConn = entry.getRealConnection();
+        if (!realConn.getAutoCommit()) {
+          realConn.rollback(); // 回滚
+        }
+        conn.invalidate(); // 老的代理连接标记为无效
+        if (conn.getConnectionTypeCode() == expectedConnectionTypeCode && !isExpired(entry.getCreatedTimestamp())
+            && (getIdleConnectionCount() < poolMaximumIdleConnections || bag.getWaitingThreadCount() > 0)) {
+          entry.setLastUsedTimestamp(conn.getLastUsedTimestamp());
+          bag.requite(entry); // 放回bag，有等待的线程则直接交给它
+          if (log.isDebugEnabled()) {
+            log.debug("Returned connection " + conn.getRealHashCode() + " to pool.");
+          }
+        } else {
+          discard(entry);
+          if (log.isDebugEnabled()) {
+            log.debug("Closed connection " + conn.getRealHashCode() + ".");
+          }
+        }
+      } else {
+        if (log.isDebugEnabled()) {
+          log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
+        }
+        conn.invalidate();
+        state.badConnections.increment();
+        discard(entry);
+      }
+    } catch (SQLException e) {
+      conn.invalidate();
+      discard(entry);
+      throw e;
+    }
+  }
+
+  @Override
+  protected void housekeep() {
+    for (ConnectionBag.Entry entry : bag.values()) {
+      if (!entry.compareAndSet(ConnectionBag.STATE_NOT_IN_USE, ConnectionBag.STATE_RESERVED)) {
+        continue; // 正在使用的连接不管
+      }
+      long idleTime = System.currentTimeMillis() - entry.getLastUsedTimestamp();
+      if (isExpired(entry.getCreatedTimestamp())
+          || (poolMaximumIdleTime > 0 && idleTime > poolMaximumIdleTime && getIdleConnectionCount() >= poolMinimumIdleConnections)) {
+        if (log.isDebugEnabled()) {
+          log.debug("Housekeeper closed idle connection " + entry.getRealConnection().hashCode() + ".");
+        }
+        discard(entry);
+      } else if (poolPingEnabled && poolKeepAliveTime > 0 && idleTime > poolKeepAliveTime
+          && !executePingQuery(entry.getRealConnection())) {
+        state.badConnections.increment();
+        discard(entry);
+      } else {
+        if (poolPingEnabled && poolKeepAliveTime > 0 && idleTime > poolKeepAliveTime) {
+          entry.setLastUsedTimestamp(System.currentTimeMillis());
+        }
+        bag.requite(entry);
+      }
+    }
+    while (getIdleConnectionCount() < poolMinimumIdleConnections) { // 补足最小空闲连接
+      try {
+        ConnectionBag.Entry entry = createEntry();
+        if (entry == null) {
+          break;
+        }
+        bag.requite(entry);
+      } catch (SQLException e) {
+        log.warn("Housekeeper could not open a connection: " + e.getMessage());
+        break;
+      }
+    }
+  }
+
+  @Override
+  protected PooledConnection popConnection(String username, String password) throws SQLException {
+    boolean countedWait = false;
+    long waitTime = 0;
+    long t = System.currentTimeMillis();
+    int localBadConnectionCount = 0;
+
+    while (true) {
+      ConnectionBag.Entry entry = bag.tryBorrow(); // 无竞争时一次CAS即可拿到连接
+      if (entry == null) {
+        bag.beginWait();
+        try {
+          entry = bag.tryBorrow(); // 登记为等待者后再扫描一次，保证不会错过刚归还的连接
+          if (entry == null) {
+            entry = createEntry();
+          }
+          if (entry == null) {
+            entry = claimOverdueEntry();
+          }
+          if (entry == null) {
+            if (!countedWait) {
+              state.hadToWait.increment();
+              countedWait = true;
+            }
+            if (log.isDebugEnabled()) {
+              log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
+            }
+            long wt = System.currentTimeMillis();
+            entry = bag.poll(poolTimeToWait > 0 ? poolTimeToWait : Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            state.waitTime.add(System.currentTimeMillis() - wt);
+            waitTime += System.currentTimeMillis() - wt;
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        } finally {
+          bag.endWait();
+        }
+        if (entry == null) {
+          continue; // 等待超时，重新尝试
+        }
+      }
+
+      PooledConnection conn = new BagConnection(entry, this);
+      conn.setCreatedTimestamp(entry.getCreatedTimestamp());
+      conn.setLastUsedTimestamp(entry.getLastUsedTimestamp());
+      try {
+        if (conn.isValid()) {
+          if (!conn.getRealConnection().getAutoCommit()) {
+            conn.getRealConnection().rollback();
+          }
+          long now = System.currentTimeMillis();
+          conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
+          conn.setCheckoutTimestamp(now);
+          conn.setLastUsedTimestamp(now);
+          if (poolLeakDetectionThreshold > 0) {
+            conn.setCheckoutStackTrace(new Throwable("Connection checked out here"));
+          }
+          if (countedWait) {
+            state.waitTimeHistogram.record(waitTime);
+          }
+          entry.setHolder(conn);
+          state.requests.increment();
+          state.requestTime.add(now - t);
+          return conn;
+        }
+      } catch (SQLException e) {
+        discard(entry);
+        throw e;
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
+      }
+      state.badConnections.increment();
+      localBadConnectionCount++;
+      discard(entry);
+      if (localBadConnectionCount > (poolMaximumIdleConnections + 3)) {
+        if (log.isDebugEnabled()) {
+          log.debug("ConcurrentPooledDataSource: Could not get a good connection to the database.");
+        }
+        throw new SQLException("ConcurrentPooledDataSource: Could not get a good connection to the database.");
+      }
+    }
+
+    if (log.isDebugEnabled()) {
+      log.debug("ConcurrentPooledDataSource: Interrupted while waiting for a connection.");
+    }
+    throw new SQLException("ConcurrentPooledDataSource: Interrupted while waiting for a connection.");
+  }
+
+  @Override
+  protected List<PooledConnection> getCheckedOutConnections() {
+    List<PooledConnection> connections = new ArrayList<PooledConnection>();
+    for (ConnectionBag.Entry entry : bag.values()) {
+      PooledConnection holder = entry.getHolder();
+      if (holder != null) {
+        connections.add(holder);
+      }
+    }
+    return connections;
+  }
+
+  /*
+   * Opens a new physical connection if the pool has not reached its maximum size
+   *
+   * @return the new entry, IN_USE by the caller, or null if the pool is full
+   */
+  private ConnectionBag.Entry createEntry() throws SQLException {
+    if (!reserveSlot()) {
+      return null;
+    }
+    Connection realConn;
+    try {
+      realConn = dataSource.getConnection();
+    } catch (SQLException e) {
+      totalConnections.decrementAndGet();
+      throw e;
+    } catch (RuntimeException e) {
+      totalConnections.decrementAndGet();
+      throw e;
+    }
+    ConnectionBag.Entry entry = bag.add(realConn);
+    if (log.isDebugEnabled()) {
+      log.debug("Created connection " + realConn.hashCode() + ".");
+    }
+    return entry;
+  }
+
+  private boolean reserveSlot() {
+    while (true) {
+      int total = totalConnections.get();
+      if (total >= poolMaximumActiveConnections) {
+        return false;
+      }
+      if (totalConnections.compareAndSet(total, total + 1)) { // 先占位再建连接
+        return true;
+      }
+    }
+  }
+
+  @Override
+  protected boolean addIdleConnection(Connection realConn) {
+    if (getIdleConnectionCount() >= poolMaximumIdleConnections || !reserveSlot()) {
+      return false;
+    }
+    bag.requite(bag.add(realConn));
+    return true;
+  }
+
+  /*
+   * Takes over a connection that has been checked out for longer than poolMaximumCheckoutTime
+   *
+   * @return the claimed entry, IN_USE by the caller, or null if no connection is overdue
+   */
+  private ConnectionBag.Entry claimOverdueEntry() throws SQLException {
+    for (ConnectionBag.Entry entry : bag.values()) {
+      PooledConnection holder = entry.getHolder(); // holder非空说明连接确实已借出
+      if (holder == null || entry.getState() != ConnectionBag.STATE_IN_USE) {
+        continue;
+      }
+      long checkoutTime = holder.getCheckoutTime();
+      if (checkoutTime > poolMaximumCheckoutTime
+          && entry.compareAndSet(ConnectionBag.STATE_IN_USE, ConnectionBag.STATE_RESERVED)) {
+        if (entry.getHolder() != holder) { // 期间被归还又被别人借走了
+          entry.setState(ConnectionBag.STATE_IN_USE);
+          continue;
+        }
+        holder.invalidate(); // 老的持有者再用就会报错
+        entry.setHolder(null);
+        state.claimedOverdueConnections.increment();
+        state.checkoutTimeOfOverdueConnections.add(checkoutTime);
+        state.checkoutTime.add(checkoutTime);
+        state.checkoutTimeHistogram.record(checkoutTime);
+        reportOverdueConnection(holder);
+        try {
+          if (!entry.getRealConnection().getAutoCommit()) {
+            entry.getRealConnection().rollback();
+          }
+        } catch (SQLException e) {
+          discard(entry);
+          throw e;
+        }
+        entry.setState(ConnectionBag.STATE_IN_USE);
+        if (log.isDebugEnabled()) {
+          log.debug("Claimed overdue connection " + holder.getRealHashCode() + ".");
+        }
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /*
+   * Removes an entry owned by the caller from the pool and closes its connection.
+   * If threads are waiting, a replacement connection is opened for them.
+   */
+  private void discard(ConnectionBag.Entry entry) {
+    if (bag.remove(entry)) {
+      totalConnections.decrementAndGet();
+    }
+    closeRealConnection(entry.getRealConnection());
+    if (bag.getWaitingThreadCount() > 0) { // 空出了位置，给等待的线程补一个连接
+      try {
+        ConnectionBag.Entry replacement = createEntry();
+        if (replacement != null) {
+          bag.requite(replacement);
+        }
+      } catch (SQLException e) {
+        if (log.isDebugEnabled()) {
+          log.debug("Could not open a replacement connection: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * A pooled connection that remembers the bag entry it was borrowed from.
+   */
+  private static class BagConnection extends PooledConnection {
+
+    private final ConnectionBag.Entry entry;
+
+    public BagConnection(ConnectionBag.Entry entry, ConcurrentPooledDataSource dataSource) {
+      super(entry.getRealConnection(), dataSource);
+      this.entry = entry;
+      if (dataSource.getPoolPreparedStatementCacheSize() > 0) {
+        if (entry.getStatementCache() == null) {
+          entry.setStatementCache(new PreparedStatementCache(dataSource.getPoolPreparedStatementCacheSize()));
+        }
+        setStatementCache(entry.getStatementCache()); // statement缓存跟着真连接走
+      }
+    }
+  }
+
+}
@@ -0,0 +1,232 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Concurrent container of pooled physical connections.
+ * <p>
+ * Borrowing first looks at the connections recently returned by the calling thread,
+ * then scans the shared list, and finally waits on a fair hand-off queue that
+ * returning threads feed directly while there are waiters. Each entry carries its
+ * own state so that checkout and checkin are single CAS operations when uncontended.
+ */
+class ConnectionBag { // 无锁的连接容器，借鉴了HikariCP的ConcurrentBag
+
+  static final int STATE_REMOVED = -1; // 已移出
+  static final int STATE_NOT_IN_USE = 0; // 空闲
+  static final int STATE_IN_USE = 1; // 使用中
+  static final int STATE_RESERVED = 2; // 被某个线程独占处理中(归还、回收过期连接)
+
+  private static final int MAX_THREAD_LOCAL_ENTRIES = 16;
+
+  private final CopyOnWriteArrayList<Entry> sharedList = new CopyOnWriteArrayList<Entry>(); // 所有连接
+  private final ThreadLocal<List<WeakReference<Entry>>> threadList = new ThreadLocal<List<WeakReference<Entry>>>() {
+    @Override
+    protected List<WeakReference<Entry>> initialValue() {
+      return new ArrayList<WeakReference<Entry>>(MAX_THREAD_LOCAL_ENTRIES);
+    }
+  }; // 本线程最近归还的连接
+  private final SynchronousQueue<Entry> handoffQueue = new SynchronousQueue<Entry>(true); // 公平的交接队列
+  private final AtomicInteger waiters = new AtomicInteger();
+
+  /*
+   * Tries to borrow an idle entry without blocking.
+   *
+   * @return an entry now IN_USE by the caller, or null if none was idle
+   */
+  public Entry tryBorrow() {
+    List<WeakReference<Entry>> list = threadList.get();
+    for (int i = list.size() - 1; i >= 0; i--) { // 优先从本线程最近归还的连接里取
+      Entry entry = list.remove(i).get();
+      if (entry != null && entry.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+        return entry;
+      }
+    }
+    for (Entry entry : sharedList) { // 再扫描共享list
+      if (entry.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /*
+   * Waits for an entry handed off by a returning thread. Callers must have
+   * registered with {@link #beginWait()} before their last {@link #tryBorrow()}
+   * so that no return can be missed.
+   *
+   * @return an entry now IN_USE by the caller, or null on timeout
+   */
+  public Entry poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    long remaining = unit.toNanos(timeout);
+    while (remaining > 0) {
+      Entry entry = handoffQueue.poll(remaining, TimeUnit.NANOSECONDS);
+      if (entry == null) {
+        return null;
+      }
+      if (entry.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+        return entry;
+      }
+      remaining = deadline - System.nanoTime(); // 被共享list的扫描抢走了，继续等
+    }
+    return null;
+  }
+
+  public void beginWait() {
+    waiters.incrementAndGet();
+  }
+
+  public void endWait() {
+    waiters.decrementAndGet();
+  }
+
+  public int getWaitingThreadCount() {
+    return waiters.get();
+  }
+
+  /*
+   * Makes an entry owned by the caller available again, handing it directly
+   * to a waiting thread if there is one.
+   */
+  public void requite(Entry entry) {
+    entry.setState(STATE_NOT_IN_USE);
+    for (int i = 0; waiters.get() > 0; i++) { // 有线程在等，直接交接过去
+      if (entry.getState() != STATE_NOT_IN_USE || handoffQueue.offer(entry)) {
+        return;
+      } else if ((i & 0xff) == 0xff) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+      } else {
+        Thread.yield();
+      }
+    }
+    List<WeakReference<Entry>> list = threadList.get();
+    if (list.size() < MAX_THREAD_LOCAL_ENTRIES) {
+      list.add(new WeakReference<Entry>(entry));
+    }
+  }
+
+  /*
+   * Adds a newly created entry. The entry is IN_USE by the caller.
+   */
+  public Entry add(Connection realConnection) {
+    Entry entry = new Entry(realConnection);
+    sharedList.add(entry);
+    return entry;
+  }
+
+  /*
+   * Removes an entry owned by the caller from the bag.
+   *
+   * @return true if the entry was still part of the bag
+   */
+  public boolean remove(Entry entry) {
+    entry.setState(STATE_REMOVED);
+    return sharedList.remove(entry);
+  }
+
+  public List<Entry> values() { // CopyOnWriteArrayList的迭代是快照，不需要复制
+    return sharedList;
+  }
+
+  public int size() {
+    return sharedList.size();
+  }
+
+  public int getCount(int state) {
+    int count = 0;
+    for (Entry entry : sharedList) {
+      if (entry.getState() == state) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * A physical connection held by the bag.
+   */
+  static final class Entry {
+
+    private final AtomicInteger state = new AtomicInteger(STATE_IN_USE);
+    private final Connection realConnection;
+    private final long createdTimestamp;
+    private volatile long lastUsedTimestamp;
+    private volatile PooledConnection holder; // 当前借出去的PooledConnection
+    private PreparedStatementCache statementCache;
+
+    Entry(Connection realConnection) {
+      this.realConnection = realConnection;
+      this.createdTimestamp = System.currentTimeMillis();
+      this.lastUsedTimestamp = createdTimestamp;
+    }
+
+    public boolean compareAndSet(int expect, int update) {
+      return state.compareAndSet(expect, update);
+    }
+
+    public int getState() {
+      return state.get();
+    }
+
+    public void setState(int update) {
+      state.set(update);
+    }
+
+    public Connection getRealConnection() {
+      return realConnection;
+    }
+
+    public long getCreatedTimestamp() {
+      return createdTimestamp;
+    }
+
+    public long getLastUsedTimestamp() {
+      return lastUsedTimestamp;
+    }
+
+    public void setLastUsedTimestamp(long lastUsedTimestamp) {
+      this.lastUsedTimestamp = lastUsedTimestamp;
+    }
+
+    public PreparedStatementCache getStatementCache() {
+      return statementCache;
+    }
+
+    public void setStatementCache(PreparedStatementCache statementCache) {
+      this.statementCache = statementCache;
+    }
+
+    public PooledConnection getHolder() {
+      return holder;
+    }
+
+    public void setHolder(PooledConnection holder) {
+      this.holder = holder;
+    }
+  }
+
+}
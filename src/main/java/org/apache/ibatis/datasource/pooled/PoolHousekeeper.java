@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Periodically runs {@link PooledDataSource#housekeep()} on a shared daemon thread.
+ * Only a weak reference to the data source is kept, so an abandoned pool can still
+ * be garbage collected; its task then cancels itself.
+ */
+class PoolHousekeeper implements Runnable { // 连接池的后台维护任务
+
+  private static final Log log = LogFactory.getLog(PoolHousekeeper.class);
+
+  private final WeakReference<PooledDataSource> dataSourceRef;
+  private volatile ScheduledFuture<?> future;
+
+  private PoolHousekeeper(PooledDataSource dataSource) {
+    this.dataSourceRef = new WeakReference<PooledDataSource>(dataSource);
+  }
+
+  public static PoolHousekeeper schedule(PooledDataSource dataSource, long period) {
+    PoolHousekeeper housekeeper = new PoolHousekeeper(dataSource);
+    housekeeper.future = ExecutorHolder.EXECUTOR.scheduleWithFixedDelay(housekeeper, period, period, TimeUnit.MILLISECONDS);
+    return housekeeper;
+  }
+
+  public void cancel() {
+    ScheduledFuture<?> scheduled = future;
+    if (scheduled != null) {
+      scheduled.cancel(false);
+    }
+  }
+
+  @Override
+  public void run() {
+    PooledDataSource dataSource = dataSourceRef.get();
+    if (dataSource == null) { // 数据源已被回收
+      cancel();
+      return;
+    }
+    try {
+      dataSource.reportLeakedConnections();
+      dataSource.housekeep();
+    } catch (Throwable t) {
+      log.warn("Pool housekeeping failed: " + t);
+    }
+  }
+
+  private static class ExecutorHolder { // 延迟创建，没有开启维护的应用不会启动线程
+
+    private static final ScheduledExecutorService EXECUTOR = createExecutor();
+
+    private static ScheduledExecutorService createExecutor() {
+      ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "mybatis-pool-housekeeper-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+      return executor;
+    }
+  }
+
+}
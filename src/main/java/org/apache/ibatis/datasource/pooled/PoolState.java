@@ -17,6 +17,11 @@ package org.apache.ibatis.datasource.pooled;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.util.LatencyHistogram;
+import org.apache.ibatis.util.StripedCounter;
 
 /**
  * @author Clinton Begin
@@ -25,6 +30,9 @@ public class PoolState { // 保存了空闲连接和活动连接
 
   protected PooledDataSource dataSource; // 数据源
 
+  protected final ReentrantLock lock = new ReentrantLock(); // 保护下面的字段,不用synchronized以免虚拟线程占住载体线程
+  protected final Condition connectionAvailable = lock.newCondition(); // 有连接放回时通知
+
   protected final List<PooledConnection> idleConnections = new ArrayList<PooledConnection>(); // 空闲连接
   protected final List<PooledConnection> activeConnections = new ArrayList<PooledConnection>(); // 活动连接
   protected long requestCount = 0; // 请求计数
@@ -35,55 +43,130 @@ public class PoolState { // 保存了空闲连接和活动连接
   protected long accumulatedWaitTime = 0; // 累计等待时间
   protected long hadToWaitCount = 0; // 等待连接的请求数
   protected long badConnectionCount = 0; // 无效链接数
+  protected final LatencyHistogram waitTimeHistogram = new LatencyHistogram(); // 等待时间分布，无锁读取
+  protected final StripedCounter statementCacheHits = new StripedCounter(); // PreparedStatement缓存命中数
+  protected final StripedCounter statementCacheMisses = new StripedCounter(); // PreparedStatement缓存未命中数
+  protected final LatencyHistogram checkoutTimeHistogram = new LatencyHistogram(); // checkout时间分布，无锁读取
 
   public PoolState(PooledDataSource dataSource) {
     this.dataSource = dataSource;
   }
 
-  public synchronized long getRequestCount() {
-    return requestCount;
+  public long getRequestCount() {
+    lock.lock();
+    try {
+      return requestCount;
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public synchronized long getAverageRequestTime() {
-    return requestCount == 0 ? 0 : accumulatedRequestTime / requestCount;
+  public long getAverageRequestTime() {
+    lock.lock();
+    try {
+      return requestCount == 0 ? 0 : accumulatedRequestTime / requestCount;
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public synchronized long getAverageWaitTime() {
-    return hadToWaitCount == 0 ? 0 : accumulatedWaitTime / hadToWaitCount;
+  public long getAverageWaitTime() {
+    lock.lock();
+    try {
+      return hadToWaitCount == 0 ? 0 : accumulatedWaitTime / hadToWaitCount;
+    } finally {
+      lock.unlock();
+    }
+  }
 
+  public long getHadToWaitCount() {
+    lock.lock();
+    try {
+      return hadToWaitCount;
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public synchronized long getHadToWaitCount() {
-    return hadToWaitCount;
+  public long getBadConnectionCount() {
+    lock.lock();
+    try {
+      return badConnectionCount;
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public synchronized long getBadConnectionCount() {
-    return badConnectionCount;
+  public long getClaimedOverdueConnectionCount() {
+    lock.lock();
+    try {
+      return claimedOverdueConnectionCount;
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public synchronized long getClaimedOverdueConnectionCount() {
-    return claimedOverdueConnectionCount;
+  public long getAverageOverdueCheckoutTime() {
+    lock.lock();
+    try {
+      return claimedOverdueConnectionCount == 0 ? 0 : accumulatedCheckoutTimeOfOverdueConnections / claimedOverdueConnectionCount;
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public synchronized long getAverageOverdueCheckoutTime() {
-    return claimedOverdueConnectionCount == 0 ? 0 : accumulatedCheckoutTimeOfOverdueConnections / claimedOverdueConnectionCount;
+  public long getAverageCheckoutTime() {
+    lock.lock();
+    try {
+      return requestCount == 0 ? 0 : accumulatedCheckoutTime / requestCount;
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public synchronized long getAverageCheckoutTime() {
-    return requestCount == 0 ? 0 : accumulatedCheckoutTime / requestCount;
+
+  /*
+   * Distribution of the time requests had to wait for a connection. Can be read without locking the pool.
+   */
+  public LatencyHistogram getWaitTimeHistogram() {
+    return waitTimeHistogram;
   }
 
+  /*
+   * Distribution of the time connections were checked out. Can be read without locking the pool.
+   */
+  public LatencyHistogram getCheckoutTimeHistogram() {
+    return checkoutTimeHistogram;
+  }
+
+  public long getStatementCacheHitCount() {
+    return statementCacheHits.sum();
+  }
+
+  public long getStatementCacheMissCount() {
+    return statementCacheMisses.sum();
+  }
 
-  public synchronized int getIdleConnectionCount() {
-    return idleConnections.size();
+  public int getIdleConnectionCount() {
+    lock.lock();
+    try {
+      return idleConnections.size();
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public synchronized int getActiveConnectionCount() {
-    return activeConnections.size();
+  public int getActiveConnectionCount() {
+    lock.lock();
+    try {
+      return activeConnections.size();
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override
-  public synchronized String toString() {
+  public String toString() { // 各个getter自己加锁
     StringBuilder builder = new StringBuilder();
     builder.append("\n===CONFINGURATION==============================================");
     builder.append("\n jdbcDriver                     ").append(dataSource.getDriver());
@@ -97,6 +180,14 @@ public class PoolState { // 保存了空闲连接和活动连接
     builder.append("\n poolPingEnabled                ").append(dataSource.poolPingEnabled);
     builder.append("\n poolPingQuery                  ").append(dataSource.poolPingQuery);
     builder.append("\n poolPingConnectionsNotUsedFor  ").append(dataSource.poolPingConnectionsNotUsedFor);
+    builder.append("\n poolMinIdleConnections         ").append(dataSource.poolMinimumIdleConnections);
+    builder.append("\n poolMaxIdleTime                ").append(dataSource.poolMaximumIdleTime);
+    builder.append("\n poolMaxLifetime                ").append(dataSource.poolMaximumLifetime);
+    builder.append("\n poolKeepAliveTime              ").append(dataSource.poolKeepAliveTime);
+    builder.append("\n poolHousekeepingPeriod         ").append(dataSource.poolHousekeepingPeriod);
+    builder.append("\n poolInitialConnections         ").append(dataSource.poolInitialConnections);
+    builder.append("\n poolLeakDetectionThreshold     ").append(dataSource.poolLeakDetectionThreshold);
+    builder.append("\n poolPreparedStatementCacheSize ").append(dataSource.poolPreparedStatementCacheSize);
     builder.append("\n ---STATUS-----------------------------------------------------");
     builder.append("\n activeConnections              ").append(getActiveConnectionCount());
     builder.append("\n idleConnections                ").append(getIdleConnectionCount());
@@ -108,6 +199,10 @@ public class PoolState { // 保存了空闲连接和活动连接
     builder.append("\n hadToWait                      ").append(getHadToWaitCount());
     builder.append("\n averageWaitTime                ").append(getAverageWaitTime());
     builder.append("\n badConnectionCount             ").append(getBadConnectionCount());
+    builder.append("\n statementCacheHits             ").append(getStatementCacheHitCount());
+    builder.append("\n statementCacheMisses           ").append(getStatementCacheMissCount());
+    builder.append("\n waitTimeHistogram              ").append(waitTimeHistogram);
+    builder.append("\n checkoutTimeHistogram          ").append(checkoutTimeHistogram);
     builder.append("\n===============================================================");
     return builder.toString();
   }
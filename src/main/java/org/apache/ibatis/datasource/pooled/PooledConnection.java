@@ -29,6 +29,7 @@ import org.apache.ibatis.reflection.ExceptionUtil;
 class PooledConnection implements InvocationHandler { // connection的封装；想要实现的是conn关闭时放回pool
 
   private static final String CLOSE = "close";
+  private static final String PREPARE_STATEMENT = "prepareStatement";
   private static final Class<?>[] IFACES = new Class<?>[] { Connection.class };
 
   private int hashCode = 0;
@@ -40,6 +41,9 @@ class PooledConnection implements InvocationHandler { // connection的封装；
   private long lastUsedTimestamp;
   private int connectionTypeCode;
   private boolean valid;
+  private Throwable checkoutStackTrace; // 开启泄漏检测时，记录借出连接的调用栈
+  private boolean leakReported;
+  private PreparedStatementCache statementCache; // 跟着真连接走的PreparedStatement缓存
 
   /*
    * Constructor for SimplePooledConnection that uses the Connection and PooledDataSource passed in
@@ -199,6 +203,64 @@ class PooledConnection implements InvocationHandler { // connection的封装；
     return System.currentTimeMillis() - checkoutTimestamp;
   }
 
+  /*
+   * Getter for the data source this connection belongs to
+   *
+   * @return The data source
+   */
+  public PooledDataSource getDataSource() {
+    return dataSource;
+  }
+
+  /*
+   * Getter for the prepared statement cache of the real connection
+   *
+   * @return the cache, or null if it has not been used yet
+   */
+  public PreparedStatementCache getStatementCache() {
+    return statementCache;
+  }
+
+  /*
+   * Setter for the prepared statement cache, handed over when the real connection is wrapped again
+   *
+   * @param statementCache - the cache
+   */
+  public void setStatementCache(PreparedStatementCache statementCache) {
+    this.statementCache = statementCache;
+  }
+
+  /*
+   * Getter for the stack trace of the code that checked out this connection
+   *
+   * @return the stack trace, or null if leak detection is disabled
+   */
+  public Throwable getCheckoutStackTrace() {
+    return checkoutStackTrace;
+  }
+
+  /*
+   * Setter for the stack trace of the code that checked out this connection
+   *
+   * @param checkoutStackTrace - the stack trace
+   */
+  public void setCheckoutStackTrace(Throwable checkoutStackTrace) {
+    this.checkoutStackTrace = checkoutStackTrace;
+  }
+
+  /*
+   * Method to see if this connection has already been reported as leaked
+   *
+   * @return True if it has been reported
+   */
+  public boolean isLeakReported() {
+    return leakReported;
+  }
+
+  public void setLeakReported(boolean leakReported) {
+    this.leakReported = leakReported;
+  }
+
   @Override
   public int hashCode() {
     return hashCode;
@@ -235,6 +297,12 @@ class PooledConnection implements InvocationHandler { // connection的封装；
     if (CLOSE.hashCode() == methodName.hashCode() && CLOSE.equals(methodName)) { // 若调用close方法
       dataSource.pushConnection(this); // close时，将连接放入数据源连接池中
       return null;
+    } else if (PREPARE_STATEMENT.equals(methodName) && dataSource.getPoolPreparedStatementCacheSize() > 0) { // 开启了statement缓存
+      checkConnection();
+      if (statementCache == null) {
+        statementCache = new PreparedStatementCache(dataSource.getPoolPreparedStatementCacheSize());
+      }
+      return statementCache.prepareStatement(this, method, args);
     } else { // 非close方法则直接调用
       try {
         if (!Object.class.equals(method.getDeclaringClass())) {
@@ -16,6 +16,7 @@
 package org.apache.ibatis.datasource.pooled;
 
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
@@ -23,7 +24,16 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import javax.sql.DataSource;
@@ -34,6 +44,9 @@ import org.apache.ibatis.logging.LogFactory;
 
 /**
  * This is a simple, synchronous, thread-safe database connection pool.
+ * The pool is guarded by the lock of its {@link PoolState}, a ReentrantLock rather
+ * than a monitor, so threads waiting for a connection or for the lock park without
+ * holding on to their carrier thread when they are virtual threads.
  *
  * @author Clinton Begin
  */
@@ -43,7 +56,7 @@ public class PooledDataSource implements DataSource {
 
   private final PoolState state = new PoolState(this); // state保存了空闲连接list和活动连接list
 
-  private final UnpooledDataSource dataSource; // 组合一个 没pool的数据源
+  protected final UnpooledDataSource dataSource; // 组合一个 没pool的数据源
 
   // OPTIONAL CONFIGURATION FIELDS
   protected int poolMaximumActiveConnections = 10;
@@ -53,8 +66,18 @@ public class PooledDataSource implements DataSource {
   protected String poolPingQuery = "NO PING QUERY SET";
   protected boolean poolPingEnabled = false; // hama
   protected int poolPingConnectionsNotUsedFor = 0; // hama
+  protected int poolMinimumIdleConnections = 0; // 后台维护时补足的最小空闲连接数
+  protected long poolMaximumIdleTime = 0; // 空闲超过这个时间的连接会被后台关闭，0为不限制
+  protected long poolMaximumLifetime = 0; // 连接的最长寿命，0为不限制
+  protected long poolKeepAliveTime = 0; // 空闲超过这个时间的连接会被后台ping一下，0为不ping
+  protected long poolHousekeepingPeriod = 0; // 后台维护的执行间隔，0为不开启
+  protected int poolInitialConnections = 0; // 启动时预先建立的连接数
+  protected long poolLeakDetectionThreshold = 0; // 借出超过这个时间的连接会被报告为泄漏，0为不检测
+  protected int poolPreparedStatementCacheSize = 0; // 每个连接缓存的PreparedStatement数，0为不缓存
 
-  private int expectedConnectionTypeCode; // hama
+  private PoolHousekeeper housekeeper;
+
+  protected int expectedConnectionTypeCode; // hama
 
   public PooledDataSource() {
     dataSource = new UnpooledDataSource();
@@ -221,6 +244,89 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /*
+   * The number of idle connections the housekeeper keeps open.
+   *
+   * @param poolMinimumIdleConnections The minimum number of idle connections
+   */
+  public void setPoolMinimumIdleConnections(int poolMinimumIdleConnections) {
+    this.poolMinimumIdleConnections = poolMinimumIdleConnections;
+  }
+
+  /*
+   * The time after which the housekeeper closes an idle connection,
+   * as long as more than poolMinimumIdleConnections are idle.
+   *
+   * @param milliseconds the idle time, or 0 to keep idle connections open
+   */
+  public void setPoolMaximumIdleTime(long milliseconds) {
+    this.poolMaximumIdleTime = milliseconds;
+  }
+
+  /*
+   * The time after which a connection is closed instead of being reused.
+   *
+   * @param milliseconds the maximum age of a connection, or 0 for no limit
+   */
+  public void setPoolMaximumLifetime(long milliseconds) {
+    this.poolMaximumLifetime = milliseconds;
+  }
+
+  /*
+   * The time after which the housekeeper runs the ping query on an idle connection.
+   *
+   * @param milliseconds the keepalive time, or 0 to disable keepalive
+   */
+  public void setPoolKeepAliveTime(long milliseconds) {
+    this.poolKeepAliveTime = milliseconds;
+  }
+
+  /*
+   * How often the housekeeper evicts, validates and refills idle connections.
+   *
+   * @param milliseconds the period, or 0 to disable the housekeeper
+   */
+  public synchronized void setPoolHousekeepingPeriod(long milliseconds) {
+    this.poolHousekeepingPeriod = milliseconds;
+    if (housekeeper != null) {
+      housekeeper.cancel();
+      housekeeper = null;
+    }
+    if (milliseconds > 0) {
+      housekeeper = PoolHousekeeper.schedule(this, milliseconds);
+    }
+  }
+
+  /*
+   * The number of connections opened by {@link #warmUp()}.
+   *
+   * @param poolInitialConnections The number of connections to open eagerly
+   */
+  public void setPoolInitialConnections(int poolInitialConnections) {
+    this.poolInitialConnections = poolInitialConnections;
+  }
+
+  /*
+   * Enables leak detection: the stack trace of each checkout is recorded and
+   * connections held longer than the threshold are reported with it.
+   *
+   * @param milliseconds the threshold, or 0 to disable leak detection
+   */
+  public void setPoolLeakDetectionThreshold(long milliseconds) {
+    this.poolLeakDetectionThreshold = milliseconds;
+  }
+
+  /*
+   * The number of prepared statements kept open per connection. Cached statements
+   * are reused across checkouts when the same SQL is prepared again.
+   *
+   * @param poolPreparedStatementCacheSize The cache size, or 0 to disable the cache
+   */
+  public void setPoolPreparedStatementCacheSize(int poolPreparedStatementCacheSize) {
+    this.poolPreparedStatementCacheSize = poolPreparedStatementCacheSize;
+    forceCloseAll();
+  }
+
   public String getDriver() {
     return dataSource.getDriver();
   }
@@ -277,11 +383,44 @@ public class PooledDataSource implements DataSource {
     return poolPingConnectionsNotUsedFor;
   }
 
+  public int getPoolMinimumIdleConnections() {
+    return poolMinimumIdleConnections;
+  }
+
+  public long getPoolMaximumIdleTime() {
+    return poolMaximumIdleTime;
+  }
+
+  public long getPoolMaximumLifetime() {
+    return poolMaximumLifetime;
+  }
+
+  public long getPoolKeepAliveTime() {
+    return poolKeepAliveTime;
+  }
+
+  public long getPoolHousekeepingPeriod() {
+    return poolHousekeepingPeriod;
+  }
+
+  public int getPoolInitialConnections() {
+    return poolInitialConnections;
+  }
+
+  public long getPoolLeakDetectionThreshold() {
+    return poolLeakDetectionThreshold;
+  }
+
+  public int getPoolPreparedStatementCacheSize() {
+    return poolPreparedStatementCacheSize;
+  }
+
   /*
    * Closes all active and idle connections in the pool
    */
   public void forceCloseAll() { // 关闭pool里的所有连接，两个list中的连接都移除且关闭
-    synchronized (state) {
+    state.lock.lock();
+    try {
       expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(), dataSource.getUsername(), dataSource.getPassword());
       for (int i = state.activeConnections.size(); i > 0; i--) { // 遍历活动连接list
         try {
@@ -311,6 +450,8 @@ public class PooledDataSource implements DataSource {
           // ignore
         }
       }
+    } finally {
+      state.lock.unlock();
     }
     if (log.isDebugEnabled()) {
       log.debug("PooledDataSource forcefully closed/removed all connections.");
@@ -321,21 +462,25 @@ public class PooledDataSource implements DataSource {
     return state;
   }
 
-  private int assembleConnectionTypeCode(String url, String username, String password) {
+  protected int assembleConnectionTypeCode(String url, String username, String password) {
     return ("" + url + username + password).hashCode();
   }
 
   protected void pushConnection(PooledConnection conn) throws SQLException { // 关闭一个连接，其实是放回pool
 
-    synchronized (state) { // 加锁
+    state.lock.lock(); // 加锁
+    try {
       state.activeConnections.remove(conn); // 从活动list移出
       if (conn.isValid()) { // conn是有效的
-        if (state.idleConnections.size() < poolMaximumIdleConnections && conn.getConnectionTypeCode() == expectedConnectionTypeCode) {
+        state.checkoutTimeHistogram.record(conn.getCheckoutTime());
+        if (state.idleConnections.size() < poolMaximumIdleConnections && conn.getConnectionTypeCode() == expectedConnectionTypeCode
+            && !isExpired(conn.getCreatedTimestamp())) { // 超过最长寿命的连接直接关闭
           state.accumulatedCheckoutTime += conn.getCheckoutTime();
           if (!conn.getRealConnection().getAutoCommit()) { //不是自动提交的话
             conn.getRealConnection().rollback(); // 回滚
           }
           PooledConnection newConn = new PooledConnection(conn.getRealConnection(), this); // 新建一个连接，用原来的真连接
+          newConn.setStatementCache(conn.getStatementCache()); // statement缓存跟着真连接走
           state.idleConnections.add(newConn); // 加入空闲list
           newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
           newConn.setLastUsedTimestamp(conn.getLastUsedTimestamp());
@@ -343,7 +488,7 @@ public class PooledDataSource implements DataSource {
           if (log.isDebugEnabled()) {
             log.debug("Returned connection " + newConn.getRealHashCode() + " to pool.");
           }
-          state.notifyAll(); // 唤醒popConnection中等待连接的线程可以来抢state的锁
+          state.connectionAvailable.signalAll(); // 唤醒popConnection中等待连接的线程
         } else {
           state.accumulatedCheckoutTime += conn.getCheckoutTime();
           if (!conn.getRealConnection().getAutoCommit()) {
@@ -361,17 +506,21 @@ public class PooledDataSource implements DataSource {
         }
         state.badConnectionCount++;
       }
+    } finally {
+      state.lock.unlock();
     }
   }
 
-  private PooledConnection popConnection(String username, String password) throws SQLException { // 获取一个连接
+  protected PooledConnection popConnection(String username, String password) throws SQLException { // 获取一个连接
     boolean countedWait = false;
+    long waitTime = 0;
     PooledConnection conn = null;
     long t = System.currentTimeMillis();
     int localBadConnectionCount = 0;
 
     while (conn == null) {
-      synchronized (state) {
+      state.lock.lock();
+      try {
         if (!state.idleConnections.isEmpty()) { // pool里还有空闲连接
           // Pool has available connection
           conn = state.idleConnections.remove(0); // 从空闲list移出一个conn，用做新连接
@@ -395,11 +544,14 @@ public class PooledDataSource implements DataSource {
               state.claimedOverdueConnectionCount++; // 过期连接计数++
               state.accumulatedCheckoutTimeOfOverdueConnections += longestCheckoutTime; // 累加过期连接的checkout时间
               state.accumulatedCheckoutTime += longestCheckoutTime; // 累加checkout时间
+              state.checkoutTimeHistogram.record(longestCheckoutTime);
+              reportOverdueConnection(oldestActiveConnection);
               state.activeConnections.remove(oldestActiveConnection); // 从活动list移出最老的活动连接，留出空位来啦
               if (!oldestActiveConnection.getRealConnection().getAutoCommit()) {
                 oldestActiveConnection.getRealConnection().rollback(); // 回滚
               }
               conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this); // 新建连接，用最老连接的真连接
+              conn.setStatementCache(oldestActiveConnection.getStatementCache());
               oldestActiveConnection.invalidate(); // 最老连接标记无效
               if (log.isDebugEnabled()) {
                 log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
@@ -415,8 +567,13 @@ public class PooledDataSource implements DataSource {
                   log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
                 }
                 long wt = System.currentTimeMillis();
-                state.wait(poolTimeToWait); // 等poolTimeToWait微秒，pushConnection移出一个连接时会notifyAll来唤醒wait的线程
+                if (poolTimeToWait > 0) { // 等poolTimeToWait毫秒，pushConnection放回连接时会signalAll来唤醒等待的线程
+                  state.connectionAvailable.await(poolTimeToWait, TimeUnit.MILLISECONDS);
+                } else { // 与Object.wait(0)一样一直等
+                  state.connectionAvailable.await();
+                }
                 state.accumulatedWaitTime += System.currentTimeMillis() - wt;
+                waitTime += System.currentTimeMillis() - wt;
               } catch (InterruptedException e) {
                 break;
               }
@@ -431,6 +588,12 @@ public class PooledDataSource implements DataSource {
             conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
             conn.setCheckoutTimestamp(System.currentTimeMillis());
             conn.setLastUsedTimestamp(System.currentTimeMillis());
+            if (poolLeakDetectionThreshold > 0) {
+              conn.setCheckoutStackTrace(new Throwable("Connection checked out here"));
+            }
+            if (countedWait) {
+              state.waitTimeHistogram.record(waitTime);
+            }
             state.activeConnections.add(conn); // 加入活动list
             state.requestCount++;
             state.accumulatedRequestTime += System.currentTimeMillis() - t;
@@ -449,6 +612,8 @@ public class PooledDataSource implements DataSource {
             }
           }
         }
+      } finally {
+        state.lock.unlock();
       }
 
     } // 到这里while结束
@@ -463,6 +628,232 @@ public class PooledDataSource implements DataSource {
     return conn;
   }
 
+  /*
+   * Opens poolInitialConnections connections in parallel and adds them to the idle list,
+   * so that the first requests do not have to open them. If poolPingEnabled is set, the
+   * ping query is run on each connection. Connections that cannot be opened are skipped.
+   *
+   * @return the number of connections added to the pool
+   */
+  public int warmUp() {
+    int count = Math.min(poolInitialConnections, Math.min(poolMaximumIdleConnections, poolMaximumActiveConnections));
+    if (count <= 0) {
+      return 0;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(count); // 并行建立连接
+    List<Future<Connection>> futures = new ArrayList<Future<Connection>>(count);
+    for (int i = 0; i < count; i++) {
+      futures.add(executor.submit(new Callable<Connection>() {
+        @Override
+        public Connection call() throws SQLException {
+          Connection realConn = dataSource.getConnection();
+          if (poolPingEnabled && !executePingQuery(realConn)) {
+            return null;
+          }
+          return realConn;
+        }
+      }));
+    }
+    executor.shutdown();
+
+    int added = 0;
+    for (Future<Connection> future : futures) {
+      try {
+        Connection realConn = future.get();
+        if (realConn == null) {
+          continue;
+        }
+        if (addIdleConnection(realConn)) {
+          added++;
+        } else {
+          closeRealConnection(realConn);
+        }
+      } catch (ExecutionException e) {
+        log.warn("Could not open a connection while warming up the pool: " + e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("PooledDataSource warmed up with " + added + " connections.");
+    }
+    return added;
+  }
+
+  /*
+   * Adds a newly opened physical connection to the idle list if there is room for it
+   *
+   * @param realConn - the connection to add
+   * @return True if the connection was added
+   */
+  protected boolean addIdleConnection(Connection realConn) {
+    state.lock.lock();
+    try {
+      if (state.idleConnections.size() < poolMaximumIdleConnections
+          && state.activeConnections.size() + state.idleConnections.size() < poolMaximumActiveConnections) {
+        state.idleConnections.add(new PooledConnection(realConn, this));
+        state.connectionAvailable.signalAll();
+        return true;
+      }
+      return false;
+    } finally {
+      state.lock.unlock();
+    }
+  }
+
+  /*
+   * Logs the connections that have been checked out for longer than
+   * poolLeakDetectionThreshold, together with the stack trace of their checkout.
+   * Each connection is reported once. Called by the housekeeper.
+   *
+   * @return the number of connections currently held longer than the threshold
+   */
+  public int reportLeakedConnections() {
+    if (poolLeakDetectionThreshold <= 0) {
+      return 0;
+    }
+    int leaked = 0;
+    for (PooledConnection conn : getCheckedOutConnections()) {
+      long checkoutTime = conn.getCheckoutTime();
+      if (checkoutTime > poolLeakDetectionThreshold) {
+        leaked++;
+        if (!conn.isLeakReported()) {
+          conn.setLeakReported(true);
+          log.warn("Connection " + conn.getRealHashCode() + " has been checked out for " + checkoutTime
+              + " ms, a possible leak." + formatCheckoutStackTrace(conn));
+        }
+      }
+    }
+    return leaked;
+  }
+
+  /*
+   * Returns a snapshot of the connections currently checked out of the pool
+   */
+  protected List<PooledConnection> getCheckedOutConnections() {
+    state.lock.lock();
+    try {
+      return new ArrayList<PooledConnection>(state.activeConnections);
+    } finally {
+      state.lock.unlock();
+    }
+  }
+
+  protected void reportOverdueConnection(PooledConnection conn) {
+    if (conn.getCheckoutStackTrace() != null) { // 开启了泄漏检测才报告是谁没有归还
+      log.warn("Claimed overdue connection " + conn.getRealHashCode() + " after " + conn.getCheckoutTime()
+          + " ms." + formatCheckoutStackTrace(conn));
+    }
+  }
+
+  private String formatCheckoutStackTrace(PooledConnection conn) {
+    Throwable trace = conn.getCheckoutStackTrace();
+    if (trace == null) {
+      return "";
+    }
+    StringWriter writer = new StringWriter();
+    trace.printStackTrace(new PrintWriter(writer));
+    return " " + writer.toString();
+  }
+
+  /*
+   * Evicts idle connections past poolMaximumIdleTime or poolMaximumLifetime, pings
+   * the ones unused for poolKeepAliveTime and refills the pool up to
+   * poolMinimumIdleConnections. Called by the housekeeper, off the request path.
+   */
+  protected void housekeep() {
+    List<PooledConnection> toClose = new ArrayList<PooledConnection>();
+    List<PooledConnection> toPing = new ArrayList<PooledConnection>();
+    int toCreate;
+    int typeCode;
+    state.lock.lock();
+    try {
+      typeCode = expectedConnectionTypeCode; // forceCloseAll会改变它，届时维护中的连接不能再放回
+      int idleCount = state.idleConnections.size();
+      for (Iterator<PooledConnection> it = state.idleConnections.iterator(); it.hasNext();) {
+        PooledConnection conn = it.next();
+        if (isExpired(conn.getCreatedTimestamp())
+            || (poolMaximumIdleTime > 0 && conn.getTimeElapsedSinceLastUse() > poolMaximumIdleTime && idleCount > poolMinimumIdleConnections)) {
+          it.remove(); // 超过寿命或空闲太久，移出后在锁外关闭
+          toClose.add(conn);
+          idleCount--;
+        } else if (poolPingEnabled && poolKeepAliveTime > 0 && conn.getTimeElapsedSinceLastUse() > poolKeepAliveTime) {
+          it.remove(); // 移出空闲list，防止ping的时候被借走
+          toPing.add(conn);
+        }
+      }
+      toCreate = Math.min(poolMinimumIdleConnections - state.idleConnections.size() - toPing.size(),
+          poolMaximumActiveConnections - state.activeConnections.size() - state.idleConnections.size() - toPing.size());
+    } finally {
+      state.lock.unlock();
+    }
+
+    for (PooledConnection conn : toClose) {
+      conn.invalidate();
+      closeRealConnection(conn.getRealConnection());
+      if (log.isDebugEnabled()) {
+        log.debug("Housekeeper closed idle connection " + conn.getRealHashCode() + ".");
+      }
+    }
+    List<PooledConnection> toReturn = new ArrayList<PooledConnection>();
+    for (PooledConnection conn : toPing) {
+      if (executePingQuery(conn.getRealConnection())) {
+        conn.setLastUsedTimestamp(System.currentTimeMillis());
+        toReturn.add(conn);
+      } else {
+        conn.invalidate();
+        state.lock.lock();
+        try {
+          state.badConnectionCount++;
+        } finally {
+          state.lock.unlock();
+        }
+      }
+    }
+    for (int i = 0; i < toCreate; i++) { // 在锁外补足最小空闲连接
+      try {
+        toReturn.add(new PooledConnection(dataSource.getConnection(), this));
+      } catch (SQLException e) {
+        log.warn("Housekeeper could not open a connection: " + e.getMessage());
+        break;
+      }
+    }
+
+    if (!toReturn.isEmpty()) {
+      state.lock.lock();
+      try {
+        for (PooledConnection conn : toReturn) {
+          if (typeCode == expectedConnectionTypeCode && state.idleConnections.size() < poolMaximumIdleConnections
+              && state.activeConnections.size() + state.idleConnections.size() < poolMaximumActiveConnections) {
+            state.idleConnections.add(conn);
+          } else {
+            conn.invalidate();
+            closeRealConnection(conn.getRealConnection());
+          }
+        }
+        state.connectionAvailable.signalAll(); // 唤醒等待连接的线程
+      } finally {
+        state.lock.unlock();
+      }
+    }
+  }
+
+  protected boolean isExpired(long createdTimestamp) {
+    return poolMaximumLifetime > 0 && System.currentTimeMillis() - createdTimestamp > poolMaximumLifetime;
+  }
+
+  protected void closeRealConnection(Connection realConn) {
+    try {
+      if (!realConn.getAutoCommit()) {
+        realConn.rollback();
+      }
+      realConn.close();
+    } catch (Exception e) {
+      // ignore
+    }
+  }
+
   /*
    * Method to check to see if a connection is still usable
    *
@@ -484,40 +875,51 @@ public class PooledDataSource implements DataSource {
     if (result) {
       if (poolPingEnabled) {
         if (poolPingConnectionsNotUsedFor >= 0 && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor) {
-          try {
-            if (log.isDebugEnabled()) {
-              log.debug("Testing connection " + conn.getRealHashCode() + " ...");
-            }
-            Connection realConn = conn.getRealConnection(); // 取出真连接
-            Statement statement = realConn.createStatement();
-            ResultSet rs = statement.executeQuery(poolPingQuery); // 测试一个
-            rs.close();
-            statement.close();
-            if (!realConn.getAutoCommit()) {
-              realConn.rollback();
-            }
-            result = true;
-            if (log.isDebugEnabled()) {
-              log.debug("Connection " + conn.getRealHashCode() + " is GOOD!");
-            }
-          } catch (Exception e) {
-            log.warn("Execution of ping query '" + poolPingQuery + "' failed: " + e.getMessage());
-            try {
-              conn.getRealConnection().close();
-            } catch (Exception e2) {
-              //ignore
-            }
-            result = false;
-            if (log.isDebugEnabled()) {
-              log.debug("Connection " + conn.getRealHashCode() + " is BAD: " + e.getMessage());
-            }
-          }
+          result = executePingQuery(conn.getRealConnection());
         }
       }
     }
     return result;
   }
 
+  /*
+   * Runs the ping query on a physical connection, closing it if the query fails
+   *
+   * @param realConn - the connection to check
+   * @return True if the connection is still usable
+   */
+  protected boolean executePingQuery(Connection realConn) {
+    boolean result;
+    try {
+      if (log.isDebugEnabled()) {
+        log.debug("Testing connection " + realConn.hashCode() + " ...");
+      }
+      Statement statement = realConn.createStatement();
+      ResultSet rs = statement.executeQuery(poolPingQuery); // 测试一个
+      rs.close();
+      statement.close();
+      if (!realConn.getAutoCommit()) {
+        realConn.rollback();
+      }
+      result = true;
+      if (log.isDebugEnabled()) {
+        log.debug("Connection " + realConn.hashCode() + " is GOOD!");
+      }
+    } catch (Exception e) {
+      log.warn("Execution of ping query '" + poolPingQuery + "' failed: " + e.getMessage());
+      try {
+        realConn.close();
+      } catch (Exception e2) {
+        //ignore
+      }
+      result = false;
+      if (log.isDebugEnabled()) {
+        log.debug("Connection " + realConn.hashCode() + " is BAD: " + e.getMessage());
+      }
+    }
+    return result;
+  }
+
   /*
    * Unwraps a pooled connection to get to the 'real' connection
    *
@@ -535,6 +937,9 @@ public class PooledDataSource implements DataSource {
   }
 
   protected void finalize() throws Throwable { // 被GC前挣扎一记的finalize
+    if (housekeeper != null) {
+      housekeeper.cancel();
+    }
     forceCloseAll(); // 全关了
     super.finalize();
   }
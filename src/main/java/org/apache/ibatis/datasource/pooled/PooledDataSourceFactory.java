@@ -15,6 +15,9 @@
  */
 package org.apache.ibatis.datasource.pooled;
 
+import java.util.Properties;
+
+import org.apache.ibatis.datasource.DataSourceException;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
 
 /**
@@ -22,8 +25,31 @@ import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
  */
 public class PooledDataSourceFactory extends UnpooledDataSourceFactory {
 
+  public static final String POOL_TYPE_PROPERTY = "poolType"; // 连接池实现: SYNCHRONIZED(默认) 或 CONCURRENT
+
   public PooledDataSourceFactory() {
     this.dataSource = new PooledDataSource();
   }
 
+  @Override
+  public void setProperties(Properties properties) {
+    Properties dataSourceProperties = new Properties();
+    dataSourceProperties.putAll(properties);
+    String poolType = (String) dataSourceProperties.remove(POOL_TYPE_PROPERTY);
+    if (poolType != null) {
+      this.dataSource = createPooledDataSource(poolType);
+    }
+    super.setProperties(dataSourceProperties);
+    ((PooledDataSource) dataSource).warmUp(); // 所有属性设置完后再预热，setter会forceCloseAll
+  }
+
+  protected PooledDataSource createPooledDataSource(String poolType) {
+    if ("SYNCHRONIZED".equalsIgnoreCase(poolType)) {
+      return new PooledDataSource();
+    } else if ("CONCURRENT".equalsIgnoreCase(poolType)) {
+      return new ConcurrentPooledDataSource();
+    }
+    throw new DataSourceException("Unknown pool type: " + poolType + ". Expected SYNCHRONIZED or CONCURRENT.");
+  }
+
 }
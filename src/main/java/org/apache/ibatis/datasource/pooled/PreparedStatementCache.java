@@ -0,0 +1,238 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * LRU cache of the prepared statements of one physical connection. It lives as long
+ * as the physical connection, so statements are reused across checkouts and sessions.
+ * <p>
+ * A cached statement is removed from the cache while it is in use and put back
+ * when the caller closes it, so it is never shared. Closing it discards a pending
+ * batch and resets the query timeout, fetch size and max rows.
+ */
+class PreparedStatementCache { // 每个真连接一个的PreparedStatement缓存
+
+  private static final Class<?>[] IFACES = new Class<?>[] { PreparedStatement.class };
+
+  private final int maxSize;
+  private final Map<StatementKey, PreparedStatement> statements;
+  private final ReentrantLock lock = new ReentrantLock(); // 只保护statements,不在锁内做JDBC调用
+
+  public PreparedStatementCache(final int maxSize) {
+    this.maxSize = maxSize;
+    this.statements = new LinkedHashMap<StatementKey, PreparedStatement>(16, 0.75f, true) { // accessOrder为true，LRU
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<StatementKey, PreparedStatement> eldest) {
+        boolean tooBig = size() > PreparedStatementCache.this.maxSize;
+        if (tooBig) {
+          closeQuietly(eldest.getValue()); // 被淘汰的statement真正关闭
+        }
+        return tooBig;
+      }
+    };
+  }
+
+  /*
+   * Returns a statement for the given prepareStatement call, from the cache if possible.
+   *
+   * @param connection - the pooled connection the statement is prepared on
+   * @param method - the prepareStatement method
+   * @param args - the arguments of the call
+   * @return a statement whose close() returns it to this cache
+   */
+  public PreparedStatement prepareStatement(PooledConnection connection, Method method, Object[] args) throws Throwable {
+    StatementKey key = new StatementKey(args);
+    PreparedStatement statement;
+    lock.lock();
+    try {
+      statement = statements.remove(key); // 使用期间从缓存移出
+    } finally {
+      lock.unlock();
+    }
+    PoolState state = connection.getDataSource().getPoolState();
+    if (statement != null) {
+      state.statementCacheHits.increment();
+    } else {
+      state.statementCacheMisses.increment();
+      try {
+        statement = (PreparedStatement) method.invoke(connection.getRealConnection(), args);
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    }
+    return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), IFACES,
+        new CachedStatementHandler(statement, key, connection.getProxyConnection()));
+  }
+
+  public int size() {
+    lock.lock();
+    try {
+      return statements.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /*
+   * Closes all cached statements
+   */
+  public void clear() {
+    List<PreparedStatement> closing;
+    lock.lock();
+    try {
+      closing = new ArrayList<PreparedStatement>(statements.values());
+      statements.clear();
+    } finally {
+      lock.unlock();
+    }
+    for (PreparedStatement statement : closing) {
+      closeQuietly(statement);
+    }
+  }
+
+  /*
+   * Resets the per-use state of a statement and puts it back. A batch that was never
+   * executed (BatchExecutor closes its statements on rollback) must not survive, otherwise
+   * the next caller of the same sql would run the rolled-back rows.
+   */
+  private void release(StatementKey key, PreparedStatement statement, boolean batched, boolean limited) { // 调用方close时放回缓存
+    try {
+      if (batched) {
+        statement.clearBatch(); // 未执行的批处理不能带给下一个使用者
+      }
+      if (limited) { // StatementHandler按语句设置的限制恢复成驱动默认
+        statement.setQueryTimeout(0);
+        statement.setFetchSize(0);
+        statement.setMaxRows(0);
+      }
+      statement.clearParameters();
+      statement.clearWarnings();
+    } catch (SQLException e) {
+      closeQuietly(statement);
+      return;
+    }
+    PreparedStatement replaced;
+    lock.lock();
+    try {
+      replaced = statements.put(key, statement);
+    } finally {
+      lock.unlock();
+    }
+    if (replaced != null && replaced != statement) { // 同样的sql同时被prepare了两次
+      closeQuietly(replaced);
+    }
+  }
+
+  private static void closeQuietly(PreparedStatement statement) {
+    try {
+      statement.close();
+    } catch (SQLException e) {
+      // ignore
+    }
+  }
+
+  /**
+   * Identifies a prepareStatement call by all of its arguments (sql, result set type, keys...).
+   */
+  private static final class StatementKey {
+
+    private final Object[] args;
+    private final int hashCode;
+
+    StatementKey(Object[] args) {
+      this.args = args;
+      this.hashCode = Arrays.deepHashCode(args);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof StatementKey && Arrays.deepEquals(args, ((StatementKey) obj).args);
+    }
+  }
+
+  /**
+   * Handler of the statement given to the caller: close() returns the statement to the cache.
+   */
+  private final class CachedStatementHandler implements InvocationHandler {
+
+    private final PreparedStatement statement;
+    private final StatementKey key;
+    private final Connection proxyConnection;
+    private boolean closed;
+    private boolean batched; // 调用过addBatch
+    private boolean limited; // 调用过setQueryTimeout/setFetchSize/setMaxRows
+
+    CachedStatementHandler(PreparedStatement statement, StatementKey key, Connection proxyConnection) {
+      this.statement = statement;
+      this.key = key;
+      this.proxyConnection = proxyConnection;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String methodName = method.getName();
+      if ("close".equals(methodName)) {
+        if (!closed) {
+          closed = true;
+          release(key, statement, batched, limited);
+        }
+        return null;
+      } else if ("addBatch".equals(methodName)) {
+        batched = true;
+      } else if ("setQueryTimeout".equals(methodName) || "setFetchSize".equals(methodName)
+          || "setMaxRows".equals(methodName)) {
+        limited = true;
+      } else if ("isClosed".equals(methodName)) {
+        return closed;
+      } else if ("equals".equals(methodName) && Object.class.equals(method.getDeclaringClass())) {
+        return proxy == args[0];
+      } else if ("getConnection".equals(methodName)) {
+        return proxyConnection; // 不要把真连接暴露出去
+      }
+      if (closed && !Object.class.equals(method.getDeclaringClass())) {
+        throw new SQLException("Error accessing cached PreparedStatement. Statement is closed.");
+      }
+      try {
+        return method.invoke(statement, args);
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    }
+  }
+
+}
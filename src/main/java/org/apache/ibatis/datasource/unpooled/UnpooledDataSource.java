@@ -25,6 +25,7 @@ import java.util.Enumeration;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 import javax.sql.DataSource;
@@ -42,6 +43,7 @@ public class UnpooledDataSource implements DataSource {
   private static Map<String, Driver> registeredDrivers = new ConcurrentHashMap<String, Driver>(); // <驱动名, 加载的驱动>
 
   private String driver;
+  private final ReentrantLock driverLock = new ReentrantLock(); // 驱动注册锁
   private String url;
   private String username;
   private String password;
@@ -138,8 +140,13 @@ public class UnpooledDataSource implements DataSource {
     return driver;
   }
 
-  public synchronized void setDriver(String driver) {
-    this.driver = driver;
+  public void setDriver(String driver) {
+    driverLock.lock();
+    try {
+      this.driver = driver;
+    } finally {
+      driverLock.unlock();
+    }
   }
 
   public String getUrl() {
@@ -203,7 +210,19 @@ public class UnpooledDataSource implements DataSource {
     return connection;
   }
 
-  private synchronized void initializeDriver() throws SQLException { // 初始化驱动
+  private void initializeDriver() throws SQLException { // 初始化驱动
+    if (registeredDrivers.containsKey(driver)) { // 每次取连接都会调用,已注册时不加锁
+      return;
+    }
+    driverLock.lock();
+    try {
+      doInitializeDriver();
+    } finally {
+      driverLock.unlock();
+    }
+  }
+
+  private void doInitializeDriver() throws SQLException {
     if (!registeredDrivers.containsKey(driver)) { // 若当前已注册的驱动中不存在driver驱动
       Class<?> driverType;
       try {
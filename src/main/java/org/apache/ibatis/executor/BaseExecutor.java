@@ -21,8 +21,10 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
+import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.cursor.Cursor;
@@ -34,6 +36,7 @@ import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.ResultMap;
 import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
@@ -55,20 +58,24 @@ public abstract class BaseExecutor implements Executor { // 各种executor的基
   protected Executor wrapper; // hama
 
   protected ConcurrentLinkedQueue<DeferredLoad> deferredLoads; // 并发队列，延迟加载，存啥？ hama
-  protected PerpetualCache localCache; // 本地缓存，就是一级缓存
-  protected PerpetualCache localOutputParameterCache; // 这是啥缓存 hama
+  protected Cache localCache; // 本地缓存，就是一级缓存
+  protected Cache localOutputParameterCache; // 这是啥缓存 hama
   protected Configuration configuration; // mybatis的配置
 
   protected int queryStack = 0; // hama
   private boolean closed; // hama
+  private boolean dirty; // 本事务内执行过更新,不再与其他会话合并查询
+  private String environmentId; // 本执行器连接的环境,合并查询时区分主库与副本
 
   protected BaseExecutor(Configuration configuration, Transaction transaction) {
     this.transaction = transaction;
     this.deferredLoads = new ConcurrentLinkedQueue<DeferredLoad>();
-    this.localCache = new PerpetualCache("LocalCache");
-    this.localOutputParameterCache = new PerpetualCache("LocalOutputParameterCache");
     this.closed = false;
     this.configuration = configuration;
+    this.environmentId = configuration != null && configuration.getEnvironment() != null
+        ? configuration.getEnvironment().getId() : null;
+    this.localCache = newLocalCache("LocalCache");
+    this.localOutputParameterCache = newLocalCache("LocalOutputParameterCache");
     this.wrapper = this; // 奇怪，指向自己 hama
   }
 
@@ -102,6 +109,18 @@ public abstract class BaseExecutor implements Executor { // 各种executor的基
     }
   }
 
+  public String getEnvironmentId() {
+    return environmentId;
+  }
+
+  /**
+   * Sets the id of the environment this executor's transaction belongs to, when it
+   * is not the configuration's environment (e.g. the replica of a RoutingExecutor).
+   */
+  public void setEnvironmentId(String environmentId) {
+    this.environmentId = environmentId;
+  }
+
   @Override
   public boolean isClosed() {
     return closed;
@@ -114,6 +133,7 @@ public abstract class BaseExecutor implements Executor { // 各种executor的基
       throw new ExecutorException("Executor was closed.");
     }
     clearLocalCache(); // 清空本地缓存，update操作会reset缓存
+    dirty = true;
     return doUpdate(ms, parameter); // 做更新
   }
 
@@ -132,7 +152,8 @@ public abstract class BaseExecutor implements Executor { // 各种executor的基
   @Override
   public <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler) throws SQLException {
     BoundSql boundSql = ms.getBoundSql(parameter); // 获得处理后的实际sql
-    CacheKey key = createCacheKey(ms, parameter, rowBounds, boundSql); // 创建一个缓存键值对的键
+    CacheKey key = isLocalCacheUsable(ms, resultHandler) || isCoalesced(ms, resultHandler)
+        ? createCacheKey(ms, parameter, rowBounds, boundSql) : CacheKey.NULL_CACHE_KEY; // 一级缓存不可能命中时不构建key
     return query(ms, parameter, rowBounds, resultHandler, key, boundSql); // 查询
  }
 
@@ -149,7 +170,7 @@ public abstract class BaseExecutor implements Executor { // 各种executor的基
     List<E> list;
     try {
       queryStack++;
-      list = resultHandler == null ? (List<E>) localCache.getObject(key) : null; // 尝试从一级缓存拿数据
+      list = resultHandler == null && key != CacheKey.NULL_CACHE_KEY ? (List<E>) localCache.getObject(key) : null; // 尝试从一级缓存拿数据
       if (list != null) {
         handleLocallyCachedOutputParameters(ms, key, parameter, boundSql);
       } else {
@@ -167,6 +188,9 @@ public abstract class BaseExecutor implements Executor { // 各种executor的基
       if (configuration.getLocalCacheScope() == LocalCacheScope.STATEMENT) {
         // issue #482
         clearLocalCache();
+      } else if (localCache instanceof BoundedLocalCache) { // 语句结束后才淘汰,不影响循环引用和延迟加载
+        ((BoundedLocalCache) localCache).trim();
+        ((BoundedLocalCache) localOutputParameterCache).trim();
       }
     }
     return list;
@@ -244,6 +268,7 @@ public abstract class BaseExecutor implements Executor { // 各种executor的基
     if (required) { // hama
       transaction.commit(); // 交给transaction做提交
     }
+    dirty = false;
   }
 
   @Override
@@ -256,6 +281,7 @@ public abstract class BaseExecutor implements Executor { // 各种executor的基
         if (required) { // hama
           transaction.rollback(); // 交给transaction做回滚
         }
+        dirty = false;
       }
     }
   }
@@ -268,6 +294,18 @@ public abstract class BaseExecutor implements Executor { // 各种executor的基
     }
   }
 
+  private Cache newLocalCache(String id) {
+    if (configuration == null) { // ResultLoaderMap.ClosedExecutor 没有配置,保持原来的永久缓存
+      return new PerpetualCache(id);
+    }
+    if (configuration.getLocalCacheSize() > 0 || configuration.getLocalCacheMaxBytes() > 0
+        || configuration.isLocalCacheSoftReferences()) {
+      return new BoundedLocalCache(id, configuration.getLocalCacheSize(), configuration.getLocalCacheMaxBytes(),
+          configuration.isLocalCacheSoftReferences());
+    }
+    return new PerpetualCache(id);
+  }
+
   protected abstract int doUpdate(MappedStatement ms, Object parameter)
       throws SQLException;
 
@@ -308,10 +346,15 @@ public abstract class BaseExecutor implements Executor { // 各种executor的基
   }
   // 从数据库查询
   private <E> List<E> queryFromDatabase(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, CacheKey key, BoundSql boundSql) throws SQLException {
+    if (key == CacheKey.NULL_CACHE_KEY) { // 不使用一级缓存
+      return doQuery(ms, parameter, rowBounds, resultHandler, boundSql);
+    }
     List<E> list;
     localCache.putObject(key, EXECUTION_PLACEHOLDER); // 这句的意义？ hama
     try {
-      list = doQuery(ms, parameter, rowBounds, resultHandler, boundSql); // 真查询
+      list = isCoalesced(ms, resultHandler)
+          ? this.<E> coalescedQuery(ms, parameter, rowBounds, key, boundSql) // 与其他会话的相同查询合并
+          : this.<E> doQuery(ms, parameter, rowBounds, resultHandler, boundSql); // 真查询
     } finally {
       localCache.removeObject(key);
     }
@@ -322,6 +365,56 @@ public abstract class BaseExecutor implements Executor { // 各种executor的基
     return list;
   }
 
+  private <E> List<E> coalescedQuery(final MappedStatement ms, final Object parameter, final RowBounds rowBounds,
+      CacheKey key, final BoundSql boundSql) throws SQLException {
+    // CacheKey只含配置的主环境id,加上本执行器的环境,主库与副本上的相同查询不会合并
+    CacheKey coalescingKey = new CacheKey(new Object[] { environmentId, key });
+    return configuration.getQueryCoalescer().query(coalescingKey, new Callable<List<E>>() {
+      @Override
+      public List<E> call() throws Exception {
+        return BaseExecutor.this.<E> doQuery(ms, parameter, rowBounds, NO_RESULT_HANDLER, boundSql);
+      }
+    });
+  }
+
+  /*
+   * Sharing a result across sessions is only safe when this transaction has not
+   * written anything it should read back, and when the result is complete once
+   * the query returns: nested selects may still be pending as deferred loads or
+   * lazy proxies bound to this executor.
+   */
+  private boolean isCoalesced(MappedStatement ms, ResultHandler resultHandler) {
+    if (!ms.isCoalesce() || resultHandler != null || dirty || ms.getStatementType() == StatementType.CALLABLE) {
+      return false;
+    }
+    for (ResultMap resultMap : ms.getResultMaps()) {
+      if (resultMap.hasNestedQueries()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * The local cache can only serve this query if a later query of the session may
+   * repeat it, if it has nested queries (which rely on it to resolve circular
+   * references and deferred loads) or if it is callable (OUT parameters are cached).
+   */
+  private boolean isLocalCacheUsable(MappedStatement ms, ResultHandler resultHandler) {
+    if (ms.getStatementType() == StatementType.CALLABLE) {
+      return true;
+    }
+    if (resultHandler == null && configuration.getLocalCacheScope() == LocalCacheScope.SESSION) {
+      return true;
+    }
+    for (ResultMap resultMap : ms.getResultMaps()) {
+      if (resultMap.hasNestedQueries()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   protected Connection getConnection(Log statementLog) throws SQLException { // 获得连接
     Connection connection = transaction.getConnection();
     if (statementLog.isDebugEnabled()) {
@@ -342,7 +435,7 @@ public abstract class BaseExecutor implements Executor { // 各种executor的基
     private final String property;
     private final Class<?> targetType;
     private final CacheKey key;
-    private final PerpetualCache localCache;
+    private final Cache localCache;
     private final ObjectFactory objectFactory;
     private final ResultExtractor resultExtractor;
 
@@ -350,7 +443,7 @@ public abstract class BaseExecutor implements Executor { // 各种executor的基
     public DeferredLoad(MetaObject resultObject,
                         String property,
                         CacheKey key,
-                        PerpetualCache localCache,
+                        Cache localCache,
                         Configuration configuration,
                         Class<?> targetType) {
       this.resultObject = resultObject;
@@ -0,0 +1,190 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.Weigher;
+import org.apache.ibatis.cache.decorators.ObjectSizeWeigher;
+
+/**
+ * First level cache bounded by entry count and/or estimated bytes, evicting the least
+ * recently used entries, and optionally holding results by soft reference.
+ * <p>
+ * Puts never evict: the executor calls {@link #trim()} once the outermost query and its
+ * deferred loads are done, so entries used for circular references and deferred loads
+ * stay available while the statement runs. Values are weighed and softened in that
+ * same pass. Like the rest of the executor this class is not thread safe.
+ */
+class BoundedLocalCache implements Cache { // 有界的一级缓存,在最外层查询结束时才淘汰
+
+  private final String id;
+  private final int maxSize; // 0表示不限条数
+  private final long maxBytes; // 0表示不限字节
+  private final boolean softValues;
+  private final Weigher weigher = new ObjectSizeWeigher();
+  private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true); // 访问顺序
+  private final List<Entry> pending = new ArrayList<Entry>(); // 上次trim之后放入的
+  private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+  private long bytes;
+
+  BoundedLocalCache(String id, int maxSize, long maxBytes, boolean softValues) {
+    this.id = id;
+    this.maxSize = maxSize;
+    this.maxBytes = maxBytes;
+    this.softValues = softValues;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public int getSize() {
+    return entries.size();
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    Entry entry = new Entry(key, value);
+    remove(entries.put(key, entry));
+    pending.add(entry);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    Object value = entry.get();
+    if (value == null) { // 已被GC回收
+      remove(entries.remove(key));
+    }
+    return value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Entry entry = entries.remove(key);
+    remove(entry);
+    return entry == null ? null : entry.get();
+  }
+
+  @Override
+  public void clear() {
+    for (Entry entry : entries.values()) {
+      entry.removed = true; // 之后才被回收的旧值不能删掉同key的新条目
+    }
+    entries.clear();
+    pending.clear();
+    bytes = 0;
+    while (collected.poll() != null) {
+      // 丢弃
+    }
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  /**
+   * Weighs and softens the entries put since the last call, then evicts the least
+   * recently used entries until the cache is within its bounds.
+   */
+  public void trim() {
+    for (Entry entry : pending) {
+      if (!entry.removed && entry.value != null) { // get会改变访问顺序,所以看标记
+        if (maxBytes > 0) {
+          entry.weight = weigher.weigh(entry.key, entry.value);
+          bytes += entry.weight;
+        }
+        if (softValues) {
+          entry.soften(collected);
+        }
+      }
+    }
+    pending.clear();
+    SoftValue value;
+    while ((value = (SoftValue) collected.poll()) != null) {
+      Entry entry = value.entry;
+      if (!entry.removed) { // 没有被替换或删除
+        entries.remove(entry.key);
+        remove(entry);
+      }
+    }
+    Iterator<Map.Entry<Object, Entry>> eldest = entries.entrySet().iterator();
+    while (eldest.hasNext() && ((maxSize > 0 && entries.size() > maxSize) || (maxBytes > 0 && bytes > maxBytes))) {
+      Entry entry = eldest.next().getValue();
+      eldest.remove();
+      remove(entry);
+    }
+  }
+
+  private void remove(Entry entry) {
+    if (entry != null) {
+      entry.removed = true;
+      bytes -= entry.weight;
+      entry.weight = 0;
+    }
+  }
+
+  private static class Entry {
+    private final Object key;
+    private Object value; // 强引用,变为软引用后为null
+    private SoftValue softValue;
+    private long weight;
+    private boolean removed;
+
+    Entry(Object key, Object value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    Object get() {
+      return value != null ? value : softValue == null ? null : softValue.get();
+    }
+
+    void soften(ReferenceQueue<Object> queue) {
+      softValue = new SoftValue(this, value, queue);
+      value = null;
+    }
+  }
+
+  private static class SoftValue extends SoftReference<Object> {
+    private final Entry entry;
+
+    SoftValue(Entry entry, Object value, ReferenceQueue<Object> queue) {
+      super(value, queue);
+      this.entry = entry;
+    }
+  }
+
+}
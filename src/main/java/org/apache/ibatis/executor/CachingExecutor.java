@@ -16,21 +16,33 @@
 package org.apache.ibatis.executor;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.TableVersionRegistry;
 import org.apache.ibatis.cache.TransactionalCacheManager;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.ParameterMode;
 import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.CacheInvalidationScope;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.TransactionFactory;
+import org.apache.ibatis.transaction.managed.ManagedTransactionFactory;
+import org.apache.ibatis.type.TypeHandlerRegistry;
 
 /**
  * @author Clinton Begin
@@ -38,6 +50,9 @@ import org.apache.ibatis.transaction.Transaction;
  */
 public class CachingExecutor implements Executor {
 
+  private static final String NAMESPACE_PREFIX = "namespace:"; // 未知表的语句依赖于所在缓存的这个伪表
+  private static final String ANY_TABLE = "*"; // 所有语句都依赖的伪表,未知表的写提交后递增
+
   private Executor delegate;
   private TransactionalCacheManager tcm = new TransactionalCacheManager();
 
@@ -78,6 +93,10 @@ public class CachingExecutor implements Executor {
 
   @Override
   public <E> List<E> query(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler) throws SQLException {
+    if (ms.getCache() == null || !ms.isUseCache() || resultHandler != null) { // 二级缓存不可能命中,由delegate决定是否构建key
+      flushCacheIfRequired(ms);
+      return delegate.<E> query(ms, parameterObject, rowBounds, resultHandler);
+    }
     BoundSql boundSql = ms.getBoundSql(parameterObject);
     CacheKey key = createCacheKey(ms, parameterObject, rowBounds, boundSql);
     return query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
@@ -92,16 +111,23 @@ public class CachingExecutor implements Executor {
   @Override
   public <E> List<E> query(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler, CacheKey key, BoundSql boundSql)
       throws SQLException {
+    flushCacheIfRequired(ms);
     Cache cache = ms.getCache();
     if (cache != null) {
-      flushCacheIfRequired(ms);
-      if (ms.isUseCache() && resultHandler == null) {
+      if (ms.isUseCache() && resultHandler == null && !tcm.isInvalidatedOnCommit(getTableDependencies(ms))) {
         ensureNoOutParams(ms, parameterObject, boundSql);
         @SuppressWarnings("unchecked")
         List<E> list = (List<E>) tcm.getObject(cache, key);
         if (list == null) {
+          long start = System.nanoTime();
           list = delegate.<E> query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
+          ms.getConfiguration().getCacheStats(cache.getId()).recordLoad(System.nanoTime() - start); // 统计加载时间
           tcm.putObject(cache, key, list); // issue #578 and #116
+        } else {
+          ExpiringCache expiring = ExpiringCache.find(cache);
+          if (expiring != null && expiring.isRefreshDue(key)) { // 快过期时后台刷新,本次仍返回旧值
+            expiring.refreshAhead(key, newRefreshLoader(ms, parameterObject, rowBounds, key, copyParameterValues(ms, parameterObject, boundSql)));
+          }
         }
         return list;
       }
@@ -109,6 +135,73 @@ public class CachingExecutor implements Executor {
     return delegate.<E> query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
   }
 
+  /*
+   * Reruns the statement outside of this session, in its own transaction on the
+   * replica environment if there is one, the way the original query was routed.
+   * The SQL and parameter values are those of the hit, and the plugins apply as
+   * they did to the original query.
+   */
+  private Callable<Object> newRefreshLoader(final MappedStatement ms, final Object parameterObject, final RowBounds rowBounds,
+      final CacheKey key, final BoundSql boundSql) {
+    return new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        Configuration configuration = ms.getConfiguration();
+        Environment environment = configuration.getReplicaEnvironment();
+        if (environment == null || ms.isUsePrimary()) {
+          environment = configuration.getEnvironment();
+        }
+        TransactionFactory transactionFactory = environment.getTransactionFactory() != null
+            ? environment.getTransactionFactory() : new ManagedTransactionFactory();
+        Transaction tx = transactionFactory.newTransaction(environment.getDataSource(), null, false);
+        Executor executor = (Executor) configuration.getInterceptorChain().pluginAll(new SimpleExecutor(configuration, tx));
+        try {
+          return executor.query(ms, parameterObject, rowBounds, Executor.NO_RESULT_HANDLER, key, boundSql);
+        } finally {
+          executor.close(false);
+        }
+      }
+    };
+  }
+
+  /*
+   * The refresh runs later on another thread, while the caller may reuse and change
+   * its parameter object: resolves the values now, the way DefaultParameterHandler
+   * does, and binds them as additional parameters of a copy of the BoundSql.
+   */
+  private BoundSql copyParameterValues(MappedStatement ms, Object parameterObject, BoundSql boundSql) {
+    Configuration configuration = ms.getConfiguration();
+    TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+    List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>(boundSql.getParameterMappings().size());
+    BoundSql copy = new BoundSql(configuration, boundSql.getSql(), parameterMappings, parameterObject);
+    MetaObject metaObject = null;
+    for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
+      Object value;
+      String propertyName = parameterMapping.getProperty();
+      if (boundSql.hasAdditionalParameter(propertyName)) {
+        value = boundSql.getAdditionalParameter(propertyName);
+      } else if (parameterObject == null) {
+        value = null;
+      } else if (typeHandlerRegistry.hasTypeHandler(parameterObject.getClass())) {
+        value = parameterObject;
+      } else {
+        if (metaObject == null) {
+          metaObject = configuration.newMetaObject(parameterObject);
+        }
+        value = metaObject.getValue(propertyName);
+      }
+      String name = "_refresh" + parameterMappings.size(); // 复制的值都以附加参数传入
+      parameterMappings.add(new ParameterMapping.Builder(configuration, name, parameterMapping.getTypeHandler())
+          .javaType(parameterMapping.getJavaType())
+          .jdbcType(parameterMapping.getJdbcType())
+          .numericScale(parameterMapping.getNumericScale())
+          .jdbcTypeName(parameterMapping.getJdbcTypeName())
+          .build());
+      copy.setAdditionalParameter(name, value);
+    }
+    return copy;
+  }
+
   @Override
   public List<BatchResult> flushStatements() throws SQLException {
     return delegate.flushStatements();
@@ -143,7 +236,15 @@ public class CachingExecutor implements Executor {
 
   @Override
   public CacheKey createCacheKey(MappedStatement ms, Object parameterObject, RowBounds rowBounds, BoundSql boundSql) {
-    return delegate.createCacheKey(ms, parameterObject, rowBounds, boundSql);
+    CacheKey key = delegate.createCacheKey(ms, parameterObject, rowBounds, boundSql);
+    if (isTableScopedSelect(ms)) { // 表的版本号变化后旧的缓存项就再也命中不了
+      TableVersionRegistry tableVersions = ms.getConfiguration().getTableVersionRegistry();
+      for (String table : getTableDependencies(ms)) {
+        key.update(table);
+        key.update(tableVersions.getVersion(table));
+      }
+    }
+    return key;
   }
 
   @Override
@@ -161,13 +262,61 @@ public class CachingExecutor implements Executor {
     delegate.clearLocalCache();
   }
 
+  /*
+   * In table scope every flushing statement bumps the versions of the tables it wrote,
+   * whether or not its own namespace has a cache: the selects of other namespaces may
+   * depend on these tables.
+   */
   private void flushCacheIfRequired(MappedStatement ms) {
+    if (!ms.isFlushCacheRequired()) {
+      return;
+    }
     Cache cache = ms.getCache();
-    if (cache != null && ms.isFlushCacheRequired()) {      
+    if (isTableScoped(ms.getConfiguration())) {
+      TableVersionRegistry tableVersions = ms.getConfiguration().getTableVersionRegistry();
+      if (ms.getTables() != null) { // 只让依赖这些表的缓存项失效
+        List<String> tables = new ArrayList<String>(Arrays.asList(ms.getTables()));
+        if (cache != null) {
+          tables.add(NAMESPACE_PREFIX + cache.getId());
+        }
+        tcm.invalidateOnCommit(tableVersions, tables);
+        return;
+      }
+      // 不知道写了哪些表(${}、存储过程),所有命名空间的缓存项都要失效
+      tcm.invalidateOnCommit(tableVersions, Collections.singletonList(ANY_TABLE));
+    }
+    if (cache != null) {
       tcm.clear(cache);
     }
   }
 
+  private boolean isTableScoped(Configuration configuration) {
+    return configuration.getCacheInvalidationScope() == CacheInvalidationScope.TABLE;
+  }
+
+  private boolean isTableScopedSelect(MappedStatement ms) { // 只有用到二级缓存的语句才需要依赖表的版本
+    return ms.getCache() != null && isTableScoped(ms.getConfiguration());
+  }
+
+  /*
+   * Every table scoped select also depends on ANY_TABLE, which is incremented by the
+   * commit of a write whose tables could not be determined: such a write may have
+   * touched any table, so it conservatively invalidates the entries of all namespaces.
+   */
+  private List<String> getTableDependencies(MappedStatement ms) {
+    if (!isTableScopedSelect(ms)) {
+      return Collections.emptyList();
+    }
+    List<String> tables = new ArrayList<String>();
+    if (ms.getTables() != null) {
+      tables.addAll(Arrays.asList(ms.getTables()));
+    } else {
+      tables.add(NAMESPACE_PREFIX + ms.getCache().getId());
+    }
+    tables.add(ANY_TABLE);
+    return tables;
+  }
+
   @Override
   public void setExecutorWrapper(Executor executor) {
     throw new UnsupportedOperationException("This method should not be called");
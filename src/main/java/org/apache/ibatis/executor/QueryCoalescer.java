@@ -0,0 +1,137 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.Serializer;
+import org.apache.ibatis.cache.decorators.BinarySerializer;
+
+/**
+ * Lets concurrent identical queries share one database round trip.
+ * <p>
+ * The first thread to query a key runs the query; threads asking for an equal key
+ * while it runs wait for it and get a deep copy of its result, made by serializing
+ * the result once. When the result cannot be serialized, or the query fails, the
+ * waiting threads run the query themselves. One instance is shared by all sessions
+ * of a {@link org.apache.ibatis.session.Configuration}.
+ */
+public class QueryCoalescer { // 合并并发的相同查询,只访问一次数据库
+
+  private final ConcurrentMap<Object, Flight> flights = new ConcurrentHashMap<Object, Flight>(); // 正在执行的查询
+  private final Serializer serializer = new BinarySerializer();
+
+  public <E> List<E> query(Object key, Callable<List<E>> query) throws SQLException {
+    Flight flight = new Flight();
+    Flight running = flights.putIfAbsent(key, flight);
+    if (running == null) { // 本线程执行查询
+      List<E> list = null;
+      try {
+        list = call(query);
+      } finally {
+        flights.remove(key, flight);
+        flight.land(list);
+      }
+      return list;
+    }
+    if (running.board()) { // 等正在执行的查询结束,拿一份深拷贝
+      byte[] result = running.await();
+      if (result != null) {
+        @SuppressWarnings("unchecked")
+        List<E> copy = (List<E>) serializer.deserialize(result);
+        return copy;
+      }
+    }
+    return call(query);
+  }
+
+  /**
+   * @return Number of distinct queries currently running
+   */
+  public int getRunningCount() {
+    return flights.size();
+  }
+
+  private <E> List<E> call(Callable<List<E>> query) throws SQLException {
+    try {
+      return query.call();
+    } catch (SQLException e) {
+      throw e;
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new ExecutorException("Error executing coalesced query.  Cause: " + e, e);
+    }
+  }
+
+  private class Flight { // 一次正在执行的查询
+    private final CountDownLatch landed = new CountDownLatch(1);
+    private final ReentrantLock lock = new ReentrantLock(); // 保护passengers和closed
+    private int passengers; // 等待结果的线程数
+    private boolean closed; // 查询结束后不再接受等待者
+    private byte[] result; // 序列化的结果,查询失败或无法序列化时为null
+
+    boolean board() {
+      lock.lock();
+      try {
+        if (closed) {
+          return false;
+        }
+        passengers++;
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void land(List<?> list) {
+      int waiting;
+      lock.lock();
+      try {
+        closed = true;
+        waiting = passengers;
+      } finally {
+        lock.unlock();
+      }
+      if (waiting > 0 && list != null) { // 有人等待时才序列化
+        try {
+          result = serializer.serialize(list);
+        } catch (CacheException e) {
+          result = null;
+        }
+      }
+      landed.countDown();
+    }
+
+    byte[] await() {
+      try {
+        landed.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ExecutorException("Interrupted while waiting for a coalesced query.", e);
+      }
+      return result;
+    }
+  }
+
+}
@@ -0,0 +1,167 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
+
+/**
+ * Read/write splitting executor. SELECT statements run on the replica executor
+ * until the session performs its first write; from then on, and for every
+ * INSERT, UPDATE, DELETE, callable statement or statement marked
+ * <code>usePrimary</code>, the primary executor is used so that a session always
+ * reads its own writes.
+ */
+public class RoutingExecutor implements Executor {
+
+  private final Executor primary; // 主库执行器
+  private final Executor replica; // 只读副本执行器
+  private boolean written; // 本会话是否已经发生过写操作,一旦写过则后续全部走主库
+
+  public RoutingExecutor(Executor primary, Executor replica) {
+    this.primary = primary;
+    this.replica = replica;
+    primary.setExecutorWrapper(this);
+    replica.setExecutorWrapper(this);
+  }
+
+  @Override
+  public int update(MappedStatement ms, Object parameter) throws SQLException {
+    written = true;
+    return primary.update(ms, parameter);
+  }
+
+  @Override
+  public <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, CacheKey cacheKey, BoundSql boundSql) throws SQLException {
+    return route(ms).query(ms, parameter, rowBounds, resultHandler, cacheKey, boundSql);
+  }
+
+  @Override
+  public <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler) throws SQLException {
+    return route(ms).query(ms, parameter, rowBounds, resultHandler);
+  }
+
+  @Override
+  public <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException {
+    return route(ms).queryCursor(ms, parameter, rowBounds);
+  }
+
+  @Override
+  public List<BatchResult> flushStatements() throws SQLException {
+    List<BatchResult> results = new ArrayList<BatchResult>(primary.flushStatements());
+    results.addAll(replica.flushStatements());
+    return results;
+  }
+
+  @Override
+  public void commit(boolean required) throws SQLException {
+    try {
+      primary.commit(required);
+    } finally {
+      replica.commit(required);
+    }
+  }
+
+  @Override
+  public void rollback(boolean required) throws SQLException {
+    try {
+      primary.rollback(required);
+    } finally {
+      replica.rollback(required);
+    }
+  }
+
+  @Override
+  public CacheKey createCacheKey(MappedStatement ms, Object parameterObject, RowBounds rowBounds, BoundSql boundSql) {
+    return route(ms).createCacheKey(ms, parameterObject, rowBounds, boundSql);
+  }
+
+  @Override
+  public boolean isCached(MappedStatement ms, CacheKey key) {
+    return route(ms).isCached(ms, key);
+  }
+
+  @Override
+  public void clearLocalCache() {
+    primary.clearLocalCache();
+    replica.clearLocalCache();
+  }
+
+  @Override
+  public void deferLoad(MappedStatement ms, MetaObject resultObject, String property, CacheKey key, Class<?> targetType) {
+    // 延迟加载的结果缓存在执行该嵌套查询的那个执行器的本地缓存里
+    route(ms).deferLoad(ms, resultObject, property, key, targetType);
+  }
+
+  @Override
+  public Transaction getTransaction() {
+    return primary.getTransaction();
+  }
+
+  @Override
+  public void close(boolean forceRollback) {
+    try {
+      primary.close(forceRollback);
+    } finally {
+      replica.close(forceRollback);
+    }
+  }
+
+  @Override
+  public boolean isClosed() {
+    return primary.isClosed();
+  }
+
+  @Override
+  public void setExecutorWrapper(Executor executor) {
+    primary.setExecutorWrapper(executor);
+    replica.setExecutorWrapper(executor);
+  }
+
+  public boolean isWritten() {
+    return written;
+  }
+
+  protected Executor route(MappedStatement ms) {
+    return isPrimaryRequired(ms, written) ? primary : replica;
+  }
+
+  /**
+   * The routing rule, also applied by sessions that run statements outside of
+   * this executor (see {@link org.apache.ibatis.session.ParallelSqlSession#selectParallel}).
+   *
+   * @param written whether the session has performed a write, committed or not
+   */
+  public static boolean isPrimaryRequired(MappedStatement ms, boolean written) {
+    return written
+        || ms.isUsePrimary()
+        || ms.getSqlCommandType() != SqlCommandType.SELECT
+        || ms.getStatementType() == StatementType.CALLABLE;
+  }
+
+}
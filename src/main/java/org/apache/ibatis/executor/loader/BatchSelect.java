@@ -0,0 +1,368 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.loader;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.MetaClass;
+import org.apache.ibatis.session.AutoMappingBehavior;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.type.BigDecimalTypeHandler;
+import org.apache.ibatis.type.BigIntegerTypeHandler;
+import org.apache.ibatis.type.ByteTypeHandler;
+import org.apache.ibatis.type.IntegerTypeHandler;
+import org.apache.ibatis.type.LongTypeHandler;
+import org.apache.ibatis.type.ObjectTypeHandler;
+import org.apache.ibatis.type.ShortTypeHandler;
+import org.apache.ibatis.type.TypeHandler;
+import org.apache.ibatis.type.UnknownTypeHandler;
+
+/**
+ * Runs a nested select for many keys with one query. The nested statement must bind its
+ * only parameter in a <code>column = ?</code> predicate; the predicate is rewritten to
+ * <code>column IN (?, ?, ...)</code> and the rows are handed back to their keys by the
+ * property the key column is mapped to, explicitly or by auto-mapping.
+ * Statements that cannot be rewritten safely, like those that limit, group or union
+ * their rows, are left to run once per key.
+ * <p>
+ * The predicate must be a condition every row of the outer query has to meet: it follows
+ * the outer <code>WHERE</code> or an <code>AND</code> of it, outside of any parentheses,
+ * subquery or <code>CASE</code>, and the outer <code>WHERE</code> has no <code>OR</code>
+ * outside of parentheses. A predicate of a join's <code>ON</code> clause, one negated
+ * by <code>NOT</code> or one that is part of an expression is not batched. Statements
+ * with SQL comments are not batched either.
+ * <p>
+ * Rows are matched to keys in Java, not by the database, so only integral and decimal
+ * keys read and bound by the built-in type handlers are batched. Other keys could match
+ * in the database but not in Java (case insensitive collations, padded CHAR columns,
+ * custom type handlers) and are left to run once per key, see {@link #accepts(Object)}.
+ */
+public class BatchSelect { // 把"列 = ?"改写成"列 IN (...)",一次查出多个key的嵌套查询结果
+
+  private static final Pattern KEY_PREDICATE = Pattern.compile("([\\w.$\"`\\[\\]]+)\\s*=\\s*\\?");
+  private static final Pattern UNSAFE = Pattern.compile("\\b(limit|offset|fetch|rownum|top|group|having|union|intersect|except|minus)\\b");
+
+  private final Configuration configuration;
+  private final MappedStatement nestedQuery;
+  private final String sqlBefore; // "列 = ?"之前的sql
+  private final String keyColumn;
+  private final String sqlAfter;
+  private final ParameterMapping keyMapping;
+  private final String keyProperty; // 结果对象中key列对应的属性
+
+  private BatchSelect(MappedStatement nestedQuery, String sqlBefore, String keyColumn, String sqlAfter,
+      ParameterMapping keyMapping, String keyProperty) {
+    this.configuration = nestedQuery.getConfiguration();
+    this.nestedQuery = nestedQuery;
+    this.sqlBefore = sqlBefore;
+    this.keyColumn = keyColumn;
+    this.sqlAfter = sqlAfter;
+    this.keyMapping = keyMapping;
+    this.keyProperty = keyProperty;
+  }
+
+  /**
+   * @param nestedQuery The nested select
+   * @param boundSql Its bound sql for one of the keys
+   * @return The batch select, or null if the statement cannot be run for many keys at once
+   */
+  public static BatchSelect create(MappedStatement nestedQuery, BoundSql boundSql) {
+    if (nestedQuery.getStatementType() != StatementType.PREPARED
+        || nestedQuery.getResultMaps().size() != 1
+        || nestedQuery.getResulSets() != null
+        || boundSql.getParameterMappings().size() != 1
+        || boundSql.getParameterMappings().get(0).getMode() != ParameterMode.IN) {
+      return null;
+    }
+    String sql = boundSql.getSql();
+    if (sql.indexOf('?') != sql.lastIndexOf('?') || UNSAFE.matcher(sql.toLowerCase(Locale.ENGLISH)).find()
+        || !isNumericHandler(boundSql.getParameterMappings().get(0).getTypeHandler(), true)) {
+      return null;
+    }
+    Matcher matcher = KEY_PREDICATE.matcher(sql);
+    if (!matcher.find() || !isOuterConjunct(sql, matcher.start(), matcher.end())) {
+      return null;
+    }
+    String qualified = matcher.group(1);
+    String column = qualified.substring(qualified.lastIndexOf('.') + 1).replaceAll("[\"`\\[\\]]", "");
+    String keyProperty = findKeyProperty(nestedQuery.getConfiguration(), nestedQuery.getResultMaps().get(0), column);
+    if (keyProperty == null) {
+      return null;
+    }
+    return new BatchSelect(nestedQuery, sql.substring(0, matcher.start()), qualified, sql.substring(matcher.end()),
+        boundSql.getParameterMappings().get(0), keyProperty);
+  }
+
+  /*
+   * The batched query selects the same rows for a key as the per-row query only if the
+   * predicate is ANDed to all other conditions of the outer WHERE.
+   */
+  private static boolean isOuterConjunct(String sql, int start, int end) {
+    if (sql.contains("--") || sql.contains("/*")) {
+      return false;
+    }
+    List<Token> before = tokenize(sql.substring(0, start));
+    int depth = before.isEmpty() ? 0 : before.get(before.size() - 1).depthAfter;
+    if (depth != 0) { // 在括号、子查询或CASE里
+      return false;
+    }
+    int where = -1;
+    for (int i = 0; i < before.size(); i++) {
+      if (before.get(i).depth == 0 && before.get(i).is("where")) {
+        where = i;
+      }
+    }
+    if (where < 0 || !(before.get(before.size() - 1).is("where") || before.get(before.size() - 1).is("and"))) {
+      return false; // 不在外层WHERE里,或前面是NOT、WHEN、运算符等
+    }
+    for (int i = where + 1; i < before.size(); i++) {
+      if (before.get(i).depth == 0 && before.get(i).is("or")) {
+        return false;
+      }
+    }
+    List<Token> after = tokenize(sql.substring(end));
+    if (!after.isEmpty() && !(after.get(0).is("and") || after.get(0).is("order") || after.get(0).is("for"))) {
+      return false; // 是某个表达式的一部分
+    }
+    for (Token token : after) {
+      if (token.depth < 0 || token.depth == 0 && token.is("or")) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /* Splits sql into words and symbols, skipping literals; CASE ... END counts as a parenthesis. */
+  private static List<Token> tokenize(String sql) {
+    List<Token> tokens = new ArrayList<Token>();
+    int depth = 0;
+    int i = 0;
+    while (i < sql.length()) {
+      char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+        continue;
+      }
+      int next;
+      if (c == '\'' || c == '"' || c == '`' || c == '[') { // 字符串或带引号的标识符
+        int close = sql.indexOf(c == '[' ? ']' : c, i + 1);
+        next = close < 0 ? sql.length() : close + 1;
+      } else if (Character.isLetterOrDigit(c) || c == '_' || c == '$') {
+        next = i + 1;
+        while (next < sql.length() && (Character.isLetterOrDigit(sql.charAt(next)) || sql.charAt(next) == '_' || sql.charAt(next) == '$')) {
+          next++;
+        }
+      } else {
+        next = i + 1;
+      }
+      String text = sql.substring(i, next).toLowerCase(Locale.ENGLISH);
+      int tokenDepth = depth;
+      if (text.equals("(") || text.equals("case")) {
+        depth++;
+      } else if (text.equals(")") || text.equals("end")) {
+        depth--;
+        tokenDepth = depth;
+      }
+      tokens.add(new Token(text, tokenDepth, depth));
+      i = next;
+    }
+    return tokens;
+  }
+
+  private static class Token {
+    final String text;
+    final int depth; // 所在的括号层数
+    final int depthAfter;
+
+    Token(String text, int depth, int depthAfter) {
+      this.text = text;
+      this.depth = depth;
+      this.depthAfter = depthAfter;
+    }
+
+    boolean is(String word) {
+      return text.equals(word);
+    }
+  }
+
+  private static String findKeyProperty(Configuration configuration, ResultMap resultMap, String column) {
+    for (ResultMapping resultMapping : resultMap.getResultMappings()) {
+      if (column.equalsIgnoreCase(resultMapping.getColumn())) {
+        return isNumericHandler(resultMapping.getTypeHandler(), false)
+            ? resultMapping.getProperty() : null; // 构造器参数没有属性名时为null
+      }
+    }
+    if (Map.class.isAssignableFrom(resultMap.getType())) {
+      return null; // 自动映射到Map的key大小写取决于驱动
+    }
+    boolean autoMapping = resultMap.getAutoMapping() != null
+        ? resultMap.getAutoMapping() : configuration.getAutoMappingBehavior() != AutoMappingBehavior.NONE;
+    if (!autoMapping) {
+      return null;
+    }
+    MetaClass metaClass = MetaClass.forClass(resultMap.getType(), configuration.getReflectorFactory());
+    String property = metaClass.findProperty(column, configuration.isMapUnderscoreToCamelCase());
+    if (property == null || !metaClass.hasGetter(property) || !metaClass.hasSetter(property)) {
+      return null;
+    }
+    TypeHandler<?> typeHandler = configuration.getTypeHandlerRegistry().getTypeHandler(metaClass.getSetterType(property));
+    return isNumericHandler(typeHandler, false) ? property : null;
+  }
+
+  /* Only values of these handlers compare the same in Java as in the database. */
+  private static boolean isNumericHandler(TypeHandler<?> typeHandler, boolean parameter) {
+    if (typeHandler == null) {
+      return false;
+    }
+    Class<?> type = typeHandler.getClass();
+    if (parameter && (type == UnknownTypeHandler.class || type == ObjectTypeHandler.class)) {
+      return true; // 按key的实际类型绑定,由accepts检查
+    }
+    return type == IntegerTypeHandler.class || type == LongTypeHandler.class || type == ShortTypeHandler.class
+        || type == ByteTypeHandler.class || type == BigIntegerTypeHandler.class || type == BigDecimalTypeHandler.class;
+  }
+
+  /**
+   * @param key The parameter of the nested select for one row
+   * @return true if the key can be batched, false if it must be selected on its own
+   */
+  public boolean accepts(Object key) {
+    if (!(key instanceof Integer || key instanceof Long || key instanceof Short || key instanceof Byte
+        || key instanceof BigInteger || key instanceof BigDecimal)) {
+      return false;
+    }
+    TypeHandler<?> typeHandler = keyMapping.getTypeHandler();
+    if (typeHandler instanceof UnknownTypeHandler || typeHandler instanceof ObjectTypeHandler) { // 绑定时按值的类型找处理器,不能是自定义的
+      return isNumericHandler(configuration.getTypeHandlerRegistry().getTypeHandler(key.getClass()), false);
+    }
+    return true;
+  }
+
+  public MappedStatement getNestedQuery() {
+    return nestedQuery;
+  }
+
+  /**
+   * Selects the rows of all keys, at most batchSize keys per query.
+   *
+   * @return The rows of each key, keys without rows are absent
+   */
+  public Map<Object, List<Object>> select(Executor executor, Collection<Object> keys, int batchSize) throws SQLException {
+    Map<Object, List<Object>> rows = new HashMap<Object, List<Object>>();
+    List<Object> distinctKeys = new ArrayList<Object>(new LinkedHashSet<Object>(keys));
+    int size = batchSize > 0 ? batchSize : distinctKeys.size();
+    for (int from = 0; from < distinctKeys.size(); from += size) {
+      List<Object> chunk = distinctKeys.subList(from, Math.min(from + size, distinctKeys.size()));
+      Map<String, Object> parameter = new HashMap<String, Object>();
+      for (int i = 0; i < chunk.size(); i++) {
+        parameter.put("key" + i, chunk.get(i));
+      }
+      List<Object> results = executor.query(newStatement(chunk.size()), parameter, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      for (Object row : results) {
+        Object key = normalizeKey(configuration.newMetaObject(row).getValue(keyProperty));
+        List<Object> list = rows.get(key);
+        if (list == null) {
+          list = new ArrayList<Object>();
+          rows.put(key, list);
+        }
+        list.add(row);
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * @return The rows selected for the key, or an empty list
+   */
+  public static List<Object> rowsOf(Map<Object, List<Object>> rows, Object key) {
+    List<Object> list = rows.get(normalizeKey(key));
+    return list != null ? list : new ArrayList<Object>();
+  }
+
+  private MappedStatement newStatement(int keyCount) {
+    StringBuilder sql = new StringBuilder(sqlBefore).append(keyColumn).append(" IN (");
+    List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>(keyCount);
+    for (int i = 0; i < keyCount; i++) {
+      sql.append(i == 0 ? "?" : ", ?");
+      parameterMappings.add(new ParameterMapping.Builder(configuration, "key" + i, keyMapping.getTypeHandler())
+          .javaType(keyMapping.getJavaType()).jdbcType(keyMapping.getJdbcType()).build());
+    }
+    sql.append(')').append(sqlAfter);
+    StaticSqlSource sqlSource = new StaticSqlSource(configuration, sql.toString(), parameterMappings);
+    return new MappedStatement.Builder(configuration, nestedQuery.getId() + "!batch", sqlSource, nestedQuery.getSqlCommandType())
+        .resource(nestedQuery.getResource())
+        .fetchSize(nestedQuery.getFetchSize())
+        .timeout(nestedQuery.getTimeout())
+        .resultSetType(nestedQuery.getResultSetType())
+        .resultMaps(nestedQuery.getResultMaps())
+        .cache(nestedQuery.getCache())
+        .useCache(nestedQuery.isUseCache())
+        .usePrimary(nestedQuery.isUsePrimary())
+        .tables(join(nestedQuery.getTables()))
+        .databaseId(nestedQuery.getDatabaseId())
+        .lang(nestedQuery.getLang())
+        .build();
+  }
+
+  private static String join(String[] names) {
+    if (names == null) {
+      return null;
+    }
+    StringBuilder joined = new StringBuilder();
+    for (String name : names) {
+      joined.append(joined.length() == 0 ? "" : ",").append(name);
+    }
+    return joined.toString();
+  }
+
+  /* The parent column and the child property may be read as different integral types. */
+  private static Object normalizeKey(Object key) {
+    if (key instanceof Integer || key instanceof Long || key instanceof Short || key instanceof Byte) {
+      return Long.valueOf(((Number) key).longValue());
+    } else if (key instanceof BigInteger && ((BigInteger) key).bitLength() < 64) {
+      return Long.valueOf(((BigInteger) key).longValue());
+    } else if (key instanceof BigDecimal) {
+      try {
+        return Long.valueOf(((BigDecimal) key).longValueExact());
+      } catch (ArithmeticException e) {
+        return ((BigDecimal) key).stripTrailingZeros();
+      }
+    }
+    return key;
+  }
+
+}
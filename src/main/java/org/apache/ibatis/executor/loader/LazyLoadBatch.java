@@ -0,0 +1,96 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.loader;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shared by the lazy loaders of one property on all objects returned by the same query.
+ * The first time the property is read on any of them, it is selected for every object
+ * whose loader has not run yet with a {@link BatchSelect}. The rows of the other objects
+ * are handed to their own {@link ResultLoader} and only set when their property is read,
+ * so loading never touches another object. Rows that are never read are collected with
+ * their object, since the batch no longer refers to a loader once it has run.
+ * <p>
+ * All objects therefore see the rows as they were when the first property was read,
+ * not when their own property is read.
+ */
+public class LazyLoadBatch { // 同一次查询结果中同一延迟属性的所有loader共享,第一次触发时一起加载
+
+  private final BatchSelect batchSelect;
+  private final int batchSize;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final List<ResultLoader> pending = new ArrayList<ResultLoader>(); // 还没加载的
+
+  public LazyLoadBatch(BatchSelect batchSelect, int batchSize) {
+    this.batchSelect = batchSelect;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @see BatchSelect#accepts(Object)
+   */
+  public boolean accepts(Object key) {
+    return batchSelect.accepts(key);
+  }
+
+  public void add(ResultLoader resultLoader) {
+    lock.lock();
+    try {
+      pending.add(resultLoader);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return The value of the property the result loader loads
+   */
+  public Object load(ResultLoader resultLoader) throws SQLException {
+    List<Object> rows;
+    lock.lock();
+    try {
+      if (resultLoader.batchedRows == null) {
+        loadPending(resultLoader);
+      }
+      rows = resultLoader.batchedRows;
+      resultLoader.batchedRows = null;
+    } finally {
+      lock.unlock();
+    }
+    return resultLoader.extractResult(rows != null ? rows : new ArrayList<Object>());
+  }
+
+  private void loadPending(ResultLoader trigger) throws SQLException {
+    if (!pending.contains(trigger)) { // 不属于本批次
+      pending.add(trigger);
+    }
+    List<Object> keys = new ArrayList<Object>(pending.size());
+    for (ResultLoader resultLoader : pending) {
+      keys.add(resultLoader.parameterObject);
+    }
+    Map<Object, List<Object>> rows = trigger.selectBatch(batchSelect, keys, batchSize);
+    for (ResultLoader resultLoader : pending) { // 行交给各自的loader,本批次不再引用
+      resultLoader.batchedRows = BatchSelect.rowsOf(rows, resultLoader.parameterObject);
+    }
+    pending.clear();
+  }
+
+}
@@ -16,7 +16,9 @@
 package org.apache.ibatis.executor.loader;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
@@ -52,6 +54,7 @@ public class ResultLoader {
   
   protected boolean loaded;
   protected Object resultObject;
+  List<Object> batchedRows; // LazyLoadBatch已查出还没被读取的行,由其锁保护
   
   public ResultLoader(Configuration config, Executor executor, MappedStatement mappedStatement, Object parameterObject, Class<?> targetType, CacheKey cacheKey, BoundSql boundSql) {
     this.configuration = config;
@@ -72,6 +75,29 @@ public class ResultLoader {
     return resultObject;
   }
 
+  /*
+   * Selects the rows of many keys for a LazyLoadBatch, on the executor this loader
+   * would use itself.
+   */
+  Map<Object, List<Object>> selectBatch(BatchSelect batchSelect, Collection<Object> keys, int batchSize) throws SQLException {
+    Executor localExecutor = executor;
+    if (Thread.currentThread().getId() != this.creatorThreadId || localExecutor.isClosed()) {
+      localExecutor = newExecutor();
+    }
+    try {
+      return batchSelect.select(localExecutor, keys, batchSize);
+    } finally {
+      if (localExecutor != executor) {
+        localExecutor.close(false);
+      }
+    }
+  }
+
+  Object extractResult(List<Object> list) {
+    resultObject = resultExtractor.extractObjectFromList(list, targetType);
+    return resultObject;
+  }
+
   private <E> List<E> selectList() throws SQLException {
     Executor localExecutor = executor;
     if (Thread.currentThread().getId() != this.creatorThreadId || localExecutor.isClosed()) {
@@ -27,6 +27,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.BaseExecutor;
@@ -48,15 +50,37 @@ import org.apache.ibatis.session.RowBounds;
 public class ResultLoaderMap {
 
   private final Map<String, LoadPair> loaderMap = new HashMap<String, LoadPair>();
+  private final Lock lock = new ReentrantLock(); // 代理加载属性时持有,加载期间会访问数据库
 
   public void addLoader(String property, MetaObject metaResultObject, ResultLoader resultLoader) {
+    addLoader(property, metaResultObject, resultLoader, null);
+  }
+
+  /**
+   * Adds a loader whose property is loaded together with the same property of the other
+   * objects in the batch.
+   */
+  public void addLoader(String property, MetaObject metaResultObject, ResultLoader resultLoader, LazyLoadBatch batch) {
     String upperFirst = getUppercaseFirstProperty(property);
     if (!upperFirst.equalsIgnoreCase(property) && loaderMap.containsKey(upperFirst)) {
       throw new ExecutorException("Nested lazy loaded result property '" + property +
               "' for query id '" + resultLoader.mappedStatement.getId() +
               " already exists in the result map. The leftmost property of all lazy loaded properties must be unique within a result map.");
     }
-    loaderMap.put(upperFirst, new LoadPair(property, metaResultObject, resultLoader));
+    LoadPair loadPair = new LoadPair(property, metaResultObject, resultLoader);
+    if (batch != null) {
+      batch.add(resultLoader);
+      loadPair.batch = batch;
+    }
+    loaderMap.put(upperFirst, loadPair);
+  }
+
+  /**
+   * Returns the lock that proxies hold while triggering loads, so that concurrent
+   * callers wait on a j.u.c. lock instead of the map's monitor.
+   */
+  public Lock getLock() {
+    return lock;
   }
 
   public final Map<String, LoadPair> getProperties() {
@@ -119,6 +143,10 @@ public class ResultLoaderMap {
      * Result loader which loads unread properties.
      */
     private transient ResultLoader resultLoader;
+    /**
+     * Batch loading the property of all sibling objects, if any.
+     */
+    private transient LazyLoadBatch batch;
     /**
      * Wow, logger.
      */
@@ -210,6 +238,9 @@ public class ResultLoaderMap {
         final ResultLoader old = this.resultLoader;
         this.resultLoader = new ResultLoader(old.configuration, new ClosedExecutor(), old.mappedStatement,
                 old.parameterObject, old.targetType, old.cacheKey, old.boundSql);
+      } else if (this.batch != null) {
+        this.metaResultObject.setValue(property, this.batch.load(this.resultLoader));
+        return;
       }
 
       this.metaResultObject.setValue(property, this.resultLoader.loadResult());
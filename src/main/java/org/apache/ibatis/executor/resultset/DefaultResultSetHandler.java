@@ -21,6 +21,9 @@ import org.apache.ibatis.cursor.defaults.DefaultCursor;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.executor.ResultExtractor;
+import org.apache.ibatis.executor.loader.BatchSelect;
+import org.apache.ibatis.executor.loader.LazyLoadBatch;
 import org.apache.ibatis.executor.loader.ResultLoader;
 import org.apache.ibatis.executor.loader.ResultLoaderMap;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
@@ -54,6 +57,7 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -93,6 +97,19 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     public ResultMapping propertyMapping;
   }
 
+  // batched nested selects
+  private boolean batchNestedSelects; // 只在结果整体返回时合并,ResultHandler和Cursor会提前拿到对象
+  private final Map<String, PendingBatch> pendingBatches = new LinkedHashMap<String, PendingBatch>();
+  private final Map<String, LazyLoadBatch> lazyLoadBatches = new HashMap<String, LazyLoadBatch>(); // null值表示该语句不能合并
+
+  private static class PendingBatch { // 同一个嵌套查询等待合并执行的各行
+    public BatchSelect batchSelect;
+    public List<Object> keys = new ArrayList<Object>();
+    public List<MetaObject> metaObjects = new ArrayList<MetaObject>();
+    public List<String> properties = new ArrayList<String>();
+    public List<Class<?>> targetTypes = new ArrayList<Class<?>>();
+  }
+
   public DefaultResultSetHandler(Executor executor, MappedStatement mappedStatement, ParameterHandler parameterHandler, ResultHandler<?> resultHandler, BoundSql boundSql,
       RowBounds rowBounds) {
     this.executor = executor;
@@ -151,6 +168,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     ErrorContext.instance().activity("handling results").object(mappedStatement.getId());
 
     final List<Object> multipleResults = new ArrayList<Object>();
+    batchNestedSelects = resultHandler == null && configuration.getNestedSelectBatchSize() > 0;
 
     int resultSetCount = 0;
     ResultSetWrapper rsw = getFirstResultSet(stmt);
@@ -181,6 +199,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       }
     }
 
+    loadPendingBatches();
     return collapseSingleResultList(multipleResults);
   }
 
@@ -665,8 +684,11 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       } else {
         final ResultLoader resultLoader = new ResultLoader(configuration, executor, nestedQuery, nestedQueryParameterObject, targetType, key, nestedBoundSql);
         if (propertyMapping.isLazy()) {
-          lazyLoader.addLoader(property, metaResultObject, resultLoader);
+          lazyLoader.addLoader(property, metaResultObject, resultLoader,
+              getLazyLoadBatch(nestedQuery, nestedBoundSql, nestedQueryParameterObject));
           value = DEFERED;
+        } else if (addToBatch(nestedQuery, nestedBoundSql, nestedQueryParameterObject, metaResultObject, property, targetType)) {
+          value = DEFERED; // 所有行处理完后合并执行
         } else {
           value = resultLoader.loadResult();
         }
@@ -675,6 +697,65 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return value;
   }
 
+  private boolean addToBatch(MappedStatement nestedQuery, BoundSql nestedBoundSql, Object key, MetaObject metaResultObject, String property,
+      Class<?> targetType) {
+    if (!batchNestedSelects || property == null) {
+      return false;
+    }
+    final String batchId = nestedQuery.getId() + "\n" + nestedBoundSql.getSql(); // 动态sql对不同的key可能不同
+    PendingBatch batch = pendingBatches.get(batchId);
+    if (batch == null) {
+      final BatchSelect batchSelect = BatchSelect.create(nestedQuery, nestedBoundSql);
+      if (batchSelect == null) {
+        return false;
+      }
+      batch = new PendingBatch();
+      batch.batchSelect = batchSelect;
+      pendingBatches.put(batchId, batch);
+    }
+    if (!batch.batchSelect.accepts(key)) { // 这个key只能单独查
+      return false;
+    }
+    batch.keys.add(key);
+    batch.metaObjects.add(metaResultObject);
+    batch.properties.add(property);
+    batch.targetTypes.add(targetType);
+    return true;
+  }
+
+  private LazyLoadBatch getLazyLoadBatch(MappedStatement nestedQuery, BoundSql nestedBoundSql, Object key) {
+    if (configuration.getLazyLoadBatchSize() <= 0) {
+      return null;
+    }
+    final String batchId = nestedQuery.getId() + "\n" + nestedBoundSql.getSql();
+    if (!lazyLoadBatches.containsKey(batchId)) { // 同一个handler的所有结果对象共享
+      final BatchSelect batchSelect = BatchSelect.create(nestedQuery, nestedBoundSql);
+      lazyLoadBatches.put(batchId, batchSelect == null ? null : new LazyLoadBatch(batchSelect, configuration.getLazyLoadBatchSize()));
+    }
+    final LazyLoadBatch batch = lazyLoadBatches.get(batchId);
+    return batch != null && batch.accepts(key) ? batch : null;
+  }
+
+  private void loadPendingBatches() throws SQLException {
+    if (pendingBatches.isEmpty()) {
+      return;
+    }
+    final ResultExtractor resultExtractor = new ResultExtractor(configuration, objectFactory);
+    for (PendingBatch batch : pendingBatches.values()) {
+      ErrorContext.instance().activity("loading batched nested select").object(batch.batchSelect.getNestedQuery().getId());
+      final Map<Object, List<Object>> rows = batch.batchSelect.select(executor, batch.keys, configuration.getNestedSelectBatchSize());
+      for (int i = 0; i < batch.keys.size(); i++) {
+        final MetaObject metaObject = batch.metaObjects.get(i);
+        final String property = batch.properties.get(i);
+        final Object value = resultExtractor.extractObjectFromList(BatchSelect.rowsOf(rows, batch.keys.get(i)), batch.targetTypes.get(i));
+        if (value != null || (configuration.isCallSettersOnNulls() && !metaObject.getSetterType(property).isPrimitive())) {
+          metaObject.setValue(property, value);
+        }
+      }
+    }
+    pendingBatches.clear();
+  }
+
   private Object prepareParameterForNestedQuery(ResultSet rs, ResultMapping resultMapping, Class<?> parameterType, String columnPrefix) throws SQLException {
     if (resultMapping.isCompositeResult()) {
       return prepareCompositeKeyParameter(rs, resultMapping, parameterType, columnPrefix);
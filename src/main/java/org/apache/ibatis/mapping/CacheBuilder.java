@@ -23,12 +23,18 @@ import java.util.Properties;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheSnapshotManager;
+import org.apache.ibatis.cache.CacheStats;
 import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
 import org.apache.ibatis.cache.decorators.LoggingCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.ScheduledCache;
 import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.decorators.SnapshotCache;
+import org.apache.ibatis.cache.decorators.StatisticsCache;
 import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
@@ -45,6 +51,10 @@ public class CacheBuilder {
   private boolean readWrite;
   private Properties properties;
   private boolean blocking;
+  private Long timeToLive;
+  private Long refreshAhead;
+  private CacheSnapshotManager snapshotManager;
+  private CacheStats stats;
 
   public CacheBuilder(String id) {
     this.id = id;
@@ -83,6 +93,26 @@ public class CacheBuilder {
     return this;
   }
   
+  public CacheBuilder timeToLive(Long timeToLive) {
+    this.timeToLive = timeToLive;
+    return this;
+  }
+
+  public CacheBuilder refreshAhead(Long refreshAhead) {
+    this.refreshAhead = refreshAhead;
+    return this;
+  }
+
+  public CacheBuilder snapshotManager(CacheSnapshotManager snapshotManager) {
+    this.snapshotManager = snapshotManager;
+    return this;
+  }
+
+  public CacheBuilder stats(CacheStats stats) {
+    this.stats = stats;
+    return this;
+  }
+
   public CacheBuilder properties(Properties properties) {
     this.properties = properties;
     return this;
@@ -90,18 +120,32 @@ public class CacheBuilder {
 
   public Cache build() {
     setDefaultImplementations();
+    if (stats == null) {
+      stats = new CacheStats(id);
+    }
     Cache cache = newBaseCacheInstance(implementation, id);
     setCacheProperties(cache);
     // issue #352, do not apply decorators to custom caches
     if (PerpetualCache.class.equals(cache.getClass())) {
+      cache = new StatisticsCache(cache, stats); // 统计淘汰
+      SnapshotCache snapshotCache = null;
+      if (snapshotManager != null) { // 紧贴基础缓存,淘汰也会经过它
+        snapshotCache = snapshotManager.decorate(cache);
+        cache = snapshotCache;
+      }
       for (Class<? extends Cache> decorator : decorators) {
         cache = newCacheDecoratorInstance(decorator, cache);
         setCacheProperties(cache);
       }
+      Cache evictionCache = cache;
       cache = setStandardDecorators(cache);
+      if (snapshotCache != null) { // 从淘汰装饰器放入,恢复的项同样受size限制
+        snapshotCache.restore(evictionCache, ExpiringCache.find(cache));
+      }
     } else if (!LoggingCache.class.isAssignableFrom(cache.getClass())) {
-      cache = new LoggingCache(cache);
+      cache = new LoggingCache(cache, stats);
     }
+    stats.setCache(cache);
     return cache;
   }
 
@@ -116,6 +160,7 @@ public class CacheBuilder {
 
   private Cache setStandardDecorators(Cache cache) {
     try {
+      boolean concurrent = cache instanceof TinyLfuCache; // 自带并发控制,不再需要SynchronizedCache
       MetaObject metaCache = SystemMetaObject.forObject(cache);
       if (size != null && metaCache.hasSetter("size")) {
         metaCache.setValue("size", size);
@@ -126,11 +171,22 @@ public class CacheBuilder {
       }
       if (readWrite) {
         cache = new SerializedCache(cache);
+        setCacheProperties(cache); // serializer, compressThreshold
+      }
+      cache = new LoggingCache(cache, stats);
+      if (!concurrent) {
+        cache = new SynchronizedCache(cache);
+      }
+      if (timeToLive != null) { // 在BlockingCache之下,过期项在持有key锁时算未命中
+        cache = new ExpiringCache(cache);
+        ((ExpiringCache) cache).setTimeToLive(timeToLive);
+        if (refreshAhead != null) {
+          ((ExpiringCache) cache).setRefreshAhead(refreshAhead);
+        }
       }
-      cache = new LoggingCache(cache);
-      cache = new SynchronizedCache(cache);
       if (blocking) {
         cache = new BlockingCache(cache);
+        setCacheProperties(cache); // timeout
       }
       return cache;
     } catch (Exception e) {
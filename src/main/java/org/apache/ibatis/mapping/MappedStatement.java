@@ -18,6 +18,7 @@ package org.apache.ibatis.mapping;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
@@ -47,6 +48,9 @@ public final class MappedStatement { // 表示XML文件中一个sql语句节点
   private boolean flushCacheRequired;
   private boolean useCache;
   private boolean resultOrdered;
+  private boolean usePrimary; // 读写分离时是否强制走主库
+  private boolean coalesce; // 是否合并并发的相同查询
+  private String[] tables; // 读写的表(小写,不含schema),未知时为null
   private SqlCommandType sqlCommandType;
   private KeyGenerator keyGenerator;
   private String[] keyProperties;
@@ -144,6 +148,28 @@ public final class MappedStatement { // 表示XML文件中一个sql语句节点
       return this;
     }
 
+    public Builder usePrimary(boolean usePrimary) {
+      mappedStatement.usePrimary = usePrimary;
+      return this;
+    }
+
+    public Builder coalesce(boolean coalesce) {
+      mappedStatement.coalesce = coalesce;
+      return this;
+    }
+
+    public Builder tables(String tables) {
+      String[] names = delimitedStringtoArray(tables);
+      if (names != null) {
+        for (int i = 0; i < names.length; i++) {
+          String name = names[i].trim();
+          names[i] = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ENGLISH);
+        }
+      }
+      mappedStatement.tables = names;
+      return this;
+    }
+
     public Builder keyGenerator(KeyGenerator keyGenerator) {
       mappedStatement.keyGenerator = keyGenerator;
       return this;
@@ -252,6 +278,18 @@ public final class MappedStatement { // 表示XML文件中一个sql语句节点
     return resultOrdered;
   }
 
+  public boolean isUsePrimary() {
+    return usePrimary;
+  }
+
+  public boolean isCoalesce() {
+    return coalesce;
+  }
+
+  public String[] getTables() {
+    return tables;
+  }
+
   public String getDatabaseId() {
     return databaseId;
   }
@@ -0,0 +1,146 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Asynchronous variant of {@link SqlSession}, opened with
+ * {@link SqlSessionFactory#openAsyncSession()}.
+ * <p>
+ * Each operation returns at once with a {@link Future} of its result. Operations run
+ * one at a time, in submission order, on a thread of the configured
+ * {@link Configuration#getAsyncExecutorService() executor service}, using the
+ * connection of the underlying session. Open several sessions to run queries in
+ * parallel. A failed operation completes its future with an
+ * {@link java.util.concurrent.ExecutionException} whose cause is the usual
+ * {@link org.apache.ibatis.exceptions.PersistenceException}.
+ * <p>
+ * Mappers may declare methods returning <code>Future&lt;T&gt;</code>, with T any type a
+ * synchronous mapper method could return.
+ */
+public interface AsyncSqlSession extends Closeable { // 异步SqlSession,操作按提交顺序在线程池中逐个执行
+
+  /**
+   * @see SqlSession#selectOne(String)
+   */
+  <T> Future<T> selectOne(String statement);
+
+  /**
+   * @see SqlSession#selectOne(String, Object)
+   */
+  <T> Future<T> selectOne(String statement, Object parameter);
+
+  /**
+   * @see SqlSession#selectList(String)
+   */
+  <E> Future<List<E>> selectList(String statement);
+
+  /**
+   * @see SqlSession#selectList(String, Object)
+   */
+  <E> Future<List<E>> selectList(String statement, Object parameter);
+
+  /**
+   * @see SqlSession#selectList(String, Object, RowBounds)
+   */
+  <E> Future<List<E>> selectList(String statement, Object parameter, RowBounds rowBounds);
+
+  /**
+   * @see SqlSession#selectMap(String, Object, String)
+   */
+  <K, V> Future<Map<K, V>> selectMap(String statement, Object parameter, String mapKey);
+
+  /**
+   * @see SqlSession#insert(String)
+   */
+  Future<Integer> insert(String statement);
+
+  /**
+   * @see SqlSession#insert(String, Object)
+   */
+  Future<Integer> insert(String statement, Object parameter);
+
+  /**
+   * @see SqlSession#update(String)
+   */
+  Future<Integer> update(String statement);
+
+  /**
+   * @see SqlSession#update(String, Object)
+   */
+  Future<Integer> update(String statement, Object parameter);
+
+  /**
+   * @see SqlSession#delete(String)
+   */
+  Future<Integer> delete(String statement);
+
+  /**
+   * @see SqlSession#delete(String, Object)
+   */
+  Future<Integer> delete(String statement, Object parameter);
+
+  /**
+   * @see SqlSession#commit()
+   */
+  Future<Void> commit();
+
+  /**
+   * @see SqlSession#commit(boolean)
+   */
+  Future<Void> commit(boolean force);
+
+  /**
+   * @see SqlSession#rollback()
+   */
+  Future<Void> rollback();
+
+  /**
+   * @see SqlSession#rollback(boolean)
+   */
+  Future<Void> rollback(boolean force);
+
+  /**
+   * Runs a task after the operations submitted before it, on the thread running the
+   * session's operations. Called from that thread, the task runs at once.
+   * @param task Work that may use the session and its mappers
+   * @return The result of the task
+   */
+  <T> Future<T> submit(Callable<T> task);
+
+  /**
+   * Retrieves a mapper whose methods run through this session. Methods returning a
+   * {@link Future} return at once, the others wait for their result.
+   * @param type Mapper interface class
+   * @return a mapper bound to this session
+   */
+  <T> T getMapper(Class<T> type);
+
+  Configuration getConfiguration();
+
+  /**
+   * Waits for the submitted operations to finish, then closes the underlying session.
+   * Operations submitted afterwards are rejected with a {@link SqlSessionException}.
+   */
+  @Override
+  void close();
+
+}
@@ -0,0 +1,27 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+/**
+ * How a flushing statement invalidates the second level cache.
+ * NAMESPACE clears the whole cache of the statement's namespace;
+ * TABLE only invalidates entries whose statements depend on the tables it writes,
+ * or the entries of every namespace when the tables it writes are unknown,
+ * also when the statement's own namespace has no cache.
+ */
+public enum CacheInvalidationScope {
+  NAMESPACE, TABLE
+}
@@ -15,8 +15,10 @@
  */
 package org.apache.ibatis.session;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -24,6 +26,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.ibatis.binding.MapperRegistry;
 import org.apache.ibatis.builder.CacheRefResolver;
@@ -31,18 +36,28 @@ import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.builder.annotation.MethodResolver;
 import org.apache.ibatis.builder.xml.XMLStatementBuilder;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheSnapshotManager;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.TableVersionRegistry;
 import org.apache.ibatis.cache.decorators.FifoCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.SoftCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
 import org.apache.ibatis.cache.decorators.WeakCache;
+import org.apache.ibatis.cache.decorators.WeightedLruCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.datasource.balanced.LoadBalancedDataSourceFactory;
 import org.apache.ibatis.datasource.jndi.JndiDataSourceFactory;
 import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
+import org.apache.ibatis.executor.BaseExecutor;
 import org.apache.ibatis.executor.BatchExecutor;
 import org.apache.ibatis.executor.CachingExecutor;
 import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.QueryCoalescer;
 import org.apache.ibatis.executor.ReuseExecutor;
+import org.apache.ibatis.executor.RoutingExecutor;
 import org.apache.ibatis.executor.SimpleExecutor;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.loader.ProxyFactory;
@@ -95,6 +110,7 @@ import org.apache.ibatis.type.TypeHandlerRegistry;
 public class Configuration {
 
   protected Environment environment;
+  protected Environment replicaEnvironment; // 只读副本环境,配置后SELECT语句路由到副本
 
   protected boolean safeRowBoundsEnabled = false;
   protected boolean safeResultHandlerEnabled = true;
@@ -109,6 +125,17 @@ public class Configuration {
   protected String logPrefix;
   protected Class <? extends Log> logImpl;
   protected LocalCacheScope localCacheScope = LocalCacheScope.SESSION;
+  protected int localCacheSize; // 一级缓存最多条数,0表示不限
+  protected long localCacheMaxBytes; // 一级缓存最多估算字节数,0表示不限
+  protected boolean localCacheSoftReferences; // 一级缓存以软引用持有结果
+  protected CacheInvalidationScope cacheInvalidationScope = CacheInvalidationScope.NAMESPACE;
+  protected String cacheSnapshotDirectory; // 非空时保存二级缓存快照
+  protected String cacheSnapshotVersion;
+  protected long cacheSnapshotInterval;
+  protected CacheSnapshotManager cacheSnapshotManager;
+  protected boolean cacheStatsJmxEnabled; // 是否把缓存统计注册为JMX MBean
+  protected ExecutorService asyncExecutorService; // AsyncSqlSession执行操作的线程池
+  protected ExecutorService parallelExecutorService; // selectParallel执行各查询的线程池
   protected JdbcType jdbcTypeForNull = JdbcType.OTHER;
   protected Set<String> lazyLoadTriggerMethods = new HashSet<String>(Arrays.asList(new String[] { "equals", "clone", "hashCode", "toString" }));
   protected Integer defaultStatementTimeout;
@@ -123,6 +150,8 @@ public class Configuration {
   protected MapperRegistry mapperRegistry = new MapperRegistry(this);
 
   protected boolean lazyLoadingEnabled = false;
+  protected int nestedSelectBatchSize; // 非0时把各行的嵌套查询合并为IN查询,每次最多这么多个key
+  protected int lazyLoadBatchSize; // 非0时延迟属性第一次触发就为同一查询返回的所有对象一起加载
   protected ProxyFactory proxyFactory = new JavassistProxyFactory(); // #224 Using internal Javassist instead of OGNL
 
   protected String databaseId;
@@ -141,6 +170,9 @@ public class Configuration {
 
   protected final Map<String, MappedStatement> mappedStatements = new StrictMap<MappedStatement>("Mapped Statements collection");
   protected final Map<String, Cache> caches = new StrictMap<Cache>("Caches collection");
+  protected final TableVersionRegistry tableVersionRegistry = new TableVersionRegistry();
+  protected final ConcurrentMap<String, CacheStats> cacheStats = new ConcurrentHashMap<String, CacheStats>(); // 缓存id -> 统计
+  protected final QueryCoalescer queryCoalescer = new QueryCoalescer(); // 各会话共享,合并并发的相同查询
   protected final Map<String, ResultMap> resultMaps = new StrictMap<ResultMap>("Result Maps collection");
   protected final Map<String, ParameterMap> parameterMaps = new StrictMap<ParameterMap>("Parameter Maps collection");
   protected final Map<String, KeyGenerator> keyGenerators = new StrictMap<KeyGenerator>("Key Generators collection");
@@ -172,10 +204,14 @@ public class Configuration {
     typeAliasRegistry.registerAlias("JNDI", JndiDataSourceFactory.class);
     typeAliasRegistry.registerAlias("POOLED", PooledDataSourceFactory.class);
     typeAliasRegistry.registerAlias("UNPOOLED", UnpooledDataSourceFactory.class);
+    typeAliasRegistry.registerAlias("LOAD_BALANCED", LoadBalancedDataSourceFactory.class);
 
     typeAliasRegistry.registerAlias("PERPETUAL", PerpetualCache.class);
+    typeAliasRegistry.registerAlias("OFF_HEAP", OffHeapCache.class);
     typeAliasRegistry.registerAlias("FIFO", FifoCache.class);
     typeAliasRegistry.registerAlias("LRU", LruCache.class);
+    typeAliasRegistry.registerAlias("TINYLFU", TinyLfuCache.class);
+    typeAliasRegistry.registerAlias("WEIGHTED", WeightedLruCache.class);
     typeAliasRegistry.registerAlias("SOFT", SoftCache.class);
     typeAliasRegistry.registerAlias("WEAK", WeakCache.class);
 
@@ -283,6 +319,14 @@ public class Configuration {
     this.environment = environment;
   }
 
+  public Environment getReplicaEnvironment() {
+    return replicaEnvironment;
+  }
+
+  public void setReplicaEnvironment(Environment replicaEnvironment) {
+    this.replicaEnvironment = replicaEnvironment;
+  }
+
   public AutoMappingBehavior getAutoMappingBehavior() {
     return autoMappingBehavior;
   }
@@ -299,6 +343,33 @@ public class Configuration {
     this.lazyLoadingEnabled = lazyLoadingEnabled;
   }
 
+  public int getNestedSelectBatchSize() {
+    return nestedSelectBatchSize;
+  }
+
+  /**
+   * Runs the eager nested selects of a result set as one <code>IN (...)</code> query per
+   * nested statement, with at most this many keys each, instead of one query per row.
+   * See {@link org.apache.ibatis.executor.loader.BatchSelect} for the statements that
+   * qualify. 0 (the default) disables batching.
+   */
+  public void setNestedSelectBatchSize(int nestedSelectBatchSize) {
+    this.nestedSelectBatchSize = nestedSelectBatchSize;
+  }
+
+  public int getLazyLoadBatchSize() {
+    return lazyLoadBatchSize;
+  }
+
+  /**
+   * Loads a lazy property, the first time it is read on any of the objects returned by a
+   * query, for all of them with <code>IN (...)</code> queries of at most this many keys.
+   * 0 (the default) loads it for that one object only.
+   */
+  public void setLazyLoadBatchSize(int lazyLoadBatchSize) {
+    this.lazyLoadBatchSize = lazyLoadBatchSize;
+  }
+
   public ProxyFactory getProxyFactory() {
     return proxyFactory;
   }
@@ -390,6 +461,148 @@ public class Configuration {
     this.localCacheScope = localCacheScope;
   }
 
+  public int getLocalCacheSize() {
+    return localCacheSize;
+  }
+
+  /**
+   * Bounds the SESSION scoped local cache to this many entries, evicting the least
+   * recently used ones once each outermost query completes. 0 (the default) is unbounded.
+   */
+  public void setLocalCacheSize(int localCacheSize) {
+    this.localCacheSize = localCacheSize;
+  }
+
+  public long getLocalCacheMaxBytes() {
+    return localCacheMaxBytes;
+  }
+
+  /**
+   * Bounds the local cache to this many bytes, as estimated by
+   * {@link org.apache.ibatis.cache.decorators.ObjectSizeWeigher}. 0 (the default) is unbounded.
+   */
+  public void setLocalCacheMaxBytes(long localCacheMaxBytes) {
+    this.localCacheMaxBytes = localCacheMaxBytes;
+  }
+
+  public boolean isLocalCacheSoftReferences() {
+    return localCacheSoftReferences;
+  }
+
+  /**
+   * Holds local cache results by soft reference once the statement that loaded them
+   * completes, so that they can be reclaimed under memory pressure.
+   */
+  public void setLocalCacheSoftReferences(boolean localCacheSoftReferences) {
+    this.localCacheSoftReferences = localCacheSoftReferences;
+  }
+
+  public CacheInvalidationScope getCacheInvalidationScope() {
+    return cacheInvalidationScope;
+  }
+
+  public void setCacheInvalidationScope(CacheInvalidationScope cacheInvalidationScope) {
+    this.cacheInvalidationScope = cacheInvalidationScope;
+  }
+
+  public TableVersionRegistry getTableVersionRegistry() {
+    return tableVersionRegistry;
+  }
+
+  public String getCacheSnapshotDirectory() {
+    return cacheSnapshotDirectory;
+  }
+
+  public void setCacheSnapshotDirectory(String cacheSnapshotDirectory) {
+    this.cacheSnapshotDirectory = cacheSnapshotDirectory;
+  }
+
+  public String getCacheSnapshotVersion() {
+    return cacheSnapshotVersion;
+  }
+
+  public void setCacheSnapshotVersion(String cacheSnapshotVersion) {
+    this.cacheSnapshotVersion = cacheSnapshotVersion;
+  }
+
+  public long getCacheSnapshotInterval() {
+    return cacheSnapshotInterval;
+  }
+
+  public void setCacheSnapshotInterval(long cacheSnapshotInterval) {
+    this.cacheSnapshotInterval = cacheSnapshotInterval;
+  }
+
+  /**
+   * @return The snapshot manager, created on first use when a cacheSnapshotDirectory is set, otherwise null
+   */
+  public synchronized CacheSnapshotManager getCacheSnapshotManager() {
+    if (cacheSnapshotManager == null && cacheSnapshotDirectory != null) {
+      cacheSnapshotManager = new CacheSnapshotManager(new File(cacheSnapshotDirectory), cacheSnapshotVersion,
+          cacheSnapshotInterval, tableVersionRegistry);
+    }
+    return cacheSnapshotManager;
+  }
+
+  public ExecutorService getAsyncExecutorService() {
+    return asyncExecutorService;
+  }
+
+  /**
+   * Sets the executor service running the operations of {@link AsyncSqlSession}s. When null,
+   * the default, they run on a shared pool of daemon threads. A session only uses a thread
+   * of the service while it has pending operations.
+   */
+  public void setAsyncExecutorService(ExecutorService asyncExecutorService) {
+    this.asyncExecutorService = asyncExecutorService;
+  }
+
+  public ExecutorService getParallelExecutorService() {
+    return parallelExecutorService;
+  }
+
+  /**
+   * Sets the executor service running the statements of
+   * {@link ParallelSqlSession#selectParallel(java.util.Map)}. When null, the default, they run
+   * on a shared pool of daemon threads. It must not be the executor service of the async
+   * sessions, whose operations wait for these statements. A statement the service rejects
+   * runs on the calling thread.
+   */
+  public void setParallelExecutorService(ExecutorService parallelExecutorService) {
+    this.parallelExecutorService = parallelExecutorService;
+  }
+
+  public boolean isCacheStatsJmxEnabled() {
+    return cacheStatsJmxEnabled;
+  }
+
+  public void setCacheStatsJmxEnabled(boolean cacheStatsJmxEnabled) {
+    this.cacheStatsJmxEnabled = cacheStatsJmxEnabled;
+  }
+
+  /**
+   * @return The statistics of the cache with this id, created on first use
+   */
+  public CacheStats getCacheStats(String cacheId) {
+    CacheStats stats = cacheStats.get(cacheId);
+    if (stats == null) {
+      CacheStats created = new CacheStats(cacheId);
+      stats = cacheStats.putIfAbsent(cacheId, created);
+      if (stats == null) {
+        stats = created;
+      }
+    }
+    return stats;
+  }
+
+  public Collection<CacheStats> getCacheStats() {
+    return Collections.unmodifiableCollection(cacheStats.values());
+  }
+
+  public QueryCoalescer getQueryCoalescer() {
+    return queryCoalescer;
+  }
+
   public JdbcType getJdbcTypeForNull() {
     return jdbcTypeForNull;
   }
@@ -452,6 +665,10 @@ public class Configuration {
     return interceptorChain.getInterceptors();
   }
 
+  public InterceptorChain getInterceptorChain() {
+    return interceptorChain;
+  }
+
   public LanguageDriverRegistry getLanguageRegistry() {
     return languageRegistry;
   }
@@ -495,6 +712,14 @@ public class Configuration {
   }
 
   public Executor newExecutor(Transaction transaction, ExecutorType executorType) {
+    return newExecutor(transaction, executorType, null);
+  }
+
+  /*
+   * When a replica transaction is given, SELECT statements are routed to it
+   * until the session performs its first write; see RoutingExecutor.
+   */
+  public Executor newExecutor(Transaction transaction, ExecutorType executorType, Transaction replicaTransaction) {
     executorType = executorType == null ? defaultExecutorType : executorType;
     executorType = executorType == null ? ExecutorType.SIMPLE : executorType;
     Executor executor;
@@ -505,6 +730,15 @@ public class Configuration {
     } else {
       executor = new SimpleExecutor(this, transaction);
     }
+    if (replicaTransaction != null) {
+      // 副本只执行查询,批量模式对其没有意义
+      BaseExecutor replicaExecutor = ExecutorType.REUSE == executorType
+          ? new ReuseExecutor(this, replicaTransaction) : new SimpleExecutor(this, replicaTransaction);
+      if (replicaEnvironment != null) {
+        replicaExecutor.setEnvironmentId(replicaEnvironment.getId());
+      }
+      executor = new RoutingExecutor(executor, replicaExecutor);
+    }
     if (cacheEnabled) {
       executor = new CachingExecutor(executor);
     }
@@ -0,0 +1,42 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link SqlSession} that can run independent SELECT statements in one call. Implemented
+ * by the sessions of the default {@link SqlSessionFactory} and by {@link SqlSessionManager};
+ * kept apart from {@link SqlSession} so that other implementations need not provide it.
+ */
+public interface ParallelSqlSession extends SqlSession { // 可并发执行互不相关查询的SqlSession
+
+  /**
+   * Runs independent SELECT statements concurrently, each on its own connection taken from
+   * the environment (or the replica environment, when configured) in its own auto-commit
+   * transaction, on {@link Configuration#getParallelExecutorService()}. Statements backed
+   * by a second-level cache are answered from the cache without touching a connection.
+   * The statements do not see changes this session has not committed yet, so when the
+   * session has written since its last commit or rollback, or when a request is not a
+   * SELECT, all requests run one after another on this session instead.
+   * @param <K> the type of the keys identifying the requests
+   * @param requests The statements to run, keyed by a caller chosen key.
+   * @return The result list of each request under the key of that request, in request order
+   */
+  <K> Map<K, List<?>> selectParallel(Map<K, SelectRequest> requests); // 并发执行互不相关的查询
+
+}
@@ -0,0 +1,59 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+/**
+ * One statement of a {@link ParallelSqlSession#selectParallel(java.util.Map)} call: the statement
+ * id, its parameter and the row bounds to apply.
+ */
+public class SelectRequest { // 并行查询中的一条语句
+
+  private final String statement;
+  private final Object parameter;
+  private final RowBounds rowBounds;
+
+  public SelectRequest(String statement) {
+    this(statement, null, RowBounds.DEFAULT);
+  }
+
+  public SelectRequest(String statement, Object parameter) {
+    this(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  public SelectRequest(String statement, Object parameter, RowBounds rowBounds) {
+    this.statement = statement;
+    this.parameter = parameter;
+    this.rowBounds = rowBounds == null ? RowBounds.DEFAULT : rowBounds;
+  }
+
+  public String getStatement() {
+    return statement;
+  }
+
+  public Object getParameter() {
+    return parameter;
+  }
+
+  public RowBounds getRowBounds() {
+    return rowBounds;
+  }
+
+  @Override
+  public String toString() {
+    return statement;
+  }
+
+}
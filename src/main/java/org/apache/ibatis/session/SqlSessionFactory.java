@@ -35,6 +35,14 @@ public interface SqlSessionFactory {
   SqlSession openSession(ExecutorType execType, TransactionIsolationLevel level);
   SqlSession openSession(ExecutorType execType, Connection connection);
 
+  /**
+   * Opens a session whose operations run asynchronously on
+   * {@link Configuration#getAsyncExecutorService()}.
+   */
+  AsyncSqlSession openAsyncSession();
+  AsyncSqlSession openAsyncSession(boolean autoCommit);
+  AsyncSqlSession openAsyncSession(ExecutorType execType);
+
   Configuration getConfiguration();
 
 }
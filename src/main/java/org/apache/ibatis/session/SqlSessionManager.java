@@ -32,18 +32,18 @@ import org.apache.ibatis.reflection.ExceptionUtil;
 /**
  * @author Larry Meadors
  */
-public class SqlSessionManager implements SqlSessionFactory, SqlSession {
+public class SqlSessionManager implements SqlSessionFactory, ParallelSqlSession {
 
   private final SqlSessionFactory sqlSessionFactory;
-  private final SqlSession sqlSessionProxy;
+  private final ParallelSqlSession sqlSessionProxy;
 
   private ThreadLocal<SqlSession> localSqlSession = new ThreadLocal<SqlSession>();
 
   private SqlSessionManager(SqlSessionFactory sqlSessionFactory) {
     this.sqlSessionFactory = sqlSessionFactory;
-    this.sqlSessionProxy = (SqlSession) Proxy.newProxyInstance(
+    this.sqlSessionProxy = (ParallelSqlSession) Proxy.newProxyInstance(
         SqlSessionFactory.class.getClassLoader(),
-        new Class[]{SqlSession.class},
+        new Class[]{ParallelSqlSession.class},
         new SqlSessionInterceptor());
   }
 
@@ -151,6 +151,21 @@ public class SqlSessionManager implements SqlSessionFactory, SqlSession {
     return sqlSessionFactory.openSession(execType, connection);
   }
 
+  @Override
+  public AsyncSqlSession openAsyncSession() {
+    return sqlSessionFactory.openAsyncSession();
+  }
+
+  @Override
+  public AsyncSqlSession openAsyncSession(boolean autoCommit) {
+    return sqlSessionFactory.openAsyncSession(autoCommit);
+  }
+
+  @Override
+  public AsyncSqlSession openAsyncSession(ExecutorType execType) {
+    return sqlSessionFactory.openAsyncSession(execType);
+  }
+
   @Override
   public Configuration getConfiguration() {
     return sqlSessionFactory.getConfiguration();
@@ -211,6 +226,11 @@ public class SqlSessionManager implements SqlSessionFactory, SqlSession {
     return sqlSessionProxy.<E> selectList(statement, parameter, rowBounds);
   }
 
+  @Override
+  public <K> Map<K, List<?>> selectParallel(Map<K, SelectRequest> requests) {
+    return sqlSessionProxy.<K> selectParallel(requests);
+  }
+
   @Override
   public void select(String statement, ResultHandler handler) {
     sqlSessionProxy.select(statement, handler);
@@ -0,0 +1,310 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session.defaults;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.session.AsyncSqlSession;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionException;
+
+/**
+ * Runs the operations of a {@link SqlSession} one at a time, in submission order, on an
+ * {@link ExecutorService}. At most one task per session is queued on the executor service:
+ * it runs the session's pending operations until there are none left, and then gives its
+ * thread back. Successive operations may thus run on different threads; the key locks of a
+ * blocking cache belong to the session, not to the thread, so its commit still releases them.
+ */
+public class DefaultAsyncSqlSession implements AsyncSqlSession { // 串行地在线程池中执行一个SqlSession的操作
+
+  private final SqlSession session;
+  private final ExecutorService executorService;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Queue<FutureTask<?>> pending = new LinkedList<FutureTask<?>>(); // 待执行的操作
+  private boolean scheduled; // 是否已有任务在线程池中执行pending
+  private boolean closed;
+  private volatile Thread worker; // 正在执行本会话操作的线程
+
+  private final Runnable drain = new Runnable() {
+    @Override
+    public void run() {
+      worker = Thread.currentThread();
+      while (true) {
+        FutureTask<?> task;
+        lock.lock();
+        try {
+          task = pending.poll();
+          if (task == null) {
+            worker = null;
+            scheduled = false;
+            return;
+          }
+        } finally {
+          lock.unlock();
+        }
+        task.run(); // FutureTask自己捕获异常
+      }
+    }
+  };
+
+  public DefaultAsyncSqlSession(SqlSession session, ExecutorService executorService) {
+    this.session = session;
+    this.executorService = executorService != null ? executorService : DefaultExecutorService.INSTANCE;
+  }
+
+  @Override
+  public <T> Future<T> selectOne(final String statement) {
+    return submit(new Callable<T>() {
+      @Override
+      public T call() {
+        return session.<T> selectOne(statement);
+      }
+    });
+  }
+
+  @Override
+  public <T> Future<T> selectOne(final String statement, final Object parameter) {
+    return submit(new Callable<T>() {
+      @Override
+      public T call() {
+        return session.<T> selectOne(statement, parameter);
+      }
+    });
+  }
+
+  @Override
+  public <E> Future<List<E>> selectList(String statement) {
+    return selectList(statement, null, RowBounds.DEFAULT);
+  }
+
+  @Override
+  public <E> Future<List<E>> selectList(String statement, Object parameter) {
+    return selectList(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  @Override
+  public <E> Future<List<E>> selectList(final String statement, final Object parameter, final RowBounds rowBounds) {
+    return submit(new Callable<List<E>>() {
+      @Override
+      public List<E> call() {
+        return session.<E> selectList(statement, parameter, rowBounds);
+      }
+    });
+  }
+
+  @Override
+  public <K, V> Future<Map<K, V>> selectMap(final String statement, final Object parameter, final String mapKey) {
+    return submit(new Callable<Map<K, V>>() {
+      @Override
+      public Map<K, V> call() {
+        return session.<K, V> selectMap(statement, parameter, mapKey);
+      }
+    });
+  }
+
+  @Override
+  public Future<Integer> insert(String statement) {
+    return insert(statement, null);
+  }
+
+  @Override
+  public Future<Integer> insert(final String statement, final Object parameter) {
+    return submit(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return session.insert(statement, parameter);
+      }
+    });
+  }
+
+  @Override
+  public Future<Integer> update(String statement) {
+    return update(statement, null);
+  }
+
+  @Override
+  public Future<Integer> update(final String statement, final Object parameter) {
+    return submit(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return session.update(statement, parameter);
+      }
+    });
+  }
+
+  @Override
+  public Future<Integer> delete(String statement) {
+    return delete(statement, null);
+  }
+
+  @Override
+  public Future<Integer> delete(final String statement, final Object parameter) {
+    return submit(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return session.delete(statement, parameter);
+      }
+    });
+  }
+
+  @Override
+  public Future<Void> commit() {
+    return commit(false);
+  }
+
+  @Override
+  public Future<Void> commit(final boolean force) {
+    return submit(new Callable<Void>() {
+      @Override
+      public Void call() {
+        session.commit(force);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public Future<Void> rollback() {
+    return rollback(false);
+  }
+
+  @Override
+  public Future<Void> rollback(final boolean force) {
+    return submit(new Callable<Void>() {
+      @Override
+      public Void call() {
+        session.rollback(force);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public <T> Future<T> submit(Callable<T> task) {
+    FutureTask<T> future = new FutureTask<T>(task);
+    if (Thread.currentThread() == worker) { // 在本会话的操作中调用,排队会死锁
+      future.run();
+    } else {
+      enqueue(future, false);
+    }
+    return future;
+  }
+
+  @Override
+  public <T> T getMapper(Class<T> type) {
+    return getConfiguration().getMapperRegistry().getMapper(type, session, this);
+  }
+
+  @Override
+  public Configuration getConfiguration() {
+    return session.getConfiguration();
+  }
+
+  @Override
+  public void close() {
+    FutureTask<Void> closing = new FutureTask<Void>(new Callable<Void>() {
+      @Override
+      public Void call() {
+        session.close();
+        return null;
+      }
+    });
+    if (Thread.currentThread() == worker) {
+      lock.lock();
+      try {
+        closed = true;
+      } finally {
+        lock.unlock();
+      }
+      closing.run();
+    } else if (!enqueue(closing, true)) {
+      return; // 已关闭
+    }
+    try {
+      closing.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new SqlSessionException("Error closing session.  Cause: " + e.getCause(), e.getCause());
+    }
+  }
+
+  /* Returns false when the session is already closed and closing is true. */
+  private boolean enqueue(FutureTask<?> task, boolean closing) {
+    boolean schedule;
+    lock.lock();
+    try {
+      if (closed) {
+        if (closing) {
+          return false;
+        }
+        throw new SqlSessionException("AsyncSqlSession was closed.");
+      }
+      closed = closing;
+      pending.add(task);
+      schedule = !scheduled;
+      scheduled = true;
+    } finally {
+      lock.unlock();
+    }
+    if (schedule) {
+      try {
+        executorService.execute(drain);
+      } catch (RejectedExecutionException e) {
+        lock.lock();
+        try {
+          pending.remove(task);
+          scheduled = false;
+          closed = false;
+        } finally {
+          lock.unlock();
+        }
+        throw new SqlSessionException("Error submitting operation.  Cause: " + e, e);
+      }
+    }
+    return true;
+  }
+
+  /* Used when no executor service is configured, its threads do not keep the JVM alive. */
+  static class DefaultExecutorService {
+    static final ExecutorService INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "mybatis-async-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+}
@@ -21,8 +21,18 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ibatis.binding.BindingException;
 import org.apache.ibatis.cursor.Cursor;
@@ -31,13 +41,22 @@ import org.apache.ibatis.exceptions.TooManyResultsException;
 import org.apache.ibatis.executor.BatchResult;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.RoutingExecutor;
 import org.apache.ibatis.executor.result.DefaultMapResultHandler;
 import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.ParallelSqlSession;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SelectRequest;
 import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.TransactionFactory;
+import org.apache.ibatis.transaction.managed.ManagedTransactionFactory;
 
 /**
  *
@@ -46,13 +65,14 @@ import org.apache.ibatis.session.SqlSession;
  *
  * @author Clinton Begin
  */
-public class DefaultSqlSession implements SqlSession { // 默认sqlSession
+public class DefaultSqlSession implements ParallelSqlSession { // 默认sqlSession
 
   private Configuration configuration; // mybatis的configuration
   private Executor executor; // 用于真正执行crud等操作
 
   private boolean autoCommit; // 标识是否自动提交
   private boolean dirty; // hama
+  private boolean written; // 本会话写过,提交后也不重置,此后并行查询和RoutingExecutor一样走主库
   private List<Cursor<?>> cursorList; // 游标list
 
   public DefaultSqlSession(Configuration configuration, Executor executor, boolean autoCommit) {
@@ -153,6 +173,101 @@ public class DefaultSqlSession implements SqlSession { // 默认sqlSession
     }
   }
 
+  @Override
+  public <K> Map<K, List<?>> selectParallel(Map<K, SelectRequest> requests) {
+    Map<K, List<?>> results = new LinkedHashMap<K, List<?>>();
+    if (requests.size() < 2 || dirty || configuration.getEnvironment() == null || !allSelects(requests)) { // 看不到本会话未提交的修改,此时在本会话里依次执行
+      for (Map.Entry<K, SelectRequest> entry : requests.entrySet()) {
+        SelectRequest request = entry.getValue();
+        results.put(entry.getKey(), selectList(request.getStatement(), request.getParameter(), request.getRowBounds()));
+      }
+      return results;
+    }
+    ExecutorService executorService = configuration.getParallelExecutorService(); // 不用async会话的线程池,它们的操作会在这里等待
+    if (executorService == null) {
+      executorService = DefaultParallelExecutorService.INSTANCE;
+    }
+    Map<K, Future<List<Object>>> futures = new LinkedHashMap<K, Future<List<Object>>>();
+    try {
+      for (Map.Entry<K, SelectRequest> entry : requests.entrySet()) {
+        futures.put(entry.getKey(), submit(executorService, newParallelSelect(entry.getValue())));
+      }
+      Exception failure = null;
+      for (Map.Entry<K, Future<List<Object>>> entry : futures.entrySet()) { // 等所有查询结束,它们的连接都已归还
+        try {
+          results.put(entry.getKey(), entry.getValue().get());
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+          }
+        }
+      }
+      if (failure != null) {
+        throw ExceptionFactory.wrapException("Error querying database.  Cause: " + failure, failure);
+      }
+      return results;
+    } catch (InterruptedException e) {
+      for (Future<List<Object>> future : futures.values()) {
+        future.cancel(true);
+      }
+      Thread.currentThread().interrupt();
+      throw ExceptionFactory.wrapException("Interrupted while waiting for parallel selects.  Cause: " + e, e);
+    } finally {
+      ErrorContext.instance().reset();
+    }
+  }
+
+  /* A request the executor service rejects, e.g. a saturated bounded one, runs at once on this thread. */
+  private static <T> Future<T> submit(ExecutorService executorService, Callable<T> callable) {
+    try {
+      return executorService.submit(callable);
+    } catch (RejectedExecutionException e) {
+      FutureTask<T> task = new FutureTask<T>(callable);
+      task.run();
+      return task;
+    }
+  }
+
+  private boolean allSelects(Map<?, SelectRequest> requests) {
+    for (SelectRequest request : requests.values()) {
+      if (configuration.getMappedStatement(request.getStatement()).getSqlCommandType() != SqlCommandType.SELECT) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Runs the request in its own auto-commit transaction through a new executor, so that
+   * plugins and the second-level cache apply as they do to this session. Reads go to the
+   * replica environment by the same rule as RoutingExecutor, so once this session has
+   * written they stay on the primary even after the commit.
+   */
+  private Callable<List<Object>> newParallelSelect(final SelectRequest request) {
+    final MappedStatement ms = configuration.getMappedStatement(request.getStatement());
+    final Object parameter = wrapCollection(request.getParameter());
+    final boolean primaryRequired = RoutingExecutor.isPrimaryRequired(ms, written);
+    return new Callable<List<Object>>() {
+      @Override
+      public List<Object> call() throws Exception {
+        Environment environment = configuration.getReplicaEnvironment();
+        if (environment == null || primaryRequired) {
+          environment = configuration.getEnvironment();
+        }
+        TransactionFactory transactionFactory = environment.getTransactionFactory() != null
+            ? environment.getTransactionFactory() : new ManagedTransactionFactory();
+        Transaction tx = transactionFactory.newTransaction(environment.getDataSource(), null, true);
+        Executor parallelExecutor = configuration.newExecutor(tx, ExecutorType.SIMPLE);
+        try {
+          return parallelExecutor.query(ms, parameter, request.getRowBounds(), Executor.NO_RESULT_HANDLER);
+        } finally {
+          parallelExecutor.close(false); // 提交二级缓存的暂存项并归还连接
+          ErrorContext.instance().reset();
+        }
+      }
+    };
+  }
+
   @Override
   public void select(String statement, Object parameter, ResultHandler handler) {
     select(statement, parameter, RowBounds.DEFAULT, handler);
@@ -194,6 +309,7 @@ public class DefaultSqlSession implements SqlSession { // 默认sqlSession
   public int update(String statement, Object parameter) { // 更新
     try {
       dirty = true; // 标记dirty
+      written = true;
       MappedStatement ms = configuration.getMappedStatement(statement); // 获得MappedStatement
       return executor.update(ms, wrapCollection(parameter)); // 用executor执行update
     } catch (Exception e) {
@@ -333,6 +449,20 @@ public class DefaultSqlSession implements SqlSession { // 默认sqlSession
     return object; // 其他情况不包装，直接返回object
   }
 
+  /* Used when no executor service is configured, its threads do not keep the JVM alive. */
+  static class DefaultParallelExecutorService {
+    static final ExecutorService INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "mybatis-parallel-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
   public static class StrictMap<V> extends HashMap<String, V> {
 
     private static final long serialVersionUID = -5741767162221585340L;
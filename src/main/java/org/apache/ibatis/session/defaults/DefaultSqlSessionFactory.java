@@ -18,10 +18,13 @@ package org.apache.ibatis.session.defaults;
 import java.sql.Connection;
 import java.sql.SQLException;
 
+import org.apache.ibatis.cache.CacheSnapshotManager;
+import org.apache.ibatis.cache.CacheStats;
 import org.apache.ibatis.exceptions.ExceptionFactory;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.AsyncSqlSession;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
@@ -40,6 +43,15 @@ public class DefaultSqlSessionFactory implements SqlSessionFactory {
 
   public DefaultSqlSessionFactory(Configuration configuration) {
     this.configuration = configuration;
+    CacheSnapshotManager snapshotManager = configuration.getCacheSnapshotManager();
+    if (snapshotManager != null) { // 恢复表版本,开始定期及关闭时保存快照
+      snapshotManager.start();
+    }
+    if (configuration.isCacheStatsJmxEnabled()) {
+      for (CacheStats stats : configuration.getCacheStats()) {
+        stats.registerMBean();
+      }
+    }
   }
 
   @Override
@@ -72,6 +84,21 @@ public class DefaultSqlSessionFactory implements SqlSessionFactory {
     return openSessionFromDataSource(execType, null, autoCommit);
   }
 
+  @Override
+  public AsyncSqlSession openAsyncSession() {
+    return openAsyncSession(configuration.getDefaultExecutorType());
+  }
+
+  @Override
+  public AsyncSqlSession openAsyncSession(boolean autoCommit) {
+    return new DefaultAsyncSqlSession(openSession(autoCommit), configuration.getAsyncExecutorService());
+  }
+
+  @Override
+  public AsyncSqlSession openAsyncSession(ExecutorType execType) {
+    return new DefaultAsyncSqlSession(openSession(execType), configuration.getAsyncExecutorService());
+  }
+
   @Override
   public SqlSession openSession(Connection connection) {
     return openSessionFromConnection(configuration.getDefaultExecutorType(), connection);
@@ -89,14 +116,21 @@ public class DefaultSqlSessionFactory implements SqlSessionFactory {
   // 通过数据源创建session
   private SqlSession openSessionFromDataSource(ExecutorType execType, TransactionIsolationLevel level, boolean autoCommit) {
     Transaction tx = null;
+    Transaction replicaTx = null;
     try {
       final Environment environment = configuration.getEnvironment();
       final TransactionFactory transactionFactory = getTransactionFactoryFromEnvironment(environment);
       tx = transactionFactory.newTransaction(environment.getDataSource(), level, autoCommit); // 创建事务
-      final Executor executor = configuration.newExecutor(tx, execType); // 创建Executor
+      final Environment replicaEnvironment = configuration.getReplicaEnvironment();
+      if (replicaEnvironment != null) { // 配置了只读副本则再创建一个副本事务
+        replicaTx = getTransactionFactoryFromEnvironment(replicaEnvironment)
+            .newTransaction(replicaEnvironment.getDataSource(), level, autoCommit);
+      }
+      final Executor executor = configuration.newExecutor(tx, execType, replicaTx); // 创建Executor
       return new DefaultSqlSession(configuration, executor, autoCommit); // 创建sqlSession并返回
     } catch (Exception e) {
       closeTransaction(tx); // may have fetched a connection so lets call close()
+      closeTransaction(replicaTx);
       throw ExceptionFactory.wrapException("Error opening session.  Cause: " + e, e);
     } finally {
       ErrorContext.instance().reset();
@@ -0,0 +1,125 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative durations with log-linear buckets, in
+ * the spirit of HdrHistogram: values below 64 are counted exactly, larger values
+ * are kept with 32 sub-buckets per power of two (about 3% precision).
+ * Recording and reading never block, so the histogram can be scraped at any time.
+ */
+public class LatencyHistogram { // 无锁的延迟直方图
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS; // 32
+  private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2; // 64以内精确计数
+  private static final int LINEAR_MAGNITUDE = 6; // log2(LINEAR_LIMIT)
+  private static final int BUCKET_COUNT = LINEAR_LIMIT + (63 - LINEAR_MAGNITUDE) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong totalValue = new AtomicLong();
+  private final AtomicLong maxValue = new AtomicLong();
+
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    counts.incrementAndGet(bucketIndex(value));
+    totalCount.incrementAndGet();
+    totalValue.addAndGet(value);
+    long max = maxValue.get();
+    while (value > max && !maxValue.compareAndSet(max, value)) {
+      max = maxValue.get();
+    }
+  }
+
+  public long getCount() {
+    return totalCount.get();
+  }
+
+  public long getMax() {
+    return maxValue.get();
+  }
+
+  public long getMean() {
+    long count = totalCount.get();
+    return count == 0 ? 0 : totalValue.get() / count;
+  }
+
+  /*
+   * Returns the value at the given percentile
+   *
+   * @param percentile - between 0 and 100
+   * @return the highest value equivalent to the bucket the percentile falls in, capped at the max
+   */
+  public long getPercentile(double percentile) {
+    long count = totalCount.get();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * count);
+    if (rank < 1) {
+      rank = 1;
+    }
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestEquivalentValue(i), maxValue.get());
+      }
+    }
+    return maxValue.get();
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts.set(i, 0);
+    }
+    totalCount.set(0);
+    totalValue.set(0);
+    maxValue.set(0);
+  }
+
+  static int bucketIndex(long value) {
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(value); // >= 6
+    int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+    return LINEAR_LIMIT + (magnitude - LINEAR_MAGNITUDE) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  static long highestEquivalentValue(int index) {
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+    int magnitude = LINEAR_MAGNITUDE + (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT;
+    long subBucket = SUB_BUCKET_COUNT + (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT;
+    int shift = magnitude - SUB_BUCKET_BITS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + getCount() + ", mean=" + getMean() + ", p50=" + getPercentile(50) + ", p90=" + getPercentile(90)
+        + ", p99=" + getPercentile(99) + ", max=" + getMax();
+  }
+
+}
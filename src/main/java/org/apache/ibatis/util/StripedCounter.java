@@ -0,0 +1,71 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that spreads updates over several cells so that threads
+ * incrementing it concurrently do not contend on a single memory location.
+ * Reads sum up all cells and are therefore only eventually consistent.
+ * Shared by the pool state and the cache statistics.
+ */
+public final class StripedCounter { // 分段计数器，作用类似于JDK8的LongAdder
+
+  private static final int PADDING = 8; // 每个cell占8个long，避免伪共享
+  private static final int MAX_STRIPES = 64; // 每个缓存都有多个计数器,限制内存占用
+
+  private final AtomicLongArray cells;
+  private final int mask;
+
+  public StripedCounter() {
+    int stripes = 1;
+    while (stripes < Runtime.getRuntime().availableProcessors() * 2 && stripes < MAX_STRIPES) {
+      stripes <<= 1;
+    }
+    this.cells = new AtomicLongArray(stripes * PADDING);
+    this.mask = stripes - 1;
+  }
+
+  public void increment() {
+    add(1);
+  }
+
+  public void add(long value) {
+    cells.getAndAdd(cellIndex(), value);
+  }
+
+  public long sum() {
+    long sum = 0;
+    for (int i = 0; i < cells.length(); i += PADDING) {
+      sum += cells.get(i);
+    }
+    return sum;
+  }
+
+  public void reset() {
+    for (int i = 0; i < cells.length(); i += PADDING) {
+      cells.set(i, 0);
+    }
+  }
+
+  private int cellIndex() { // 按线程id选择cell
+    long id = Thread.currentThread().getId();
+    int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9; // 连续的线程id打散到各cell
+    return (h >>> 16 & mask) * PADDING;
+  }
+
+}
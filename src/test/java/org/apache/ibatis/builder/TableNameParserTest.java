@@ -0,0 +1,53 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class TableNameParserTest {
+
+  @Test
+  public void shouldFindTablesOfSelect() {
+    assertEquals("author", TableNameParser.parse("select * from author where id = #{id}"));
+    assertEquals("blog,author,post", TableNameParser.parse(
+        "SELECT b.id FROM blog b JOIN Author a ON b.author_id = a.id LEFT OUTER JOIN schema1.post p ON p.blog_id = b.id"));
+    assertEquals("blog,author", TableNameParser.parse("select * from blog as b, author a where b.author_id = a.id"));
+    assertEquals("post,comment", TableNameParser.parse("select * from post where id in (select post_id from comment)"));
+  }
+
+  @Test
+  public void shouldFindTablesOfWrites() {
+    assertEquals("author", TableNameParser.parse("insert into author (id, username) values (#{id}, #{username})"));
+    assertEquals("author", TableNameParser.parse("update author set username = #{username} where id = #{id}"));
+    assertEquals("author", TableNameParser.parse("delete from \"AUTHOR\" where id = #{id}"));
+  }
+
+  @Test
+  public void shouldIgnoreCommentsAndLiterals() {
+    assertEquals("author", TableNameParser.parse("select 'from blog' from author -- join post\n /* from comment */"));
+  }
+
+  @Test
+  public void shouldReturnNullWhenTablesAreUnknown() {
+    assertNull(TableNameParser.parse("select * from ${table}"));
+    assertNull(TableNameParser.parse("{call insertAuthor(#{id})}"));
+    assertNull(TableNameParser.parse("select current_timestamp"));
+  }
+
+}
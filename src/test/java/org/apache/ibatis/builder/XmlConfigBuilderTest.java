@@ -77,6 +77,7 @@ public class XmlConfigBuilderTest {
     assertNull(config.getLogPrefix());
     assertNull(config.getLogImpl());
     assertNull(config.getConfigurationFactory());
+    assertThat(config.getNestedSelectBatchSize(), is(0));
   }
 
   enum MyEnum {
@@ -165,6 +166,7 @@ public class XmlConfigBuilderTest {
       assertThat(config.getLogPrefix(), is("mybatis_"));
       assertThat(config.getLogImpl().getName(), is(Slf4jImpl.class.getName()));
       assertThat(config.getConfigurationFactory().getName(), is(String.class.getName()));
+      assertThat(config.getNestedSelectBatchSize(), is(50));
 
     }
 
@@ -0,0 +1,154 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.TransactionalCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.util.LatencyHistogram;
+import org.junit.Test;
+
+public class BlockingCacheTest {
+
+  @Test
+  public void shouldBlockReadersUntilLoaderPuts() throws Exception {
+    final BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    assertNull(cache.getObject(1)); // this thread now loads key 1
+    assertEquals(1, cache.getLockedKeyCount());
+    final AtomicReference<Object> read = new AtomicReference<Object>();
+    final CountDownLatch done = new CountDownLatch(1);
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        read.set(cache.getObject(1));
+        done.countDown();
+      }
+    };
+    reader.start();
+    assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+    cache.putObject(1, "one");
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+    assertEquals("one", read.get());
+    assertEquals(0, cache.getLockedKeyCount());
+    assertEquals(1, cache.getWaitCount());
+    assertTrue(cache.getMaxWaitMillis() >= 90);
+    LatencyHistogram histogram = cache.getWaitHistogram();
+    assertEquals(1, histogram.getCount());
+    assertTrue(histogram.getPercentile(50) >= 90); // the reader waited at least until the put
+  }
+
+  @Test
+  public void shouldNotBlockOtherKeys() {
+    BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    cache.setTimeout(50);
+    assertNull(cache.getObject(1));
+    for (int i = 2; i < 1000; i++) {
+      assertNull(cache.getObject(i));
+      cache.removeObject(i);
+    }
+    assertEquals(0, cache.getWaitCount());
+    assertEquals(1, cache.getLockedKeyCount());
+  }
+
+  @Test
+  public void shouldTimeOutWaitingForLoader() throws Exception {
+    final BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    cache.setTimeout(50);
+    assertNull(cache.getObject(1));
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        try {
+          cache.getObject(1);
+        } catch (Throwable e) {
+          failure.set(e);
+        }
+      }
+    };
+    reader.start();
+    reader.join(1000);
+    assertTrue(failure.get() instanceof CacheException);
+    assertEquals(1, cache.getTimeoutCount());
+    cache.removeObject(1);
+    assertEquals(0, cache.getLockedKeyCount());
+  }
+
+  @Test
+  public void shouldReleaseSessionLocksFromAnotherThread() throws Exception {
+    BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    cache.setTimeout(1000);
+    final TransactionalCache session = new TransactionalCache(cache);
+    assertNull(session.getObject(1)); // this thread misses, the session now loads key 1
+    assertNull(session.getObject(1)); // the session's own locks do not block it
+    session.putObject(1, "one");
+    Thread committer = new Thread() {
+      @Override
+      public void run() {
+        session.commit();
+      }
+    };
+    committer.start();
+    committer.join(1000);
+    assertEquals(0, cache.getLockedKeyCount());
+    assertEquals("one", cache.getObject(1));
+  }
+
+  @Test
+  public void shouldLetOneThreadMissWithTwoSessions() throws Exception {
+    final BlockingCache cache = new BlockingCache(new PerpetualCache("default")); // no timeout
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          TransactionalCache first = new TransactionalCache(cache);
+          TransactionalCache second = new TransactionalCache(cache);
+          assertNull(first.getObject(1)); // the first session now loads key 1 and does not commit yet
+          assertNull(second.getObject(1)); // the thread re-enters the lock instead of waiting for itself
+          second.putObject(1, "one");
+          second.commit();
+          assertEquals(1, cache.getLockedKeyCount()); // still held by the first session
+          first.rollback();
+        } catch (Throwable e) {
+          failure.set(e);
+        }
+      }
+    };
+    thread.setDaemon(true); // a hang must not keep the JVM alive
+    thread.start();
+    thread.join(1000);
+    assertFalse(thread.isAlive());
+    assertNull(failure.get());
+    assertEquals(0, cache.getLockedKeyCount());
+    assertEquals("one", cache.getObject(1));
+  }
+
+  @Test
+  public void shouldAllowPutWithoutPriorGet() {
+    BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    cache.putObject(1, "one");
+    assertEquals("one", cache.getObject(1));
+    assertEquals(0, cache.getLockedKeyCount());
+  }
+
+}
@@ -80,4 +80,29 @@ public class CacheKeyTest {
     assertTrue(key1.equals(key2));
   }
 
+  @Test
+  public void shouldGrowBeyondInitialCapacityAndCloneIndependently() throws Exception {
+    CacheKey key1 = new CacheKey();
+    CacheKey key2 = new CacheKey();
+    for (int i = 0; i < 100; i++) {
+      key1.update(i);
+      key2.update(i);
+    }
+    assertEquals(100, key1.getUpdateCount());
+    assertEquals(key1, key2);
+    CacheKey clone = key1.clone();
+    assertEquals(key1, clone);
+    clone.update("more");
+    assertFalse(key1.equals(clone));
+    assertEquals(100, key1.getUpdateCount());
+  }
+
+  @Test
+  public void shouldTestCacheKeysNotEqualWhenSameElementsSwapped() {
+    CacheKey key1 = new CacheKey(new Object[] { "a", "b", "c" });
+    CacheKey key2 = new CacheKey(new Object[] { "c", "b", "a" });
+    assertFalse(key1.equals(key2));
+    assertFalse(key1.toString().equals(key2.toString()));
+  }
+
 }
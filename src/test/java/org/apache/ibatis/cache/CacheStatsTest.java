@@ -0,0 +1,108 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class CacheStatsTest {
+
+  @Test
+  public void shouldCountHitsMissesPutsAndEvictions() {
+    CacheStats stats = new CacheStats("stats");
+    Cache cache = new CacheBuilder("stats").addDecorator(LruCache.class).size(2).stats(stats).build();
+    cache.putObject("a", "1");
+    cache.putObject("b", "2");
+    cache.putObject("c", "3"); // evicts a
+    cache.removeObject("b"); // not an eviction
+    assertNull(cache.getObject("a"));
+    assertEquals("3", cache.getObject("c"));
+    assertEquals(1, stats.getHits());
+    assertEquals(1, stats.getMisses());
+    assertEquals(0.5, stats.getHitRatio(), 0.0001);
+    assertEquals(3, stats.getPuts());
+    assertEquals(1, stats.getEvictions());
+    assertEquals(1, stats.getSize());
+  }
+
+  @Test
+  public void shouldEstimateBytesFromSampledValues() {
+    CacheStats stats = new CacheStats("bytes");
+    Cache cache = new CacheBuilder("bytes").stats(stats).build();
+    for (int i = 0; i < 64; i++) {
+      cache.putObject(i, new byte[1000]);
+    }
+    assertTrue(stats.getEstimatedBytes() >= 64 * 1000);
+    stats.reset();
+    assertEquals(0, stats.getPuts());
+  }
+
+  @Test
+  public void shouldCountFromManyThreads() throws Exception {
+    final CacheStats stats = new CacheStats("threads");
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 8; i++) {
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int j = 0; j < 10000; j++) {
+            stats.recordHit();
+            stats.recordLoad(1000000);
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(80000, stats.getHits());
+    assertEquals(80000, stats.getLoads());
+    assertEquals(1.0, stats.getAverageLoadTimeMillis(), 0.0001);
+  }
+
+  @Test
+  public void shouldRegisterMBean() throws Exception {
+    CacheStats stats = new CacheStats("org.apache.ibatis.cache.CacheStatsTest");
+    stats.recordMiss();
+    stats.registerMBean();
+    stats.registerMBean(); // replaces the previous registration
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("org.apache.ibatis:type=CacheStats,name=" + ObjectName.quote(stats.getId()));
+    assertEquals(1L, server.getAttribute(name, "Misses"));
+    server.unregisterMBean(name);
+  }
+
+}
@@ -0,0 +1,149 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class ExpiringCacheTest {
+
+  @Test
+  public void shouldExpireEachEntrySeparately() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLive(200);
+    cache.putObject(1, "one");
+    Thread.sleep(120);
+    cache.putObject(2, "two");
+    Thread.sleep(120);
+    assertNull(cache.getObject(1));
+    assertEquals("two", cache.getObject(2));
+    cache.putObject(1, "uno");
+    assertEquals("uno", cache.getObject(1));
+  }
+
+  @Test
+  public void shouldRefreshInBackgroundWhileServingCurrentValue() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLive(1000);
+    cache.setRefreshAhead(900);
+    cache.putObject(1, "stale");
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    Callable<Object> loader = new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        started.countDown();
+        release.await();
+        return "fresh";
+      }
+    };
+    Thread.sleep(150);
+    assertTrue(cache.refreshAhead(1, loader));
+    assertTrue(started.await(1, TimeUnit.SECONDS));
+    assertFalse(cache.refreshAhead(1, loader)); // one refresh per key at a time
+    assertEquals("stale", cache.getObject(1));
+    release.countDown();
+    waitFor(cache, 1, "fresh");
+  }
+
+  @Test
+  public void shouldNotRefreshEntriesFarFromExpiry() {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLive(60000);
+    cache.setRefreshAhead(1000);
+    cache.putObject(1, "one");
+    assertFalse(cache.refreshAhead(1, new Callable<Object>() {
+      @Override
+      public Object call() {
+        return "other";
+      }
+    }));
+  }
+
+  @Test
+  public void shouldDiscardRefreshStartedBeforeClear() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLive(1000);
+    cache.setRefreshAhead(1000);
+    cache.putObject(1, "one");
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+    assertTrue(cache.refreshAhead(1, new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        release.await();
+        done.countDown();
+        return "refreshed";
+      }
+    }));
+    cache.clear();
+    release.countDown();
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+    Thread.sleep(100);
+    assertNull(cache.getObject(1));
+  }
+
+  @Test
+  public void shouldBeOutermostDecoratorWhenTimeToLiveIsSet() {
+    Cache cache = new CacheBuilder("default").timeToLive(1000L).refreshAhead(100L).build();
+    assertTrue(cache instanceof ExpiringCache);
+    cache.putObject(1, "one");
+    assertEquals("one", cache.getObject(1));
+  }
+
+  @Test
+  public void shouldLockExpiredEntriesUnderBlockingCache() throws Exception {
+    final Cache cache = new CacheBuilder("default").timeToLive(50L).blocking(true).build();
+    assertTrue(cache instanceof BlockingCache);
+    assertNotNull(ExpiringCache.find(cache));
+    cache.putObject(1, "one");
+    Thread.sleep(100);
+    assertNull(cache.getObject(1)); // expired, this thread now reloads key 1
+    final AtomicReference<Object> read = new AtomicReference<Object>();
+    final CountDownLatch done = new CountDownLatch(1);
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        read.set(cache.getObject(1));
+        done.countDown();
+      }
+    };
+    reader.setDaemon(true);
+    reader.start();
+    assertFalse(done.await(100, TimeUnit.MILLISECONDS)); // waits for the reload instead of loading too
+    cache.putObject(1, "uno");
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+    assertEquals("uno", read.get());
+  }
+
+  private void waitFor(Cache cache, Object key, Object expected) throws InterruptedException {
+    for (int i = 0; i < 100 && !expected.equals(cache.getObject(key)); i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, cache.getObject(key));
+  }
+
+}
@@ -0,0 +1,99 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.impl.OffHeapCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class OffHeapCacheTest {
+
+  @Test
+  public void shouldReturnCopiesOfStoredValues() {
+    OffHeapCache cache = new OffHeapCache("default");
+    List<String> value = new ArrayList<String>();
+    value.add("a");
+    cache.putObject(1, value);
+    Object copy = cache.getObject(1);
+    assertEquals(value, copy);
+    assertNotSame(value, copy);
+    assertEquals(1, cache.getSize());
+  }
+
+  @Test
+  public void shouldRecycleOldestSlabWhenFull() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setSlabSize(1024);
+    cache.setCapacity(4096);
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, "value" + i);
+    }
+    assertNull(cache.getObject(0));
+    assertEquals("value999", cache.getObject(999));
+    assertTrue(cache.getSize() < 1000);
+  }
+
+  @Test
+  public void shouldNotCacheValueLargerThanSlab() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setSlabSize(256);
+    cache.putObject(1, new byte[1024]);
+    assertNull(cache.getObject(1));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void shouldRemoveAndFlushItemsOnDemand() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.putObject(0, 0);
+    cache.putObject(1, 1);
+    cache.removeObject(0);
+    assertNull(cache.getObject(0));
+    assertEquals(1, cache.getObject(1));
+    cache.clear();
+    assertNull(cache.getObject(1));
+    cache.putObject(1, 2);
+    assertEquals(2, cache.getObject(1));
+  }
+
+  @Test
+  public void shouldStoreValuesInMappedFile() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setDirectory(System.getProperty("java.io.tmpdir"));
+    cache.setCapacity(1024 * 1024);
+    cache.putObject("key", "value");
+    assertEquals("value", cache.getObject("key"));
+    assertTrue(new File(cache.getDirectory()).isDirectory());
+  }
+
+  @Test
+  public void shouldBeConfiguredAsCacheType() {
+    Properties props = new Properties();
+    props.setProperty("capacity", "65536");
+    props.setProperty("slabSize", "8192");
+    Cache cache = new CacheBuilder("default").implementation(OffHeapCache.class).properties(props).build();
+    cache.putObject("key", "value");
+    assertEquals("value", cache.getObject("key"));
+  }
+
+}
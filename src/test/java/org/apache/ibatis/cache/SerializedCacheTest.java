@@ -0,0 +1,160 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.decorators.BinarySerializer;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.junit.Test;
+
+public class SerializedCacheTest {
+
+  @Test
+  public void shouldReturnCopiesWithBinarySerializer() {
+    SerializedCache cache = new SerializedCache(new PerpetualCache("default"));
+    cache.setSerializer("binary");
+    Author author = new Author(101, "jim", "********", "jim@ibatis.apache.org", "Something...", Section.NEWS);
+    List<Author> list = new ArrayList<Author>();
+    list.add(author);
+    list.add(author);
+    cache.putObject("key", list);
+    @SuppressWarnings("unchecked")
+    List<Author> copy = (List<Author>) cache.getObject("key");
+    assertEquals(list, copy);
+    assertNotSame(author, copy.get(0));
+    assertSame(copy.get(0), copy.get(1));
+    assertEquals(Section.NEWS, copy.get(0).getFavouriteSection());
+  }
+
+  @Test
+  public void shouldRoundTripCommonValueTypes() {
+    Serializer serializer = new BinarySerializer();
+    Map<String, Object> row = new LinkedHashMap<String, Object>();
+    row.put("int", -7);
+    row.put("long", Long.MAX_VALUE);
+    row.put("short", (short) 3);
+    row.put("byte", (byte) -1);
+    row.put("double", 1.5d);
+    row.put("float", -2.25f);
+    row.put("char", 'x');
+    row.put("bool", true);
+    row.put("decimal", new BigDecimal("-12345678901234567890.0042"));
+    row.put("date", new Date(123456789L));
+    Timestamp timestamp = new Timestamp(987654321L);
+    timestamp.setNanos(123456789);
+    row.put("timestamp", timestamp);
+    row.put("bytes", new byte[] { 1, 2, 3 });
+    row.put("text", "中文 text");
+    row.put("null", null);
+    @SuppressWarnings("unchecked")
+    Map<String, Object> copy = (Map<String, Object>) serializer.deserialize(serializer.serialize(row));
+    assertEquals(LinkedHashMap.class, copy.getClass());
+    assertEquals(new ArrayList<String>(row.keySet()), new ArrayList<String>(copy.keySet()));
+    for (Map.Entry<String, Object> entry : row.entrySet()) {
+      if (entry.getValue() instanceof byte[]) {
+        assertArrayEquals((byte[]) entry.getValue(), (byte[]) copy.get(entry.getKey()));
+      } else {
+        assertEquals(entry.getValue(), copy.get(entry.getKey()));
+      }
+    }
+  }
+
+  @Test
+  public void shouldPreserveCycles() {
+    Serializer serializer = new BinarySerializer();
+    Node parent = new Node();
+    parent.setName("parent");
+    Node child = new Node();
+    child.setName("child");
+    child.setParent(parent);
+    parent.getChildren().add(child);
+    Node copy = (Node) serializer.deserialize(serializer.serialize(parent));
+    assertEquals("parent", copy.getName());
+    assertEquals("child", copy.getChildren().get(0).getName());
+    assertSame(copy, copy.getChildren().get(0).getParent());
+  }
+
+  @Test
+  public void shouldFallBackToJavaSerializationForOtherTypes() {
+    Serializer serializer = new BinarySerializer();
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("counter", new AtomicInteger(5));
+    @SuppressWarnings("unchecked")
+    Map<String, Object> copy = (Map<String, Object>) serializer.deserialize(serializer.serialize(map));
+    assertEquals(5, ((AtomicInteger) copy.get("counter")).get());
+  }
+
+  @Test
+  public void shouldCompressLargeValues() {
+    SerializedCache cache = new SerializedCache(new PerpetualCache("default"));
+    cache.setCompressThreshold(64);
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      text.append("repeated ");
+    }
+    cache.putObject("large", text.toString());
+    cache.putObject("small", "tiny");
+    assertEquals(text.toString(), cache.getObject("large"));
+    assertEquals("tiny", cache.getObject("small"));
+  }
+
+  public static class Node implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private String name;
+    private Node parent;
+    private List<Node> children = new ArrayList<Node>();
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public Node getParent() {
+      return parent;
+    }
+
+    public void setParent(Node parent) {
+      this.parent = parent;
+    }
+
+    public List<Node> getChildren() {
+      return children;
+    }
+
+    public void setChildren(List<Node> children) {
+      this.children = children;
+    }
+  }
+
+}
@@ -0,0 +1,209 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SnapshotCacheTest {
+
+  private File directory;
+
+  @Before
+  public void createDirectory() throws Exception {
+    directory = File.createTempFile("mybatis-snapshot", "");
+    directory.delete();
+    directory.mkdirs();
+  }
+
+  @After
+  public void deleteDirectory() {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  @Test
+  public void shouldRestoreEntriesAfterRestart() throws Exception {
+    CacheSnapshotManager manager = new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry());
+    Cache cache = newCache(manager);
+    CacheKey key = new CacheKey(new Object[] { "selectAuthors", 101 });
+    cache.putObject(key, new ArrayList<String>(Arrays.asList("jim", "sally")));
+    cache.putObject("evicted", "soon gone");
+    cache.removeObject("evicted");
+    manager.snapshot();
+
+    Cache restored = newCache(new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry()));
+    assertEquals(1, restored.getSize());
+    assertEquals(Arrays.asList("jim", "sally"), restored.getObject(new CacheKey(new Object[] { "selectAuthors", 101 })));
+    assertNull(restored.getObject("evicted"));
+  }
+
+  @Test
+  public void shouldRehashRestoredKeysWithEnumParameters() throws Exception {
+    CacheSnapshotManager manager = new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry());
+    Cache cache = newCache(manager);
+    CacheKey key = new CacheKey(new Object[] { "selectPostsBySection", Section.NEWS });
+    // an enum hashes by identity, so the same key hashes differently in the restarted JVM
+    Field hashcode = CacheKey.class.getDeclaredField("hashcode");
+    hashcode.setAccessible(true);
+    hashcode.setInt(key, hashcode.getInt(key) + 1);
+    Field checksum = CacheKey.class.getDeclaredField("checksum");
+    checksum.setAccessible(true);
+    checksum.setLong(key, checksum.getLong(key) + 1);
+    cache.putObject(key, "news");
+    manager.snapshot();
+
+    Cache restored = newCache(new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry()));
+    assertEquals("news", restored.getObject(new CacheKey(new Object[] { "selectPostsBySection", Section.NEWS })));
+  }
+
+  @Test
+  public void shouldKeepUnrestoredEntriesInNextSnapshot() throws Exception {
+    CacheSnapshotManager manager = new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry());
+    Cache cache = newCache(manager);
+    cache.putObject("a", "1");
+    manager.snapshot();
+
+    CacheSnapshotManager second = new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry());
+    Cache restored = newCache(second);
+    restored.putObject("b", "2");
+    second.snapshot();
+
+    Cache third = newCache(new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry()));
+    assertEquals("1", third.getObject("a"));
+    assertEquals("2", third.getObject("b"));
+  }
+
+  @Test
+  public void shouldIgnoreSnapshotOfOtherVersion() throws Exception {
+    CacheSnapshotManager manager = new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry());
+    Cache cache = newCache(manager);
+    cache.putObject("a", "1");
+    manager.snapshot();
+
+    Cache restored = newCache(new CacheSnapshotManager(directory, "2", 0, new TableVersionRegistry()));
+    assertNull(restored.getObject("a"));
+    assertEquals(0, restored.getSize());
+  }
+
+  @Test
+  public void shouldRestoreTableVersions() throws Exception {
+    TableVersionRegistry registry = new TableVersionRegistry();
+    registry.increment(Arrays.asList("author", "author", "blog"));
+    CacheSnapshotManager manager = new CacheSnapshotManager(directory, "1", 0, registry);
+    manager.start();
+    manager.stop();
+
+    TableVersionRegistry restored = new TableVersionRegistry();
+    CacheSnapshotManager next = new CacheSnapshotManager(directory, "1", 0, restored);
+    next.start();
+    next.stop();
+    assertEquals(2, restored.getVersion("author"));
+    assertEquals(1, restored.getVersion("blog"));
+  }
+
+  @Test
+  public void shouldSnapshotReadOnlyCacheValues() throws Exception {
+    CacheSnapshotManager manager = new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry());
+    Cache cache = new CacheBuilder("readonly").readWrite(false).snapshotManager(manager).build();
+    List<Integer> value = new ArrayList<Integer>(Arrays.asList(1, 2, 3));
+    cache.putObject("list", value);
+    manager.snapshot();
+
+    Cache restored = new CacheBuilder("readonly").readWrite(false)
+        .snapshotManager(new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry())).build();
+    assertEquals(value, restored.getObject("list"));
+  }
+
+  @Test
+  public void shouldBoundRestoredEntriesBySize() throws Exception {
+    CacheSnapshotManager manager = new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry());
+    Cache cache = new CacheBuilder("bounded").size(2).snapshotManager(manager).build();
+    cache.putObject("a", "1");
+    cache.putObject("b", "2");
+    manager.snapshot();
+
+    CacheSnapshotManager second = new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry());
+    Cache restored = new CacheBuilder("bounded").size(2).snapshotManager(second).build();
+    assertEquals(2, restored.getSize());
+    restored.putObject("c", "3");
+    restored.putObject("d", "4");
+    assertEquals(2, restored.getSize());
+    second.snapshot();
+
+    Cache third = new CacheBuilder("bounded").size(2)
+        .snapshotManager(new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry())).build();
+    assertEquals(2, third.getSize());
+    assertEquals("3", third.getObject("c"));
+    assertEquals("4", third.getObject("d"));
+  }
+
+  @Test
+  public void shouldRestoreExpirationTimes() throws Exception {
+    CacheSnapshotManager manager = new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry());
+    Cache cache = new CacheBuilder("expiring").timeToLive(60000L).snapshotManager(manager).build();
+    cache.putObject("a", "1");
+    manager.snapshot();
+
+    Cache restored = new CacheBuilder("expiring").timeToLive(60000L)
+        .snapshotManager(new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry())).build();
+    assertEquals("1", restored.getObject("a"));
+
+    cache = new CacheBuilder("expiring").timeToLive(1L).snapshotManager(manager).build();
+    cache.putObject("b", "2");
+    Thread.sleep(10);
+    manager.snapshot();
+    restored = new CacheBuilder("expiring").timeToLive(60000L)
+        .snapshotManager(new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry())).build();
+    assertNull(restored.getObject("b"));
+  }
+
+  @Test
+  public void shouldSnapshotTinyLfuCache() throws Exception {
+    CacheSnapshotManager manager = new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry());
+    CacheStats stats = new CacheStats("tinylfu");
+    Cache cache = new CacheBuilder("tinylfu").addDecorator(TinyLfuCache.class).size(10).stats(stats)
+        .snapshotManager(manager).build();
+    for (int i = 0; i < 20; i++) {
+      cache.putObject(i, "value" + i);
+    }
+    assertEquals(10, stats.getEvictions());
+    manager.snapshot();
+
+    Cache restored = new CacheBuilder("tinylfu").addDecorator(TinyLfuCache.class).size(10)
+        .snapshotManager(new CacheSnapshotManager(directory, "1", 0, new TableVersionRegistry())).build();
+    assertEquals(10, restored.getSize());
+  }
+
+  private Cache newCache(CacheSnapshotManager manager) {
+    return new CacheBuilder("org.apache.ibatis.domain.blog.mappers.AuthorMapper").readWrite(true).snapshotManager(manager).build();
+  }
+
+}
@@ -0,0 +1,115 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.SnapshotCache;
+import org.apache.ibatis.cache.decorators.SoftCache;
+import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class SynchronizedCacheTest {
+
+  @Test
+  public void shouldParkWaitingThreadsInsteadOfBlockingOnMonitor() throws Exception {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Cache cache = new SynchronizedCache(new PerpetualCache("slow") {
+      @Override
+      public void putObject(Object key, Object value) {
+        entered.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.putObject(key, value);
+      }
+    });
+    Thread owner = new Thread() {
+      @Override
+      public void run() {
+        cache.putObject("key", "value");
+      }
+    };
+    owner.start();
+    entered.await();
+    Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        cache.getObject("key");
+      }
+    };
+    waiter.start();
+    Thread.State state = waiter.getState();
+    for (int i = 0; i < 500 && state != Thread.State.WAITING && state != Thread.State.BLOCKED; i++) {
+      Thread.sleep(10);
+      state = waiter.getState();
+    }
+    release.countDown();
+    owner.join();
+    waiter.join();
+    assertEquals(Thread.State.WAITING, state);
+    assertEquals("value", cache.getObject("key"));
+  }
+
+  @Test
+  public void shouldKeepCountsUnderContention() throws Exception {
+    final Cache cache = new SynchronizedCache(new PerpetualCache("contended"));
+    final AtomicInteger failures = new AtomicInteger();
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      final int offset = t * 1000;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 1000; i++) {
+            cache.putObject(offset + i, i);
+            if (!Integer.valueOf(i).equals(cache.getObject(offset + i))) {
+              failures.incrementAndGet();
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, failures.get());
+    assertEquals(8000, cache.getSize());
+  }
+
+  @Test
+  public void shouldNotDeclareSynchronizedMethodsOnCachePaths() {
+    Class<?>[] types = { SynchronizedCache.class, SnapshotCache.class, ExpiringCache.class, SoftCache.class };
+    for (Class<?> type : types) {
+      for (Method method : type.getDeclaredMethods()) {
+        assertFalse(type.getSimpleName() + "." + method.getName() + " is synchronized",
+            Modifier.isSynchronized(method.getModifiers()));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,94 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.decorators.TransactionalCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class TransactionalCacheTest {
+
+  @Test
+  public void shouldPublishCommittedEntriesInOneBulkPut() {
+    RecordingCache base = new RecordingCache();
+    Cache cache = new BlockingCache(new SynchronizedCache(new LoggingCache(new SerializedCache(base))));
+    TransactionalCache txCache = new TransactionalCache(cache);
+    assertNull(txCache.getObject("missed"));
+    for (int i = 0; i < 100; i++) {
+      txCache.putObject(i, "value" + i);
+    }
+    txCache.commit();
+    assertEquals(1, base.bulkPuts);
+    assertEquals(0, base.singlePuts);
+    assertEquals(101, base.getSize());
+    assertEquals("value42", cache.getObject(42));
+    assertNull(cache.getObject("missed"));
+  }
+
+  @Test
+  public void shouldFallBackToSinglePutsForOtherCaches() {
+    RecordingCache base = new RecordingCache();
+    Cache cache = new SynchronizedCache(new LruCache(base)); // LruCache has no bulk put
+    TransactionalCache txCache = new TransactionalCache(cache);
+    txCache.putObject("a", "1");
+    txCache.putObject("b", "2");
+    txCache.commit();
+    assertEquals("1", cache.getObject("a"));
+    assertEquals(2, cache.getSize());
+    assertEquals(0, base.bulkPuts);
+    assertEquals(2, base.singlePuts);
+  }
+
+  @Test
+  public void shouldAllocateNothingForSessionsWithoutCaches() {
+    TransactionalCacheManager tcm = new TransactionalCacheManager();
+    assertFalse(tcm.isInvalidatedOnCommit(Collections.singleton("author")));
+    tcm.commit();
+    tcm.rollback();
+  }
+
+  private static class RecordingCache extends PerpetualCache {
+    int singlePuts;
+    int bulkPuts;
+
+    RecordingCache() {
+      super("recording");
+    }
+
+    @Override
+    public void putObject(Object key, Object value) {
+      singlePuts++;
+      super.putObject(key, value);
+    }
+
+    @Override
+    public void putObjects(Map<Object, Object> entries) {
+      bulkPuts++;
+      super.putObjects(entries);
+    }
+  }
+
+}
@@ -0,0 +1,109 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.ObjectSizeWeigher;
+import org.apache.ibatis.cache.decorators.WeightedLruCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class WeightedLruCacheTest {
+
+  private static final Weigher LENGTH = new Weigher() {
+    @Override
+    public long weigh(Object key, Object value) {
+      return ((String) value).length();
+    }
+  };
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedItemsBeyondMaxBytes() {
+    WeightedLruCache cache = new WeightedLruCache(new PerpetualCache("default"), LENGTH);
+    cache.setMaxBytes(10);
+    cache.putObject(1, "aaaa");
+    cache.putObject(2, "bbbb");
+    assertEquals("aaaa", cache.getObject(1));
+    cache.putObject(3, "cccc");
+    assertNull(cache.getObject(2));
+    assertEquals("aaaa", cache.getObject(1));
+    assertEquals(8, cache.getTotalBytes());
+  }
+
+  @Test
+  public void shouldNotCacheValueLargerThanMaxBytes() {
+    WeightedLruCache cache = new WeightedLruCache(new PerpetualCache("default"), LENGTH);
+    cache.setMaxBytes(10);
+    cache.putObject(1, "aaaa");
+    cache.putObject(2, "bbbbbbbbbbbb");
+    assertNull(cache.getObject(2));
+    assertEquals("aaaa", cache.getObject(1));
+    assertEquals(4, cache.getTotalBytes());
+  }
+
+  @Test
+  public void shouldReleaseWeightOnRemoveAndClear() {
+    WeightedLruCache cache = new WeightedLruCache(new PerpetualCache("default"), LENGTH);
+    cache.putObject(1, "aaaa");
+    cache.putObject(1, "aa");
+    cache.putObject(2, "bbbb");
+    assertEquals(6, cache.getTotalBytes());
+    cache.removeObject(2);
+    assertEquals(2, cache.getTotalBytes());
+    cache.clear();
+    assertEquals(0, cache.getTotalBytes());
+    assertNull(cache.getObject(1));
+  }
+
+  @Test
+  public void shouldEstimateResultListsByRowCount() {
+    ObjectSizeWeigher weigher = new ObjectSizeWeigher();
+    long small = weigher.weigh(null, authors(100));
+    long large = weigher.weigh(null, authors(10000));
+    assertTrue(small > 100 * 64);
+    assertTrue(large > 90 * small && large < 110 * small);
+    assertEquals(1016, weigher.weigh(null, new byte[1000]));
+  }
+
+  @Test
+  public void shouldBoundReadWriteCacheBySerializedSize() {
+    Properties props = new Properties();
+    props.setProperty("maxBytes", "4096");
+    Cache cache = new CacheBuilder("default").addDecorator(WeightedLruCache.class).readWrite(true).properties(props).build();
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, authors(5));
+    }
+    assertTrue(cache.getSize() < 100);
+    assertNotNull(cache.getObject(99));
+  }
+
+  private static List<Author> authors(int count) {
+    List<Author> authors = new ArrayList<Author>(count);
+    for (int i = 0; i < count; i++) {
+      authors.add(new Author(i, "author" + i, "******", "author" + i + "@apache.org", "bio", Section.NEWS));
+    }
+    return authors;
+  }
+
+}
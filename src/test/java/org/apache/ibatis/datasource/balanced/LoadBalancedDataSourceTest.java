@@ -0,0 +1,122 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.balanced;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class LoadBalancedDataSourceTest {
+
+  private static final String UNREACHABLE_URL = "jdbc:hsqldb:hsql://localhost:1/unreachable";
+
+  @Test
+  public void shouldSpreadConnectionsOverLeastActiveHosts() throws Exception {
+    LoadBalancedDataSource ds = createDataSource("jdbc:hsqldb:mem:balanced_a,jdbc:hsqldb:mem:balanced_b", null);
+    try {
+      List<Connection> connections = new ArrayList<Connection>();
+      for (int i = 0; i < 4; i++) {
+        connections.add(ds.getConnection());
+      }
+      for (DataSourceHost host : ds.getHosts()) {
+        assertEquals(2, host.getActiveConnectionCount());
+      }
+      for (Connection c : connections) {
+        c.close();
+      }
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldFailOverToHealthyHost() throws Exception {
+    LoadBalancedDataSource ds = createDataSource(UNREACHABLE_URL + ",jdbc:hsqldb:mem:balanced_c", "LATENCY_WEIGHTED");
+    try {
+      for (int i = 0; i < 3; i++) {
+        Connection c = ds.getConnection();
+        c.close();
+      }
+      DataSourceHost unreachable = ds.getHosts().get(0);
+      assertFalse(unreachable.isHealthy());
+      assertTrue(ds.getHosts().get(1).isHealthy());
+      ds.checkHosts();
+      assertFalse(unreachable.isHealthy());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldPreferLowLatencyHostsWhenWeighted() throws Exception {
+    LoadBalancedDataSource ds = createDataSource("jdbc:hsqldb:mem:balanced_d,jdbc:hsqldb:mem:balanced_e", "LATENCY_WEIGHTED");
+    try {
+      ds.checkHosts();
+      List<DataSourceHost> hosts = ds.getHosts();
+      int picksOfFirst = 0;
+      for (int i = 0; i < 100; i++) {
+        if (ds.select(hosts) == hosts.get(0)) {
+          picksOfFirst++;
+        }
+      }
+      long weightOfFirst = hosts.get(0).getWeight();
+      long totalWeight = weightOfFirst + hosts.get(1).getWeight();
+      assertEquals(100 * weightOfFirst / (double) totalWeight, picksOfFirst, 1.0);
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldKeepConnectionsInUseWhenHostIsMarkedUnhealthy() throws Exception {
+    LoadBalancedDataSource ds = createDataSource("jdbc:hsqldb:mem:balanced_f", null);
+    try {
+      Connection c = ds.getConnection();
+      DataSourceHost host = ds.getHosts().get(0);
+      host.markUnhealthy();
+      assertFalse(c.isClosed());
+      assertEquals(1, host.getActiveConnectionCount());
+      assertTrue(host.ping(1)); // on its own connection, not from the pool
+      assertEquals(1, host.getActiveConnectionCount());
+      c.close();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  private static LoadBalancedDataSource createDataSource(String urls, String strategy) {
+    Properties props = new Properties();
+    props.setProperty("urls", urls);
+    props.setProperty("driver", "org.hsqldb.jdbcDriver");
+    props.setProperty("username", "sa");
+    props.setProperty("password", "");
+    props.setProperty("poolTimeToWait", "1000");
+    if (strategy != null) {
+      props.setProperty("strategy", strategy);
+    }
+    LoadBalancedDataSourceFactory factory = new LoadBalancedDataSourceFactory();
+    factory.setProperties(props);
+    return (LoadBalancedDataSource) factory.getDataSource();
+  }
+
+}
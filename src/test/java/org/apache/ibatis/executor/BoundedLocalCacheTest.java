@@ -0,0 +1,95 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BoundedLocalCacheTest {
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedOnTrimOnly() {
+    BoundedLocalCache cache = new BoundedLocalCache("local", 2, 0, false);
+    cache.putObject("a", list("1"));
+    cache.putObject("b", list("2"));
+    cache.putObject("c", list("3"));
+    assertEquals(3, cache.getSize()); // a statement in progress keeps all its entries
+    cache.getObject("a");
+    cache.trim();
+    assertEquals(2, cache.getSize());
+    assertNotNull(cache.getObject("a"));
+    assertNull(cache.getObject("b"));
+    assertNotNull(cache.getObject("c"));
+  }
+
+  @Test
+  public void shouldEvictByEstimatedBytes() {
+    BoundedLocalCache cache = new BoundedLocalCache("local", 0, 10000, false);
+    for (int i = 0; i < 10; i++) {
+      cache.putObject(i, Arrays.asList(new byte[3000]));
+      cache.trim();
+    }
+    assertTrue(cache.getBytes() <= 10000);
+    assertTrue(cache.getSize() >= 1 && cache.getSize() < 10);
+    assertNotNull(cache.getObject(9));
+    cache.clear();
+    assertEquals(0, cache.getBytes());
+  }
+
+  @Test
+  public void shouldKeepReplacedAndRemovedEntriesOutOfTheWeight() {
+    BoundedLocalCache cache = new BoundedLocalCache("local", 0, 1000000, false);
+    cache.putObject("a", list("1"));
+    cache.trim();
+    long weight = cache.getBytes();
+    assertTrue(weight > 0);
+    cache.putObject("a", list("2"));
+    cache.trim();
+    assertEquals(weight, cache.getBytes());
+    cache.removeObject("a");
+    assertEquals(0, cache.getBytes());
+  }
+
+  @Test
+  public void shouldHoldSoftenedValues() {
+    BoundedLocalCache cache = new BoundedLocalCache("local", 0, 0, true);
+    List<String> value = list("1");
+    cache.putObject("a", value);
+    cache.trim();
+    assertSame(value, cache.getObject("a"));
+    cache.removeObject("a");
+    assertNull(cache.getObject("a"));
+  }
+
+  @Test
+  public void shouldCreateExecutorWithoutConfiguration() {
+    // ResultLoaderMap.ClosedExecutor passes no configuration when a deserialized proxy loads lazily
+    SimpleExecutor executor = new SimpleExecutor(null, null);
+    assertFalse(executor.isClosed());
+  }
+
+  private static List<String> list(String value) {
+    List<String> list = new ArrayList<String>();
+    list.add(value);
+    return list;
+  }
+
+}
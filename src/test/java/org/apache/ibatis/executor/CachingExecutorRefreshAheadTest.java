@@ -0,0 +1,149 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.Test;
+
+public class CachingExecutorRefreshAheadTest {
+
+  @Test
+  public void shouldRefreshWithParameterValuesOfTheHitThroughPlugins() throws Exception {
+    Configuration config = new Configuration(new Environment("test", new JdbcTransactionFactory(), new UnpooledDataSource()));
+    RefreshRecorder recorder = new RefreshRecorder();
+    config.addInterceptor(recorder);
+    Cache cache = new CacheBuilder("author").timeToLive(60000L).refreshAhead(60000L).build(); // 每次命中都刷新
+    MappedStatement ms = selectAuthor(config, cache);
+    CachingExecutor executor = new CachingExecutor(new EchoExecutor(config));
+
+    Map<String, Object> param = new HashMap<String, Object>();
+    param.put("id", 1);
+    assertEquals(Collections.singletonList(1), executor.query(ms, param, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER));
+    executor.commit(true);
+    assertEquals(Collections.singletonList(1), executor.query(ms, param, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER));
+    param.put("id", 2); // the caller reuses its parameter before the refresh runs
+    recorder.proceed.countDown();
+
+    assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+    assertEquals(1, recorder.value);
+  }
+
+  private MappedStatement selectAuthor(final Configuration config, Cache cache) {
+    List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>();
+    parameterMappings.add(new ParameterMapping.Builder(config, "id", Integer.class).build());
+    StaticSqlSource sqlSource = new StaticSqlSource(config, "select * from author where id = ?", parameterMappings);
+    MappedStatement.Builder builder = new MappedStatement.Builder(config, "selectAuthor", sqlSource, SqlCommandType.SELECT);
+    builder.resultMaps(new ArrayList<ResultMap>() {
+      {
+        add(new ResultMap.Builder(config, "defaultResultMap", Object.class, new ArrayList<ResultMapping>()).build());
+      }
+    });
+    return builder.cache(cache).useCache(true).build();
+  }
+
+  /* Stands in for the database of the refresh, which only a plugin sees. */
+  @Intercepts({
+      @Signature(type = Executor.class, method = "query",
+          args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class})})
+  public static class RefreshRecorder implements Interceptor {
+    final CountDownLatch proceed = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile Object value;
+
+    public Object intercept(Invocation invocation) throws Throwable {
+      proceed.await(5, TimeUnit.SECONDS);
+      BoundSql boundSql = (BoundSql) invocation.getArgs()[5];
+      value = boundSql.getAdditionalParameter(boundSql.getParameterMappings().get(0).getProperty());
+      done.countDown();
+      return Collections.singletonList(value);
+    }
+
+    public Object plugin(Object target) {
+      return Plugin.wrap(target, this);
+    }
+
+    public void setProperties(Properties properties) {
+    }
+  }
+
+  /* Returns the id parameter as the only row. */
+  private static class EchoExecutor extends BaseExecutor {
+
+    EchoExecutor(Configuration configuration) {
+      super(configuration, new JdbcTransaction((DataSource) null, null, false));
+    }
+
+    @Override
+    public int doUpdate(MappedStatement ms, Object parameter) throws SQLException {
+      return 1;
+    }
+
+    @Override
+    public List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException {
+      return Collections.emptyList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <E> List<E> doQuery(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql)
+        throws SQLException {
+      return (List<E>) Collections.singletonList(((Map<?, ?>) parameter).get("id"));
+    }
+
+    @Override
+    protected <E> Cursor<E> doQueryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds, BoundSql boundSql) throws SQLException {
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,217 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.CacheInvalidationScope;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingExecutorTableInvalidationTest {
+
+  private Configuration config;
+  private Cache authorCache;
+  private Cache blogCache;
+  private CountingExecutor database;
+  private CachingExecutor executor;
+
+  @Before
+  public void setUp() {
+    config = new Configuration();
+    config.setCacheInvalidationScope(CacheInvalidationScope.TABLE);
+    authorCache = new PerpetualCache("author");
+    blogCache = new PerpetualCache("blog");
+    database = new CountingExecutor(config);
+    executor = new CachingExecutor(database);
+  }
+
+  @Test
+  public void shouldKeepEntriesOfOtherTablesOnWrite() throws Exception {
+    MappedStatement selectAuthor = statement("selectAuthor", SqlCommandType.SELECT, authorCache, "author");
+    MappedStatement selectBlog = statement("selectBlog", SqlCommandType.SELECT, authorCache, "blog");
+    MappedStatement updateAuthor = statement("updateAuthor", SqlCommandType.UPDATE, authorCache, "author");
+
+    select(selectAuthor);
+    select(selectBlog);
+    executor.update(updateAuthor, null);
+    executor.commit(true);
+    select(selectAuthor);
+    select(selectBlog);
+
+    assertEquals(3, database.queries);
+  }
+
+  @Test
+  public void shouldInvalidateDependentEntriesOfOtherNamespaces() throws Exception {
+    MappedStatement selectBlogWithAuthor = statement("selectBlogWithAuthor", SqlCommandType.SELECT, blogCache, "blog,author");
+    MappedStatement updateAuthor = statement("updateAuthor", SqlCommandType.UPDATE, authorCache, "author");
+
+    select(selectBlogWithAuthor);
+    executor.commit(true);
+    select(selectBlogWithAuthor);
+    assertEquals(1, database.queries);
+    executor.update(updateAuthor, null);
+    select(selectBlogWithAuthor); // uncommitted write must not be hidden by the cache
+    executor.commit(true);
+    select(selectBlogWithAuthor);
+    executor.commit(true);
+    select(selectBlogWithAuthor);
+    assertEquals(3, database.queries);
+  }
+
+  @Test
+  public void shouldInvalidateUnknownTableStatementsOfSameNamespace() throws Exception {
+    MappedStatement selectUnknown = statement("selectUnknown", SqlCommandType.SELECT, authorCache, null);
+    MappedStatement updateAuthor = statement("updateAuthor", SqlCommandType.UPDATE, authorCache, "author");
+
+    select(selectUnknown);
+    executor.update(updateAuthor, null);
+    executor.commit(true);
+    select(selectUnknown);
+    assertEquals(2, database.queries);
+  }
+
+  @Test
+  public void shouldInvalidateAllNamespacesOnWriteToUnknownTables() throws Exception {
+    MappedStatement selectAuthor = statement("selectAuthor", SqlCommandType.SELECT, authorCache, "author");
+    MappedStatement selectBlog = statement("selectBlog", SqlCommandType.SELECT, blogCache, "blog");
+    MappedStatement callProcedure = statement("callProcedure", SqlCommandType.UPDATE, blogCache, null);
+
+    select(selectAuthor);
+    select(selectBlog);
+    executor.commit(true);
+    executor.update(callProcedure, null);
+    select(selectAuthor); // the uncommitted write may have touched any table
+    executor.commit(true);
+    select(selectAuthor);
+    select(selectBlog);
+    executor.commit(true);
+    select(selectAuthor);
+    select(selectBlog);
+    assertEquals(5, database.queries);
+  }
+
+  @Test
+  public void shouldInvalidateOnWriteOfNamespaceWithoutCache() throws Exception {
+    MappedStatement selectAuthor = statement("selectAuthor", SqlCommandType.SELECT, authorCache, "author");
+    MappedStatement selectBlog = statement("selectBlog", SqlCommandType.SELECT, blogCache, "blog");
+    MappedStatement updateAuthor = statement("updateAuthor", SqlCommandType.UPDATE, null, "author");
+
+    select(selectAuthor);
+    select(selectBlog);
+    executor.commit(true);
+    executor.update(updateAuthor, null);
+    select(selectAuthor); // uncommitted write must not be hidden by the cache
+    executor.commit(true);
+    select(selectAuthor);
+    select(selectBlog);
+    assertEquals(4, database.queries);
+  }
+
+  @Test
+  public void shouldInvalidateAllNamespacesOnWriteToUnknownTablesWithoutCache() throws Exception {
+    MappedStatement selectAuthor = statement("selectAuthor", SqlCommandType.SELECT, authorCache, "author");
+    MappedStatement callProcedure = statement("callProcedure", SqlCommandType.UPDATE, null, null);
+
+    select(selectAuthor);
+    executor.commit(true);
+    executor.update(callProcedure, null);
+    executor.commit(true);
+    select(selectAuthor);
+    assertEquals(2, database.queries);
+  }
+
+  @Test
+  public void shouldDiscardInvalidationOnRollback() throws Exception {
+    MappedStatement selectAuthor = statement("selectAuthor", SqlCommandType.SELECT, authorCache, "author");
+    MappedStatement updateAuthor = statement("updateAuthor", SqlCommandType.UPDATE, authorCache, "author");
+
+    select(selectAuthor);
+    executor.commit(true);
+    executor.update(updateAuthor, null);
+    executor.rollback(true);
+    select(selectAuthor);
+    assertEquals(1, database.queries);
+  }
+
+  private void select(MappedStatement ms) throws SQLException {
+    executor.query(ms, null, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+    database.clearLocalCache();
+  }
+
+  private MappedStatement statement(String id, SqlCommandType type, Cache cache, String tables) {
+    MappedStatement.Builder builder = new MappedStatement.Builder(config, id, new StaticSqlSource(config, "sql"), type);
+    builder.resultMaps(new ArrayList<ResultMap>() {
+      {
+        add(new ResultMap.Builder(config, "defaultResultMap", Object.class, new ArrayList<ResultMapping>()).build());
+      }
+    });
+    boolean isSelect = type == SqlCommandType.SELECT;
+    return builder.cache(cache).useCache(isSelect).flushCacheRequired(!isSelect).tables(tables).build();
+  }
+
+  private static class CountingExecutor extends BaseExecutor {
+    int queries;
+
+    CountingExecutor(Configuration configuration) {
+      super(configuration, new JdbcTransaction((DataSource) null, null, false));
+    }
+
+    @Override
+    public int doUpdate(MappedStatement ms, Object parameter) throws SQLException {
+      return 1;
+    }
+
+    @Override
+    public List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public <E> List<E> doQuery(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql)
+        throws SQLException {
+      queries++;
+      return new ArrayList<E>();
+    }
+
+    @Override
+    protected <E> Cursor<E> doQueryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds, BoundSql boundSql) throws SQLException {
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,123 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class QueryCoalescerTest {
+
+  @Test
+  public void shouldRunConcurrentIdenticalQueriesOnce() throws Exception {
+    final QueryCoalescer coalescer = new QueryCoalescer();
+    final AtomicInteger executions = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    final Callable<List<String>> query = new Callable<List<String>>() {
+      @Override
+      public List<String> call() throws Exception {
+        executions.incrementAndGet();
+        release.await();
+        return new ArrayList<String>(Arrays.asList("a", "b"));
+      }
+    };
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+    for (int i = 0; i < 8; i++) {
+      results.add(pool.submit(new Callable<List<String>>() {
+        @Override
+        public List<String> call() throws Exception {
+          return coalescer.query("key", query);
+        }
+      }));
+    }
+    Thread.sleep(200);
+    release.countDown();
+    List<List<String>> lists = new ArrayList<List<String>>();
+    for (Future<List<String>> result : results) {
+      lists.add(result.get(1, TimeUnit.SECONDS));
+    }
+    pool.shutdown();
+    assertEquals(1, executions.get());
+    for (int i = 0; i < lists.size(); i++) {
+      assertEquals(Arrays.asList("a", "b"), lists.get(i));
+      for (int j = i + 1; j < lists.size(); j++) {
+        assertNotSame(lists.get(i), lists.get(j));
+      }
+    }
+    assertEquals(0, coalescer.getRunningCount());
+  }
+
+  @Test
+  public void shouldRunAgainOnceFirstQueryFinished() throws Exception {
+    QueryCoalescer coalescer = new QueryCoalescer();
+    final AtomicInteger executions = new AtomicInteger();
+    Callable<List<Integer>> query = new Callable<List<Integer>>() {
+      @Override
+      public List<Integer> call() {
+        return new ArrayList<Integer>(Arrays.asList(executions.incrementAndGet()));
+      }
+    };
+    assertEquals(Arrays.asList(1), coalescer.query("key", query));
+    assertEquals(Arrays.asList(2), coalescer.query("key", query));
+  }
+
+  @Test
+  public void shouldLetWaitersQueryThemselvesWhenResultCannotBeCopied() throws Exception {
+    final QueryCoalescer coalescer = new QueryCoalescer();
+    final AtomicInteger executions = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    final Callable<List<Object>> query = new Callable<List<Object>>() {
+      @Override
+      public List<Object> call() throws Exception {
+        executions.incrementAndGet();
+        release.await(200, TimeUnit.MILLISECONDS);
+        List<Object> list = new ArrayList<Object>();
+        list.add(new Object());
+        return list;
+      }
+    };
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    List<Future<List<Object>>> results = new ArrayList<Future<List<Object>>>();
+    for (int i = 0; i < 2; i++) {
+      results.add(pool.submit(new Callable<List<Object>>() {
+        @Override
+        public List<Object> call() throws Exception {
+          return coalescer.query("key", query);
+        }
+      }));
+    }
+    Thread.sleep(100);
+    release.countDown();
+    for (Future<List<Object>> result : results) {
+      assertEquals(1, result.get(1, TimeUnit.SECONDS).size());
+    }
+    pool.shutdown();
+    assertEquals(2, executions.get());
+  }
+
+}
@@ -0,0 +1,177 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RoutingExecutorTest {
+
+  private Configuration config;
+  private Executor primary;
+  private Executor replica;
+  private RoutingExecutor executor;
+
+  @Before
+  public void setUp() {
+    config = new Configuration();
+    primary = mock(Executor.class);
+    replica = mock(Executor.class);
+    executor = new RoutingExecutor(primary, replica);
+  }
+
+  @Test
+  public void shouldRouteSelectsToReplicaUntilFirstWrite() throws Exception {
+    MappedStatement select = statement("select", SqlCommandType.SELECT, false);
+    MappedStatement update = statement("update", SqlCommandType.UPDATE, false);
+
+    executor.query(select, 1, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+    verify(replica).query(select, 1, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+    assertFalse(executor.isWritten());
+
+    executor.update(update, 1);
+    verify(primary).update(update, 1);
+    assertTrue(executor.isWritten());
+
+    executor.query(select, 2, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+    verify(primary).query(select, 2, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+    verify(replica, never()).query(select, 2, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+  }
+
+  @Test
+  public void shouldHonourUsePrimaryOverride() throws Exception {
+    MappedStatement select = statement("selectForUpdate", SqlCommandType.SELECT, true);
+    executor.query(select, 1, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+    verify(primary).query(select, 1, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+    verify(replica, never()).query(select, 1, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+    assertFalse(executor.isWritten());
+  }
+
+  @Test
+  public void shouldCommitRollbackAndCloseBothExecutors() throws Exception {
+    executor.commit(true);
+    executor.rollback(true);
+    executor.close(false);
+    verify(primary).commit(true);
+    verify(replica).commit(true);
+    verify(primary).rollback(true);
+    verify(replica).rollback(true);
+    verify(primary).close(false);
+    verify(replica).close(false);
+  }
+
+  @Test
+  public void shouldUsePrimaryTransaction() {
+    assertSame(primary.getTransaction(), executor.getTransaction());
+  }
+
+  @Test
+  public void shouldNotCoalesceSelectsOfPrimaryAndReplica() throws Exception {
+    final RecordingCoalescer coalescer = new RecordingCoalescer();
+    final Configuration config = new Configuration() {
+      @Override
+      public QueryCoalescer getQueryCoalescer() {
+        return coalescer;
+      }
+    };
+    DataSource ds = BaseDataTest.createBlogDataSource();
+    config.setEnvironment(new Environment("primary", new JdbcTransactionFactory(), ds));
+    config.setReplicaEnvironment(new Environment("replica", new JdbcTransactionFactory(), ds));
+    MappedStatement select = sqlStatement(config, "selectAuthorId", "select id from author where id = ?", SqlCommandType.SELECT);
+    MappedStatement update = sqlStatement(config, "touchAuthor", "update author set bio = bio where id = ?", SqlCommandType.UPDATE);
+    Executor executor = config.newExecutor(new JdbcTransaction(ds, null, false), ExecutorType.SIMPLE, new JdbcTransaction(ds, null, false));
+    try {
+      assertEquals(Arrays.asList(101), executor.query(select, 101, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER));
+      assertEquals(1, coalescer.keys.size());
+
+      // the primary has written in its transaction: it must read its own write
+      executor.update(update, 101);
+      executor.query(select, 101, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      assertEquals(1, coalescer.keys.size());
+
+      // once committed the primary coalesces again, but never with the replica
+      executor.commit(true);
+      assertEquals(Arrays.asList(101), executor.query(select, 101, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER));
+      assertEquals(2, coalescer.keys.size());
+      assertNotEquals(coalescer.keys.get(0), coalescer.keys.get(1));
+    } finally {
+      executor.close(true);
+    }
+  }
+
+  private MappedStatement sqlStatement(final Configuration config, String id, String sql, SqlCommandType type) {
+    List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>();
+    parameterMappings.add(new ParameterMapping.Builder(config, "id", Integer.class).build());
+    MappedStatement.Builder builder = new MappedStatement.Builder(config, id, new StaticSqlSource(config, sql, parameterMappings), type);
+    builder.resultMaps(new ArrayList<ResultMap>() {
+      {
+        add(new ResultMap.Builder(config, "defaultResultMap", Integer.class, new ArrayList<ResultMapping>()).build());
+      }
+    });
+    return builder.coalesce(type == SqlCommandType.SELECT).build();
+  }
+
+  private static class RecordingCoalescer extends QueryCoalescer {
+    private final List<Object> keys = new ArrayList<Object>();
+
+    @Override
+    public <E> List<E> query(Object key, Callable<List<E>> query) throws SQLException {
+      keys.add(key);
+      return super.query(key, query);
+    }
+  }
+
+  private MappedStatement statement(String id, SqlCommandType type, boolean usePrimary) {
+    MappedStatement.Builder builder = new MappedStatement.Builder(config, id, new StaticSqlSource(config, "sql"), type);
+    builder.resultMaps(new ArrayList<ResultMap>() {
+      {
+        add(new ResultMap.Builder(config, "defaultResultMap", Object.class, new ArrayList<ResultMapping>()).build());
+      }
+    });
+    return builder.usePrimary(usePrimary).build();
+  }
+
+}
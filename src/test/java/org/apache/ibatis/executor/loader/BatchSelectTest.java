@@ -0,0 +1,182 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.loader;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Test;
+
+public class BatchSelectTest {
+
+  private final Configuration config = new Configuration();
+
+  @Test
+  public void shouldSelectAllKeysWithOneInQuery() throws Exception {
+    config.setMapUnderscoreToCamelCase(true);
+    MappedStatement nested = statement("select * from comment c where c.post_id = ? order by id");
+    BatchSelect batchSelect = BatchSelect.create(nested, nested.getBoundSql(1));
+    RecordingExecutor recorder = new RecordingExecutor(new Comment(1L, "a"), new Comment(1L, "b"), new Comment(3L, "c"));
+    Map<Object, List<Object>> rows = batchSelect.select(recorder.executor(), Arrays.<Object> asList(1, 2, 3, 1), 10);
+    assertEquals(Arrays.asList("select * from comment c where c.post_id IN (?, ?, ?) order by id"), recorder.sqls);
+    assertEquals(2, BatchSelect.rowsOf(rows, 1).size());
+    assertEquals(0, BatchSelect.rowsOf(rows, 2).size());
+    assertEquals("c", ((Comment) BatchSelect.rowsOf(rows, 3).get(0)).getText());
+  }
+
+  @Test
+  public void shouldSplitKeysIntoChunks() throws Exception {
+    MappedStatement nested = statement("select * from comment where post_id = ?", explicitKeyMapping());
+    BatchSelect batchSelect = BatchSelect.create(nested, nested.getBoundSql(1));
+    RecordingExecutor recorder = new RecordingExecutor();
+    batchSelect.select(recorder.executor(), Arrays.<Object> asList(1, 2, 3, 4, 5), 2);
+    assertEquals(3, recorder.sqls.size());
+    assertEquals("select * from comment where post_id IN (?)", recorder.sqls.get(2));
+  }
+
+  @Test
+  public void shouldRefuseStatementsThatCannotBeRewritten() {
+    assertNull(create("select * from comment where post_id = ? limit 1"));
+    assertNull(create("select count(*) from comment where post_id = ? group by post_id"));
+    assertNull(create("select * from comment where post_id = ? and name like ?"));
+    assertNull(create("select * from comment where post_id > ?"));
+    assertNull(create("select * from comment where post_id = ?")); // post_id is not mapped without camel case
+  }
+
+  @Test
+  public void shouldOnlyRewriteConditionsOfTheOuterWhere() {
+    config.setMapUnderscoreToCamelCase(true);
+    assertNotNull(create("select * from comment c where c.deleted = 0 and c.post_id = ? and c.id > 0 order by c.id"));
+    assertNotNull(create("select * from comment c where (c.deleted = 0 or c.draft = 1) and c.post_id = ?"));
+    assertNotNull(create("select * from comment c where c.post_id = ? and c.id in (select id from visible where a = 1 or b = 1)"));
+    assertNull(create("select * from comment c where c.post_id = ? or c.shared = 1"));
+    assertNull(create("select * from comment c where c.shared = 1 or c.post_id = ?"));
+    assertNull(create("select * from comment c where not c.post_id = ?"));
+    assertNull(create("select * from comment c where (c.post_id = ? or c.shared = 1)"));
+    assertNull(create("select * from comment c where c.id in (select id from tag t where t.post_id = ?)"));
+    assertNull(create("select * from comment c join post p on p.post_id = ? where c.deleted = 0"));
+    assertNull(create("select * from comment c where case when c.post_id = ? then 1 else 0 end = 1"));
+    assertNull(create("select * from comment c where c.deleted + c.post_id = ?"));
+    assertNull(create("select * from comment c where c.post_id = ? -- or shared"));
+  }
+
+  @Test
+  public void shouldOnlyBatchKeysThatCompareTheSameInJava() {
+    config.setMapUnderscoreToCamelCase(true);
+    assertNull(create("select * from comment where text = ?")); // collation or padding may match in the database only
+    BatchSelect batchSelect = create("select * from comment where post_id = ?");
+    assertTrue(batchSelect.accepts(1));
+    assertTrue(batchSelect.accepts(1L));
+    assertFalse(batchSelect.accepts("1"));
+    assertFalse(batchSelect.accepts(null));
+  }
+
+  private BatchSelect create(String sql) {
+    MappedStatement nested = statement(sql);
+    return BatchSelect.create(nested, nested.getBoundSql(1));
+  }
+
+  private List<ResultMapping> explicitKeyMapping() {
+    List<ResultMapping> mappings = new ArrayList<ResultMapping>();
+    mappings.add(new ResultMapping.Builder(config, "postId", "post_id", Long.class).build());
+    return mappings;
+  }
+
+  private MappedStatement statement(String sql) {
+    return statement(sql, new ArrayList<ResultMapping>());
+  }
+
+  private MappedStatement statement(String sql, List<ResultMapping> resultMappings) {
+    List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>();
+    for (int i = sql.indexOf('?'); i >= 0; i = sql.indexOf('?', i + 1)) {
+      parameterMappings.add(new ParameterMapping.Builder(config, "id", Object.class).build());
+    }
+    List<ResultMap> resultMaps = new ArrayList<ResultMap>();
+    resultMaps.add(new ResultMap.Builder(config, "commentMap", Comment.class, resultMappings).build());
+    return new MappedStatement.Builder(config, "selectCommentsForPost", new StaticSqlSource(config, sql, parameterMappings), SqlCommandType.SELECT)
+        .resultMaps(resultMaps).build();
+  }
+
+  private static class RecordingExecutor implements InvocationHandler {
+    private final List<String> sqls = new ArrayList<String>();
+    private final List<Object> rows;
+
+    RecordingExecutor(Object... rows) {
+      this.rows = Arrays.asList(rows);
+    }
+
+    Executor executor() {
+      return (Executor) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Executor.class }, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      if (!"query".equals(method.getName())) {
+        throw new UnsupportedOperationException(method.getName());
+      }
+      BoundSql boundSql = ((MappedStatement) args[0]).getBoundSql(args[1]);
+      sqls.add(boundSql.getSql());
+      assertEquals(boundSql.getParameterMappings().size(), ((Map<?, ?>) args[1]).size());
+      return new ArrayList<Object>(rows);
+    }
+  }
+
+  public static class Comment {
+    private Long postId;
+    private String text;
+
+    public Comment() {
+    }
+
+    Comment(Long postId, String text) {
+      this.postId = postId;
+      this.text = text;
+    }
+
+    public Long getPostId() {
+      return postId;
+    }
+
+    public void setPostId(Long postId) {
+      this.postId = postId;
+    }
+
+    public String getText() {
+      return text;
+    }
+
+    public void setText(String text) {
+      this.text = text;
+    }
+  }
+
+}
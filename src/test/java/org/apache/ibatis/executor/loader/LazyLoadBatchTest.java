@@ -0,0 +1,148 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.loader;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Test;
+
+public class LazyLoadBatchTest {
+
+  private final Configuration config = new Configuration();
+
+  @Test
+  public void shouldLoadPropertyOfAllSiblingsOnFirstTrigger() throws Exception {
+    config.setMapUnderscoreToCamelCase(true);
+    MappedStatement nested = statement("select * from comment where post_id = ?");
+    RecordingExecutor recorder = new RecordingExecutor(new Comment(1L, "a"), new Comment(2L, "b"), new Comment(2L, "c"));
+    Executor executor = recorder.executor();
+    LazyLoadBatch batch = new LazyLoadBatch(BatchSelect.create(nested, nested.getBoundSql(1)), 100);
+
+    Post[] posts = new Post[3];
+    ResultLoaderMap[] loaders = new ResultLoaderMap[3];
+    for (int i = 0; i < posts.length; i++) {
+      posts[i] = new Post();
+      loaders[i] = new ResultLoaderMap();
+      MetaObject metaObject = config.newMetaObject(posts[i]);
+      ResultLoader resultLoader = new ResultLoader(config, executor, nested, i + 1, List.class, null, nested.getBoundSql(i + 1));
+      loaders[i].addLoader("comments", metaObject, resultLoader, batch);
+    }
+
+    assertTrue(loaders[1].load("comments"));
+    assertEquals(1, recorder.sqls.size());
+    assertEquals("select * from comment where post_id IN (?, ?, ?)", recorder.sqls.get(0));
+    assertEquals(2, posts[1].getComments().size());
+    assertNull(posts[0].getComments());
+
+    assertTrue(loaders[0].load("comments"));
+    assertTrue(loaders[2].load("comments"));
+    assertEquals(1, recorder.sqls.size());
+    assertEquals("a", ((Comment) posts[0].getComments().get(0)).getText());
+    assertTrue(posts[2].getComments().isEmpty());
+    assertFalse(loaders[2].hasLoader("comments"));
+  }
+
+  private MappedStatement statement(String sql) {
+    List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>();
+    parameterMappings.add(new ParameterMapping.Builder(config, "id", Object.class).build());
+    List<ResultMap> resultMaps = new ArrayList<ResultMap>();
+    resultMaps.add(new ResultMap.Builder(config, "commentMap", Comment.class, new ArrayList<ResultMapping>()).build());
+    return new MappedStatement.Builder(config, "selectCommentsForPost", new StaticSqlSource(config, sql, parameterMappings), SqlCommandType.SELECT)
+        .resultMaps(resultMaps).build();
+  }
+
+  private static class RecordingExecutor implements InvocationHandler {
+    private final List<String> sqls = new ArrayList<String>();
+    private final List<Object> rows;
+
+    RecordingExecutor(Object... rows) {
+      this.rows = Arrays.asList(rows);
+    }
+
+    Executor executor() {
+      return (Executor) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Executor.class }, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      if ("isClosed".equals(method.getName())) {
+        return false;
+      } else if (!"query".equals(method.getName())) {
+        throw new UnsupportedOperationException(method.getName());
+      }
+      sqls.add(((MappedStatement) args[0]).getBoundSql(args[1]).getSql());
+      return new ArrayList<Object>(rows);
+    }
+  }
+
+  public static class Comment {
+    private Long postId;
+    private String text;
+
+    public Comment() {
+    }
+
+    Comment(Long postId, String text) {
+      this.postId = postId;
+      this.text = text;
+    }
+
+    public Long getPostId() {
+      return postId;
+    }
+
+    public void setPostId(Long postId) {
+      this.postId = postId;
+    }
+
+    public String getText() {
+      return text;
+    }
+
+    public void setText(String text) {
+      this.text = text;
+    }
+  }
+
+  public static class Post {
+    private List<Object> comments;
+
+    public List<Object> getComments() {
+      return comments;
+    }
+
+    public void setComments(List<Object> comments) {
+      this.comments = comments;
+    }
+  }
+
+}
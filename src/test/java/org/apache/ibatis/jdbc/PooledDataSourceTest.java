@@ -17,13 +17,19 @@ package org.apache.ibatis.jdbc;
 
 import org.apache.ibatis.BaseDataTest;
 import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
+import org.apache.ibatis.io.Resources;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import org.hsqldb.jdbc.JDBCConnection;
 import org.junit.Test;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -79,6 +85,162 @@ public class PooledDataSourceTest extends BaseDataTest {
     c.toString();
   }
   
+  @Test
+  public void shouldRefillPoolToMinimumIdleInBackground() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMinimumIdleConnections(2);
+      ds.setPoolHousekeepingPeriod(50);
+      Thread.sleep(500);
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+    } finally {
+      ds.setPoolHousekeepingPeriod(0);
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldEvictIdleConnectionsInBackground() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      List<Connection> connections = new ArrayList<Connection>();
+      for (int i = 0; i < 3; i++) {
+        connections.add(ds.getConnection());
+      }
+      for (Connection c : connections) {
+        c.close();
+      }
+      assertEquals(3, ds.getPoolState().getIdleConnectionCount());
+      ds.setPoolMinimumIdleConnections(1);
+      ds.setPoolMaximumIdleTime(50);
+      ds.setPoolHousekeepingPeriod(50);
+      Thread.sleep(500);
+      assertEquals(1, ds.getPoolState().getIdleConnectionCount());
+    } finally {
+      ds.setPoolHousekeepingPeriod(0);
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldNotReturnExpiredConnectionToPool() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMaximumLifetime(50);
+      Connection c = ds.getConnection();
+      Thread.sleep(100);
+      c.close();
+      assertEquals(0, ds.getPoolState().getIdleConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldWarmUpPoolFromFactoryProperties() throws Exception {
+    PooledDataSourceFactory factory = new PooledDataSourceFactory();
+    Properties props = Resources.getResourceAsProperties(JPETSTORE_PROPERTIES);
+    props.setProperty("poolInitialConnections", "3");
+    props.setProperty("poolPingEnabled", "true");
+    props.setProperty("poolPingQuery", "SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS");
+    factory.setProperties(props);
+    PooledDataSource ds = (PooledDataSource) factory.getDataSource();
+    try {
+      assertEquals(3, ds.getPoolState().getIdleConnectionCount());
+      Connection c = ds.getConnection();
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      c.close();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldReportConnectionsHeldLongerThanLeakDetectionThreshold() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolLeakDetectionThreshold(50);
+      Connection leaked = ds.getConnection();
+      Connection returned = ds.getConnection();
+      returned.close();
+      Thread.sleep(100);
+      assertEquals(1, ds.reportLeakedConnections());
+      leaked.close();
+      assertEquals(0, ds.reportLeakedConnections());
+      assertEquals(2, ds.getPoolState().getCheckoutTimeHistogram().getCount());
+      assertTrue(ds.getPoolState().getCheckoutTimeHistogram().getMax() >= 100);
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldReusePreparedStatementsAcrossCheckouts() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolPreparedStatementCacheSize(5);
+      String sql = "SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS";
+      for (int i = 0; i < 3; i++) {
+        Connection c = ds.getConnection();
+        PreparedStatement ps = c.prepareStatement(sql);
+        assertSame(c, ps.getConnection());
+        ps.executeQuery().close();
+        ps.close();
+        assertTrue(ps.isClosed());
+        c.close();
+      }
+      assertEquals(1, ds.getPoolState().getStatementCacheMissCount());
+      assertEquals(2, ds.getPoolState().getStatementCacheHitCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldNotReplayRolledBackBatchOfCachedStatement() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolPreparedStatementCacheSize(5);
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setDefaultAutoCommit(false);
+      String sql = "INSERT INTO PS_CACHE_BATCH (ID) VALUES (?)";
+      Connection c = ds.getConnection();
+      c.createStatement().execute("CREATE TABLE PS_CACHE_BATCH (ID INTEGER)");
+      c.commit();
+      PreparedStatement ps = c.prepareStatement(sql);
+      ps.setQueryTimeout(5);
+      ps.setMaxRows(1);
+      ps.setInt(1, 1);
+      ps.addBatch();
+      ps.setInt(1, 2);
+      ps.addBatch();
+      ps.close(); // closed without executeBatch, like BatchExecutor on rollback
+      c.rollback();
+      c.close();
+
+      c = ds.getConnection();
+      ps = c.prepareStatement(sql);
+      assertEquals(0, ps.getQueryTimeout());
+      assertEquals(0, ps.getMaxRows());
+      ps.setInt(1, 3);
+      ps.addBatch();
+      assertEquals(1, ps.executeBatch().length);
+      ps.close();
+      c.commit();
+      ResultSet rs = c.createStatement().executeQuery("SELECT COUNT(*) FROM PS_CACHE_BATCH");
+      rs.next();
+      assertEquals(1, rs.getInt(1));
+      rs.close();
+      c.createStatement().execute("DROP TABLE PS_CACHE_BATCH");
+      c.commit();
+      c.close();
+      assertEquals(1, ds.getPoolState().getStatementCacheHitCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
   @Test
   public void ShouldReturnRealConnection() throws Exception {
     PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
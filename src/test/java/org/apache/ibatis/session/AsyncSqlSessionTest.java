@@ -0,0 +1,291 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.annotations.CacheNamespace;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.defaults.DefaultAsyncSqlSession;
+import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncSqlSessionTest {
+
+  public interface AsyncAuthorMapper {
+
+    @Select("select * from author")
+    Future<List<Author>> selectAllAuthors();
+
+    @Select("select * from author where id = #{id}")
+    Future<Author> selectAuthor(int id);
+
+    @Select("select * from author where id = #{id}")
+    Author selectAuthorNow(int id);
+
+    @Insert("insert into author (id) values (#{id})")
+    Future<Integer> insertAuthor(Author author);
+
+  }
+
+  @CacheNamespace(blocking = true)
+  public interface BlockingAuthorMapper {
+
+    @Select("select * from author where id = #{id}")
+    Future<Author> selectAuthor(int id);
+
+  }
+
+  private ExecutorService executorService;
+  private Configuration configuration;
+  private List<String> calls;
+  private List<Thread> threads;
+  private CountDownLatch release;
+
+  @Before
+  public void setUp() {
+    executorService = Executors.newFixedThreadPool(4);
+    configuration = new Configuration();
+    configuration.addMapper(AsyncAuthorMapper.class);
+    calls = Collections.synchronizedList(new ArrayList<String>());
+    threads = Collections.synchronizedList(new ArrayList<Thread>());
+    release = new CountDownLatch(0);
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void shouldRunOperationsInOrderOffTheCallingThread() throws Exception {
+    release = new CountDownLatch(1);
+    AsyncSqlSession session = new DefaultAsyncSqlSession(stubSession(), executorService);
+    Future<List<Object>> first = session.selectList("first");
+    Future<Integer> second = session.update("second", 1);
+    Future<Void> commit = session.commit();
+    assertFalse(first.isDone());
+    release.countDown();
+    assertEquals(Arrays.<Object> asList("first"), first.get(5, TimeUnit.SECONDS));
+    assertEquals(Integer.valueOf(1), second.get(5, TimeUnit.SECONDS));
+    commit.get(5, TimeUnit.SECONDS);
+    assertEquals(Arrays.asList("selectList first", "update second", "commit"), calls);
+    assertFalse(threads.contains(Thread.currentThread()));
+    session.close();
+    assertEquals("close", calls.get(calls.size() - 1));
+  }
+
+  @Test
+  public void shouldRunSessionsInParallel() throws Exception {
+    release = new CountDownLatch(1);
+    AsyncSqlSession first = new DefaultAsyncSqlSession(stubSession(), executorService);
+    AsyncSqlSession second = new DefaultAsyncSqlSession(stubSession(), executorService);
+    Future<List<Object>> a = first.selectList("a");
+    Future<List<Object>> b = second.selectList("b");
+    release.countDown();
+    a.get(5, TimeUnit.SECONDS);
+    b.get(5, TimeUnit.SECONDS);
+    assertNotSame(threads.get(0), threads.get(1));
+  }
+
+  @Test
+  public void shouldNotHoldAThreadWhileIdle() throws Exception {
+    ExecutorService singleThread = Executors.newSingleThreadExecutor();
+    try {
+      AsyncSqlSession first = new DefaultAsyncSqlSession(stubSession(), singleThread);
+      AsyncSqlSession second = new DefaultAsyncSqlSession(stubSession(), singleThread);
+      assertEquals(Arrays.<Object> asList("a"), first.selectList("a").get(5, TimeUnit.SECONDS));
+      assertEquals(Arrays.<Object> asList("b"), second.selectList("b").get(5, TimeUnit.SECONDS)); // first is still open
+      assertEquals(Arrays.<Object> asList("c"), first.selectList("c").get(5, TimeUnit.SECONDS));
+    } finally {
+      singleThread.shutdownNow();
+    }
+  }
+
+  @Test
+  public void shouldReportFailuresThroughTheFuture() throws Exception {
+    AsyncSqlSession session = new DefaultAsyncSqlSession(stubSession(), executorService);
+    Future<Object> failed = session.selectOne("fail");
+    try {
+      failed.get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof PersistenceException);
+    }
+    assertEquals(Arrays.<Object> asList("after"), session.selectList("after").get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void shouldRejectOperationsAfterClose() {
+    AsyncSqlSession session = new DefaultAsyncSqlSession(stubSession(), executorService);
+    session.close();
+    session.close();
+    try {
+      session.selectList("late");
+      fail();
+    } catch (SqlSessionException e) {
+      assertTrue(e.getMessage().contains("closed"));
+    }
+  }
+
+  @Test
+  public void shouldRunNestedOperationsOfATaskAtOnce() throws Exception {
+    final AsyncSqlSession session = new DefaultAsyncSqlSession(stubSession(), executorService);
+    Future<List<Object>> nested = session.submit(new Callable<List<Object>>() {
+      @Override
+      public List<Object> call() throws Exception {
+        return session.<Object> selectList("nested").get();
+      }
+    });
+    assertEquals(Arrays.<Object> asList("nested"), nested.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void shouldReturnFuturesFromAsyncMappers() throws Exception {
+    AsyncSqlSession session = new DefaultAsyncSqlSession(stubSession(), executorService);
+    AsyncAuthorMapper mapper = session.getMapper(AsyncAuthorMapper.class);
+    Future<List<Author>> authors = mapper.selectAllAuthors();
+    Future<Author> author = mapper.selectAuthor(101);
+    Future<Integer> inserted = mapper.insertAuthor(new Author(102));
+    assertEquals(1, authors.get(5, TimeUnit.SECONDS).size());
+    assertEquals(101, author.get(5, TimeUnit.SECONDS).getId());
+    assertEquals(Integer.valueOf(1), inserted.get(5, TimeUnit.SECONDS));
+    assertEquals(101, mapper.selectAuthorNow(101).getId());
+    assertFalse(threads.contains(Thread.currentThread()));
+  }
+
+  @Test(expected = BindingException.class)
+  public void shouldRejectFutureMethodsOfSynchronousMappers() {
+    configuration.getMapper(AsyncAuthorMapper.class, stubSession()).selectAllAuthors();
+  }
+
+  @Test
+  public void shouldReleaseBlockingCacheLocksAfterIdleSession() throws Exception {
+    // idle pool threads die at once, so the commit runs on another thread than the select
+    ExecutorService shortLived = new ThreadPoolExecutor(0, 10, 1, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>());
+    Configuration config = new Configuration(new Environment("test", new JdbcTransactionFactory(), BaseDataTest.createBlogDataSource()));
+    config.addMapper(BlockingAuthorMapper.class);
+    config.setAsyncExecutorService(shortLived);
+    final SqlSessionFactory factory = new DefaultSqlSessionFactory(config);
+    try {
+      AsyncSqlSession session = factory.openAsyncSession();
+      assertEquals(101, session.getMapper(BlockingAuthorMapper.class).selectAuthor(101).get(5, TimeUnit.SECONDS).getId());
+      Thread.sleep(100);
+      session.commit().get(5, TimeUnit.SECONDS);
+      session.close();
+
+      // the key locked by the miss must have been released by the commit
+      AsyncSqlSession reader = factory.openAsyncSession();
+      try {
+        assertEquals(101, reader.getMapper(BlockingAuthorMapper.class).selectAuthor(101).get(5, TimeUnit.SECONDS).getId());
+      } finally {
+        reader.close();
+      }
+    } finally {
+      shortLived.shutdownNow();
+    }
+  }
+
+  @Test
+  public void shouldSelectParallelFromTaskOnBoundedExecutorService() throws Exception {
+    ExecutorService singleThread = Executors.newSingleThreadExecutor();
+    Configuration config = new Configuration(new Environment("test", new JdbcTransactionFactory(), BaseDataTest.createBlogDataSource()));
+    config.addMapper(BlockingAuthorMapper.class);
+    config.setAsyncExecutorService(singleThread);
+    final SqlSessionFactory factory = new DefaultSqlSessionFactory(config);
+    try {
+      AsyncSqlSession session = factory.openAsyncSession();
+      // the task holds the only thread of the async service while it waits for the selects
+      Future<Map<Integer, List<?>>> results = session.submit(new Callable<Map<Integer, List<?>>>() {
+        @Override
+        public Map<Integer, List<?>> call() {
+          ParallelSqlSession parallelSession = (ParallelSqlSession) factory.openSession();
+          try {
+            Map<Integer, SelectRequest> requests = new LinkedHashMap<Integer, SelectRequest>();
+            requests.put(101, new SelectRequest(BlockingAuthorMapper.class.getName() + ".selectAuthor", 101));
+            requests.put(102, new SelectRequest(BlockingAuthorMapper.class.getName() + ".selectAuthor", 102));
+            return parallelSession.selectParallel(requests);
+          } finally {
+            parallelSession.close();
+          }
+        }
+      });
+      assertEquals(101, ((Author) results.get(5, TimeUnit.SECONDS).get(101).get(0)).getId());
+      assertEquals(102, ((Author) results.get(5, TimeUnit.SECONDS).get(102).get(0)).getId());
+      session.close();
+    } finally {
+      singleThread.shutdownNow();
+    }
+  }
+
+  /* Stands in for a DefaultSqlSession: records the calls and returns canned results. */
+  private SqlSession stubSession() {
+    return (SqlSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { SqlSession.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("getConfiguration".equals(name)) {
+              return configuration;
+            }
+            threads.add(Thread.currentThread());
+            release.await();
+            calls.add(args == null || args.length == 0 || name.equals("commit") ? name : name + " " + args[0]);
+            String statement = args == null || args.length == 0 ? null : String.valueOf(args[0]);
+            if ("fail".equals(statement)) {
+              throw new PersistenceException("failed");
+            }
+            if (name.equals("selectList")) {
+              return statement.endsWith("selectAllAuthors") ? Arrays.asList(new Author(101)) : Arrays.asList(statement);
+            } else if (name.equals("selectOne")) {
+              return new Author((Integer) args[1]);
+            } else if (name.equals("insert") || name.equals("update") || name.equals("delete")) {
+              return 1;
+            }
+            return null;
+          }
+        });
+  }
+
+}
@@ -0,0 +1,126 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import static org.junit.Assert.*;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.domain.blog.Blog;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class NestedSelectBatchTest extends BaseDataTest {
+
+  private static SqlSessionFactory sqlMapper;
+  private static SqlRecorder recorder = new SqlRecorder();
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    createBlogDataSource();
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/builder/MapperConfig.xml");
+    sqlMapper = new SqlSessionFactoryBuilder().build(reader);
+    sqlMapper.getConfiguration().setNestedSelectBatchSize(10);
+    sqlMapper.getConfiguration().setCallSettersOnNulls(true);
+    sqlMapper.getConfiguration().addInterceptor(recorder);
+  }
+
+  @Before
+  public void clearRecorder() {
+    recorder.sqls.clear();
+  }
+
+  @Test
+  public void shouldSelectAuthorsOfAllBlogsWithOneQuery() {
+    SqlSession session = sqlMapper.openSession();
+    try {
+      List<Blog> blogs = session.selectList("org.apache.ibatis.domain.blog.mappers.BlogMapper.selectBlogsWithPostsUsingSubSelect");
+      assertEquals(2, blogs.size());
+      assertEquals("jim", blogs.get(0).getAuthor().getUsername());
+      assertEquals("sally", blogs.get(1).getAuthor().getUsername());
+      assertEquals(2, blogs.get(0).getPosts().size());
+      assertEquals(2, blogs.get(1).getPosts().size());
+      // one select of blogs, one of both authors, and one of posts per blog: Post has no property for blog_id
+      assertEquals(4, recorder.sqls.size());
+      assertEquals(1, countContaining("IN (?, ?)"));
+    } finally {
+      session.close();
+    }
+  }
+
+  @Test
+  public void shouldHandBackSharedAndMissingKeys() throws Exception {
+    SqlSession session = sqlMapper.openSession();
+    try {
+      Statement statement = session.getConnection().createStatement();
+      statement.execute("insert into blog (id, author_id, title) values (3, 101, 'Jim Again')");
+      statement.execute("insert into blog (id, author_id, title) values (4, 999, 'Nobody')");
+      statement.close();
+      List<Blog> blogs = session.selectList("org.apache.ibatis.domain.blog.mappers.BlogMapper.selectBlogsWithPostsUsingSubSelect");
+      assertEquals(4, blogs.size());
+      assertEquals(101, blogs.get(2).getAuthor().getId());
+      assertNull(blogs.get(3).getAuthor());
+      assertTrue(blogs.get(3).getPosts().isEmpty());
+      assertEquals(1, countContaining("IN (?, ?, ?)")); // 101, 102 and 999
+    } finally {
+      session.rollback(true);
+      session.close();
+    }
+  }
+
+  private int countContaining(String text) {
+    int count = 0;
+    for (String sql : recorder.sqls) {
+      if (sql.contains(text)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Intercepts({
+      @Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class})})
+  public static class SqlRecorder implements Interceptor {
+    final List<String> sqls = new ArrayList<String>();
+
+    public Object intercept(Invocation invocation) throws Throwable {
+      sqls.add(((StatementHandler) invocation.getTarget()).getBoundSql().getSql());
+      return invocation.proceed();
+    }
+
+    public Object plugin(Object target) {
+      return Plugin.wrap(target, this);
+    }
+
+    public void setProperties(Properties properties) {
+    }
+  }
+
+}
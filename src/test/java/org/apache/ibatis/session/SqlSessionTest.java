@@ -20,8 +20,11 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import java.io.Reader;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -31,6 +34,8 @@ import java.util.Map;
 
 import javassist.util.proxy.Proxy;
 
+import javax.sql.DataSource;
+
 import org.apache.ibatis.BaseDataTest;
 import org.apache.ibatis.binding.BindingException;
 import org.apache.ibatis.cache.impl.PerpetualCache;
@@ -49,7 +54,9 @@ import org.apache.ibatis.domain.blog.mappers.BlogMapper;
 import org.apache.ibatis.exceptions.TooManyResultsException;
 import org.apache.ibatis.executor.result.DefaultResultHandler;
 import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -350,6 +357,72 @@ public class SqlSessionTest extends BaseDataTest {
     }
   }
 
+  @Test
+  public void shouldSelectIndependentStatementsInParallel() throws Exception {
+    ParallelSqlSession session = (ParallelSqlSession) sqlMapper.openSession();
+    try {
+      Map<String, SelectRequest> requests = new LinkedHashMap<String, SelectRequest>();
+      requests.put("authors", new SelectRequest("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAllAuthors"));
+      requests.put("author", new SelectRequest("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAuthor", 101));
+      requests.put("posts", new SelectRequest("org.apache.ibatis.domain.blog.mappers.BlogMapper.selectAllPosts", null, new RowBounds(0, 2)));
+      Map<String, List<?>> results = session.selectParallel(requests);
+      assertEquals(new ArrayList<String>(requests.keySet()), new ArrayList<String>(results.keySet()));
+      assertEquals(2, results.get("authors").size());
+      assertEquals(101, ((Author) results.get("author").get(0)).getId());
+      assertEquals(2, results.get("posts").size());
+    } finally {
+      session.close();
+    }
+  }
+
+  @Test
+  public void shouldSelectInSessionAfterUncommittedWrite() throws Exception {
+    ParallelSqlSession session = (ParallelSqlSession) sqlMapper.openSession();
+    try {
+      session.delete("org.apache.ibatis.domain.blog.mappers.AuthorMapper.deleteAuthor", 102);
+      Map<Integer, SelectRequest> requests = new LinkedHashMap<Integer, SelectRequest>();
+      requests.put(1, new SelectRequest("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAuthor", 102));
+      requests.put(2, new SelectRequest("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAllAuthors"));
+      Map<Integer, List<?>> results = session.selectParallel(requests);
+      assertEquals(0, results.get(1).size());
+      assertEquals(1, results.get(2).size());
+      session.rollback();
+    } finally {
+      session.close();
+    }
+  }
+
+  @Test
+  public void shouldSelectParallelFromPrimaryAfterCommittedWrite() throws Exception {
+    Reader config = Resources.getResourceAsReader("org/apache/ibatis/builder/MapperConfig.xml");
+    SqlSessionFactory factory = new SqlSessionFactoryBuilder().build(config);
+    DataSource replica = mock(DataSource.class);
+    when(replica.getConnection()).thenThrow(new SQLException("replica must not be used"));
+    factory.getConfiguration().setReplicaEnvironment(new Environment("replica", new JdbcTransactionFactory(), replica));
+    SqlSession reader = sqlMapper.openSession();
+    Author original;
+    try {
+      original = reader.selectOne("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAuthor", 101);
+    } finally {
+      reader.close();
+    }
+    ParallelSqlSession session = (ParallelSqlSession) factory.openSession();
+    try {
+      session.update("org.apache.ibatis.domain.blog.mappers.AuthorMapper.updateAuthor", original);
+      session.commit();
+      // like the session's own selects, the parallel ones must still read the primary
+      assertEquals(101, ((Author) session.selectOne("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAuthor", 101)).getId());
+      Map<Integer, SelectRequest> requests = new LinkedHashMap<Integer, SelectRequest>();
+      requests.put(1, new SelectRequest("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAuthor", 101));
+      requests.put(2, new SelectRequest("org.apache.ibatis.domain.blog.mappers.BlogMapper.selectAllPosts"));
+      Map<Integer, List<?>> results = session.selectParallel(requests);
+      assertEquals(1, results.get(1).size());
+      assertEquals(5, results.get(2).size());
+    } finally {
+      session.close();
+    }
+  }
+
   @Test
   public void shouldDeleteAuthor() throws Exception {
     SqlSession session = sqlMapper.openSession();
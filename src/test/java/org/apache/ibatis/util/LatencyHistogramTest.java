@@ -0,0 +1,68 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void shouldCountSmallValuesExactly() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 50; i++) {
+      histogram.record(i);
+    }
+    assertEquals(50, histogram.getCount());
+    assertEquals(25, histogram.getPercentile(50));
+    assertEquals(50, histogram.getPercentile(100));
+    assertEquals(50, histogram.getMax());
+    assertEquals(25, histogram.getMean());
+  }
+
+  @Test
+  public void shouldKeepLargeValuesWithinPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 99; i++) {
+      histogram.record(10);
+    }
+    histogram.record(123456);
+    assertEquals(10, histogram.getPercentile(99));
+    long p100 = histogram.getPercentile(100);
+    assertTrue(p100 <= 123456 && p100 > 123456 * 0.96);
+  }
+
+  @Test
+  public void shouldMapEveryValueToAValidBucket() {
+    long[] values = { 0, 63, 64, 65, 1000, Integer.MAX_VALUE, Long.MAX_VALUE };
+    for (long value : values) {
+      int index = LatencyHistogram.bucketIndex(value);
+      assertTrue(LatencyHistogram.highestEquivalentValue(index) >= value);
+    }
+  }
+
+  @Test
+  public void shouldResetCounts() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(5);
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentile(99));
+  }
+
+}